@@ -1,10 +1,92 @@
 ﻿package com.falkknudsen.jaywalk;
 
+import com.falkknudsen.jaywalk.util.Strings;
+
 import java.io.Serializable;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+/** A {@link Way} that is part of the road network, i.e. one that the directed graph is built from. */
 public class HighWay extends Way implements Serializable {
-    private HighWay(List<Node> nodes) {
+    /** Values of the "highway" tag that do not (yet, or any longer) describe something
+     that can be travelled along. */
+    private static final Set<String> NOT_ROADS = Set.of(
+            "proposed", "construction", "abandoned", "razed", "platform", "bus_stop", "elevator");
+
+    /** Travel direction relative to the order of the nodes:
+     {@code 0} for both ways, {@code 1} for forwards only, and {@code -1} for backwards only. */
+    private final byte direction;
+
+    HighWay(List<Node> nodes, byte direction) {
         super(nodes);
+        this.direction = direction;
+    }
+
+    private HighWay(float[] coordinates, byte direction) {
+        super(coordinates);
+        this.direction = direction;
+    }
+
+    private HighWay(long pooled, byte direction) {
+        super(pooled);
+        this.direction = direction;
+    }
+
+    /** Recreates a road from projected coordinates, as copied out by {@link #copyCoordinates}. */
+    public static HighWay fromCoordinates(float[] coordinates, byte direction, WayType type) {
+        HighWay road = new HighWay(coordinates, direction);
+        road.setType(type);
+        return road;
+    }
+
+    /** Recreates a road from the handle of its coordinates in the pool, as given by {@link #poolHandle()}. */
+    public static HighWay fromPool(long handle, byte direction, WayType type) {
+        HighWay road = new HighWay(handle, direction);
+        road.setType(type);
+        return road;
+    }
+
+    @Override
+    HighWay withCoordinates(float[] coordinates) {
+        return fromCoordinates(coordinates, direction, type());
+    }
+
+    /** Whether the tags describe a way that belongs in the road network. */
+    public static boolean isRoad(Map<String, String> tags) {
+        String highway = tags.get("highway");
+        return highway != null && !NOT_ROADS.contains(highway);
+    }
+
+    /** Determines the travel direction from the "oneway", "junction", and "highway" tags.
+     @see #direction() */
+    public static byte direction(Map<String, String> tags) {
+        String oneway = tags.get("oneway");
+        if (oneway != null) {
+            switch (oneway) {
+            case "yes", "true", "1":
+                return 1;
+            case "-1", "reverse":
+                return -1;
+            case "no", "false", "0":
+                return 0;
+            default:
+                break;
+            }
+        }
+        if (Strings.is(tags, "junction", "roundabout") || Strings.is(tags, "highway", "motorway")) {
+            return 1;
+        }
+        return 0;
+    }
+
+    /** Travel direction relative to the order of the nodes:
+     {@code 0} for both ways, {@code 1} for forwards only, and {@code -1} for backwards only. */
+    public byte direction() {
+        return direction;
+    }
+
+    public boolean isOneWay() {
+        return direction != 0;
     }
 }
@@ -0,0 +1,33 @@
+package com.falkknudsen.jaywalk;
+
+import com.falkknudsen.jaywalk.graph.EdgeIndex;
+
+/** The zoom bands the map is drawn at. Every band but {@link #FULL} has its own, smaller copy of the
+ drawables: only the features important enough for it (see {@link WayType#coarsest}), simplified so that
+ no point moves by more than {@link #toleranceMetres}, and without features smaller than that. A band is
+ used when a pixel covers at least that many metres, so the simplification never shows. */
+public enum LevelOfDetail {
+    COUNTRY(400),
+    REGION(80),
+    CITY(15),
+    FULL(0);
+
+    public final double toleranceMetres;
+
+    LevelOfDetail(double toleranceMetres) {
+        this.toleranceMetres = toleranceMetres;
+    }
+
+    /** {@link #toleranceMetres} in projected map units. */
+    public float tolerance() {
+        return (float) (toleranceMetres / EdgeIndex.METRES_PER_UNIT);
+    }
+
+    /** The coarsest band whose simplification is invisible when a pixel covers {@code metresPerPixel}. */
+    public static LevelOfDetail forScale(double metresPerPixel) {
+        for (LevelOfDetail level : values()) {
+            if (metresPerPixel >= level.toleranceMetres) return level;
+        }
+        return FULL;
+    }
+}
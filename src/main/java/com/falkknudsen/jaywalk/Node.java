@@ -61,6 +61,18 @@ public class Node implements Serializable {
         return "(" + lat() + "°, " + lon() + "°)";
     }
 
+    /** A key that is the same for two nodes exactly when they are {@link #equals}, for maps with primitive
+     keys. See {@link #key(float, float)}. */
+    public long key() {
+        return key(lat, lon);
+    }
+
+    /** The key of the node at the coordinate, without making the node: the bits of the latitude, then those
+     of the longitude. */
+    public static long key(float lat, float lon) {
+        return (long) Float.floatToIntBits(lat) << 32 | Float.floatToIntBits(lon) & 0xFFFFFFFFL;
+    }
+
     public float lat() {
         return lat;
     }
@@ -1,6 +1,7 @@
 package com.falkknudsen.jaywalk;
 
 import com.falkknudsen.jaywalk.contracts.IDrawable;
+import com.falkknudsen.jaywalk.render.PathBuilder;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
 
@@ -27,6 +28,37 @@ public class Rectangle implements IDrawable, Serializable {
         this.endX    = Math.max(minX, maxX);
     }
 
+    /** Grows the rectangle to also contain the given rectangle. */
+    public void extend(float minX, float minY, float maxX, float maxY) {
+        this.originX = Math.min(originX, minX);
+        this.originY = Math.min(originY, minY);
+        this.endX    = Math.max(endX, maxX);
+        this.endY    = Math.max(endY, maxY);
+    }
+
+    public boolean intersects(float minX, float minY, float maxX, float maxY) {
+        return intersects(originX, originY, endX, endY, minX, minY, maxX, maxY);
+    }
+
+    /** Whether the rectangles a and b overlap. Touching edges count as overlapping. */
+    public static boolean intersects(float aMinX, float aMinY, float aMaxX, float aMaxY,
+                                     float bMinX, float bMinY, float bMaxX, float bMaxY) {
+        return aMinX <= bMaxX && bMinX <= aMaxX && aMinY <= bMaxY && bMinY <= aMaxY;
+    }
+
+    @Override
+    public Rectangle boundingBox() {
+        return this;
+    }
+
+    /** A rectangle that contains nothing, and which any call to {@link #extend} will replace. */
+    public static Rectangle empty() {
+        Rectangle rect = new Rectangle();
+        rect.originX = rect.originY = Float.POSITIVE_INFINITY;
+        rect.endX = rect.endY = Float.NEGATIVE_INFINITY;
+        return rect;
+    }
+
     public Rectangle() {}
     public Rectangle(float originX, float originY, float endX, float endY) {
         setBounds(originX, originY, endX, endY);
@@ -66,6 +98,12 @@ public class Rectangle implements IDrawable, Serializable {
         return bits ^ (bits >> 16);
     }
 
+    /** Adds the outline of the rectangle. */
+    @Override
+    public void trace(PathBuilder path) {
+        path.add(new float[]{originX, originY, endX, originY, endX, endY, originX, endY, originX, originY});
+    }
+
     public void draw(GraphicsContext gc, Color colour) {
         draw(gc, colour, originX, originY, endX, endY);
     }
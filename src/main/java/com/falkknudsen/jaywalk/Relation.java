@@ -1,16 +1,19 @@
 ﻿package com.falkknudsen.jaywalk;
 
 import com.falkknudsen.jaywalk.contracts.IDrawable;
+import com.falkknudsen.jaywalk.render.PathBuilder;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 public class Relation implements IDrawable, Serializable {
     public Way[] ways;
     public Relation[] relations;
+    private WayType type = WayType.OTHER;
 
     private Relation(Way[] ways, Relation[] relations) {
         this.ways = ways;
@@ -29,11 +32,159 @@ public class Relation implements IDrawable, Serializable {
     }
 
     public static Relation create(Way[] ways, Relation[] relations, Map<String, String> tags) {
-        return new Relation(ways, relations);
+        return create(ways, relations, WayType.of(tags));
+    }
+
+    public static Relation create(Way[] ways, Relation[] relations, WayType type) {
+        Relation relation = new Relation(ways, relations);
+        relation.type = type;
+        return relation;
     }
 
     public static Relation create(List<Way> ways, List<Relation> relations, Map<String, String> tags) {
-        return new Relation(ways, relations);
+        Relation relation = new Relation(ways, relations);
+        relation.type = WayType.of(tags);
+        return relation;
+    }
+
+    @Override
+    public WayType type() {
+        return type;
+    }
+
+    /** Packs the coordinates of every way in the relation, and in the relations in it; see {@link Way#compact()}. */
+    public void compact() {
+        for (Way way : ways) way.compact();
+        for (Relation relation : relations) relation.compact();
+    }
+
+    /** Moves the coordinates of every way in the relation, and in the relations in it, off the heap; see
+     {@link Way#pool()}. */
+    public void pool() {
+        for (Way way : ways) way.pool();
+        for (Relation relation : relations) relation.pool();
+    }
+
+    @Override
+    public int vertexCount() {
+        int count = 0;
+        for (Way way : ways) count += way.vertexCount();
+        for (Relation relation : relations) count += relation.vertexCount();
+        return count;
+    }
+
+    /** The projected x coordinate of vertex {@code i}, counting through the member ways and then the member
+     relations, in the order {@link #copyCoordinates} puts them in. Finding the member takes a look at each
+     before it, so to go through all of them, use {@link #forEachSegment} or {@link #copyCoordinates}. */
+    public float x(int i) {
+        int index = i;
+        for (Way way : ways) {
+            if (index < way.size()) return way.x(index);
+            index -= way.size();
+        }
+        for (Relation relation : relations) {
+            int count = relation.vertexCount();
+            if (index < count) return relation.x(index);
+            index -= count;
+        }
+        throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + vertexCount());
+    }
+
+    /** The projected y coordinate of vertex {@code i}; see {@link #x}. */
+    public float y(int i) {
+        int index = i;
+        for (Way way : ways) {
+            if (index < way.size()) return way.y(index);
+            index -= way.size();
+        }
+        for (Relation relation : relations) {
+            int count = relation.vertexCount();
+            if (index < count) return relation.y(index);
+            index -= count;
+        }
+        throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + vertexCount());
+    }
+
+    /** Copies the projected coordinates of the member ways, then those of the member relations, x and y
+     interleaved, into {@code dest} from {@code offset}. There are {@code 2 * vertexCount()} of them.
+     @return The position in {@code dest} after the last one. */
+    public int copyCoordinates(float[] dest, int offset) {
+        for (Way way : ways) {
+            way.copyCoordinates(dest, offset);
+            offset += way.size() * 2;
+        }
+        for (Relation relation : relations) {
+            offset = relation.copyCoordinates(dest, offset);
+        }
+        return offset;
+    }
+
+    /** Passes the segments of each member to {@code visitor}, the ways and then the relations. The members
+     aren't joined up: there is no segment from the end of one to the start of the next. */
+    @Override
+    public void forEachSegment(SegmentVisitor visitor) {
+        for (Way way : ways) {
+            way.forEachSegment(visitor);
+        }
+        for (Relation relation : relations) {
+            relation.forEachSegment(visitor);
+        }
+    }
+
+    /** A copy with every member simplified, leaving out the members that vanish,
+     or {@code null} if they all do. */
+    @Override
+    public Relation simplified(float tolerance) {
+        List<Way> keptWays = new ArrayList<>(ways.length);
+        for (Way way : ways) {
+            Way simplified = way.simplified(tolerance);
+            if (simplified != null) keptWays.add(simplified);
+        }
+        List<Relation> keptRelations = new ArrayList<>(relations.length);
+        for (Relation relation : relations) {
+            Relation simplified = relation.simplified(tolerance);
+            if (simplified != null) keptRelations.add(simplified);
+        }
+        if (keptWays.isEmpty() && keptRelations.isEmpty()) return null;
+        return create(keptWays.toArray(new Way[0]), keptRelations.toArray(new Relation[0]), type);
+    }
+
+    @Override
+    public Rectangle boundingBox() {
+        Rectangle box = Rectangle.empty();
+        for (Way way : ways) {
+            Rectangle member = way.boundingBox();
+            box.extend(member.minLon(), member.minLat(), member.maxLon(), member.maxLat());
+        }
+        for (Relation relation : relations) {
+            Rectangle member = relation.boundingBox();
+            box.extend(member.minLon(), member.minLat(), member.maxLon(), member.maxLat());
+        }
+        return box;
+    }
+
+    /** Squared distance to the nearest member. Inner rings of multipolygons aren't subtracted,
+     so a point in a hole counts as being on the relation. */
+    @Override
+    public double distanceSquared(float x, float y) {
+        double best = Double.POSITIVE_INFINITY;
+        for (Way way : ways) {
+            best = Math.min(best, way.distanceSquared(x, y));
+        }
+        for (Relation relation : relations) {
+            best = Math.min(best, relation.distanceSquared(x, y));
+        }
+        return best;
+    }
+
+    @Override
+    public void trace(PathBuilder path) {
+        for (Way way : ways) {
+            way.trace(path);
+        }
+        for (Relation relation : relations) {
+            relation.trace(path);
+        }
     }
 
     @Override
@@ -1,19 +1,42 @@
 ﻿package com.falkknudsen.jaywalk;
 
 import com.falkknudsen.jaywalk.contracts.IDrawable;
+import com.falkknudsen.jaywalk.graph.EdgeIndex;
+import com.falkknudsen.jaywalk.render.PathBuilder;
+import com.falkknudsen.jaywalk.structs.CoordinatePool;
+import com.falkknudsen.jaywalk.structs.PackedCoordinates;
+import com.falkknudsen.jaywalk.util.Maths;
+import com.falkknudsen.jaywalk.util.Simplify;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serial;
 import java.io.Serializable;
 import java.util.*;
 
 public class Way extends AbstractList<Node> implements IDrawable, Serializable {
+    private static final CoordinatePool POOL = CoordinatePool.global();
+
+    /** The projected coordinates, x and y interleaved, or {@code null} once the way is {@link #compact} or
+     {@link #pool pooled}. */
     private float[] coordinates;
+    /** The coordinates packed with {@link PackedCoordinates}, or {@code null} until the way is compacted. */
+    private byte[] packed;
+    /** The handle of the coordinates in the {@link CoordinatePool}, or 0 until the way is pooled. It only
+     means something in this process, so it isn't serialised; see {@link #writeObject}. */
+    private transient long pooled;
+    private WayType type = WayType.OTHER;
 
-    private Way(float[] coordinates) {
+    Way(float[] coordinates) {
         this.coordinates = coordinates;
     }
 
+    Way(long pooled) {
+        this.pooled = pooled;
+    }
+
      Way(List<Node> nodes) {
         coordinates = new float[nodes.size() * 2];
         for (int i = 0; i < nodes.size(); i++) {
@@ -36,17 +59,163 @@ public class Way extends AbstractList<Node> implements IDrawable, Serializable {
         if (nodes.size() < 2) {
             throw new IllegalArgumentException("nodes must have at least 2 nodes");
         }
-        return new Way(nodes);
+        Way way = HighWay.isRoad(tags) ? new HighWay(nodes, HighWay.direction(tags)) : new Way(nodes);
+        way.type = WayType.of(tags);
+        return way;
+    }
+
+    /** Recreates a way from projected coordinates, as copied out by {@link #copyCoordinates}. */
+    public static Way fromCoordinates(float[] coordinates, WayType type) {
+        Way way = new Way(coordinates);
+        way.type = type;
+        return way;
+    }
+
+    /** Recreates a way from the handle of its coordinates in the {@link CoordinatePool}, as given by
+     {@link #poolHandle()}, shifted as {@link CoordinatePool#map} says if it was saved to a file. */
+    public static Way fromPool(long handle, WayType type) {
+        Way way = new Way(handle);
+        way.type = type;
+        return way;
+    }
+
+    /** Packs the coordinates into about half the memory (see {@link PackedCoordinates}), from where they are
+     decoded as needed. Drawing and {@link #length()} decode them as they go; {@link #get} decodes from the
+     nearest checkpoint; everything else unpacks a copy. Adding to the way moves it to the pool. */
+    public void compact() {
+        if (packed != null) return;
+        packed = PackedCoordinates.pack(coordinates());
+        coordinates = null;
+        pooled = 0;
+    }
+
+    /** Whether the coordinates are packed, by {@link #compact}. */
+    public boolean isCompact() {
+        return packed != null;
+    }
+
+    /** Moves the coordinates off the heap, into the {@link CoordinatePool}, leaving the way with a handle to
+     them instead of an array. They are read from there in place, except by the methods that unpack a copy
+     from a compact way, which make one from the pool too. */
+    public void pool() {
+        if (pooled != 0) return;
+        pooled = POOL.store(coordinates());
+        coordinates = null;
+        packed = null;
+    }
+
+    /** Whether the coordinates are in the {@link CoordinatePool}, by {@link #pool} or by adding to the way. */
+    public boolean isPooled() {
+        return pooled != 0;
+    }
+
+    /** The handle of the coordinates in the {@link CoordinatePool}, or 0 if they aren't there. */
+    public long poolHandle() {
+        return pooled;
+    }
+
+    /** Writes the fields as usual, but with the coordinates of a pooled way copied out of the pool, so it is
+     read back as a way with an array of its own. */
+    @Serial
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("coordinates", pooled != 0 ? POOL.toArray(pooled) : coordinates);
+        fields.put("packed", packed);
+        fields.put("type", type);
+        out.writeFields();
+    }
+
+    /** The coordinates, x and y interleaved: the way's own array, or if it is compact or pooled, a copy. */
+    private float[] coordinates() {
+        if (packed != null) return PackedCoordinates.unpack(packed);
+        return pooled != 0 ? POOL.toArray(pooled) : coordinates;
+    }
+
+    /** Bytes taken up by the coordinates, in whichever form they are in, array header included. Those of a
+     pooled way are its region of the pool, off the heap, spare room included. */
+    public long coordinateBytes() {
+        if (pooled != 0) return POOL.regionBytes(pooled);
+        return 16 + (packed == null ? (long) coordinates.length * Float.BYTES : packed.length);
+    }
+
+    /** A way like this one, but with other coordinates. */
+    Way withCoordinates(float[] coordinates) {
+        return fromCoordinates(coordinates, type);
+    }
+
+    @Override
+    public WayType type() {
+        return type;
+    }
+
+    void setType(WayType type) {
+        this.type = type;
+    }
+
+    /** Copies the projected coordinates, x and y interleaved, into {@code dest} from {@code offset}.
+     There are {@code 2 * size()} of them. */
+    public void copyCoordinates(float[] dest, int offset) {
+        if (packed != null) PackedCoordinates.decode(packed, dest, offset);
+        else if (pooled != 0) POOL.copy(pooled, 0, POOL.size(pooled), dest, offset);
+        else System.arraycopy(coordinates, 0, dest, offset, coordinates.length);
+    }
+
+    /** Copies the projected coordinates of vertices {@code from} to {@code to}, exclusive, x and y interleaved,
+     into {@code dest} from {@code offset}. */
+    public void copyCoordinates(int from, int to, float[] dest, int offset) {
+        if (packed != null) PackedCoordinates.decode(packed, from, to, dest, offset);
+        else if (pooled != 0) POOL.copy(pooled, from, to, dest, offset);
+        else System.arraycopy(coordinates, from * 2, dest, offset, (to - from) * 2);
+    }
+
+    /** The projected x coordinate of vertex {@code i}, without making a {@link Node} of it, as {@link #get}
+     does. On a compact way, it is decoded from the nearest checkpoint, so to go through all of them, use
+     {@link #forEachSegment} or {@link #copyCoordinates} instead. */
+    public float x(int i) {
+        if (pooled != 0) return POOL.x(pooled, i);
+        return packed != null ? PackedCoordinates.x(packed, i) : coordinates[i * 2];
+    }
+
+    /** The projected y coordinate of vertex {@code i}; see {@link #x}. */
+    public float y(int i) {
+        if (pooled != 0) return POOL.y(pooled, i);
+        return packed != null ? PackedCoordinates.y(packed, i) : coordinates[i * 2 + 1];
+    }
+
+    /** The {@link Node#key} of vertex {@code i}, which is that of {@code get(i)}, without making the node. */
+    public long nodeKey(int i) {
+        if (packed != null) {
+            long vertex = PackedCoordinates.vertex(packed, i);
+            return Node.key(Point.toLat(PackedCoordinates.y(vertex)), Point.toLon(PackedCoordinates.x(vertex)));
+        }
+        if (pooled != 0) return Node.key(Point.toLat(POOL.y(pooled, i)), Point.toLon(POOL.x(pooled, i)));
+        return Node.key(Point.toLat(coordinates[i * 2 + 1]), Point.toLon(coordinates[i * 2]));
+    }
+
+    @Override
+    public void forEachSegment(SegmentVisitor visitor) {
+        if (packed != null) {
+            PackedCoordinates.forEachSegment(packed, visitor);
+            return;
+        }
+        if (pooled != 0) {
+            POOL.forEachSegment(pooled, visitor);
+            return;
+        }
+        for (int i = 2; i < coordinates.length; i += 2) {
+            visitor.visit(coordinates[i - 2], coordinates[i - 1], coordinates[i], coordinates[i + 1]);
+        }
     }
 
     @Override
     public int size() {
-        return coordinates.length / 2;
+        if (pooled != 0) return POOL.size(pooled);
+        return packed != null ? PackedCoordinates.size(packed) : coordinates.length / 2;
     }
 
     @Override
     public boolean isEmpty() {
-        return coordinates.length == 0;
+        return size() == 0;
     }
 
     @Override
@@ -56,6 +225,7 @@ public class Way extends AbstractList<Node> implements IDrawable, Serializable {
     }
 
     public boolean contains(Point p) {
+        float[] coordinates = coordinates();
         for (int i = 0; i < coordinates.length; i += 2) {
             if (p.x() == coordinates[i] && p.y() == coordinates[i + 1])
                 return true;
@@ -67,11 +237,17 @@ public class Way extends AbstractList<Node> implements IDrawable, Serializable {
     public Node get(int index) {
         if (index >= size())
             throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        if (packed != null) {
+            long vertex = PackedCoordinates.vertex(packed, index);
+            return Node.fromXY(PackedCoordinates.x(vertex), PackedCoordinates.y(vertex));
+        }
+        if (pooled != 0) return Node.fromXY(POOL.x(pooled, index), POOL.y(pooled, index));
         return Node.fromXY(coordinates[index * 2], coordinates[index * 2 + 1]);
     }
 
     @Override
     public Iterator<Node> iterator() {
+        float[] coordinates = coordinates();
         return new Iterator<Node>() {
             int nextIndex = 0;
 
@@ -89,70 +265,42 @@ public class Way extends AbstractList<Node> implements IDrawable, Serializable {
 
     @Override
     public Point[] toArray() {
-        Point[] points = new Point[size()];
-        for (int i = 0; i < coordinates.length; i += 2) {
-            points[i] = new Point(coordinates[i], coordinates[i + 1]);
-        }
-        return points;
+        return toArray((Point[]) null);
     }
 
     public Point[] toArray(Point[] points) {
-        if (points == null) {
-            points = new Point[size()];
-        }
-        if (points.length >= coordinates.length / 2) {
-            for (int i = 0; i < coordinates.length; i += 2) {
-                points[i] = new Point(coordinates[i], coordinates[i + 1]);
-            }
-        }
-        if (points.length > coordinates.length / 2) {
-            points[coordinates.length / 2] = null;
-        }
+        float[] coordinates = coordinates();
+        int n = coordinates.length / 2;
+        if (points == null || points.length < n) points = new Point[n];
+        for (int i = 0; i < n; i++) points[i] = new Point(coordinates[i * 2], coordinates[i * 2 + 1]);
+        if (points.length > n) points[n] = null;
         return points;
     }
 
     public Node[] toArray(Node[] nodes) {
-        if (nodes == null) {
-            nodes = new Node[size()];
-        }
-        if (nodes.length >= coordinates.length / 2) {
-            for (int i = 0; i < coordinates.length; i += 2) {
-                nodes[i] = Node.fromXY(coordinates[i], coordinates[i + 1]);
-            }
-        }
-        if (nodes.length > coordinates.length / 2) {
-            nodes[coordinates.length / 2] = null;
-        }
+        float[] coordinates = coordinates();
+        int n = coordinates.length / 2;
+        if (nodes == null || nodes.length < n) nodes = new Node[n];
+        for (int i = 0; i < n; i++) nodes[i] = Node.fromXY(coordinates[i * 2], coordinates[i * 2 + 1]);
+        if (nodes.length > n) nodes[n] = null;
         return nodes;
     }
 
+    /** The coordinates, x and y interleaved, boxed; {@link #copyCoordinates} does without the boxing. */
     public Float[] toArray(Float[] floats) {
-        if (floats == null) {
-            floats = new Float[size()];
-        }
-        if (floats.length >= coordinates.length) {
-            for (int i = 0; i < coordinates.length; i ++) {
-                floats[i] = coordinates[i];
-            }
-        }
-        if (floats.length > coordinates.length) {
-            floats[coordinates.length] = null;
-        }
+        float[] coordinates = coordinates();
+        if (floats == null || floats.length < coordinates.length) floats = new Float[coordinates.length];
+        for (int i = 0; i < coordinates.length; i++) floats[i] = coordinates[i];
+        if (floats.length > coordinates.length) floats[coordinates.length] = null;
         return floats;
     }
 
+    /** The coordinates, x and y interleaved, boxed; {@link #copyCoordinates} does without the boxing. */
     public Double[] toArray(Double[] doubles) {
-        if (doubles == null) {
-            doubles = new Double[size()];
-        }
-        if (doubles.length >= coordinates.length) {
-            for (int i = 0; i < coordinates.length; i ++) {
-                doubles[i] = (double) coordinates[i];
-            }
-        }
-        if (doubles.length > coordinates.length) {
-            doubles[coordinates.length] = null;
-        }
+        float[] coordinates = coordinates();
+        if (doubles == null || doubles.length < coordinates.length) doubles = new Double[coordinates.length];
+        for (int i = 0; i < coordinates.length; i++) doubles[i] = (double) coordinates[i];
+        if (doubles.length > coordinates.length) doubles[coordinates.length] = null;
         return doubles;
     }
 
@@ -168,28 +316,111 @@ public class Way extends AbstractList<Node> implements IDrawable, Serializable {
         };
     }
 
+    /** Adds a vertex to the end, in amortised constant time: the first one added moves the way to the
+     {@link CoordinatePool}, where there is room to grow, if it isn't there already. */
     public boolean addPoint(Point point) {
-        var coords = new float[coordinates.length + 2];
-        System.arraycopy(coordinates, 0, coords, 0, coordinates.length);
-        coords[coordinates.length] = point.x();
-        coords[coordinates.length + 1] = point.y();
-        coordinates = coords;
+        append(point.x(), point.y());
         return true;
     }
 
+    /** Adds a vertex to the end; see {@link #addPoint}. */
     @Override
     public boolean add(Node node) {
-        var coords = new float[coordinates.length + 2];
-        System.arraycopy(coordinates, 0, coords, 0, coordinates.length);
-        coords[coordinates.length] = Point.projectLon(node.lon());
-        coords[coordinates.length + 1] = Point.projectLat(node.lat());
-        coordinates = coords;
+        append(Point.projectLon(node.lon()), Point.projectLat(node.lat()));
         return true;
     }
 
+    private void append(float x, float y) {
+        pool();
+        pooled = POOL.append(pooled, x, y);
+    }
+
+    @Override
+    public Rectangle boundingBox() {
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        float[] coordinates = coordinates();
+        for (int i = 0; i < coordinates.length; i += 2) {
+            minX = Math.min(minX, coordinates[i]);
+            maxX = Math.max(maxX, coordinates[i]);
+            minY = Math.min(minY, coordinates[i + 1]);
+            maxY = Math.max(maxY, coordinates[i + 1]);
+        }
+        return new Rectangle(minX, minY, maxX, maxY);
+    }
+
+    @Override
+    public int vertexCount() {
+        return size();
+    }
+
+    /** Length of the way in metres, measured on the projection (see {@link Point}). */
+    public double length() {
+        if (packed != null) return PackedCoordinates.length(packed) * EdgeIndex.METRES_PER_UNIT;
+        if (pooled != 0) return POOL.length(pooled) * EdgeIndex.METRES_PER_UNIT;
+        double length = 0;
+        for (int i = 2; i < coordinates.length; i += 2) {
+            length += Math.hypot(coordinates[i] - coordinates[i - 2], coordinates[i + 1] - coordinates[i - 1]);
+        }
+        return length * EdgeIndex.METRES_PER_UNIT;
+    }
+
+    /** A copy simplified with {@link Simplify#douglasPeucker}, this way itself if no point could be left out,
+     or {@code null} if it is smaller than {@code tolerance} or is an area that would collapse. */
+    @Override
+    public Way simplified(float tolerance) {
+        float[] coordinates = coordinates();
+        if (Simplify.isBelow(coordinates, tolerance)) return null;
+        float[] kept = Simplify.douglasPeucker(coordinates, tolerance);
+        if (kept == coordinates) return this;
+        if (isClosed() && kept.length < 8) return null;
+        return withCoordinates(kept);
+    }
+
+    /** Whether the way ends where it starts, i.e. outlines an area such as a building. */
+    public boolean isClosed() {
+        if (packed != null) {
+            int n = PackedCoordinates.size(packed);
+            // Both ends of the same float have the same fixed-point value, so this holds as before.
+            return n >= 4 && PackedCoordinates.x(packed, 0) == PackedCoordinates.x(packed, n - 1)
+                    && PackedCoordinates.y(packed, 0) == PackedCoordinates.y(packed, n - 1);
+        }
+        if (pooled != 0) {
+            int n = POOL.size(pooled);
+            return n >= 4 && POOL.x(pooled, 0) == POOL.x(pooled, n - 1) && POOL.y(pooled, 0) == POOL.y(pooled, n - 1);
+        }
+        int last = coordinates.length - 2;
+        return last >= 6 && coordinates[0] == coordinates[last] && coordinates[1] == coordinates[last + 1];
+    }
+
+    /** Squared distance to the nearest point on the line, or 0 if the way is closed and the point is inside. */
+    @Override
+    public double distanceSquared(float x, float y) {
+        double best = Double.POSITIVE_INFINITY;
+        boolean inside = false;
+        float[] coordinates = coordinates();
+        for (int i = 2; i < coordinates.length; i += 2) {
+            float x1 = coordinates[i - 2], y1 = coordinates[i - 1];
+            float x2 = coordinates[i], y2 = coordinates[i + 1];
+            best = Math.min(best, Maths.segmentDistanceSquared(x, y, x1, y1, x2, y2));
+            if ((y1 > y) != (y2 > y) && x < x1 + (y - y1) * (x2 - x1) / (y2 - y1)) {
+                inside = !inside;
+            }
+        }
+        return inside && isClosed() ? 0 : best;
+    }
+
+    @Override
+    public void trace(PathBuilder path) {
+        if (packed != null) path.add(packed);
+        else if (pooled != 0) path.add(POOL, pooled);
+        else path.add(coordinates);
+    }
+
     @Override
     public void draw(GraphicsContext gc, Color colour) {
         gc.setStroke(colour);
+        float[] coordinates = coordinates();
         gc.moveTo(coordinates[0], coordinates[1]);
         for (int i = 2; i < coordinates.length; i += 2) {
             gc.lineTo(coordinates[i], coordinates[i + 1]);
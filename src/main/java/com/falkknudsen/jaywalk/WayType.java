@@ -0,0 +1,86 @@
+package com.falkknudsen.jaywalk;
+
+import javafx.scene.paint.Color;
+
+import java.util.Map;
+
+/** What kind of feature a way or relation is, as far as drawing it is concerned, decided from its tags.
+ Every type is drawn in its own style, so the renderer draws all features of one type as a single batch. */
+public enum WayType {
+    COASTLINE(LevelOfDetail.COUNTRY, "#5a7ea6", 1.5, false),
+    MOTORWAY(LevelOfDetail.COUNTRY, "#e8925a", 4, false),
+    TRUNK(LevelOfDetail.COUNTRY, "#f0a868", 3.5, false),
+    PRIMARY(LevelOfDetail.REGION, "#f7c77a", 3, false),
+    SECONDARY(LevelOfDetail.REGION, "#f7e08f", 2.5, false),
+    RAILWAY(LevelOfDetail.REGION, "#777777", 1.5, false),
+    WATER(LevelOfDetail.REGION, "#aad3df", 0, true),
+    RIVER(LevelOfDetail.REGION, "#aad3df", 3, false),
+    FOREST(LevelOfDetail.REGION, "#add19e", 0, true),
+    TERTIARY(LevelOfDetail.CITY, "#ffffff", 2.5, false),
+    LANDUSE(LevelOfDetail.CITY, "#e8e4dc", 0, true),
+    PARK(LevelOfDetail.CITY, "#c8facc", 0, true),
+    STREET(LevelOfDetail.FULL, "#ffffff", 1.5, false),
+    PATH(LevelOfDetail.FULL, "#fa8072", 1, false),
+    STREAM(LevelOfDetail.FULL, "#aad3df", 1, false),
+    BUILDING(LevelOfDetail.FULL, "#d9d0c9", 0, true),
+    OTHER(LevelOfDetail.FULL, "#bbbbbb", 1, false);
+
+    /** The coarsest level of detail the feature is shown at. */
+    public final LevelOfDetail coarsest;
+    /** Colour the feature is stroked or filled with. */
+    public final Color colour;
+    /** Width in pixels of the line drawn along the feature; 0 for areas. */
+    public final double width;
+    /** Whether the feature is drawn as a filled area rather than a line. Only closed ways are filled. */
+    public final boolean area;
+
+    WayType(LevelOfDetail coarsest, String colour, double width, boolean area) {
+        this.coarsest = coarsest;
+        this.colour = Color.web(colour);
+        this.width = width;
+        this.area = area;
+    }
+
+    /** Whether features of this type are shown at the given level of detail. */
+    public boolean isShownAt(LevelOfDetail level) {
+        return coarsest.ordinal() <= level.ordinal();
+    }
+
+    public static WayType of(Map<String, String> tags) {
+        String highway = tags.get("highway");
+        if (highway != null) {
+            return switch (highway) {
+                case "motorway", "motorway_link" -> MOTORWAY;
+                case "trunk", "trunk_link" -> TRUNK;
+                case "primary", "primary_link" -> PRIMARY;
+                case "secondary", "secondary_link" -> SECONDARY;
+                case "tertiary", "tertiary_link" -> TERTIARY;
+                case "footway", "path", "cycleway", "steps", "bridleway", "track", "pedestrian" -> PATH;
+                default -> STREET;
+            };
+        }
+        String natural = tags.get("natural");
+        if ("coastline".equals(natural)) return COASTLINE;
+        if ("water".equals(natural)) return WATER;
+        if ("wood".equals(natural)) return FOREST;
+        String waterway = tags.get("waterway");
+        if (waterway != null) {
+            return switch (waterway) {
+                case "river", "canal", "riverbank" -> RIVER;
+                default -> STREAM;
+            };
+        }
+        if (tags.containsKey("railway")) return RAILWAY;
+        String landuse = tags.get("landuse");
+        if (landuse != null) {
+            return switch (landuse) {
+                case "forest" -> FOREST;
+                case "reservoir", "basin" -> WATER;
+                default -> LANDUSE;
+            };
+        }
+        if (tags.containsKey("leisure")) return PARK;
+        if (tags.containsKey("building")) return BUILDING;
+        return OTHER;
+    }
+}
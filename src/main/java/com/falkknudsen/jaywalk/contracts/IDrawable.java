@@ -1,8 +1,55 @@
 package com.falkknudsen.jaywalk.contracts;
 
+import com.falkknudsen.jaywalk.Rectangle;
+import com.falkknudsen.jaywalk.WayType;
+import com.falkknudsen.jaywalk.render.PathBuilder;
+import com.falkknudsen.jaywalk.util.Maths;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
 
 public interface IDrawable {
+    /** Receives the line segments of an item from {@link #forEachSegment}, in projected map coordinates. */
+    @FunctionalInterface
+    interface SegmentVisitor {
+        void visit(float x1, float y1, float x2, float y2);
+    }
+
     void draw(GraphicsContext gc, Color colour);
+
+    /** The smallest axis-aligned rectangle (in projected map coordinates) that contains the item.
+     Computed on demand, so callers that need it repeatedly should keep the result. */
+    Rectangle boundingBox();
+
+    /** Squared distance in projected map units from the point (x, y) to the item itself.
+     By default the distance to the bounding box, which is only a lower bound for most items.
+     Must never be less than that, since nearest-neighbour searches rely on it. */
+    default double distanceSquared(float x, float y) {
+        Rectangle box = boundingBox();
+        return Maths.boxDistanceSquared(x, y, box.minLon(), box.minLat(), box.maxLon(), box.maxLat());
+    }
+
+    /** What kind of feature this is, which decides the levels of detail it is shown at. */
+    default WayType type() {
+        return WayType.OTHER;
+    }
+
+    /** Adds the geometry of the item to the path of its batch. Does nothing by default. */
+    default void trace(PathBuilder path) {
+    }
+
+    /** Passes every line segment of the item to {@code visitor}, in order, allocating nothing. Does nothing
+     by default. */
+    default void forEachSegment(SegmentVisitor visitor) {
+    }
+
+    /** Number of points drawn for the item. */
+    default int vertexCount() {
+        return 0;
+    }
+
+    /** A copy of the item with detail finer than {@code tolerance} (in projected map units) left out,
+     the item itself if there is nothing to leave out, or {@code null} if it is smaller than that altogether. */
+    default IDrawable simplified(float tolerance) {
+        return this;
+    }
 }
@@ -1,6 +1,15 @@
 package com.falkknudsen.jaywalk.contracts;
 
-public interface IDrawableContainer {
+/** Spatial index over the drawables that can be changed. Items are identified by an index, which is stable
+ until the next {@link #build}. */
+public interface IDrawableContainer extends IDrawableIndex {
+    /** Queues an item to be added by the next {@link #build}. */
     boolean add(IDrawable renderable);
-    long size();
+
+    /** Queues an item (the very object) to be removed by the next {@link #build}. */
+    void remove(IDrawable renderable);
+
+    /** Applies everything queued by {@link #add} and {@link #remove} at once. Until then, queries
+     don't see any of it. */
+    void build();
 }
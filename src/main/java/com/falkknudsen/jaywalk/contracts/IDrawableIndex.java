@@ -0,0 +1,56 @@
+package com.falkknudsen.jaywalk.contracts;
+
+import com.falkknudsen.jaywalk.Rectangle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/** Read-only spatial index over the drawables, which is all that drawing needs. Items are identified by an
+ index, which is stable for as long as the index doesn't change, so per-frame queries can pass plain ints
+ around instead of allocating. */
+public interface IDrawableIndex {
+    long size();
+
+    /** The item with the given index, as reported by a query. */
+    IDrawable get(int index);
+
+    /** Passes the index of every item whose bounding box intersects the given rectangle to {@code action}. */
+    void queryIndices(float minX, float minY, float maxX, float maxY, IntConsumer action);
+
+    /** Writes the index of every item whose bounding box intersects the given rectangle to {@code out},
+     as far as there is room.
+     @return The number of items found, which is more than {@code out.length} if some didn't fit. */
+    int query(float minX, float minY, float maxX, float maxY, int[] out);
+
+    /** Finds the {@code k} items nearest to the point (x, y), by their exact distance
+     ({@link IDrawable#distanceSquared}), within {@code maxDistance} projected map units.
+     @param out       Receives the item indices, nearest first. At most {@code out.length} are found.
+     @param distances Receives the distance to each found item, or {@code null} if not needed.
+     @return The number of items found. */
+    int nearest(float x, float y, int k, float maxDistance, int[] out, float[] distances);
+
+    /** The item nearest to the point (x, y), or {@code null} if there is none within {@code maxDistance}. */
+    default IDrawable nearest(float x, float y, float maxDistance) {
+        int[] out = new int[1];
+        return nearest(x, y, 1, maxDistance, out, null) == 0 ? null : get(out[0]);
+    }
+
+    /** Passes every item whose bounding box intersects the given rectangle to {@code action}. */
+    default void query(float minX, float minY, float maxX, float maxY, Consumer<? super IDrawable> action) {
+        queryIndices(minX, minY, maxX, maxY, index -> action.accept(get(index)));
+    }
+
+    /** The index as it is now, which doesn't change however the index changes, so the item indices its
+     queries report can be resolved with {@link #get} in later calls. An index that never changes is its own. */
+    default IDrawableIndex snapshot() {
+        return this;
+    }
+
+    default List<IDrawable> query(Rectangle area) {
+        List<IDrawable> result = new ArrayList<>();
+        query(area.minLon(), area.minLat(), area.maxLon(), area.maxLat(), result::add);
+        return result;
+    }
+}
@@ -0,0 +1,190 @@
+package com.falkknudsen.jaywalk.graph;
+
+import com.falkknudsen.jaywalk.structs.IntList;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/** The weakly and strongly connected components of a {@link RoadGraph}.<br>
+ Every node is tagged with the ID of both of its components, which makes it possible to reject
+ a route query in constant time before any search is started, rather than exploring the whole
+ reachable area of an island before failing.<br><br>
+
+ Weak components are found with a lock-free union-find over all edges in parallel.
+ Strong components can never span two weak components, so Tarjan's algorithm is then run
+ on each weak component in parallel. */
+public class ConnectedComponents implements Serializable {
+    /** Weak component ID of each node. */
+    private final int[] weak;
+    /** Strong component ID of each node. */
+    private final int[] strong;
+    /** Number of nodes in each weak/strong component. */
+    private final int[] weakSize, strongSize;
+
+    private ConnectedComponents(int[] weak, int[] weakSize, int[] strong, int[] strongSize) {
+        this.weak = weak;
+        this.weakSize = weakSize;
+        this.strong = strong;
+        this.strongSize = strongSize;
+    }
+
+    public static ConnectedComponents compute(RoadGraph graph) {
+        int n = graph.nodeCount();
+
+        // Weak components.
+        AtomicIntegerArray parent = new AtomicIntegerArray(n);
+        IntStream.range(0, n).parallel().forEach(i -> parent.set(i, i));
+        IntStream.range(0, graph.edgeCount()).parallel()
+                .forEach(e -> union(parent, graph.edgeFrom[e], graph.edgeTo[e]));
+        int[] roots = new int[n];
+        IntStream.range(0, n).parallel().forEach(i -> roots[i] = find(parent, i));
+
+        int[] weak = new int[n];
+        int[] rootToId = new int[n];
+        Arrays.fill(rootToId, -1);
+        IntList weakSize = new IntList();
+        for (int i = 0; i < n; i++) {
+            int root = roots[i];
+            if (rootToId[root] < 0) {
+                rootToId[root] = weakSize.size();
+                weakSize.add(0);
+            }
+            weak[i] = rootToId[root];
+            weakSize.set(weak[i], weakSize.get(weak[i]) + 1);
+        }
+
+        // Group the nodes by weak component, so each one can be handed to its own task.
+        int weakCount = weakSize.size();
+        int[] memberStart = new int[weakCount + 1];
+        for (int i = 0; i < n; i++) memberStart[weak[i] + 1]++;
+        for (int c = 0; c < weakCount; c++) memberStart[c + 1] += memberStart[c];
+        int[] members = new int[n];
+        int[] fill = memberStart.clone();
+        for (int i = 0; i < n; i++) members[fill[weak[i]]++] = i;
+
+        // Strong components. The per-node arrays are shared, since the tasks touch disjoint nodes.
+        int[] strong = new int[n];
+        int[] index = new int[n];
+        int[] low = new int[n];
+        int[] cursor = new int[n];
+        boolean[] onStack = new boolean[n];
+        Arrays.fill(index, -1);
+        AtomicInteger nextStrong = new AtomicInteger();
+        IntStream.range(0, weakCount).parallel().forEach(c ->
+                tarjan(graph, members, memberStart[c], memberStart[c + 1],
+                        strong, index, low, cursor, onStack, nextStrong));
+
+        int[] strongSize = new int[nextStrong.get()];
+        for (int i = 0; i < n; i++) strongSize[strong[i]]++;
+        return new ConnectedComponents(weak, weakSize.toArray(), strong, strongSize);
+    }
+
+    /** Lock-free find with path halving. */
+    private static int find(AtomicIntegerArray parent, int x) {
+        while (true) {
+            int p = parent.get(x);
+            if (p == x) return x;
+            int grandparent = parent.get(p);
+            if (p != grandparent) parent.compareAndSet(x, p, grandparent);
+            x = grandparent;
+        }
+    }
+
+    /** Lock-free union. The root with the larger ID is always linked below the smaller one,
+     which rules out cycles when two threads link the same pair of roots concurrently. */
+    private static void union(AtomicIntegerArray parent, int a, int b) {
+        while (true) {
+            a = find(parent, a);
+            b = find(parent, b);
+            if (a == b) return;
+            if (a < b) {
+                int temp = a;
+                a = b;
+                b = temp;
+            }
+            if (parent.compareAndSet(a, a, b)) return;
+        }
+    }
+
+    /** Iterative version of Tarjan's algorithm over the nodes {@code members[from..to)}. */
+    private static void tarjan(RoadGraph graph, int[] members, int from, int to,
+                               int[] strong, int[] index, int[] low, int[] cursor,
+                               boolean[] onStack, AtomicInteger nextStrong) {
+        IntList stack = new IntList();
+        IntList callStack = new IntList();
+        int counter = 0;
+        for (int m = from; m < to; m++) {
+            int root = members[m];
+            if (index[root] >= 0) continue;
+            index[root] = low[root] = counter++;
+            cursor[root] = graph.outStart[root];
+            stack.add(root);
+            onStack[root] = true;
+            callStack.add(root);
+
+            while (!callStack.isEmpty()) {
+                int node = callStack.peek();
+                if (cursor[node] < graph.outStart[node + 1]) {
+                    int next = graph.opposite(graph.outEdges[cursor[node]++], node);
+                    if (index[next] < 0) {
+                        index[next] = low[next] = counter++;
+                        cursor[next] = graph.outStart[next];
+                        stack.add(next);
+                        onStack[next] = true;
+                        callStack.add(next);
+                    } else if (onStack[next]) {
+                        low[node] = Math.min(low[node], index[next]);
+                    }
+                    continue;
+                }
+                callStack.pop();
+                if (!callStack.isEmpty()) {
+                    int caller = callStack.peek();
+                    low[caller] = Math.min(low[caller], low[node]);
+                }
+                if (low[node] == index[node]) {
+                    int id = nextStrong.getAndIncrement();
+                    int member;
+                    do {
+                        member = stack.pop();
+                        onStack[member] = false;
+                        strong[member] = id;
+                    } while (member != node);
+                }
+            }
+        }
+    }
+
+    public int weak(int node) { return weak[node]; }
+    public int strong(int node) { return strong[node]; }
+    public int weakSize(int component) { return weakSize[component]; }
+    public int strongSize(int component) { return strongSize[component]; }
+    public int weakCount() { return weakSize.length; }
+    public int strongCount() { return strongSize.length; }
+
+    public boolean sameWeak(int a, int b) {
+        return weak[a] == weak[b];
+    }
+
+    /** If true, {@code a} and {@code b} can each reach the other. */
+    public boolean sameStrong(int a, int b) {
+        return strong[a] == strong[b];
+    }
+
+    /** Marks the nodes whose strong component has at least {@code minSize} nodes. */
+    public boolean[] nodesInStrongComponentsOfSize(int minSize) {
+        boolean[] keep = new boolean[weak.length];
+        for (int i = 0; i < keep.length; i++) {
+            keep[i] = strongSize[strong[i]] >= minSize;
+        }
+        return keep;
+    }
+
+    @Override
+    public String toString() {
+        return weakCount() + " weakly and " + strongCount() + " strongly connected components";
+    }
+}
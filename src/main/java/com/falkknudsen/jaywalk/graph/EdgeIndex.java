@@ -0,0 +1,167 @@
+package com.falkknudsen.jaywalk.graph;
+
+import com.falkknudsen.jaywalk.HighWay;
+import com.falkknudsen.jaywalk.Node;
+import com.falkknudsen.jaywalk.Point;
+import com.falkknudsen.jaywalk.structs.FloatList;
+import com.falkknudsen.jaywalk.structs.IntList;
+
+import java.io.Serializable;
+import java.util.List;
+
+/** Uniform grid over every road segment of a {@link RoadGraph}, used to snap a coordinate
+ onto the road network.<br>
+ Segment endpoints are copied into flat arrays so that a lookup never has to go back to the
+ {@link HighWay}s. A segment is listed in every cell its bounding box overlaps. */
+public class EdgeIndex implements Serializable {
+    /** Approximate number of metres per unit of projected map coordinates. The projection in
+     {@link Point} scales longitude by 0.56, which is roughly cos(56°), so the map is close to
+     equidistant around Denmark. */
+    public static final double METRES_PER_UNIT = 111_320;
+
+    private final float[] x1, y1, x2, y2;
+    /** The edge each segment belongs to. */
+    private final int[] segmentEdge;
+    /** Distance in metres from the start of the edge to the start of the segment,
+     and the length of the segment, both scaled so that they add up to the length of the edge. */
+    private final float[] segmentOffset, segmentLength;
+
+    private final float minX, minY, cellSize;
+    private final int columns, rows;
+    private final int[] cellStart, cellSegments;
+
+    /** Builds the index for {@code graph}, whose edges refer to {@code roads}.
+     @param cellSize Side length of a grid cell, in metres. */
+    public EdgeIndex(RoadGraph graph, List<HighWay> roads, float cellSize) {
+        FloatList ax = new FloatList(), ay = new FloatList(), bx = new FloatList(), by = new FloatList();
+        FloatList offsets = new FloatList(), lengths = new FloatList();
+        IntList edges = new IntList();
+        FloatList scratch = new FloatList();
+        float[] coordinates = new float[256];
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            HighWay road = roads.get(graph.edgeRoad(e));
+            int first = graph.edgeFirstVertex(e);
+            int last = graph.edgeLastVertex(e);
+            int n = last - first + 1;
+            if (coordinates.length < n * 2) coordinates = new float[Math.max(n * 2, coordinates.length * 2)];
+            road.copyCoordinates(first, last + 1, coordinates, 0);
+            scratch.clear();
+            double total = 0;
+            for (int i = 1; i < n; i++) {
+                float px = coordinates[i * 2 - 2], py = coordinates[i * 2 - 1];
+                float cx = coordinates[i * 2], cy = coordinates[i * 2 + 1];
+                float length = (float) Math.hypot(cx - px, cy - py);
+                scratch.add(length);
+                total += length;
+                ax.add(px);
+                ay.add(py);
+                bx.add(cx);
+                by.add(cy);
+                edges.add(e);
+            }
+            // Rescale so that the projected lengths agree with the edge length used for routing.
+            float scale = total > 0 ? (float) (graph.edgeLength(e) / total) : 0;
+            float offset = 0;
+            for (int s = 0; s < scratch.size(); s++) {
+                float length = scratch.get(s) * scale;
+                offsets.add(offset);
+                lengths.add(length);
+                offset += length;
+            }
+        }
+        x1 = ax.toArray();
+        y1 = ay.toArray();
+        x2 = bx.toArray();
+        y2 = by.toArray();
+        segmentEdge = edges.toArray();
+        segmentOffset = offsets.toArray();
+        segmentLength = lengths.toArray();
+
+        float loX = Float.POSITIVE_INFINITY, loY = Float.POSITIVE_INFINITY;
+        float hiX = Float.NEGATIVE_INFINITY, hiY = Float.NEGATIVE_INFINITY;
+        for (int s = 0; s < x1.length; s++) {
+            loX = Math.min(loX, Math.min(x1[s], x2[s]));
+            loY = Math.min(loY, Math.min(y1[s], y2[s]));
+            hiX = Math.max(hiX, Math.max(x1[s], x2[s]));
+            hiY = Math.max(hiY, Math.max(y1[s], y2[s]));
+        }
+        if (x1.length == 0) {
+            loX = loY = hiX = hiY = 0;
+        }
+        this.minX = loX;
+        this.minY = loY;
+        this.cellSize = (float) (cellSize / METRES_PER_UNIT);
+        this.columns = Math.max(1, (int) ((hiX - loX) / this.cellSize) + 1);
+        this.rows = Math.max(1, (int) ((hiY - loY) / this.cellSize) + 1);
+
+        cellStart = new int[columns * rows + 1];
+        for (int s = 0; s < x1.length; s++) {
+            int c0 = column(Math.min(x1[s], x2[s])), c1 = column(Math.max(x1[s], x2[s]));
+            int r0 = row(Math.min(y1[s], y2[s])), r1 = row(Math.max(y1[s], y2[s]));
+            for (int r = r0; r <= r1; r++)
+                for (int c = c0; c <= c1; c++)
+                    cellStart[r * columns + c + 1]++;
+        }
+        for (int i = 0; i < columns * rows; i++) cellStart[i + 1] += cellStart[i];
+        cellSegments = new int[cellStart[columns * rows]];
+        int[] fill = cellStart.clone();
+        for (int s = 0; s < x1.length; s++) {
+            int c0 = column(Math.min(x1[s], x2[s])), c1 = column(Math.max(x1[s], x2[s]));
+            int r0 = row(Math.min(y1[s], y2[s])), r1 = row(Math.max(y1[s], y2[s]));
+            for (int r = r0; r <= r1; r++)
+                for (int c = c0; c <= c1; c++)
+                    cellSegments[fill[r * columns + c]++] = s;
+        }
+    }
+
+    private int column(float x) {
+        return Math.clamp((int) ((x - minX) / cellSize), 0, columns - 1);
+    }
+
+    private int row(float y) {
+        return Math.clamp((int) ((y - minY) / cellSize), 0, rows - 1);
+    }
+
+    /** Receives the segments found by {@link #near}. */
+    @FunctionalInterface
+    public interface SegmentVisitor {
+        /** @param edge     The edge the segment belongs to.
+         @param distance Distance in metres from the query point to the closest point on the segment.
+         @param offset   Distance in metres along the edge from its start to that closest point. */
+        void visit(int edge, float distance, float offset);
+    }
+
+    /** Visits every segment within {@code radius} metres of the projected coordinate ({@code x}, {@code y}).
+     A segment that spans several cells may be visited more than once. */
+    public void near(float x, float y, float radius, SegmentVisitor visitor) {
+        float r = (float) (radius / METRES_PER_UNIT);
+        int c0 = column(x - r), c1 = column(x + r);
+        int r0 = row(y - r), r1 = row(y + r);
+        for (int row = r0; row <= r1; row++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = row * columns + c;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    int s = cellSegments[i];
+                    float dx = x2[s] - x1[s], dy = y2[s] - y1[s];
+                    float lengthSquared = dx * dx + dy * dy;
+                    float t = lengthSquared == 0 ? 0
+                            : Math.clamp(((x - x1[s]) * dx + (y - y1[s]) * dy) / lengthSquared, 0f, 1f);
+                    float px = x1[s] + t * dx - x, py = y1[s] + t * dy - y;
+                    float distance = (float) (Math.sqrt(px * px + py * py) * METRES_PER_UNIT);
+                    if (distance <= radius) {
+                        visitor.visit(segmentEdge[s], distance, segmentOffset[s] + t * segmentLength[s]);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Convenience for {@link #near(float, float, float, SegmentVisitor)} with geographic coordinates. */
+    public void near(Node node, float radius, SegmentVisitor visitor) {
+        near(Point.projectLon(node.lon()), Point.projectLat(node.lat()), radius, visitor);
+    }
+
+    public int segmentCount() {
+        return x1.length;
+    }
+}
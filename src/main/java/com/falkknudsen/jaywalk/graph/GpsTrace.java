@@ -0,0 +1,13 @@
+package com.falkknudsen.jaywalk.graph;
+
+/** A sequence of GPS fixes, in degrees, in the order they were recorded. */
+public record GpsTrace(float[] lat, float[] lon) {
+    public GpsTrace {
+        if (lat.length != lon.length)
+            throw new IllegalArgumentException("lat and lon must have the same length");
+    }
+
+    public int size() {
+        return lat.length;
+    }
+}
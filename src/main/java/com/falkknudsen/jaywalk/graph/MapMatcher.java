@@ -0,0 +1,333 @@
+package com.falkknudsen.jaywalk.graph;
+
+import com.falkknudsen.jaywalk.Point;
+import com.falkknudsen.jaywalk.structs.IntList;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Matches GPS traces onto the road network with a hidden Markov model, as described by
+ Newson and Krumm (2009).<br><br>
+
+ The hidden states of each fix are the edges within {@link Parameters#searchRadius} of it, found
+ through an {@link EdgeIndex}. Emission log-probabilities fall off with the squared distance to
+ the edge, and transition log-probabilities with the difference between the straight-line distance
+ of two fixes and the length of the route between their candidates. The most likely sequence is
+ found with the Viterbi algorithm.<br><br>
+
+ Route lengths come from bounded {@link Router} searches. The trees of those searches are kept in
+ a per-thread LRU cache keyed by their start node, since consecutive fixes keep asking from the
+ same few nodes. Every thread that calls {@link #match} gets its own router and cache, so a single
+ {@linkplain MapMatcher} can be shared by a whole worker pool. */
+public class MapMatcher {
+    /** @param searchRadius     How far from a fix, in metres, to look for candidate edges.
+     @param sigma            Standard deviation of the GPS error, in metres.
+     @param beta             Scale of the transition distribution, in metres.
+     @param maxRouteDistance Bound on the route searches between candidates, in metres.
+     @param maxCandidates    Only the closest this many edges are considered per fix.
+     @param cacheSize        Number of search trees cached per thread. */
+    public record Parameters(float searchRadius, float sigma, float beta,
+                             float maxRouteDistance, int maxCandidates, int cacheSize) {}
+
+    public static final Parameters DEFAULT_PARAMETERS = new Parameters(50, 10, 20, 2000, 8, 4096);
+
+    private final RoadGraph graph;
+    private final EdgeIndex index;
+    private final Parameters parameters;
+    private final ThreadLocal<Worker> workers;
+
+    private final LongAdder pointsMatched = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+
+    public MapMatcher(RoadGraph graph, EdgeIndex index) {
+        this(graph, index, DEFAULT_PARAMETERS);
+    }
+
+    public MapMatcher(RoadGraph graph, EdgeIndex index, Parameters parameters) {
+        this.graph = graph;
+        this.index = index;
+        this.parameters = parameters;
+        this.workers = ThreadLocal.withInitial(Worker::new);
+    }
+
+    /** Matches a single trace on the calling thread.
+     @return The IDs of the traversed edges in order, including the ones that connect the matched
+     edges of consecutive fixes. Consecutive duplicates are removed. */
+    public int[] match(GpsTrace trace) {
+        int[] result = workers.get().match(trace);
+        pointsMatched.add(trace.size());
+        return result;
+    }
+
+    /** Matches every trace on a fixed pool of {@code threads} workers.
+     @return The result of {@link #match} for each trace, in the same order. */
+    public int[][] matchAll(List<GpsTrace> traces, int threads) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            return matchAll(traces, pool, threads);
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    /** Matches every trace using {@code tasks} tasks on the given pool. Each task pulls the next
+     unmatched trace until there are none left, so long and short traces balance out. */
+    public int[][] matchAll(List<GpsTrace> traces, ExecutorService pool, int tasks) throws InterruptedException {
+        int[][] results = new int[traces.size()][];
+        AtomicInteger next = new AtomicInteger();
+        Future<?>[] futures = new Future<?>[tasks];
+        for (int t = 0; t < tasks; t++) {
+            futures[t] = pool.submit(() -> {
+                int i;
+                while ((i = next.getAndIncrement()) < results.length) {
+                    results[i] = match(traces.get(i));
+                }
+            });
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Map matching failed.", e.getCause());
+            }
+        }
+        return results;
+    }
+
+    public long pointsMatched() { return pointsMatched.sum(); }
+    public long cacheHits() { return cacheHits.sum(); }
+    public long cacheMisses() { return cacheMisses.sum(); }
+
+    /** The per-thread state: search scratch space, the tree cache, and the Viterbi trellis. */
+    private class Worker {
+        private final Router router = new Router(graph);
+        private final Map<Integer, ShortestPathTree> cache =
+                new LinkedHashMap<>(parameters.cacheSize(), 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<Integer, ShortestPathTree> eldest) {
+                        return size() > parameters.cacheSize();
+                    }
+                };
+
+        // The trellis, flattened. Candidates of layer l are [layerStart[l], layerStart[l + 1]).
+        private int[] edge = new int[256];
+        private float[] offset = new float[256];
+        private float[] distance = new float[256];
+        private float[] score = new float[256];
+        private int[] back = new int[256];
+        private int count = 0;
+        private final IntList layerStart = new IntList();
+        /** The fix each layer belongs to. */
+        private final IntList layerPoint = new IntList();
+
+        // Set by routeDistance, so the path of the chosen transition can be recovered.
+        private int bestExit, bestEntry;
+
+        int[] match(GpsTrace trace) {
+            count = 0;
+            layerStart.clear();
+            layerPoint.clear();
+            float[] xs = new float[trace.size()];
+            float[] ys = new float[trace.size()];
+            for (int p = 0; p < trace.size(); p++) {
+                xs[p] = Point.projectLon(trace.lon()[p]);
+                ys[p] = Point.projectLat(trace.lat()[p]);
+            }
+
+            for (int p = 0; p < trace.size(); p++) {
+                int start = count;
+                collectCandidates(xs[p], ys[p], start);
+                if (count == start) continue; // no road nearby; skip the fix.
+
+                int previous = layerStart.size() - 1;
+                layerStart.add(start);
+                layerPoint.add(p);
+                boolean connected = false;
+                for (int j = start; j < count; j++) {
+                    float emission = -0.5f * sq(distance[j] / parameters.sigma());
+                    score[j] = Float.NEGATIVE_INFINITY;
+                    back[j] = -1;
+                    if (previous >= 0) {
+                        int q = layerPoint.get(previous);
+                        float straight = (float) (Math.hypot(xs[p] - xs[q], ys[p] - ys[q]) * EdgeIndex.METRES_PER_UNIT);
+                        for (int i = layerStart.get(previous); i < start; i++) {
+                            if (score[i] == Float.NEGATIVE_INFINITY) continue;
+                            float route = routeDistance(i, j);
+                            if (route == Float.POSITIVE_INFINITY) continue;
+                            float candidate = score[i] - Math.abs(straight - route) / parameters.beta() + emission;
+                            if (candidate > score[j]) {
+                                score[j] = candidate;
+                                back[j] = i;
+                            }
+                        }
+                    }
+                    connected |= back[j] >= 0;
+                }
+                if (!connected) { // first fix, or the chain broke: start over from the emissions alone.
+                    for (int j = start; j < count; j++) {
+                        score[j] = -0.5f * sq(distance[j] / parameters.sigma());
+                    }
+                }
+            }
+            return backtrack();
+        }
+
+        /** Appends the closest edges to the projected point as candidates, one per edge. */
+        private void collectCandidates(float x, float y, int start) {
+            index.near(x, y, parameters.searchRadius(), (e, d, o) -> {
+                for (int c = start; c < count; c++) {
+                    if (edge[c] == e) {
+                        if (d < distance[c]) {
+                            distance[c] = d;
+                            offset[c] = o;
+                        }
+                        return;
+                    }
+                }
+                ensureCapacity(count + 1);
+                edge[count] = e;
+                distance[count] = d;
+                offset[count] = o;
+                count++;
+            });
+            // Keep only the closest candidates. Insertion sort, since there are only a handful.
+            for (int i = start + 1; i < count; i++) {
+                for (int j = i; j > start && distance[j] < distance[j - 1]; j--) {
+                    swap(j, j - 1);
+                }
+            }
+            count = Math.min(count, start + parameters.maxCandidates());
+        }
+
+        private int[] backtrack() {
+            IntList matched = new IntList();
+            int layer = layerStart.size() - 1;
+            int c = layer >= 0 ? best(layer) : -1;
+            IntList chosen = new IntList();
+            while (layer >= 0) {
+                chosen.add(c);
+                int previous = back[c];
+                layer--;
+                c = previous >= 0 ? previous : (layer >= 0 ? best(layer) : -1);
+            }
+            for (int k = chosen.size() - 1; k >= 0; k--) {
+                int current = chosen.get(k);
+                if (k < chosen.size() - 1) {
+                    int before = chosen.get(k + 1);
+                    if (back[current] == before && routeDistance(before, current) < Float.POSITIVE_INFINITY) {
+                        appendPath(matched, before, current);
+                    }
+                }
+                appendEdge(matched, edge[current]);
+            }
+            return matched.toArray();
+        }
+
+        private int best(int layer) {
+            int end = layer + 1 < layerStart.size() ? layerStart.get(layer + 1) : count;
+            int best = layerStart.get(layer);
+            for (int c = best + 1; c < end; c++) {
+                if (score[c] > score[best]) best = c;
+            }
+            return best;
+        }
+
+        /** Appends the edges between candidates {@code a} and {@code b}, as chosen by the last
+         call to {@link #routeDistance}. */
+        private void appendPath(IntList matched, int a, int b) {
+            appendEdge(matched, edge[a]);
+            if (bestExit < 0) return; // stayed on the same edge.
+            ShortestPathTree tree = tree(bestExit);
+            IntList path = new IntList();
+            int node = bestEntry;
+            while (node != bestExit) {
+                int e = tree.parentEdge(node);
+                path.add(e);
+                node = graph.opposite(e, node);
+            }
+            for (int i = path.size() - 1; i >= 0; i--) {
+                appendEdge(matched, path.get(i));
+            }
+        }
+
+        private void appendEdge(IntList matched, int e) {
+            if (matched.isEmpty() || matched.peek() != e) matched.add(e);
+        }
+
+        /** Length in metres of the shortest route from candidate {@code a} to candidate {@code b}. */
+        private float routeDistance(int a, int b) {
+            int ea = edge[a], eb = edge[b];
+            float oa = offset[a], ob = offset[b];
+            float best = Float.POSITIVE_INFINITY;
+            bestExit = bestEntry = -1;
+            if (ea == eb) {
+                if (graph.isForward(ea) && ob >= oa) best = ob - oa;
+                if (graph.isBackward(ea) && ob <= oa) best = Math.min(best, oa - ob);
+            }
+            for (int exit = 0; exit < 2; exit++) {
+                boolean forward = exit == 0;
+                if (forward ? !graph.isForward(ea) : !graph.isBackward(ea)) continue;
+                int exitNode = forward ? graph.edgeTo(ea) : graph.edgeFrom(ea);
+                float exitCost = forward ? graph.edgeLength(ea) - oa : oa;
+                if (exitCost >= best) continue;
+                ShortestPathTree tree = tree(exitNode);
+                for (int entry = 0; entry < 2; entry++) {
+                    boolean entryForward = entry == 0;
+                    if (entryForward ? !graph.isForward(eb) : !graph.isBackward(eb)) continue;
+                    int entryNode = entryForward ? graph.edgeFrom(eb) : graph.edgeTo(eb);
+                    float entryCost = entryForward ? ob : graph.edgeLength(eb) - ob;
+                    float total = exitCost + tree.distance(entryNode) + entryCost;
+                    if (total < best) {
+                        best = total;
+                        bestExit = exitNode;
+                        bestEntry = entryNode;
+                    }
+                }
+            }
+            return best;
+        }
+
+        private ShortestPathTree tree(int node) {
+            ShortestPathTree tree = cache.get(node);
+            if (tree == null) {
+                cacheMisses.increment();
+                tree = router.search(node, parameters.maxRouteDistance());
+                cache.put(node, tree);
+            } else {
+                cacheHits.increment();
+            }
+            return tree;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity <= edge.length) return;
+            int size = Math.max(capacity, edge.length * 2);
+            edge = Arrays.copyOf(edge, size);
+            offset = Arrays.copyOf(offset, size);
+            distance = Arrays.copyOf(distance, size);
+            score = Arrays.copyOf(score, size);
+            back = Arrays.copyOf(back, size);
+        }
+
+        private void swap(int i, int j) {
+            int e = edge[i]; edge[i] = edge[j]; edge[j] = e;
+            float o = offset[i]; offset[i] = offset[j]; offset[j] = o;
+            float d = distance[i]; distance[i] = distance[j]; distance[j] = d;
+        }
+    }
+
+    private static float sq(float f) {
+        return f * f;
+    }
+}
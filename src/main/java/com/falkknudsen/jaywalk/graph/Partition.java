@@ -0,0 +1,166 @@
+package com.falkknudsen.jaywalk.graph;
+
+import com.falkknudsen.jaywalk.structs.FloatList;
+import com.falkknudsen.jaywalk.structs.IntList;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+import static com.falkknudsen.jaywalk.util.BinaryIO.writeFloats;
+import static com.falkknudsen.jaywalk.util.BinaryIO.writeInts;
+
+/** Assignment of every node of a {@link RoadGraph} to a cell, as made by {@link Partitioner}.<br>
+ A node is a <em>boundary</em> node if it has an arc to or from another cell. Routes between cells
+ can only pass through boundary nodes, which is what lets {@link ShardedRouter} answer them from a
+ small overlay graph. */
+public class Partition {
+    static final int CELL_MAGIC = 0x4A57_4345;    // "JWCE"
+    static final int OVERLAY_MAGIC = 0x4A57_4F56; // "JWOV"
+
+    private final RoadGraph graph;
+    private final int[] cellOf;
+    private final int cellCount;
+    private final boolean[] boundary;
+
+    Partition(RoadGraph graph, int[] cellOf, int cellCount) {
+        this.graph = graph;
+        this.cellOf = cellOf;
+        this.cellCount = cellCount;
+        this.boundary = new boolean[graph.nodeCount()];
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            if (cellOf[graph.edgeFrom(e)] != cellOf[graph.edgeTo(e)]) {
+                boundary[graph.edgeFrom(e)] = true;
+                boundary[graph.edgeTo(e)] = true;
+            }
+        }
+    }
+
+    public int cellCount() {
+        return cellCount;
+    }
+
+    public int cell(int node) {
+        return cellOf[node];
+    }
+
+    public boolean isBoundary(int node) {
+        return boundary[node];
+    }
+
+    public int boundaryCount() {
+        int count = 0;
+        for (boolean b : boundary) if (b) count++;
+        return count;
+    }
+
+    /** Writes one file per cell with the subgraph of that cell, plus an overlay file with the cell
+     of every node, the boundary nodes of every cell, and the arcs between cells. The cell files
+     are written in parallel.<br>
+     This is all {@link ShardServer} and {@link ShardedRouter} need, so neither has to load the whole graph. */
+    public void writeShards(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        // The nodes and the edges within cells are grouped by cell once, so each cell is written from its own.
+        int[] nodeStart = new int[cellCount + 1], edgeStart = new int[cellCount + 1];
+        int[] nodes = byCell(graph.nodeCount(), node -> cellOf[node], nodeStart);
+        int[] edges = byCell(graph.edgeCount(), e -> {
+            int cell = cellOf[graph.edgeFrom(e)];
+            return cell == cellOf[graph.edgeTo(e)] ? cell : -1;
+        }, edgeStart);
+        // Nodes are numbered within their cell in their original order, as the grouping keeps it.
+        int[] localIds = new int[graph.nodeCount()];
+        for (int cell = 0; cell < cellCount; cell++) {
+            for (int i = nodeStart[cell]; i < nodeStart[cell + 1]; i++) localIds[nodes[i]] = i - nodeStart[cell];
+        }
+        try {
+            IntStream.range(0, cellCount).parallel().forEach(cell -> {
+                try {
+                    writeCell(cell, Arrays.copyOfRange(nodes, nodeStart[cell], nodeStart[cell + 1]),
+                            Arrays.copyOfRange(edges, edgeStart[cell], edgeStart[cell + 1]), localIds,
+                            directory.resolve(cellFileName(cell)));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writeOverlay(nodes, nodeStart, directory.resolve("overlay.bin"));
+    }
+
+    /** Groups the {@code count} items, nodes or edges, by the cell {@code cell} gives them, with a counting
+     sort: the items of cell 0 in order, then those of cell 1, and so on, leaving out those it gives -1.
+     {@code start} is filled with where each cell's items begin, and the last entry with where they end. */
+    private int[] byCell(int count, IntUnaryOperator cell, int[] start) {
+        Arrays.fill(start, 0);
+        for (int i = 0; i < count; i++) {
+            int c = cell.applyAsInt(i);
+            if (c >= 0) start[c + 1]++;
+        }
+        for (int c = 0; c < cellCount; c++) start[c + 1] += start[c];
+        int[] grouped = new int[start[cellCount]];
+        int[] fill = Arrays.copyOf(start, cellCount);
+        for (int i = 0; i < count; i++) {
+            int c = cell.applyAsInt(i);
+            if (c >= 0) grouped[fill[c]++] = i;
+        }
+        return grouped;
+    }
+
+    static String cellFileName(int cell) {
+        return "cell-" + cell + ".bin";
+    }
+
+    /** Writes the cell with the given nodes, which are also its global ids, in the order of their local ones. */
+    private void writeCell(int cell, int[] globalIds, int[] edges, int[] localIds, Path file) throws IOException {
+        RoadGraph subgraph = graph.subgraph(globalIds, edges, localIds);
+        IntList boundaryLocal = new IntList();
+        for (int i = 0; i < globalIds.length; i++) {
+            if (boundary[globalIds[i]]) boundaryLocal.add(i);
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(CELL_MAGIC);
+            out.writeInt(cell);
+            writeInts(out, globalIds);
+            writeInts(out, boundaryLocal.toArray());
+            subgraph.write(out);
+        }
+    }
+
+    private void writeOverlay(int[] nodes, int[] nodeStart, Path file) throws IOException {
+        IntList from = new IntList(), to = new IntList();
+        FloatList length = new FloatList();
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            int a = graph.edgeFrom(e), b = graph.edgeTo(e);
+            if (cellOf[a] == cellOf[b]) continue;
+            if (graph.isForward(e)) { from.add(a); to.add(b); length.add(graph.edgeLength(e)); }
+            if (graph.isBackward(e)) { from.add(b); to.add(a); length.add(graph.edgeLength(e)); }
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(OVERLAY_MAGIC);
+            out.writeInt(cellCount);
+            writeInts(out, cellOf);
+            for (int cell = 0; cell < cellCount; cell++) {
+                IntList cellBoundary = new IntList();
+                for (int i = nodeStart[cell]; i < nodeStart[cell + 1]; i++) {
+                    if (boundary[nodes[i]]) cellBoundary.add(nodes[i]);
+                }
+                writeInts(out, cellBoundary.toArray());
+            }
+            writeInts(out, from.toArray());
+            writeInts(out, to.toArray());
+            writeFloats(out, length.toArray());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Partition: " + cellCount + " cells, " + boundaryCount() + " boundary nodes";
+    }
+}
@@ -0,0 +1,103 @@
+package com.falkknudsen.jaywalk.graph;
+
+import com.falkknudsen.jaywalk.util.Maths;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Splits a {@link RoadGraph} into balanced cells by recursive inertial bisection.<br><br>
+
+ Each step sorts the nodes of a cell along a few directions (east, north-east, north, and
+ north-west), splits each ordering at the median, and keeps the split that cuts the fewest arcs.
+ Splitting at the median keeps the halves balanced, and trying several directions lets the cut
+ follow rivers, railways, and other natural separators where the road network is thin.
+ The two halves are then split further in parallel until no cell has more than the maximum
+ number of nodes. */
+public class Partitioner {
+    private static final float[][] DIRECTIONS = {
+            {1, 0}, {0.7071f, 0.7071f}, {0, 1}, {-0.7071f, 0.7071f}
+    };
+
+    public static Partition partition(RoadGraph graph, int maxCellSize) {
+        int n = graph.nodeCount();
+        int[] nodes = new int[n];
+        Arrays.setAll(nodes, i -> i);
+        int[] cellOf = new int[n];
+        Bisection root = new Bisection(graph, nodes, new int[n], cellOf,
+                new AtomicInteger(1), new AtomicInteger(), Math.max(1, maxCellSize));
+        ForkJoinPool.commonPool().invoke(root);
+        return new Partition(graph, cellOf, root.cells.get());
+    }
+
+    private static class Bisection extends RecursiveAction {
+        private final RoadGraph graph;
+        private final int[] nodes;
+        /** Scratch labels used to test which side of a candidate split a node is on.
+         Every split uses fresh labels, so parallel tasks never mistake each other's nodes for their own. */
+        private final int[] label;
+        private final int[] cellOf;
+        private final AtomicInteger labels, cells;
+        private final int maxCellSize;
+
+        Bisection(RoadGraph graph, int[] nodes, int[] label, int[] cellOf,
+                  AtomicInteger labels, AtomicInteger cells, int maxCellSize) {
+            this.graph = graph;
+            this.nodes = nodes;
+            this.label = label;
+            this.cellOf = cellOf;
+            this.labels = labels;
+            this.cells = cells;
+            this.maxCellSize = maxCellSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (nodes.length <= maxCellSize) {
+                int cell = cells.getAndIncrement();
+                for (int node : nodes) cellOf[node] = cell;
+                return;
+            }
+            int half = nodes.length / 2;
+            long[] keys = new long[nodes.length];
+            int[] best = null;
+            long bestCut = Long.MAX_VALUE;
+            for (float[] direction : DIRECTIONS) {
+                for (int i = 0; i < nodes.length; i++) {
+                    int node = nodes[i];
+                    float projection = graph.nodeX[node] * direction[0] - graph.nodeY[node] * direction[1];
+                    keys[i] = Maths.sortKey(projection, node);
+                }
+                Arrays.sort(keys);
+                int left = labels.getAndIncrement();
+                int right = labels.getAndIncrement();
+                for (int i = 0; i < keys.length; i++) {
+                    label[Maths.sortKeyIndex(keys[i])] = i < half ? left : right;
+                }
+                long cut = 0;
+                for (int i = 0; i < half; i++) {
+                    int node = Maths.sortKeyIndex(keys[i]);
+                    cut += crossing(node, graph.outStart, graph.outEdges, right)
+                            + crossing(node, graph.inStart, graph.inEdges, right);
+                }
+                if (cut < bestCut) {
+                    bestCut = cut;
+                    best = new int[nodes.length];
+                    for (int i = 0; i < keys.length; i++) best[i] = Maths.sortKeyIndex(keys[i]);
+                }
+            }
+            invokeAll(new Bisection(graph, Arrays.copyOfRange(best, 0, half), label, cellOf, labels, cells, maxCellSize),
+                      new Bisection(graph, Arrays.copyOfRange(best, half, best.length), label, cellOf, labels, cells, maxCellSize));
+        }
+
+        /** Counts the arcs of {@code node} that lead to a node labelled {@code other}. */
+        private int crossing(int node, int[] start, int[] edges, int other) {
+            int count = 0;
+            for (int i = start[node]; i < start[node + 1]; i++) {
+                if (label[graph.opposite(edges[i], node)] == other) count++;
+            }
+            return count;
+        }
+    }
+}
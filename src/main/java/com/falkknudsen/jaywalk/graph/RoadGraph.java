@@ -0,0 +1,301 @@
+package com.falkknudsen.jaywalk.graph;
+
+import com.falkknudsen.jaywalk.HighWay;
+import com.falkknudsen.jaywalk.Node;
+import com.falkknudsen.jaywalk.Point;
+import com.falkknudsen.jaywalk.structs.FloatList;
+import com.falkknudsen.jaywalk.structs.IntList;
+import com.falkknudsen.jaywalk.structs.LongIntMap;
+import com.falkknudsen.jaywalk.util.Maths;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+import static com.falkknudsen.jaywalk.util.BinaryIO.*;
+
+/** Directed road graph in compressed sparse row form, built from the
+ {@link HighWay}s and the graph IDs assigned while parsing.<br>
+ Every stretch of road between two graph nodes becomes one edge. An edge is stored once,
+ with its direction, and is referenced from the out-lists and in-lists of its endpoints
+ depending on which way it can be travelled. */
+public class RoadGraph implements Serializable {
+    private final int nodeCount;
+    /** Projected coordinates of every graph node. */
+    final float[] nodeX, nodeY;
+
+    final int[] edgeFrom, edgeTo;
+    /** Index into the road list the graph was built from. */
+    final int[] edgeRoad;
+    /** Index of the first and last vertex of the edge within its road. */
+    final int[] edgeFirstVertex, edgeLastVertex;
+    /** Length in metres. */
+    final float[] edgeLength;
+    /** Same meaning as {@link HighWay#direction()}, but relative to {@code edgeFrom -> edgeTo}. */
+    final byte[] edgeDirection;
+
+    /** CSR offsets and edge IDs of the edges that can be travelled away from each node. */
+    final int[] outStart, outEdges;
+    /** CSR offsets and edge IDs of the edges that can be travelled towards each node. */
+    final int[] inStart, inEdges;
+
+    private ConnectedComponents components;
+
+    RoadGraph(float[] nodeX, float[] nodeY,
+              int[] edgeFrom, int[] edgeTo, int[] edgeRoad,
+              int[] edgeFirstVertex, int[] edgeLastVertex,
+              float[] edgeLength, byte[] edgeDirection) {
+        this.nodeCount = nodeX.length;
+        this.nodeX = nodeX;
+        this.nodeY = nodeY;
+        this.edgeFrom = edgeFrom;
+        this.edgeTo = edgeTo;
+        this.edgeRoad = edgeRoad;
+        this.edgeFirstVertex = edgeFirstVertex;
+        this.edgeLastVertex = edgeLastVertex;
+        this.edgeLength = edgeLength;
+        this.edgeDirection = edgeDirection;
+
+        int edgeCount = edgeFrom.length;
+        outStart = new int[nodeCount + 1];
+        inStart = new int[nodeCount + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            if (edgeDirection[e] >= 0) { outStart[edgeFrom[e] + 1]++; inStart[edgeTo[e] + 1]++; }
+            if (edgeDirection[e] <= 0) { outStart[edgeTo[e] + 1]++; inStart[edgeFrom[e] + 1]++; }
+        }
+        for (int n = 0; n < nodeCount; n++) {
+            outStart[n + 1] += outStart[n];
+            inStart[n + 1] += inStart[n];
+        }
+        outEdges = new int[outStart[nodeCount]];
+        inEdges = new int[inStart[nodeCount]];
+        int[] outFill = outStart.clone();
+        int[] inFill = inStart.clone();
+        for (int e = 0; e < edgeCount; e++) {
+            if (edgeDirection[e] >= 0) {
+                outEdges[outFill[edgeFrom[e]]++] = e;
+                inEdges[inFill[edgeTo[e]]++] = e;
+            }
+            if (edgeDirection[e] <= 0) {
+                outEdges[outFill[edgeTo[e]]++] = e;
+                inEdges[inFill[edgeFrom[e]]++] = e;
+            }
+        }
+    }
+
+    /** Builds the graph from the roads and the graph IDs of their "important" nodes,
+     as collected in {@link com.falkknudsen.osmunda.LayeredMapData}. Each road is split
+     into one edge per stretch between two nodes that have a graph ID. The roads are read a vertex at a time
+     from a copy of their coordinates, and the IDs looked up by {@link Node#key}, so no node is made. */
+    public static RoadGraph build(List<HighWay> roads, Map<Node, Integer> graphIDs) {
+        int nodeCount = graphIDs.size();
+        float[] nodeX = new float[nodeCount];
+        float[] nodeY = new float[nodeCount];
+        LongIntMap ids = new LongIntMap(nodeCount);
+        for (Map.Entry<Node, Integer> entry : graphIDs.entrySet()) {
+            Node n = entry.getKey();
+            nodeX[entry.getValue()] = Point.projectLon(n.lon());
+            nodeY[entry.getValue()] = Point.projectLat(n.lat());
+            ids.put(n.key(), entry.getValue());
+        }
+
+        IntList from = new IntList(roads.size() * 2);
+        IntList to = new IntList(roads.size() * 2);
+        IntList road = new IntList(roads.size() * 2);
+        IntList first = new IntList(roads.size() * 2);
+        IntList last = new IntList(roads.size() * 2);
+        FloatList length = new FloatList(roads.size() * 2);
+        IntList direction = new IntList(roads.size() * 2);
+
+        float[] coordinates = new float[256];
+        for (int r = 0; r < roads.size(); r++) {
+            HighWay way = roads.get(r);
+            int n = way.size();
+            if (coordinates.length < n * 2) coordinates = new float[Math.max(n * 2, coordinates.length * 2)];
+            way.copyCoordinates(coordinates, 0);
+            // The latitude and longitude as a node of the road would have them, so the keys match.
+            float previousLat = Point.toLat(coordinates[1]), previousLon = Point.toLon(coordinates[0]);
+            int start = ids.get(Node.key(previousLat, previousLon), -1);
+            int startVertex = 0;
+            double metres = 0;
+            for (int i = 1; i < n; i++) {
+                float lat = Point.toLat(coordinates[i * 2 + 1]), lon = Point.toLon(coordinates[i * 2]);
+                metres += Maths.distanceFCC(previousLat, previousLon, lat, lon);
+                previousLat = lat;
+                previousLon = lon;
+                int id = ids.get(Node.key(lat, lon), -1);
+                if (id < 0) continue;
+                if (start >= 0 && start != id) { // loops are useless for routing
+                    from.add(start);
+                    to.add(id);
+                    road.add(r);
+                    first.add(startVertex);
+                    last.add(i);
+                    length.add((float) metres);
+                    direction.add(way.direction());
+                }
+                start = id;
+                startVertex = i;
+                metres = 0;
+            }
+        }
+
+        int[] dir = direction.toArray();
+        byte[] edgeDirection = new byte[dir.length];
+        for (int e = 0; e < dir.length; e++) {
+            edgeDirection[e] = (byte) dir[e];
+        }
+        return new RoadGraph(nodeX, nodeY, from.toArray(), to.toArray(), road.toArray(),
+                first.toArray(), last.toArray(), length.toArray(), edgeDirection);
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public int edgeCount() {
+        return edgeFrom.length;
+    }
+
+    public float nodeX(int node) { return nodeX[node]; }
+    public float nodeY(int node) { return nodeY[node]; }
+
+    public int edgeFrom(int edge) { return edgeFrom[edge]; }
+    public int edgeTo(int edge) { return edgeTo[edge]; }
+    public int edgeRoad(int edge) { return edgeRoad[edge]; }
+    public int edgeFirstVertex(int edge) { return edgeFirstVertex[edge]; }
+    public int edgeLastVertex(int edge) { return edgeLastVertex[edge]; }
+    public float edgeLength(int edge) { return edgeLength[edge]; }
+
+    /** Whether the edge can be travelled from {@code edgeFrom} to {@code edgeTo}. */
+    public boolean isForward(int edge) { return edgeDirection[edge] >= 0; }
+    /** Whether the edge can be travelled from {@code edgeTo} to {@code edgeFrom}. */
+    public boolean isBackward(int edge) { return edgeDirection[edge] <= 0; }
+
+    /** The endpoint of {@code edge} that is not {@code node}. */
+    public int opposite(int edge, int node) {
+        return edgeFrom[edge] == node ? edgeTo[edge] : edgeFrom[edge];
+    }
+
+    /** Lazily computes the strongly and weakly connected components of the graph. */
+    public ConnectedComponents components() {
+        if (components == null) {
+            components = ConnectedComponents.compute(this);
+        }
+        return components;
+    }
+
+    /** Constant-time rejection test: {@code false} means there is definitely no route
+     from {@code source} to {@code target}. {@code true} means there may be one, and is
+     certain if the two are in the same strongly connected component. */
+    public boolean mayReach(int source, int target) {
+        return components().sameWeak(source, target);
+    }
+
+    /** Returns a copy of the graph which only contains the nodes for which {@code keep} is true,
+     and the edges between them. Nodes are renumbered in their original order,
+     and {@code newIds} (if not null) is filled with the new ID of each old node, or {@code -1}.
+     Edges keep their road index, so the caller is responsible for {@link #remapRoads}. */
+    public RoadGraph subgraph(boolean[] keep, int[] newIds) {
+        if (newIds == null) newIds = new int[nodeCount];
+        int kept = 0;
+        for (int n = 0; n < nodeCount; n++) {
+            newIds[n] = keep[n] ? kept++ : -1;
+        }
+        float[] x = new float[kept];
+        float[] y = new float[kept];
+        for (int n = 0; n < nodeCount; n++) {
+            if (newIds[n] >= 0) {
+                x[newIds[n]] = nodeX[n];
+                y[newIds[n]] = nodeY[n];
+            }
+        }
+        int edges = 0;
+        for (int e = 0; e < edgeCount(); e++) {
+            if (keep[edgeFrom[e]] && keep[edgeTo[e]]) edges++;
+        }
+        int[] from = new int[edges], to = new int[edges], road = new int[edges],
+                first = new int[edges], last = new int[edges];
+        float[] length = new float[edges];
+        byte[] direction = new byte[edges];
+        int i = 0;
+        for (int e = 0; e < edgeCount(); e++) {
+            if (!(keep[edgeFrom[e]] && keep[edgeTo[e]])) continue;
+            from[i] = newIds[edgeFrom[e]];
+            to[i] = newIds[edgeTo[e]];
+            road[i] = edgeRoad[e];
+            first[i] = edgeFirstVertex[e];
+            last[i] = edgeLastVertex[e];
+            length[i] = edgeLength[e];
+            direction[i] = edgeDirection[e];
+            i++;
+        }
+        return new RoadGraph(x, y, from, to, road, first, last, length, direction);
+    }
+
+    /** Returns a copy of the graph with only the given nodes, numbered in the order given, and the given
+     edges, which must run between them. {@code newIds} holds the new ID of every given node.
+     Unlike {@link #subgraph(boolean[], int[])}, this costs only the number of nodes and edges kept. */
+    RoadGraph subgraph(int[] nodes, int[] edges, int[] newIds) {
+        float[] x = new float[nodes.length];
+        float[] y = new float[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            x[i] = nodeX[nodes[i]];
+            y[i] = nodeY[nodes[i]];
+        }
+        int n = edges.length;
+        int[] from = new int[n], to = new int[n], road = new int[n], first = new int[n], last = new int[n];
+        float[] length = new float[n];
+        byte[] direction = new byte[n];
+        for (int i = 0; i < n; i++) {
+            int e = edges[i];
+            from[i] = newIds[edgeFrom[e]];
+            to[i] = newIds[edgeTo[e]];
+            road[i] = edgeRoad[e];
+            first[i] = edgeFirstVertex[e];
+            last[i] = edgeLastVertex[e];
+            length[i] = edgeLength[e];
+            direction[i] = edgeDirection[e];
+        }
+        return new RoadGraph(x, y, from, to, road, first, last, length, direction);
+    }
+
+    /** Rewrites the road index of every edge through {@code newRoadIds}, for when the road list
+     the graph was built from has been filtered. */
+    public void remapRoads(int[] newRoadIds) {
+        for (int e = 0; e < edgeRoad.length; e++) {
+            edgeRoad[e] = newRoadIds[edgeRoad[e]];
+        }
+    }
+
+    private static final int MAGIC = 0x4A57_5247; // "JWRG"
+
+    /** Writes the graph in a flat binary layout, readable with {@link #read}. */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        writeFloats(out, nodeX);
+        writeFloats(out, nodeY);
+        writeInts(out, edgeFrom);
+        writeInts(out, edgeTo);
+        writeInts(out, edgeRoad);
+        writeInts(out, edgeFirstVertex);
+        writeInts(out, edgeLastVertex);
+        writeFloats(out, edgeLength);
+        writeBytes(out, edgeDirection);
+    }
+
+    public static RoadGraph read(DataInputStream in) throws IOException {
+        expectMagic(in, MAGIC, "road graph");
+        return new RoadGraph(readFloats(in), readFloats(in),
+                readInts(in), readInts(in), readInts(in), readInts(in), readInts(in),
+                readFloats(in), readBytes(in));
+    }
+
+    @Override
+    public String toString() {
+        return "RoadGraph: " + nodeCount + " nodes, " + edgeCount() + " edges";
+    }
+}
@@ -0,0 +1,88 @@
+package com.falkknudsen.jaywalk.graph;
+
+import com.falkknudsen.jaywalk.structs.IntList;
+import com.falkknudsen.jaywalk.structs.MinHeap;
+
+import java.util.Arrays;
+
+/** Dijkstra searches over a {@link RoadGraph}.<br>
+ The per-node scratch arrays are allocated once and reset lazily with a generation stamp,
+ so a search only costs time proportional to the part of the graph it visits.
+ Not thread-safe; give each thread its own {@linkplain Router}. */
+public class Router {
+    private final RoadGraph graph;
+    private final float[] dist;
+    private final int[] parentEdge;
+    private final int[] stamp;
+    private int generation = 0;
+    private final MinHeap heap = new MinHeap(1024);
+    private final IntList settled = new IntList(1024);
+
+    public Router(RoadGraph graph) {
+        this.graph = graph;
+        this.dist = new float[graph.nodeCount()];
+        this.parentEdge = new int[graph.nodeCount()];
+        this.stamp = new int[graph.nodeCount()];
+    }
+
+    public RoadGraph graph() {
+        return graph;
+    }
+
+    /** Runs a search from {@code source} along the direction of travel, settling every node
+     within {@code maxDistance} metres. */
+    public ShortestPathTree search(int source, float maxDistance) {
+        return search(source, maxDistance, false);
+    }
+
+    /** Runs a search from {@code source}, settling every node within {@code maxDistance} metres.
+     If {@code backward}, edges are followed against the direction of travel, so the distances are
+     those <em>to</em> {@code source} rather than from it. */
+    public ShortestPathTree search(int source, float maxDistance, boolean backward) {
+        run(source, maxDistance, backward, -1);
+        return new ShortestPathTree(source, maxDistance, settled.toArray(), dist, parentEdge, settled.size());
+    }
+
+    /** Length in metres of the shortest route from {@code source} to {@code target},
+     or {@link Float#POSITIVE_INFINITY} if there is none. Stops as soon as {@code target} is settled. */
+    public float distance(int source, int target) {
+        if (!graph.mayReach(source, target)) return Float.POSITIVE_INFINITY;
+        run(source, Float.POSITIVE_INFINITY, false, target);
+        return stamp[target] == generation ? dist[target] : Float.POSITIVE_INFINITY;
+    }
+
+    private void run(int source, float maxDistance, boolean backward, int target) {
+        if (++generation == 0) { // wrapped around; stale stamps could now look current.
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+        heap.clear();
+        settled.clear();
+        int[] start = backward ? graph.inStart : graph.outStart;
+        int[] edges = backward ? graph.inEdges : graph.outEdges;
+
+        stamp[source] = generation;
+        dist[source] = 0;
+        parentEdge[source] = -1;
+        heap.add(source, 0);
+        while (!heap.isEmpty()) {
+            float d = heap.peekKey();
+            int node = heap.poll();
+            if (d > dist[node]) continue; // stale entry
+            settled.add(node);
+            if (node == target) return;
+            for (int i = start[node]; i < start[node + 1]; i++) {
+                int edge = edges[i];
+                int next = graph.opposite(edge, node);
+                float nd = d + graph.edgeLength[edge];
+                if (nd > maxDistance) continue;
+                if (stamp[next] != generation || nd < dist[next]) {
+                    stamp[next] = generation;
+                    dist[next] = nd;
+                    parentEdge[next] = edge;
+                    heap.add(next, nd);
+                }
+            }
+        }
+    }
+}
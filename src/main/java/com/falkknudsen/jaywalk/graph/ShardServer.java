@@ -0,0 +1,147 @@
+package com.falkknudsen.jaywalk.graph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import static com.falkknudsen.jaywalk.util.BinaryIO.expectMagic;
+import static com.falkknudsen.jaywalk.util.BinaryIO.readInts;
+
+/** Serves route searches within a single cell of a {@link Partition}, in a process of its own.<br>
+ Listens on a Unix domain socket, and answers each connection on its own virtual thread.
+ The process exits when it is told to, or when the process that started it exits.<br>
+ Usage: {@code ShardServer <cell file> <socket path>} */
+public class ShardServer {
+    static final byte OP_SHUTDOWN = 0;
+    /** {@code int source} -> distances from the source to every boundary node of the cell. */
+    static final byte OP_FROM = 1;
+    /** {@code int target} -> distances from every boundary node of the cell to the target. */
+    static final byte OP_TO = 2;
+    /** {@code int source, int target} -> distance within the cell. */
+    static final byte OP_DISTANCE = 3;
+    /** -> row-major matrix of the distances within the cell between all boundary nodes. */
+    static final byte OP_CLIQUE = 4;
+
+    private final int cell;
+    /** Global ID of every local node, in ascending order. */
+    private final int[] globalIds;
+    /** Local IDs of the boundary nodes, in the same order as in the overlay file. */
+    private final int[] boundary;
+    private final RoadGraph graph;
+    private final ThreadLocal<Router> routers;
+
+    private ShardServer(int cell, int[] globalIds, int[] boundary, RoadGraph graph) {
+        this.cell = cell;
+        this.globalIds = globalIds;
+        this.boundary = boundary;
+        this.graph = graph;
+        this.routers = ThreadLocal.withInitial(() -> new Router(graph));
+    }
+
+    public static ShardServer load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            expectMagic(in, Partition.CELL_MAGIC, "cell");
+            int cell = in.readInt();
+            int[] globalIds = readInts(in);
+            int[] boundary = readInts(in);
+            return new ShardServer(cell, globalIds, boundary, RoadGraph.read(in));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: ShardServer <cell file> <socket path>");
+            System.exit(2);
+        }
+        ShardServer server = load(Path.of(args[0]));
+        ProcessHandle.current().parent().ifPresent(parent ->
+                parent.onExit().thenRun(() -> System.exit(0)));
+        server.serve(Path.of(args[1]));
+    }
+
+    /** Accepts connections on the socket until the process is shut down. */
+    public void serve(Path socket) throws IOException {
+        Files.deleteIfExists(socket);
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            while (true) {
+                SocketChannel channel = server.accept();
+                Thread.ofVirtual().name("cell-" + cell).start(() -> handle(channel));
+            }
+        } finally {
+            Files.deleteIfExists(socket);
+        }
+    }
+
+    private void handle(SocketChannel channel) {
+        try (channel;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            while (true) {
+                byte op = in.readByte();
+                switch (op) {
+                case OP_SHUTDOWN:
+                    System.exit(0);
+                    break;
+                case OP_FROM:
+                    writeDistances(out, routers.get().search(local(in.readInt()), Float.POSITIVE_INFINITY, false));
+                    break;
+                case OP_TO:
+                    writeDistances(out, routers.get().search(local(in.readInt()), Float.POSITIVE_INFINITY, true));
+                    break;
+                case OP_DISTANCE:
+                    int source = local(in.readInt());
+                    int target = local(in.readInt());
+                    out.writeFloat(routers.get().distance(source, target));
+                    break;
+                case OP_CLIQUE:
+                    float[] matrix = clique();
+                    out.writeInt(boundary.length);
+                    for (float d : matrix) out.writeFloat(d);
+                    break;
+                default:
+                    throw new IOException("Unknown operation " + op + ".");
+                }
+                out.flush();
+            }
+        } catch (EOFException e) {
+            // The router closed the connection.
+        } catch (IOException e) {
+            System.err.println("Cell " + cell + ": " + e.getMessage());
+        }
+    }
+
+    private int local(int globalId) throws IOException {
+        int local = Arrays.binarySearch(globalIds, globalId);
+        if (local < 0) throw new IOException("Node " + globalId + " is not in cell " + cell + ".");
+        return local;
+    }
+
+    private void writeDistances(DataOutputStream out, ShortestPathTree tree) throws IOException {
+        out.writeInt(boundary.length);
+        for (int b : boundary) out.writeFloat(tree.distance(b));
+    }
+
+    /** The distances within the cell between all pairs of boundary nodes, one search per row. */
+    private float[] clique() {
+        int k = boundary.length;
+        float[] matrix = new float[k * k];
+        IntStream.range(0, k).parallel().forEach(i -> {
+            ShortestPathTree tree = routers.get().search(boundary[i], Float.POSITIVE_INFINITY, false);
+            for (int j = 0; j < k; j++) matrix[i * k + j] = tree.distance(boundary[j]);
+        });
+        return matrix;
+    }
+}
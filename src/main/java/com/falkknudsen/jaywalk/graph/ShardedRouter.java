@@ -0,0 +1,341 @@
+package com.falkknudsen.jaywalk.graph;
+
+import com.falkknudsen.jaywalk.structs.FloatList;
+import com.falkknudsen.jaywalk.structs.IntList;
+import com.falkknudsen.jaywalk.structs.MinHeap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.falkknudsen.jaywalk.util.BinaryIO.expectMagic;
+import static com.falkknudsen.jaywalk.util.BinaryIO.readFloats;
+import static com.falkknudsen.jaywalk.util.BinaryIO.readInts;
+import static com.falkknudsen.jaywalk.util.Log.log;
+
+/** Answers route queries over a graph whose cells each live in a separate {@link ShardServer} process,
+ as written by {@link Partition#writeShards}. Only the overlay is held in this process: the boundary
+ nodes of every cell, connected by the precomputed distances between them within their cell and by
+ the original arcs between cells.<br><br>
+
+ A query asks the cell of the source for its distances to the cell's boundary, and the cell of the
+ target for the distances from its boundary (both at once), and joins them with a search over the
+ overlay. If both ends are in the same cell, the distance within the cell is considered as well.
+ Queries are serialised, since there is a single connection per cell. */
+public class ShardedRouter implements AutoCloseable {
+    private final int[] cellOf;
+    /** Global IDs of the boundary nodes of each cell. */
+    private final int[][] boundary;
+    /** Overlay ID of each global node, or -1 if it is not a boundary node. */
+    private final int[] overlayId;
+    /** Cell of each overlay node, and its position within the boundary list of that cell. */
+    private final int[] overlayCell, boundaryIndex;
+    private final int[] arcStart, arcTo;
+    private final float[] arcLength;
+
+    private final Process[] processes;
+    private final Connection[] connections;
+    private final Path socketDirectory;
+
+    // Search scratch space.
+    private final float[] dist;
+    private final int[] stamp;
+    private int generation = 0;
+    private final MinHeap heap = new MinHeap();
+
+    private ShardedRouter(int[] cellOf, int[][] boundary, int[] cutFrom, int[] cutTo, float[] cutLength,
+                          Process[] processes, Connection[] connections, Path socketDirectory) throws IOException {
+        this.cellOf = cellOf;
+        this.boundary = boundary;
+        this.processes = processes;
+        this.connections = connections;
+        this.socketDirectory = socketDirectory;
+
+        overlayId = new int[cellOf.length];
+        Arrays.fill(overlayId, -1);
+        int count = 0;
+        for (int[] nodes : boundary) count += nodes.length;
+        overlayCell = new int[count];
+        boundaryIndex = new int[count];
+        int next = 0;
+        for (int cell = 0; cell < boundary.length; cell++) {
+            for (int i = 0; i < boundary[cell].length; i++) {
+                overlayId[boundary[cell][i]] = next;
+                overlayCell[next] = cell;
+                boundaryIndex[next++] = i;
+            }
+        }
+
+        // Collect the arcs: the clique of every cell, as computed by its shard, and the cut arcs.
+        // All shards are asked first, so that they compute their cliques in parallel.
+        for (Connection connection : connections) connection.requestClique();
+        IntList from = new IntList(), to = new IntList();
+        FloatList length = new FloatList();
+        for (int cell = 0; cell < boundary.length; cell++) {
+            float[] clique = connections[cell].receiveClique();
+            int k = boundary[cell].length;
+            for (int i = 0; i < k; i++) {
+                for (int j = 0; j < k; j++) {
+                    float d = clique[i * k + j];
+                    if (i == j || d == Float.POSITIVE_INFINITY) continue;
+                    from.add(overlayId[boundary[cell][i]]);
+                    to.add(overlayId[boundary[cell][j]]);
+                    length.add(d);
+                }
+            }
+        }
+        for (int a = 0; a < cutFrom.length; a++) {
+            from.add(overlayId[cutFrom[a]]);
+            to.add(overlayId[cutTo[a]]);
+            length.add(cutLength[a]);
+        }
+        arcStart = new int[count + 1];
+        for (int a = 0; a < from.size(); a++) arcStart[from.get(a) + 1]++;
+        for (int n = 0; n < count; n++) arcStart[n + 1] += arcStart[n];
+        arcTo = new int[from.size()];
+        arcLength = new float[from.size()];
+        int[] fill = arcStart.clone();
+        for (int a = 0; a < from.size(); a++) {
+            int slot = fill[from.get(a)]++;
+            arcTo[slot] = to.get(a);
+            arcLength[slot] = length.get(a);
+        }
+        dist = new float[count];
+        stamp = new int[count];
+        log("Overlay: " + count + " boundary nodes, " + arcTo.length + " arcs, " + boundary.length + " cells.");
+    }
+
+    /** Starts one {@link ShardServer} process per cell in {@code directory} and connects to them. */
+    public static ShardedRouter launch(Path directory) throws IOException {
+        int[] cellOf;
+        int[][] boundary;
+        int[] cutFrom, cutTo;
+        float[] cutLength;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(directory.resolve("overlay.bin"))))) {
+            expectMagic(in, Partition.OVERLAY_MAGIC, "overlay");
+            int cells = in.readInt();
+            cellOf = readInts(in);
+            boundary = new int[cells][];
+            for (int cell = 0; cell < cells; cell++) boundary[cell] = readInts(in);
+            cutFrom = readInts(in);
+            cutTo = readInts(in);
+            cutLength = readFloats(in);
+        }
+
+        // Socket paths are limited to about a hundred characters, so keep them short.
+        Path sockets = Files.createTempDirectory("jaywalk");
+        Process[] processes = new Process[boundary.length];
+        Connection[] connections = new Connection[boundary.length];
+        try {
+            for (int cell = 0; cell < boundary.length; cell++) {
+                List<String> command = javaCommand(ShardServer.class.getName());
+                command.add(directory.resolve(Partition.cellFileName(cell)).toAbsolutePath().toString());
+                command.add(sockets.resolve(cell + ".sock").toString());
+                processes[cell] = new ProcessBuilder(command)
+                        .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .start();
+            }
+            for (int cell = 0; cell < boundary.length; cell++) {
+                connections[cell] = Connection.open(sockets.resolve(cell + ".sock"), processes[cell]);
+            }
+            return new ShardedRouter(cellOf, boundary, cutFrom, cutTo, cutLength,
+                    processes, connections, sockets);
+        } catch (IOException | RuntimeException e) {
+            for (Process process : processes) {
+                if (process != null) process.destroy();
+            }
+            throw e;
+        }
+    }
+
+    /** The command that starts {@code mainClass} in a new JVM with the same class or module path
+     as this one. */
+    private static List<String> javaCommand(String mainClass) {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        String modulePath = System.getProperty("jdk.module.path");
+        if (modulePath != null && ShardedRouter.class.getModule().isNamed()) {
+            command.add("-p");
+            command.add(modulePath);
+            command.add("-m");
+            command.add(ShardedRouter.class.getModule().getName() + "/" + mainClass);
+        } else {
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(mainClass);
+        }
+        return command;
+    }
+
+    public int cellCount() {
+        return boundary.length;
+    }
+
+    /** Length in metres of the shortest route between two nodes of the original graph,
+     or {@link Float#POSITIVE_INFINITY} if there is none. */
+    public synchronized float distance(int source, int target) throws IOException {
+        int sourceCell = cellOf[source], targetCell = cellOf[target];
+        Connection sourceShard = connections[sourceCell], targetShard = connections[targetCell];
+
+        // Send the requests to both shards before waiting for either, so they work in parallel.
+        sourceShard.send(ShardServer.OP_FROM, source);
+        if (targetShard != sourceShard) targetShard.send(ShardServer.OP_TO, target);
+        float[] fromSource = sourceShard.receiveDistances();
+        if (targetShard == sourceShard) sourceShard.send(ShardServer.OP_TO, target);
+        float[] toTarget = targetShard.receiveDistances();
+
+        float best = Float.POSITIVE_INFINITY;
+        if (sourceCell == targetCell) {
+            best = sourceShard.distance(source, target);
+        }
+
+        if (++generation == 0) {
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+        heap.clear();
+        int[] sourceBoundary = boundary[sourceCell];
+        for (int i = 0; i < sourceBoundary.length; i++) {
+            if (fromSource[i] == Float.POSITIVE_INFINITY) continue;
+            int node = overlayId[sourceBoundary[i]];
+            stamp[node] = generation;
+            dist[node] = fromSource[i];
+            heap.add(node, fromSource[i]);
+        }
+        while (!heap.isEmpty() && heap.peekKey() < best) {
+            float d = heap.peekKey();
+            int node = heap.poll();
+            if (d > dist[node]) continue;
+            if (overlayCell[node] == targetCell) {
+                best = Math.min(best, d + toTarget[boundaryIndex[node]]);
+            }
+            for (int a = arcStart[node]; a < arcStart[node + 1]; a++) {
+                int next = arcTo[a];
+                float nd = d + arcLength[a];
+                if (stamp[next] != generation || nd < dist[next]) {
+                    stamp[next] = generation;
+                    dist[next] = nd;
+                    heap.add(next, nd);
+                }
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Connection connection : connections) {
+            try {
+                connection.shutdown();
+            } catch (IOException ignored) {
+                // It is going away either way.
+            }
+        }
+        for (Process process : processes) {
+            try {
+                if (!process.waitFor(2, TimeUnit.SECONDS)) process.destroy();
+            } catch (InterruptedException e) {
+                process.destroy();
+                Thread.currentThread().interrupt();
+            }
+        }
+        try (var files = Files.list(socketDirectory)) {
+            for (Path file : files.toList()) Files.deleteIfExists(file);
+        }
+        Files.deleteIfExists(socketDirectory);
+    }
+
+    /** A connection to one shard process. */
+    private static class Connection {
+        private final SocketChannel channel;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+            this.in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+        }
+
+        /** Connects to the socket once the process has bound it, giving up if the process dies
+         or takes more than 30 seconds. */
+        static Connection open(Path socket, Process process) throws IOException {
+            long deadline = System.currentTimeMillis() + 30_000;
+            while (true) {
+                if (Files.exists(socket)) {
+                    try {
+                        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+                        channel.connect(UnixDomainSocketAddress.of(socket));
+                        return new Connection(channel);
+                    } catch (IOException e) {
+                        // Bound but not yet listening; try again.
+                    }
+                }
+                if (!process.isAlive()) {
+                    throw new IOException("Shard process for " + socket + " exited with " + process.exitValue() + ".");
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IOException("Timed out waiting for shard process on " + socket + ".");
+                }
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for shard process.", e);
+                }
+            }
+        }
+
+        void send(byte op, int node) throws IOException {
+            out.writeByte(op);
+            out.writeInt(node);
+            out.flush();
+        }
+
+        float[] receiveDistances() throws IOException {
+            float[] distances = new float[in.readInt()];
+            for (int i = 0; i < distances.length; i++) distances[i] = in.readFloat();
+            return distances;
+        }
+
+        float distance(int source, int target) throws IOException {
+            out.writeByte(ShardServer.OP_DISTANCE);
+            out.writeInt(source);
+            out.writeInt(target);
+            out.flush();
+            return in.readFloat();
+        }
+
+        void requestClique() throws IOException {
+            out.writeByte(ShardServer.OP_CLIQUE);
+            out.flush();
+        }
+
+        float[] receiveClique() throws IOException {
+            int k = in.readInt();
+            float[] matrix = new float[k * k];
+            for (int i = 0; i < matrix.length; i++) matrix[i] = in.readFloat();
+            return matrix;
+        }
+
+        void shutdown() throws IOException {
+            out.writeByte(ShardServer.OP_SHUTDOWN);
+            out.flush();
+            channel.close();
+        }
+    }
+}
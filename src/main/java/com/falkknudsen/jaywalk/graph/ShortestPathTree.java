@@ -0,0 +1,79 @@
+package com.falkknudsen.jaywalk.graph;
+
+import java.util.Arrays;
+
+/** The nodes settled by one bounded search from (or towards) a single node, with their distances
+ and the edge each was reached through.<br>
+ Stored sparsely in an open-addressing table, since a bounded search only touches a tiny part of
+ the graph, and the trees are meant to be cached. Immutable, so it is safe to share. */
+public class ShortestPathTree {
+    private static final int EMPTY = -1;
+
+    private final int source;
+    private final float bound;
+    private final int[] keys;
+    private final float[] distances;
+    private final int[] parentEdges;
+    private final int mask;
+    private final int size;
+
+    ShortestPathTree(int source, float bound, int[] nodes, float[] dist, int[] parentEdge, int count) {
+        this.source = source;
+        this.bound = bound;
+        this.size = count;
+        int capacity = Integer.highestOneBit(Math.max(count, 1) * 2 - 1) << 1;
+        this.mask = capacity - 1;
+        this.keys = new int[capacity];
+        this.distances = new float[capacity];
+        this.parentEdges = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < count; i++) {
+            int node = nodes[i];
+            int slot = slot(node);
+            while (keys[slot] != EMPTY) slot = (slot + 1) & mask;
+            keys[slot] = node;
+            distances[slot] = dist[node];
+            parentEdges[slot] = parentEdge[node];
+        }
+    }
+
+    private int slot(int node) {
+        return (node * 0x9E3779B9) >>> 1 & mask;
+    }
+
+    private int find(int node) {
+        int slot = slot(node);
+        while (true) {
+            int key = keys[slot];
+            if (key == node) return slot;
+            if (key == EMPTY) return -1;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public int source() {
+        return source;
+    }
+
+    /** The distance the search was bounded by. Nodes farther away than this are not in the tree. */
+    public float bound() {
+        return bound;
+    }
+
+    /** Number of settled nodes. */
+    public int size() {
+        return size;
+    }
+
+    /** Distance in metres to {@code node}, or {@link Float#POSITIVE_INFINITY} if it was not reached. */
+    public float distance(int node) {
+        int slot = find(node);
+        return slot < 0 ? Float.POSITIVE_INFINITY : distances[slot];
+    }
+
+    /** The edge {@code node} was reached through, or {@code -1} for the source and unreached nodes. */
+    public int parentEdge(int node) {
+        int slot = find(node);
+        return slot < 0 ? -1 : parentEdges[slot];
+    }
+}
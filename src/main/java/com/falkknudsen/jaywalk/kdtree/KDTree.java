@@ -0,0 +1,292 @@
+package com.falkknudsen.jaywalk.kdtree;
+
+import com.falkknudsen.jaywalk.Point;
+import com.falkknudsen.jaywalk.graph.EdgeIndex;
+import com.falkknudsen.jaywalk.structs.IntList;
+
+import java.util.stream.IntStream;
+
+/** Static 2-d tree over points, for finding the ones nearest to a coordinate and the ones within a radius
+ of it. Built once, in bulk, and never changed.<br><br>
+
+ The tree is packed into three arrays, the projected coordinates and the id of each point, with no node
+ objects: the points are reordered so that every range of the arrays is a subtree, split at its middle
+ point, with the points on one side of it before it and those on the other after it, splitting on x and y
+ in turn. Ranges of up to {@value #LEAF_SIZE} points are not split, but scanned.<br>
+ Points are projected like {@link Point}, which is close enough to equidistant around Denmark that the
+ distances, in metres, are within a fraction of a percent.<br>
+ Queries go through a {@link Search}, which holds the scratch space for them, so they allocate nothing.
+ The tree itself can be shared by any number of threads, but each needs a search of its own. */
+public final class KDTree {
+    static final int LEAF_SIZE = 16;
+    private static final int BATCH_CHUNK = 4096;
+
+    private final float[] xs, ys;
+    private final int[] ids;
+    private final int depth;
+
+    /** Receives the points found by {@link Search#within}. */
+    @FunctionalInterface
+    public interface PointVisitor {
+        /** @param id       The id of the point.
+         @param distance Distance in metres from the query point. */
+        void visit(int id, float distance);
+    }
+
+    private KDTree(float[] xs, float[] ys, int[] ids) {
+        this.xs = xs;
+        this.ys = ys;
+        this.ids = ids;
+        int levels = 0;
+        for (int n = ids.length; n > LEAF_SIZE; n /= 2) levels++;
+        depth = levels;
+        split();
+    }
+
+    /** Builds a tree over the points, the id of each being its index in the arrays. */
+    public static KDTree build(float[] lats, float[] lons) {
+        int n = lats.length;
+        float[] xs = new float[n], ys = new float[n];
+        int[] ids = new int[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = Point.projectLon(lons[i]);
+            ys[i] = Point.projectLat(lats[i]);
+            ids[i] = i;
+        }
+        return new KDTree(xs, ys, ids);
+    }
+
+    /** Reorders the points into the tree, a range at a time, by selecting the median of each. */
+    private void split() {
+        IntList ranges = new IntList();
+        ranges.add(0);
+        ranges.add(ids.length);
+        ranges.add(0);
+        while (!ranges.isEmpty()) {
+            int axis = ranges.pop(), to = ranges.pop(), from = ranges.pop();
+            if (to - from <= LEAF_SIZE) continue;
+            int middle = (from + to) >>> 1;
+            select(from, to - 1, middle, axis == 0 ? xs : ys);
+            ranges.add(from);
+            ranges.add(middle);
+            ranges.add(1 - axis);
+            ranges.add(middle + 1);
+            ranges.add(to);
+            ranges.add(1 - axis);
+        }
+    }
+
+    /** Quickselect: reorders {@code [left, right]} so the k-th smallest value of {@code values} is at
+     {@code k}, with none larger before it and none smaller after it. */
+    private void select(int left, int right, int k, float[] values) {
+        while (right > left) {
+            // Median of three for the pivot, so sorted input doesn't make it quadratic.
+            int middle = (left + right) >>> 1;
+            if (values[middle] < values[left]) swap(middle, left);
+            if (values[right] < values[left]) swap(right, left);
+            if (values[right] < values[middle]) swap(right, middle);
+            float pivot = values[middle];
+            int i = left, j = right;
+            while (i <= j) {
+                while (values[i] < pivot) i++;
+                while (values[j] > pivot) j--;
+                if (i <= j) swap(i++, j--);
+            }
+            if (k <= j) right = j;
+            else if (k >= i) left = i;
+            else return;
+        }
+    }
+
+    private void swap(int i, int j) {
+        float x = xs[i];
+        xs[i] = xs[j];
+        xs[j] = x;
+        float y = ys[i];
+        ys[i] = ys[j];
+        ys[j] = y;
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+    }
+
+    /** Number of points. */
+    public int size() {
+        return ids.length;
+    }
+
+    /** Bytes taken up by the arrays. */
+    public long memoryBytes() {
+        return (long) ids.length * (2 * Float.BYTES + Integer.BYTES);
+    }
+
+    /** A new search, for one thread to use for as many queries as it likes. */
+    public Search search() {
+        return new Search();
+    }
+
+    /** Finds the nearest point to each of the given coordinates, in parallel, putting its id, or -1 if the tree
+     is empty, in {@code nearest}, and the distance to it in metres in {@code metres}, if that isn't
+     {@code null}. */
+    public void nearest(float[] lats, float[] lons, int[] nearest, float[] metres) {
+        int chunks = (lats.length + BATCH_CHUNK - 1) / BATCH_CHUNK;
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            Search search = new Search();
+            int end = Math.min(lats.length, (chunk + 1) * BATCH_CHUNK);
+            for (int i = chunk * BATCH_CHUNK; i < end; i++) {
+                nearest[i] = search.nearest(lats[i], lons[i]);
+                if (metres != null) metres[i] = search.distance();
+            }
+        });
+    }
+
+    /** The scratch space for queries on the tree: a stack of the subtrees still to look at. Not thread-safe. */
+    public final class Search {
+        /** Each subtree on the stack: its range, the axis it splits on, and the squared distance from the
+         query point to the side of the split it is on, in projected units. */
+        private final int[] froms, tos, axes;
+        private final float[] bounds;
+        /** The k nearest found so far, nearest first, and their squared distances. The ids go straight into
+         the caller's array, or {@link #single} for the nearest alone. */
+        private final int[] single = new int[1];
+        private int[] bestIds = single;
+        private float[] bestDistances = new float[1];
+        private int found, k;
+        private float distance;
+
+        private Search() {
+            int capacity = depth + 2;
+            froms = new int[capacity];
+            tos = new int[capacity];
+            axes = new int[capacity];
+            bounds = new float[capacity];
+        }
+
+        /** The id of the point nearest to the coordinate, or -1 if there are none. The distance to it is
+         then {@link #distance()}. */
+        public int nearest(float lat, float lon) {
+            k = 1;
+            found = 0;
+            bestIds = single;
+            nearest(Point.projectLon(lon), Point.projectLat(lat), Float.POSITIVE_INFINITY);
+            distance = found == 0 ? Float.NaN : metres(bestDistances[0]);
+            return found == 0 ? -1 : bestIds[0];
+        }
+
+        /** Distance in metres to the point found by the last {@link #nearest(float, float)}, or {@code NaN}
+         if it found none. */
+        public float distance() {
+            return distance;
+        }
+
+        /** Finds the up to {@code ids.length} points nearest to the coordinate and within {@code maxMetres}
+         of it, nearest first, putting their ids in {@code ids} and their distances in metres in
+         {@code metres}, which must be at least as long. Allocates only if asked for more points than the last
+         time.
+         @return The number of points found. */
+        public int nearest(float lat, float lon, float maxMetres, int[] ids, float[] metres) {
+            k = ids.length;
+            found = 0;
+            if (k == 0) return 0;
+            bestIds = ids;
+            if (bestDistances.length < k) bestDistances = new float[k];
+            float max = (float) (maxMetres / EdgeIndex.METRES_PER_UNIT);
+            nearest(Point.projectLon(lon), Point.projectLat(lat), max * max);
+            for (int i = 0; i < found; i++) metres[i] = metres(bestDistances[i]);
+            bestIds = single;
+            return found;
+        }
+
+        /** Branch and bound: goes down the side of every split the query point is on first, and only looks
+         at the other side if it is nearer than the {@code k}-th nearest point found so far. */
+        private void nearest(float x, float y, float maxSquared) {
+            int top = push(0, 0, ids.length, 0, 0);
+            while (top > 0) {
+                top--;
+                float limit = found == k ? bestDistances[k - 1] : maxSquared;
+                if (bounds[top] > limit) continue;
+                int from = froms[top], to = tos[top], axis = axes[top];
+                // Go down the near side without pushing it, so the stack only ever holds the far sides.
+                while (to - from > LEAF_SIZE) {
+                    int middle = (from + to) >>> 1;
+                    offer(middle, x, y, maxSquared);
+                    float difference = axis == 0 ? x - xs[middle] : y - ys[middle];
+                    if (difference < 0) {
+                        top = push(top, middle + 1, to, 1 - axis, difference * difference);
+                        to = middle;
+                    } else {
+                        top = push(top, from, middle, 1 - axis, difference * difference);
+                        from = middle + 1;
+                    }
+                    axis = 1 - axis;
+                }
+                for (int i = from; i < to; i++) offer(i, x, y, maxSquared);
+            }
+        }
+
+        private int push(int top, int from, int to, int axis, float bound) {
+            froms[top] = from;
+            tos[top] = to;
+            axes[top] = axis;
+            bounds[top] = bound;
+            return top + 1;
+        }
+
+        /** Keeps the point at {@code i} if it is among the {@code k} nearest so far. */
+        private void offer(int i, float x, float y, float maxSquared) {
+            float dx = xs[i] - x, dy = ys[i] - y;
+            float d = dx * dx + dy * dy;
+            if (d > maxSquared || found == k && d >= bestDistances[k - 1]) return;
+            int at = found < k ? found++ : k - 1;
+            while (at > 0 && bestDistances[at - 1] > d) {
+                bestIds[at] = bestIds[at - 1];
+                bestDistances[at] = bestDistances[at - 1];
+                at--;
+            }
+            bestIds[at] = ids[i];
+            bestDistances[at] = d;
+        }
+
+        /** Visits every point within {@code radius} metres of the coordinate, in no particular order.
+         @return The number of points visited. */
+        public int within(float lat, float lon, float radius, PointVisitor visitor) {
+            float x = Point.projectLon(lon), y = Point.projectLat(lat);
+            float r = (float) (radius / EdgeIndex.METRES_PER_UNIT), rSquared = r * r;
+            int count = 0;
+            int top = push(0, 0, ids.length, 0, 0);
+            while (top > 0) {
+                top--;
+                int from = froms[top], to = tos[top], axis = axes[top];
+                while (to - from > LEAF_SIZE) {
+                    int middle = (from + to) >>> 1;
+                    count += visit(middle, x, y, rSquared, visitor);
+                    float difference = axis == 0 ? x - xs[middle] : y - ys[middle];
+                    // Both sides if the circle crosses the split, otherwise only the side it is on.
+                    if (difference < r && difference > -r) {
+                        top = push(top, middle + 1, to, 1 - axis, 0);
+                        to = middle;
+                    } else if (difference < 0) {
+                        to = middle;
+                    } else {
+                        from = middle + 1;
+                    }
+                    axis = 1 - axis;
+                }
+                for (int i = from; i < to; i++) count += visit(i, x, y, rSquared, visitor);
+            }
+            return count;
+        }
+
+        private int visit(int i, float x, float y, float rSquared, PointVisitor visitor) {
+            float dx = xs[i] - x, dy = ys[i] - y;
+            float d = dx * dx + dy * dy;
+            if (d > rSquared) return 0;
+            visitor.visit(ids[i], metres(d));
+            return 1;
+        }
+
+        private static float metres(float squared) {
+            return (float) (Math.sqrt(squared) * EdgeIndex.METRES_PER_UNIT);
+        }
+    }
+}
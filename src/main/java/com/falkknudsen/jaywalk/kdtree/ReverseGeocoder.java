@@ -0,0 +1,86 @@
+package com.falkknudsen.jaywalk.kdtree;
+
+import com.falkknudsen.jaywalk.structs.StringDictionary;
+import com.falkknudsen.jaywalk.tstree.TernarySearchTree;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Finds the addresses nearest to a coordinate, or within a radius of it, from a {@link KDTree} over the
+ location of every address. The convenience methods here allocate their results; for many queries, use
+ {@link #tree()} directly with a {@link KDTree.Search} per thread, which allocates nothing, and look the
+ ids up with {@link #key}.<br>
+ The addresses are kept as the ids of their parts in a {@link StringDictionary}, not as strings, and their
+ keys put together when asked for. Thread-safe. */
+public class ReverseGeocoder {
+    /** An address found near a coordinate: its key, its location, and its distance from the coordinate. */
+    public record Address(String key, float lat, float lon, float metres) {}
+
+    private final StringDictionary names;
+    private final int[] components;
+    private final float[] lats, lons;
+    private final KDTree tree;
+    private final ThreadLocal<KDTree.Search> searches;
+
+    /** @param names      The names the parts of the addresses refer to.
+     @param components The parts of the addresses, {@link TernarySearchTree#COMPONENTS} per address, in any
+                       order; the id of each address in the tree is its index in the arrays. */
+    public ReverseGeocoder(StringDictionary names, int[] components, float[] lats, float[] lons) {
+        this.names = names;
+        this.components = components;
+        this.lats = lats;
+        this.lons = lons;
+        tree = KDTree.build(lats, lons);
+        searches = ThreadLocal.withInitial(tree::search);
+    }
+
+    /** The address nearest to the coordinate, or {@code null} if there are none. */
+    public Address nearest(float lat, float lon) {
+        KDTree.Search search = searches.get();
+        int id = search.nearest(lat, lon);
+        return id < 0 ? null : address(id, search.distance());
+    }
+
+    /** The up to {@code k} addresses nearest to the coordinate, within {@code maxMetres} of it, nearest first. */
+    public List<Address> nearest(float lat, float lon, int k, float maxMetres) {
+        int[] ids = new int[k];
+        float[] metres = new float[k];
+        int found = searches.get().nearest(lat, lon, maxMetres, ids, metres);
+        List<Address> addresses = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) addresses.add(address(ids[i], metres[i]));
+        return addresses;
+    }
+
+    /** The addresses within {@code radius} metres of the coordinate, nearest first. */
+    public List<Address> within(float lat, float lon, float radius) {
+        List<Address> addresses = new ArrayList<>();
+        searches.get().within(lat, lon, radius, (id, metres) -> addresses.add(address(id, metres)));
+        addresses.sort((a, b) -> Float.compare(a.metres, b.metres));
+        return addresses;
+    }
+
+    /** The ids of the addresses nearest to each of the coordinates, found in parallel; see
+     {@link KDTree#nearest(float[], float[], int[], float[])}. */
+    public int[] nearest(float[] lats, float[] lons) {
+        int[] nearest = new int[lats.length];
+        tree.nearest(lats, lons, nearest, null);
+        return nearest;
+    }
+
+    /** The key of the address with the given id. */
+    public String key(int id) {
+        return TernarySearchTree.address(names, components, id);
+    }
+
+    public KDTree tree() {
+        return tree;
+    }
+
+    public int size() {
+        return lats.length;
+    }
+
+    private Address address(int id, float metres) {
+        return new Address(key(id), lats[id], lons[id], metres);
+    }
+}
@@ -0,0 +1,73 @@
+package com.falkknudsen.jaywalk.render;
+
+import javafx.scene.paint.Color;
+
+import java.awt.BasicStroke;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Path2D;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Renders with Java2D, which, unlike a JavaFX canvas, may be used from any thread. Each target keeps
+ its own path, so one target must not be used by several threads at once. */
+public class AwtTarget implements RenderTarget {
+    private final Graphics2D graphics;
+    private final int width, height;
+    private final Path2D.Float path = new Path2D.Float(Path2D.WIND_EVEN_ODD, 4096);
+    private final Map<Color, java.awt.Color> colours = new HashMap<>();
+    private final Map<Double, BasicStroke> strokes = new HashMap<>();
+
+    public AwtTarget(Graphics2D graphics, int width, int height) {
+        this.graphics = graphics;
+        this.width = width;
+        this.height = height;
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+    }
+
+    @Override
+    public void clear(Color background) {
+        graphics.setColor(awt(background));
+        graphics.fillRect(0, 0, width, height);
+    }
+
+    @Override
+    public void beginPath() {
+        path.reset();
+    }
+
+    @Override
+    public void moveTo(double x, double y) {
+        path.moveTo(x, y);
+    }
+
+    @Override
+    public void lineTo(double x, double y) {
+        path.lineTo(x, y);
+    }
+
+    @Override
+    public void closePath() {
+        path.closePath();
+    }
+
+    @Override
+    public void stroke(Color colour, double width) {
+        graphics.setColor(awt(colour));
+        graphics.setStroke(strokes.computeIfAbsent(width,
+                w -> new BasicStroke(w.floatValue(), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND)));
+        graphics.draw(path);
+    }
+
+    @Override
+    public void fill(Color colour) {
+        graphics.setColor(awt(colour));
+        graphics.fill(path);
+    }
+
+    private java.awt.Color awt(Color colour) {
+        return colours.computeIfAbsent(colour, c -> new java.awt.Color(
+                (float) c.getRed(), (float) c.getGreen(), (float) c.getBlue(), (float) c.getOpacity()));
+    }
+}
@@ -0,0 +1,58 @@
+package com.falkknudsen.jaywalk.render;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.FillRule;
+import javafx.scene.shape.StrokeLineCap;
+import javafx.scene.shape.StrokeLineJoin;
+
+/** Renders onto a JavaFX canvas. Must be used on the JavaFX application thread, like the canvas itself. */
+public class CanvasTarget implements RenderTarget {
+    private final GraphicsContext gc;
+
+    public CanvasTarget(GraphicsContext gc) {
+        this.gc = gc;
+        gc.setLineCap(StrokeLineCap.ROUND);
+        gc.setLineJoin(StrokeLineJoin.ROUND);
+        gc.setFillRule(FillRule.EVEN_ODD);
+    }
+
+    @Override
+    public void clear(Color background) {
+        gc.setFill(background);
+        gc.fillRect(0, 0, gc.getCanvas().getWidth(), gc.getCanvas().getHeight());
+    }
+
+    @Override
+    public void beginPath() {
+        gc.beginPath();
+    }
+
+    @Override
+    public void moveTo(double x, double y) {
+        gc.moveTo(x, y);
+    }
+
+    @Override
+    public void lineTo(double x, double y) {
+        gc.lineTo(x, y);
+    }
+
+    @Override
+    public void closePath() {
+        gc.closePath();
+    }
+
+    @Override
+    public void stroke(Color colour, double width) {
+        gc.setStroke(colour);
+        gc.setLineWidth(width);
+        gc.stroke();
+    }
+
+    @Override
+    public void fill(Color colour) {
+        gc.setFill(colour);
+        gc.fill();
+    }
+}
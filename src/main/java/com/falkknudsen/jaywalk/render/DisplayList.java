@@ -0,0 +1,104 @@
+package com.falkknudsen.jaywalk.render;
+
+import com.falkknudsen.jaywalk.structs.FloatList;
+import com.falkknudsen.jaywalk.structs.IntList;
+import javafx.scene.paint.Color;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** A frame recorded as a list of drawing commands, so it can be built on one thread and played back on
+ another. The commands are ints, with the index of their style above the low bits for strokes and fills,
+ and the coordinates floats, so a recorded frame is a handful of arrays however many vertices it has.
+ Clearing it keeps the arrays for the next frame. */
+public class DisplayList implements RenderTarget {
+    private static final int CLEAR = 0, BEGIN = 1, MOVE = 2, LINE = 3, CLOSE = 4, STROKE = 5, FILL = 6;
+    private static final int OP_BITS = 3, OP_MASK = (1 << OP_BITS) - 1;
+
+    private final IntList commands = new IntList(1024);
+    private final FloatList coordinates = new FloatList(1 << 16);
+    private final List<Color> colours = new ArrayList<>();
+    private final FloatList widths = new FloatList();
+
+    /** Forgets every command. */
+    public void reset() {
+        commands.clear();
+        coordinates.clear();
+        colours.clear();
+        widths.clear();
+    }
+
+    /** Number of vertices recorded. */
+    public int vertexCount() {
+        return coordinates.size() / 2;
+    }
+
+    /** Plays the commands back on {@code target}, moved by ({@code dx}, {@code dy}) pixels. */
+    public void replay(RenderTarget target, double dx, double dy) {
+        int vertex = 0;
+        for (int i = 0; i < commands.size(); i++) {
+            int command = commands.get(i), style = command >>> OP_BITS;
+            switch (command & OP_MASK) {
+                case CLEAR -> target.clear(colours.get(style));
+                case BEGIN -> target.beginPath();
+                case MOVE -> {
+                    target.moveTo(coordinates.get(vertex) + dx, coordinates.get(vertex + 1) + dy);
+                    vertex += 2;
+                }
+                case LINE -> {
+                    target.lineTo(coordinates.get(vertex) + dx, coordinates.get(vertex + 1) + dy);
+                    vertex += 2;
+                }
+                case CLOSE -> target.closePath();
+                case STROKE -> target.stroke(colours.get(style), widths.get(style));
+                default -> target.fill(colours.get(style));
+            }
+        }
+    }
+
+    @Override
+    public void clear(Color background) {
+        commands.add(CLEAR | style(background, 0) << OP_BITS);
+    }
+
+    @Override
+    public void beginPath() {
+        commands.add(BEGIN);
+    }
+
+    @Override
+    public void moveTo(double x, double y) {
+        commands.add(MOVE);
+        coordinates.add((float) x);
+        coordinates.add((float) y);
+    }
+
+    @Override
+    public void lineTo(double x, double y) {
+        commands.add(LINE);
+        coordinates.add((float) x);
+        coordinates.add((float) y);
+    }
+
+    @Override
+    public void closePath() {
+        commands.add(CLOSE);
+    }
+
+    @Override
+    public void stroke(Color colour, double width) {
+        commands.add(STROKE | style(colour, width) << OP_BITS);
+    }
+
+    @Override
+    public void fill(Color colour) {
+        commands.add(FILL | style(colour, 0) << OP_BITS);
+    }
+
+    /** Index of a new style. There are only a few per frame, so they aren't shared. */
+    private int style(Color colour, double width) {
+        colours.add(colour);
+        widths.add((float) width);
+        return colours.size() - 1;
+    }
+}
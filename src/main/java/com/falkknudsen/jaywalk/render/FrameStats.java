@@ -0,0 +1,16 @@
+package com.falkknudsen.jaywalk.render;
+
+/** What {@link MapRenderer#render} did for one frame.
+ @param nanos         Time spent, from querying the index to the last batch handed to the target.
+ @param items         Items returned by the spatial index for the viewport.
+ @param batches       Paths handed to the target, one per style with anything visible.
+ @param vertices      Vertices of the items returned.
+ @param drawnVertices Vertices that were actually passed to the target, after clipping and
+ leaving out sub-pixel segments and degenerate ways. */
+public record FrameStats(long nanos, int items, int batches, long vertices, long drawnVertices) {
+    @Override
+    public String toString() {
+        return String.format("%.2f ms, %d items, %d batches, %d of %d vertices drawn",
+                nanos / 1e6, items, batches, drawnVertices, vertices);
+    }
+}
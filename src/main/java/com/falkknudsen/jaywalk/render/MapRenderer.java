@@ -0,0 +1,115 @@
+package com.falkknudsen.jaywalk.render;
+
+import com.falkknudsen.jaywalk.WayType;
+import com.falkknudsen.jaywalk.contracts.IDrawable;
+import com.falkknudsen.jaywalk.contracts.IDrawableIndex;
+import com.falkknudsen.jaywalk.structs.IntList;
+import javafx.scene.paint.Color;
+
+import java.util.function.BooleanSupplier;
+
+/** Draws the part of a layer inside a viewport. The items are found with one query of the spatial index,
+ grouped by {@link WayType}, and each group is drawn as a single path in the style of its type, areas first
+ and the most important lines last. {@link PathBuilder} clips the geometry and leaves out what would not
+ be visible anyway.<br>
+ Not thread-safe: it reuses its buffers from frame to frame, so each thread drawing needs its own. */
+public class MapRenderer {
+    public static final Color BACKGROUND = Color.web("#f2efe9");
+    /** The order the batches are drawn in, later ones on top. */
+    private static final WayType[] DRAW_ORDER = {
+            WayType.LANDUSE, WayType.PARK, WayType.FOREST, WayType.WATER, WayType.BUILDING,
+            WayType.OTHER, WayType.STREAM, WayType.PATH, WayType.STREET, WayType.TERTIARY, WayType.RIVER,
+            WayType.RAILWAY, WayType.SECONDARY, WayType.PRIMARY, WayType.TRUNK, WayType.MOTORWAY,
+            WayType.COASTLINE,
+    };
+
+    private static final BooleanSupplier NEVER = () -> false;
+    private static final int CANCEL_CHECK_INTERVAL = 256;
+
+    private final PathBuilder path = new PathBuilder();
+    private final IntList[] batches = new IntList[WayType.values().length];
+    private int[] hits = new int[4096];
+    private FrameStats lastFrame;
+
+    public MapRenderer() {
+        for (int i = 0; i < batches.length; i++) batches[i] = new IntList();
+    }
+
+    /** Clears the target and draws every item of {@code layer} in the viewport on it.
+     @return What it took, which is also kept as {@link #lastFrame()}. */
+    public FrameStats render(IDrawableIndex layer, Viewport viewport, RenderTarget target) {
+        return render(layer, viewport, target, NEVER);
+    }
+
+    /** {@link #render(IDrawableIndex, Viewport, RenderTarget)}, giving up as soon as {@code cancelled}
+     says so. It is asked between batches and every {@value #CANCEL_CHECK_INTERVAL} items.
+     @return What it took, or {@code null} if it was cancelled, in which case the target holds part of a frame. */
+    public FrameStats render(IDrawableIndex layer, Viewport viewport, RenderTarget target,
+                             BooleanSupplier cancelled) {
+        long start = System.nanoTime();
+        long vertices = path.vertices, drawnVertices = path.drawnVertices;
+        target.clear(BACKGROUND);
+
+        // The whole frame works on one snapshot, so the indices found are resolved against the same items.
+        IDrawableIndex frame = layer.snapshot();
+        float minX = viewport.minX(), minY = viewport.minY(), maxX = viewport.maxX(), maxY = viewport.maxY();
+        int found = frame.query(minX, minY, maxX, maxY, hits);
+        if (found > hits.length) {
+            hits = new int[Integer.highestOneBit(found) * 2];
+            found = frame.query(minX, minY, maxX, maxY, hits);
+        }
+        for (int i = 0; i < found; i++) {
+            batches[frame.get(hits[i]).type().ordinal()].add(hits[i]);
+        }
+
+        int drawn = 0;
+        for (WayType type : DRAW_ORDER) {
+            IntList batch = batches[type.ordinal()];
+            if (batch.isEmpty()) continue;
+            if (cancelled.getAsBoolean()) {
+                clearBatches();
+                return null;
+            }
+            path.begin(target, viewport, type.area, type.width);
+            for (int i = 0; i < batch.size(); i++) {
+                if (i % CANCEL_CHECK_INTERVAL == CANCEL_CHECK_INTERVAL - 1 && cancelled.getAsBoolean()) {
+                    clearBatches();
+                    return null;
+                }
+                IDrawable item = frame.get(batch.get(i));
+                item.trace(path);
+            }
+            batch.clear();
+            if (path.isEmpty()) continue;
+            if (type.area) {
+                target.fill(type.colour);
+            } else {
+                target.stroke(type.colour, type.width);
+            }
+            drawn++;
+        }
+
+        lastFrame = new FrameStats(System.nanoTime() - start, found, drawn,
+                path.vertices - vertices, path.drawnVertices - drawnVertices);
+        return lastFrame;
+    }
+
+    private void clearBatches() {
+        for (IntList batch : batches) batch.clear();
+    }
+
+    /** What the last call to {@link #render} did, or {@code null} before the first. */
+    public FrameStats lastFrame() {
+        return lastFrame;
+    }
+
+    /** Total vertices of the items queried, over all frames so far. */
+    public long totalVertices() {
+        return path.vertices;
+    }
+
+    /** Total vertices passed to the targets, over all frames so far. */
+    public long totalDrawnVertices() {
+        return path.drawnVertices;
+    }
+}
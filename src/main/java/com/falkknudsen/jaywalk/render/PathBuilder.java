@@ -0,0 +1,249 @@
+package com.falkknudsen.jaywalk.render;
+
+import com.falkknudsen.jaywalk.contracts.IDrawable;
+import com.falkknudsen.jaywalk.structs.CoordinatePool;
+import com.falkknudsen.jaywalk.structs.PackedCoordinates;
+
+/** Turns the projected coordinates of the items in one batch into a single path on a {@link RenderTarget}.
+ Items pass their geometry in through {@link IDrawable#trace}.<br><br>
+
+ Points are transformed to pixels, and any closer than {@link #MIN_SEGMENT} pixels to the last point drawn
+ are left out, so a way spanning less than that is left out altogether. Lines are split where they leave
+ the viewport: runs of segments entirely beyond one edge of it are never passed on. Areas are clipped to
+ the viewport with Sutherland-Hodgman, which keeps them closed. The viewport is widened by a margin
+ first, so the ends of wide lines don't show at its edges. */
+public final class PathBuilder {
+    /** Shortest segment drawn, in pixels. */
+    static final float MIN_SEGMENT = 1;
+    private static final float MIN_SEGMENT_SQUARED = MIN_SEGMENT * MIN_SEGMENT;
+    private static final int LEFT = 1, RIGHT = 2, TOP = 4, BOTTOM = 8;
+
+    private RenderTarget target;
+    private float minX, minY;
+    private double scale;
+    private float left, top, right, bottom;
+    private boolean area;
+    /** Whether anything was passed to the target since {@link #begin}. */
+    private boolean drawn;
+    /** Scratch space for areas: the polygon in pixels, and the result of clipping it against one edge. */
+    private float[] polygon = new float[256], clipped = new float[256];
+    /** Scratch space for the coordinates of packed and pooled ways, decoded or copied. */
+    private float[] decoded = new float[256];
+
+    /** Vertices passed in, and passed on to the target, since the counters were last reset. */
+    long vertices, drawnVertices;
+
+    /** Starts a new path of lines or areas in the given viewport.
+     @param margin Pixels to widen the viewport by on every side before clipping. */
+    void begin(RenderTarget target, Viewport viewport, boolean area, double margin) {
+        this.target = target;
+        this.area = area;
+        minX = viewport.minX();
+        minY = viewport.minY();
+        scale = viewport.scale();
+        left = (float) -margin;
+        top = (float) -margin;
+        right = (float) (viewport.width() + margin);
+        bottom = (float) (viewport.height() + margin);
+        drawn = false;
+        target.beginPath();
+    }
+
+    /** Whether anything has been added to the path since {@link #begin}. */
+    boolean isEmpty() {
+        return !drawn;
+    }
+
+    /** Adds a way, given as projected x and y interleaved. In a path of areas, only closed ways are added. */
+    public void add(float[] coordinates) {
+        add(coordinates, coordinates.length / 2);
+    }
+
+    /** Adds a way packed with {@link PackedCoordinates}, decoding it into scratch space first. */
+    public void add(byte[] packed) {
+        int n = PackedCoordinates.size(packed);
+        if (decoded.length < n * 2) decoded = new float[Math.max(n * 2, decoded.length * 2)];
+        PackedCoordinates.decode(packed, decoded, 0);
+        add(decoded, n);
+    }
+
+    /** Adds a way in a {@link CoordinatePool}, copying it into scratch space first. */
+    public void add(CoordinatePool pool, long handle) {
+        int n = pool.size(handle);
+        if (decoded.length < n * 2) decoded = new float[Math.max(n * 2, decoded.length * 2)];
+        pool.copy(handle, 0, n, decoded, 0);
+        add(decoded, n);
+    }
+
+    /** Adds the first {@code n} vertices of {@code coordinates}. */
+    private void add(float[] coordinates, int n) {
+        vertices += n;
+        if (n < 2) return;
+        if (area) {
+            boolean closed = coordinates[0] == coordinates[n * 2 - 2] && coordinates[1] == coordinates[n * 2 - 1];
+            if (closed && n >= 4) addArea(coordinates, n - 1);
+        } else {
+            addLine(coordinates, n);
+        }
+    }
+
+    private void addLine(float[] coordinates, int n) {
+        float lastX = 0, lastY = 0, tailX = 0, tailY = 0;
+        float previousX = screenX(coordinates[0]), previousY = screenY(coordinates[1]);
+        int previousCode = outcode(previousX, previousY);
+        boolean inRun = false, skipped = false;
+        int lines = 0;
+        for (int i = 1; i < n; i++) {
+            float x = screenX(coordinates[i * 2]), y = screenY(coordinates[i * 2 + 1]);
+            int code = outcode(x, y);
+            if ((code & previousCode) != 0) {
+                // The segment is entirely beyond one edge: end the run, keeping its last bit.
+                if (skipped && lines > 0) lineTo(tailX, tailY);
+                inRun = skipped = false;
+            } else {
+                if (!inRun) {
+                    lastX = previousX;
+                    lastY = previousY;
+                    inRun = true;
+                    lines = 0;
+                }
+                float dx = x - lastX, dy = y - lastY;
+                if (dx * dx + dy * dy >= MIN_SEGMENT_SQUARED) {
+                    if (lines == 0) moveTo(lastX, lastY);
+                    lineTo(x, y);
+                    lines++;
+                    lastX = x;
+                    lastY = y;
+                    skipped = false;
+                } else {
+                    tailX = x;
+                    tailY = y;
+                    skipped = true;
+                }
+            }
+            previousX = x;
+            previousY = y;
+            previousCode = code;
+        }
+        if (inRun && skipped && lines > 0) lineTo(tailX, tailY);
+    }
+
+    /** Adds the ring of the first {@code n} points, the last one being implicitly joined to the first. */
+    private void addArea(float[] coordinates, int n) {
+        if (polygon.length < n * 2) {
+            polygon = new float[n * 4];
+            clipped = new float[n * 4];
+        }
+        int all = ~0, any = 0;
+        for (int i = 0; i < n; i++) {
+            float x = screenX(coordinates[i * 2]), y = screenY(coordinates[i * 2 + 1]);
+            polygon[i * 2] = x;
+            polygon[i * 2 + 1] = y;
+            int code = outcode(x, y);
+            all &= code;
+            any |= code;
+        }
+        if (all != 0) return;
+        if (any != 0) {
+            // Clipping against each edge adds at most one point per point beyond it.
+            for (int edge = LEFT; edge <= BOTTOM && n > 0; edge <<= 1) {
+                if ((any & edge) != 0) n = clip(n, edge);
+            }
+            if (n < 3) return;
+        }
+
+        float lastX = polygon[0], lastY = polygon[1];
+        int kept = 1;
+        for (int i = 1; i < n; i++) {
+            float x = polygon[i * 2], y = polygon[i * 2 + 1];
+            float dx = x - lastX, dy = y - lastY;
+            if (dx * dx + dy * dy < MIN_SEGMENT_SQUARED) continue;
+            polygon[kept * 2] = lastX = x;
+            polygon[kept * 2 + 1] = lastY = y;
+            kept++;
+        }
+        if (kept < 3) return;
+        moveTo(polygon[0], polygon[1]);
+        for (int i = 1; i < kept; i++) lineTo(polygon[i * 2], polygon[i * 2 + 1]);
+        target.closePath();
+    }
+
+    /** Clips the ring of the first {@code n} points of {@link #polygon} against one edge of the viewport,
+     leaving the result in {@link #polygon}.
+     @return The number of points in the result. */
+    private int clip(int n, int edge) {
+        if (clipped.length < n * 4) clipped = new float[n * 4];
+        int count = 0;
+        float previousX = polygon[(n - 1) * 2], previousY = polygon[(n - 1) * 2 + 1];
+        boolean previousInside = inside(previousX, previousY, edge);
+        for (int i = 0; i < n; i++) {
+            float x = polygon[i * 2], y = polygon[i * 2 + 1];
+            boolean inside = inside(x, y, edge);
+            if (inside != previousInside) {
+                float t = crossing(previousX, previousY, x, y, edge);
+                clipped[count * 2] = previousX + t * (x - previousX);
+                clipped[count * 2 + 1] = previousY + t * (y - previousY);
+                count++;
+            }
+            if (inside) {
+                clipped[count * 2] = x;
+                clipped[count * 2 + 1] = y;
+                count++;
+            }
+            previousX = x;
+            previousY = y;
+            previousInside = inside;
+        }
+        float[] swap = polygon;
+        polygon = clipped;
+        clipped = swap;
+        return count;
+    }
+
+    private boolean inside(float x, float y, int edge) {
+        return switch (edge) {
+            case LEFT -> x >= left;
+            case RIGHT -> x <= right;
+            case TOP -> y >= top;
+            default -> y <= bottom;
+        };
+    }
+
+    /** How far along the segment from (x1, y1) to (x2, y2) it crosses the given edge, from 0 to 1. */
+    private float crossing(float x1, float y1, float x2, float y2, int edge) {
+        return switch (edge) {
+            case LEFT -> (left - x1) / (x2 - x1);
+            case RIGHT -> (right - x1) / (x2 - x1);
+            case TOP -> (top - y1) / (y2 - y1);
+            default -> (bottom - y1) / (y2 - y1);
+        };
+    }
+
+    private int outcode(float x, float y) {
+        int code = 0;
+        if (x < left) code |= LEFT;
+        else if (x > right) code |= RIGHT;
+        if (y < top) code |= TOP;
+        else if (y > bottom) code |= BOTTOM;
+        return code;
+    }
+
+    private float screenX(float x) {
+        return (float) ((x - minX) * scale);
+    }
+
+    private float screenY(float y) {
+        return (float) ((y - minY) * scale);
+    }
+
+    private void moveTo(float x, float y) {
+        target.moveTo(x, y);
+        drawnVertices++;
+        drawn = true;
+    }
+
+    private void lineTo(float x, float y) {
+        target.lineTo(x, y);
+        drawnVertices++;
+    }
+}
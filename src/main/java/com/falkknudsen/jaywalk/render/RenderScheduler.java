@@ -0,0 +1,165 @@
+package com.falkknudsen.jaywalk.render;
+
+import com.falkknudsen.jaywalk.contracts.IDrawableIndex;
+import javafx.scene.canvas.GraphicsContext;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.DoubleFunction;
+
+/** Builds frames on a dedicated thread, so the JavaFX thread only ever plays back a finished one.<br><br>
+
+ {@link #request} hands the thread a viewport. Requests made while a frame is being built replace each
+ other, so only the latest is built next. The frame in progress is cancelled if the latest request makes it
+ stale: if it is at another scale, or panned by more than {@value #STALE_FRACTION} of the screen. A frame
+ panned by less is still worth finishing, since it is shown moved into place until the next one is ready;
+ cancelling on every pan would never let a frame finish while the map is being dragged.
+ Frames are recorded into {@link DisplayList}s, which are recycled: the JavaFX thread swaps in the latest
+ finished frame with {@link #latest} and hands the list it replaces back to the builder, so normally there
+ are just two, the one on screen and the one being built. */
+public class RenderScheduler implements AutoCloseable {
+    /** A finished frame: the commands, and the viewport and request they were built for. */
+    public record Frame(DisplayList commands, Viewport viewport, long request, FrameStats stats) {}
+
+    /** How far, as a fraction of the screen size, the latest request may be panned from the frame being
+     built before that is cancelled. */
+    private static final double STALE_FRACTION = 0.25;
+
+    private final DoubleFunction<IDrawableIndex> layers;
+    private final Runnable onFrame;
+    private final MapRenderer renderer = new MapRenderer();
+    private final Object lock = new Object();
+    /** The latest request, and its number. Guarded by {@link #lock}. */
+    private Viewport requested;
+    private long requestNumber;
+    /** {@link #requested}, readable without the lock, for cancelling. */
+    private volatile Viewport latestRequest;
+    private volatile boolean closed;
+    private volatile long built, cancelled;
+
+    private final AtomicReference<Frame> finished = new AtomicReference<>();
+    private final AtomicReference<DisplayList> spare = new AtomicReference<>();
+    private final AtomicBoolean notified = new AtomicBoolean();
+    /** The frame on screen. Only touched by the thread showing the frames. */
+    private Frame shown;
+
+    /** @param layers  The layer to draw from, given the metres per pixel of the viewport.
+     @param onFrame Called on the render thread when a frame has been finished, once until the next call
+     to {@link #latest}. On the JavaFX thread, that would be {@code () -> Platform.runLater(redraw)}. */
+    public RenderScheduler(DoubleFunction<IDrawableIndex> layers, Runnable onFrame) {
+        this.layers = layers;
+        this.onFrame = onFrame;
+        Thread.ofPlatform().daemon().name("render").start(this::run);
+    }
+
+    /** Asks for a frame of the viewport, replacing any request not yet started, and cancelling the frame
+     being built if this makes it stale. Returns at once; may be called from any thread. */
+    public void request(Viewport viewport) {
+        synchronized (lock) {
+            requested = viewport;
+            latestRequest = viewport;
+            requestNumber++;
+            lock.notifyAll();
+        }
+    }
+
+    /** Shows the latest finished frame on {@code gc}, moved to match {@code viewport} if that has been panned
+     since the frame was requested. Frames built at another scale are shown as they are until one at the
+     new scale is finished. Must be called on the JavaFX thread.
+     @return The frame shown, or {@code null} if none has been finished yet. */
+    public Frame draw(GraphicsContext gc, Viewport viewport) {
+        Frame shown = latest();
+        if (shown == null) return null;
+        double dx = 0, dy = 0;
+        if (shown.viewport.scale() == viewport.scale()) {
+            dx = (shown.viewport.minX() - viewport.minX()) * viewport.scale();
+            dy = (shown.viewport.minY() - viewport.minY()) * viewport.scale();
+        }
+        gc.save();
+        // Clear first, since a moved frame doesn't cover the whole canvas.
+        gc.setFill(MapRenderer.BACKGROUND);
+        gc.fillRect(0, 0, gc.getCanvas().getWidth(), gc.getCanvas().getHeight());
+        shown.commands.replay(new CanvasTarget(gc), dx, dy);
+        gc.restore();
+        return shown;
+    }
+
+    /** Swaps in the latest finished frame, if there is a new one, and hands the one it replaces back to
+     the render thread. Must always be called on the same thread, which then owns the frame returned
+     until the next call.
+     @return The frame to show, or {@code null} if none has been finished yet. */
+    public Frame latest() {
+        notified.set(false);
+        Frame latest = finished.getAndSet(null);
+        if (latest != null) {
+            if (shown != null) spare.set(shown.commands);
+            shown = latest;
+        }
+        return shown;
+    }
+
+    private void run() {
+        long done = 0;
+        while (!closed) {
+            Viewport viewport;
+            long number;
+            synchronized (lock) {
+                while (requestNumber == done && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                viewport = requested;
+                number = requestNumber;
+            }
+            if (closed) return;
+            done = number;
+
+            DisplayList commands = spare.getAndSet(null);
+            if (commands == null) commands = new DisplayList();
+            commands.reset();
+            FrameStats stats = renderer.render(layers.apply(viewport.metresPerPixel()), viewport, commands,
+                    () -> closed || isStale(viewport, latestRequest));
+            if (stats == null) {
+                spare.compareAndSet(null, commands);
+                cancelled++;
+                continue;
+            }
+            built++;
+            // A finished frame that was never shown is replaced; its list can be reused.
+            Frame unshown = finished.getAndSet(new Frame(commands, viewport, number, stats));
+            if (unshown != null) spare.compareAndSet(null, unshown.commands);
+            if (notified.compareAndSet(false, true)) onFrame.run();
+        }
+    }
+
+    private static boolean isStale(Viewport building, Viewport latest) {
+        if (latest.scale() != building.scale() || latest.width() != building.width()
+                || latest.height() != building.height()) {
+            return true;
+        }
+        double dx = Math.abs(latest.minX() - building.minX()) * latest.scale();
+        double dy = Math.abs(latest.minY() - building.minY()) * latest.scale();
+        return dx > latest.width() * STALE_FRACTION || dy > latest.height() * STALE_FRACTION;
+    }
+
+    /** Number of frames finished so far. */
+    public long builtCount() {
+        return built;
+    }
+
+    /** Number of frames cancelled so far because a newer request made them stale. */
+    public long cancelledCount() {
+        return cancelled;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.falkknudsen.jaywalk.render;
+
+import javafx.scene.paint.Color;
+
+/** Whatever {@link MapRenderer} draws on, in pixel coordinates with the origin in the top left corner.
+ A path is built with {@link #moveTo} and {@link #lineTo} after {@link #beginPath}, and then drawn at once
+ by {@link #stroke} or {@link #fill}. */
+public interface RenderTarget {
+    void clear(Color background);
+
+    void beginPath();
+
+    void moveTo(double x, double y);
+
+    void lineTo(double x, double y);
+
+    void closePath();
+
+    /** Draws the current path as lines of the given width in pixels. */
+    void stroke(Color colour, double width);
+
+    /** Fills the current path by the even-odd rule, so closed paths inside others make holes. */
+    void fill(Color colour);
+}
@@ -0,0 +1,96 @@
+package com.falkknudsen.jaywalk.render;
+
+import javafx.scene.image.Image;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Least-recently-used cache of rendered tiles, evicting once the images take up more than a budget of
+ bytes. Thread-safe: the workers put tiles in while the JavaFX thread gets them out. */
+public class TileCache {
+    private final long budget;
+    private final LinkedHashMap<TileKey, Image> tiles = new LinkedHashMap<>(256, 0.75f, true);
+    private long used;
+    private long hits, misses;
+    /** Bumped by {@link #invalidate}, so tiles drawn before it can be told apart. */
+    private long generation;
+
+    /** @param budget Bytes the images may take up, at four bytes per pixel. */
+    public TileCache(long budget) {
+        if (budget <= 0) throw new IllegalArgumentException("budget must be positive");
+        this.budget = budget;
+    }
+
+    /** The tile, or {@code null} if it isn't cached. Counts as a use of it. */
+    public synchronized Image get(TileKey key) {
+        Image image = tiles.get(key);
+        if (image == null) misses++;
+        else hits++;
+        return image;
+    }
+
+    /** Whether the tile is cached, without counting as a use of it. */
+    public synchronized boolean contains(TileKey key) {
+        return tiles.containsKey(key);
+    }
+
+    /** The number of times the cache has been {@link #invalidate invalidated}. Read it before drawing a tile,
+     and pass it to {@link #put}. */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /** Adds a tile, evicting the least recently used ones until the cache is within its budget again.
+     The tile just added is never evicted, even if it alone exceeds the budget.
+     @param generation The {@link #generation} from before the tile was drawn. If the cache has been
+                       invalidated since, the tile is drawn from old data and isn't added.
+     @return Whether the tile was added. */
+    public synchronized boolean put(TileKey key, Image image, long generation) {
+        if (generation != this.generation) return false;
+        Image old = tiles.put(key, image);
+        if (old != null) used -= bytes(old);
+        used += bytes(image);
+        Iterator<Map.Entry<TileKey, Image>> eldest = tiles.entrySet().iterator();
+        while (used > budget && tiles.size() > 1) {
+            Image evicted = eldest.next().getValue();
+            eldest.remove();
+            used -= bytes(evicted);
+        }
+        return true;
+    }
+
+    /** Drops every tile, and turns away those being drawn now, for when the map data has changed. */
+    public synchronized void invalidate() {
+        tiles.clear();
+        used = 0;
+        generation++;
+    }
+
+    public synchronized int size() {
+        return tiles.size();
+    }
+
+    /** Bytes taken up by the cached images. */
+    public synchronized long usedBytes() {
+        return used;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    private static long bytes(Image image) {
+        return (long) image.getWidth() * (long) image.getHeight() * 4;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "TileCache: " + tiles.size() + " tiles, " + used / (1 << 20) + " of " + budget / (1 << 20)
+                + " MB, " + hits + " hits, " + misses + " misses";
+    }
+}
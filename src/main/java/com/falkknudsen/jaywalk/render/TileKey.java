@@ -0,0 +1,42 @@
+package com.falkknudsen.jaywalk.render;
+
+/** One square tile of {@link #SIZE} pixels of the map at a zoom level. At zoom 0, one tile spans
+ {@link #WORLD} projected map units, and each level up halves that. Tile (0, 0) has its top left corner
+ at the origin of the projected coordinates, so columns and rows can be negative. */
+public record TileKey(int zoom, int column, int row) {
+    public static final int SIZE = 256;
+    public static final int MAX_ZOOM = 24;
+    /** Projected map units spanned by the tile at zoom 0. */
+    static final double WORLD = 360;
+
+    public TileKey {
+        if (zoom < 0 || zoom > MAX_ZOOM) throw new IllegalArgumentException("zoom must be in [0, " + MAX_ZOOM + "]");
+    }
+
+    /** Pixels per projected map unit at the given zoom level. */
+    public static double scale(int zoom) {
+        return SIZE * (double) (1L << zoom) / WORLD;
+    }
+
+    /** The zoom level whose scale is nearest to {@code scale} pixels per projected map unit. */
+    public static int zoomFor(double scale) {
+        long zoom = Math.round(Math.log(scale * WORLD / SIZE) / Math.log(2));
+        return Math.clamp(zoom, 0, MAX_ZOOM);
+    }
+
+    /** Projected map units spanned by a tile at the given zoom level. */
+    public static double span(int zoom) {
+        return WORLD / (1L << zoom);
+    }
+
+    /** The part of the map the tile shows. */
+    public Viewport viewport() {
+        double span = span(zoom);
+        return new Viewport((float) (column * span), (float) (row * span), scale(zoom), SIZE, SIZE);
+    }
+
+    /** The tile at the zoom level below that covers this one, or {@code null} at zoom 0. */
+    public TileKey parent() {
+        return zoom == 0 ? null : new TileKey(zoom - 1, Math.floorDiv(column, 2), Math.floorDiv(row, 2));
+    }
+}
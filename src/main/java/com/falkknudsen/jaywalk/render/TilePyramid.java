@@ -0,0 +1,103 @@
+package com.falkknudsen.jaywalk.render;
+
+import com.falkknudsen.jaywalk.Rectangle;
+import com.falkknudsen.jaywalk.contracts.IDrawableIndex;
+import com.falkknudsen.jaywalk.graph.EdgeIndex;
+
+import javax.imageio.ImageIO;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleFunction;
+import java.util.stream.LongStream;
+
+/** Renders every tile covering an area over a range of zoom levels to PNG files, laid out as
+ {@code zoom/column/row.png} under a directory, with {@link TileRasteriser}. Uses Java2D only, so it runs
+ without a display or GPU (start the JVM with {@code -Djava.awt.headless=true} on a machine without one).
+ The tiles of each zoom level are rendered in parallel on the common fork-join pool. */
+public final class TilePyramid {
+    private static final ThreadLocal<TileRasteriser> RASTERISERS = ThreadLocal.withInitial(TileRasteriser::new);
+
+    /** What {@link #render} did: the number of tiles and bytes written, and how long it took. */
+    public record Result(long tiles, long bytes, long nanos) {
+        public double tilesPerSecond() {
+            return tiles / (nanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d tiles, %.1f MB in %.1f s, %.0f tiles/s",
+                    tiles, bytes / 1e6, nanos / 1e9, tilesPerSecond());
+        }
+    }
+
+    private TilePyramid() {}
+
+    /** Number of tiles covering {@code area} at zoom levels {@code [minZoom, maxZoom]}. */
+    public static long tileCount(Rectangle area, int minZoom, int maxZoom) {
+        long count = 0;
+        for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+            int[] range = range(area, zoom);
+            count += (long) (range[2] - range[0] + 1) * (range[3] - range[1] + 1);
+        }
+        return count;
+    }
+
+    /** Renders and writes the tiles covering {@code area}, in projected map coordinates.
+     @param layers   The layer to draw from, given the metres per pixel of a tile.
+     @param progress Incremented as tiles are written, so another thread can follow along. */
+    public static Result render(DoubleFunction<IDrawableIndex> layers, Rectangle area, int minZoom, int maxZoom,
+                                Path directory, LongAdder progress) throws IOException {
+        if (minZoom < 0 || maxZoom > TileKey.MAX_ZOOM || minZoom > maxZoom) {
+            throw new IllegalArgumentException("zoom levels must be in [0, " + TileKey.MAX_ZOOM + "], lowest first");
+        }
+        long start = System.nanoTime();
+        LongAdder tiles = new LongAdder(), bytes = new LongAdder();
+        try {
+            for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+                int z = zoom;
+                int[] range = range(area, zoom);
+                int columns = range[2] - range[0] + 1;
+                long count = (long) columns * (range[3] - range[1] + 1);
+                IDrawableIndex layer = layers.apply(EdgeIndex.METRES_PER_UNIT / TileKey.scale(zoom));
+                for (int column = range[0]; column <= range[2]; column++) {
+                    Files.createDirectories(directory.resolve(Integer.toString(zoom)).resolve(Integer.toString(column)));
+                }
+                LongStream.range(0, count).parallel().forEach(i -> {
+                    TileKey key = new TileKey(z, range[0] + (int) (i % columns), range[1] + (int) (i / columns));
+                    bytes.add(write(key, layer, directory));
+                    tiles.increment();
+                    progress.increment();
+                });
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return new Result(tiles.sum(), bytes.sum(), System.nanoTime() - start);
+    }
+
+    /** Renders one tile and writes it under {@code directory}.
+     @return The size of the file. */
+    private static long write(TileKey key, IDrawableIndex layer, Path directory) {
+        TileRasteriser rasteriser = RASTERISERS.get();
+        rasteriser.render(key, layer);
+        Path file = directory.resolve(Integer.toString(key.zoom())).resolve(Integer.toString(key.column()))
+                .resolve(key.row() + ".png");
+        try {
+            ImageIO.write(rasteriser.opaqueImage(), "png", file.toFile());
+            return Files.size(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** The first column, first row, last column and last row of the tiles covering {@code area} at a zoom level. */
+    private static int[] range(Rectangle area, int zoom) {
+        double span = TileKey.span(zoom);
+        return new int[]{
+                (int) Math.floor(area.minLon() / span), (int) Math.floor(area.minLat() / span),
+                (int) Math.floor(area.maxLon() / span), (int) Math.floor(area.maxLat() / span)};
+    }
+}
@@ -0,0 +1,47 @@
+package com.falkknudsen.jaywalk.render;
+
+import com.falkknudsen.jaywalk.contracts.IDrawableIndex;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/** Draws tiles into an off-screen image with {@link MapRenderer} and an {@link AwtTarget}. The image is
+ reused for every tile, so the pixels must be copied out before the next one is drawn, and each thread
+ needs its own rasteriser. */
+public class TileRasteriser {
+    private final BufferedImage image = new BufferedImage(TileKey.SIZE, TileKey.SIZE, BufferedImage.TYPE_INT_ARGB_PRE);
+    /** Copy of {@link #image} without the alpha channel, for writing to files. Tiles are opaque anyway. */
+    private BufferedImage opaque;
+    private final AwtTarget target;
+    private final MapRenderer renderer = new MapRenderer();
+
+    public TileRasteriser() {
+        Graphics2D graphics = image.createGraphics();
+        target = new AwtTarget(graphics, TileKey.SIZE, TileKey.SIZE);
+    }
+
+    /** Draws the tile from {@code layer}, which should be the layer for its scale. */
+    public FrameStats render(TileKey key, IDrawableIndex layer) {
+        return renderer.render(layer, key.viewport(), target);
+    }
+
+    /** The image the last tile was drawn into. */
+    public BufferedImage image() {
+        return image;
+    }
+
+    /** A copy of {@link #image()} without the alpha channel, which makes smaller files.
+     The copy is reused too. */
+    public BufferedImage opaqueImage() {
+        if (opaque == null) opaque = new BufferedImage(TileKey.SIZE, TileKey.SIZE, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = pixels();
+        System.arraycopy(pixels, 0, ((DataBufferInt) opaque.getRaster().getDataBuffer()).getData(), 0, pixels.length);
+        return opaque;
+    }
+
+    /** The pixels of {@link #image()}, row by row, as premultiplied ARGB. Not a copy. */
+    public int[] pixels() {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+}
@@ -0,0 +1,118 @@
+package com.falkknudsen.jaywalk.render;
+
+import com.falkknudsen.jaywalk.contracts.IDrawableIndex;
+import com.falkknudsen.jaywalk.graph.EdgeIndex;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.DoubleFunction;
+
+/** Renders tiles into a {@link TileCache} on a pool of background threads. Requests are served by
+ priority, and requests for tiles no longer wanted (see {@link #retain}) are dropped before they are
+ drawn, so a fast pan doesn't leave the workers busy with tiles that have scrolled away. */
+public class TileRenderer implements AutoCloseable {
+    /** Priority of tiles on screen; prefetched tiles have higher numbers and so come later. */
+    public static final int VISIBLE = 0;
+
+    private final DoubleFunction<IDrawableIndex> layers;
+    private final TileCache cache;
+    private final Consumer<TileKey> onReady;
+    private final ThreadPoolExecutor pool;
+    private final Set<TileKey> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong rendered = new AtomicLong();
+    private final ThreadLocal<TileRasteriser> rasterisers = ThreadLocal.withInitial(TileRasteriser::new);
+    private volatile Set<TileKey> wanted;
+
+    /** @param layers  The layer to draw from, given the metres per pixel of a tile.
+     @param onReady Called on a worker thread with every tile once it is in the cache.
+     @param threads Number of worker threads. */
+    public TileRenderer(DoubleFunction<IDrawableIndex> layers, TileCache cache, Consumer<TileKey> onReady,
+                        int threads) {
+        this.layers = layers;
+        this.cache = cache;
+        this.onReady = onReady;
+        pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS, new PriorityBlockingQueue<>(),
+                Thread.ofPlatform().daemon().name("tile-", 0).factory());
+    }
+
+    /** Queues the tile to be rendered, unless it is cached or queued already. */
+    public void request(TileKey key, int priority) {
+        if (cache.contains(key) || !pending.add(key)) return;
+        pool.execute(new Task(key, priority, sequence.getAndIncrement()));
+    }
+
+    /** Drops every queued tile not in {@code keys} once a worker gets to it, or keeps all if {@code null}. */
+    public void retain(Set<TileKey> keys) {
+        wanted = keys;
+    }
+
+    /** Number of tiles queued or being rendered. */
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    /** Number of tiles rendered so far. */
+    public long renderedCount() {
+        return rendered.get();
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    private void render(Task task) {
+        TileKey key = task.key;
+        boolean stale;
+        try {
+            Set<TileKey> keys = wanted;
+            if (keys != null && !keys.contains(key)) return;
+            // Read before the layer is, so a tile drawn from data that has changed since is never cached.
+            long generation = cache.generation();
+            double metresPerPixel = EdgeIndex.METRES_PER_UNIT / TileKey.scale(key.zoom());
+            TileRasteriser rasteriser = rasterisers.get();
+            rasteriser.render(key, layers.apply(metresPerPixel));
+            WritableImage image = new WritableImage(TileKey.SIZE, TileKey.SIZE);
+            image.getPixelWriter().setPixels(0, 0, TileKey.SIZE, TileKey.SIZE, PixelFormat.getIntArgbPreInstance(),
+                    rasteriser.pixels(), 0, TileKey.SIZE);
+            stale = !cache.put(key, image, generation);
+            if (!stale) rendered.incrementAndGet();
+        } finally {
+            pending.remove(key);
+        }
+        // Requests made while it was being drawn were dropped as pending, so it is drawn again from the new data.
+        if (stale) request(key, task.priority);
+        else onReady.accept(key);
+    }
+
+    private final class Task implements Runnable, Comparable<Task> {
+        final TileKey key;
+        final int priority;
+        final long sequence;
+
+        Task(TileKey key, int priority, long sequence) {
+            this.key = key;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            render(this);
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            return priority != other.priority ? Integer.compare(priority, other.priority)
+                    : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.falkknudsen.jaywalk.render;
+
+import com.falkknudsen.jaywalk.contracts.IDrawableIndex;
+import javafx.application.Platform;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.DoubleFunction;
+
+/** Shows the map from tiles rendered in the background, so a frame on the JavaFX thread costs a few dozen
+ image copies however much there is to draw. Tiles not rendered yet are stood in for by the matching part
+ of a cached tile from a lower zoom level, or by the background colour, and are requested along with the
+ tiles just beyond the screen in the direction it last moved. Once tiles are ready, the view asks to be
+ drawn again. */
+public class TiledMapView implements AutoCloseable {
+    /** Lower zoom levels to look through for a stand-in for a missing tile. */
+    private static final int PLACEHOLDER_LEVELS = 4;
+    /** Rows or columns of tiles prefetched beyond the screen in the direction of movement. */
+    private static final int PREFETCH = 1;
+
+    private final TileCache cache;
+    private final TileRenderer renderer;
+    private final Runnable repaint;
+    private final AtomicBoolean repaintQueued = new AtomicBoolean();
+    private Viewport previous;
+    private int directionX, directionY;
+
+    /** @param layers  The layer to draw from, given the metres per pixel of a tile.
+     @param budget  Bytes the cached tiles may take up.
+     @param repaint Called on the JavaFX thread when tiles have become ready since the last {@link #draw}. */
+    public TiledMapView(DoubleFunction<IDrawableIndex> layers, long budget, Runnable repaint) {
+        this.repaint = repaint;
+        cache = new TileCache(budget);
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        renderer = new TileRenderer(layers, cache, key -> {
+            if (repaintQueued.compareAndSet(false, true)) Platform.runLater(repaint);
+        }, threads);
+    }
+
+    /** Draws the viewport on {@code gc} from the cached tiles, and requests the missing ones.
+     Must be called on the JavaFX thread. */
+    public void draw(GraphicsContext gc, Viewport viewport) {
+        repaintQueued.set(false);
+        int zoom = TileKey.zoomFor(viewport.scale());
+        double span = TileKey.span(zoom), size = span * viewport.scale();
+        int firstColumn = (int) Math.floor(viewport.minX() / span), lastColumn = (int) Math.floor(viewport.maxX() / span);
+        int firstRow = (int) Math.floor(viewport.minY() / span), lastRow = (int) Math.floor(viewport.maxY() / span);
+        track(viewport);
+
+        Set<TileKey> wanted = new HashSet<>();
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                TileKey key = new TileKey(zoom, column, row);
+                double x = (column * span - viewport.minX()) * viewport.scale();
+                double y = (row * span - viewport.minY()) * viewport.scale();
+                Image image = cache.get(key);
+                if (image != null) {
+                    gc.drawImage(image, x, y, size, size);
+                } else {
+                    drawPlaceholder(gc, key, x, y, size);
+                    wanted.add(key);
+                }
+            }
+        }
+        // Prefetch the rows and columns the screen is moving towards.
+        if (directionX != 0) {
+            int column = directionX > 0 ? lastColumn : firstColumn;
+            for (int i = 1; i <= PREFETCH; i++) {
+                for (int row = firstRow; row <= lastRow; row++) {
+                    wanted.add(new TileKey(zoom, column + i * directionX, row));
+                }
+            }
+        }
+        if (directionY != 0) {
+            int row = directionY > 0 ? lastRow : firstRow;
+            for (int i = 1; i <= PREFETCH; i++) {
+                for (int column = firstColumn - PREFETCH; column <= lastColumn + PREFETCH; column++) {
+                    wanted.add(new TileKey(zoom, column, row + i * directionY));
+                }
+            }
+        }
+        renderer.retain(wanted);
+        for (TileKey key : wanted) {
+            boolean visible = key.column() >= firstColumn && key.column() <= lastColumn
+                    && key.row() >= firstRow && key.row() <= lastRow;
+            renderer.request(key, visible ? TileRenderer.VISIBLE : TileRenderer.VISIBLE + 1);
+        }
+    }
+
+    /** Remembers which way the viewport moved since the last frame, if it kept its scale. */
+    private void track(Viewport viewport) {
+        if (previous != null && previous.scale() == viewport.scale()) {
+            float dx = viewport.minX() - previous.minX(), dy = viewport.minY() - previous.minY();
+            if (dx != 0 || dy != 0) {
+                directionX = (int) Math.signum(dx);
+                directionY = (int) Math.signum(dy);
+            }
+        } else {
+            directionX = directionY = 0;
+        }
+        previous = viewport;
+    }
+
+    /** Draws the part of the nearest cached lower-zoom tile that covers the tile, scaled up, or a plain
+     square if there is none. */
+    private void drawPlaceholder(GraphicsContext gc, TileKey key, double x, double y, double size) {
+        TileKey parent = key;
+        for (int level = 1; level <= PLACEHOLDER_LEVELS; level++) {
+            parent = parent.parent();
+            if (parent == null) break;
+            Image image = cache.get(parent);
+            if (image == null) continue;
+            int parts = 1 << level;
+            double part = (double) TileKey.SIZE / parts;
+            double sourceX = Math.floorMod(key.column(), parts) * part, sourceY = Math.floorMod(key.row(), parts) * part;
+            gc.drawImage(image, sourceX, sourceY, part, part, x, y, size, size);
+            return;
+        }
+        gc.setFill(MapRenderer.BACKGROUND);
+        gc.fillRect(x, y, size, size);
+    }
+
+    /** Drops every cached tile, for when the map data has changed. */
+    public void invalidate() {
+        cache.invalidate();
+        if (repaintQueued.compareAndSet(false, true)) Platform.runLater(repaint);
+    }
+
+    public TileCache cache() {
+        return cache;
+    }
+
+    public TileRenderer renderer() {
+        return renderer;
+    }
+
+    @Override
+    public void close() {
+        renderer.close();
+    }
+}
@@ -0,0 +1,37 @@
+package com.falkknudsen.jaywalk.render;
+
+import com.falkknudsen.jaywalk.graph.EdgeIndex;
+
+/** The part of the map shown on screen: the projected coordinates of the top left corner, the number of
+ pixels per projected map unit, and the size of the screen in pixels. */
+public record Viewport(float minX, float minY, double scale, int width, int height) {
+    public Viewport {
+        if (scale <= 0 || width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("scale and size must be positive");
+        }
+    }
+
+    /** A viewport of the given size centred on the projected point (x, y). */
+    public static Viewport centred(float x, float y, double metresPerPixel, int width, int height) {
+        double scale = EdgeIndex.METRES_PER_UNIT / metresPerPixel;
+        return new Viewport((float) (x - width / 2.0 / scale), (float) (y - height / 2.0 / scale),
+                scale, width, height);
+    }
+
+    public float maxX() {
+        return (float) (minX + width / scale);
+    }
+
+    public float maxY() {
+        return (float) (minY + height / scale);
+    }
+
+    public double metresPerPixel() {
+        return EdgeIndex.METRES_PER_UNIT / scale;
+    }
+
+    /** This viewport moved by the given number of pixels. */
+    public Viewport panned(double dx, double dy) {
+        return new Viewport((float) (minX + dx / scale), (float) (minY + dy / scale), scale, width, height);
+    }
+}
@@ -0,0 +1,123 @@
+package com.falkknudsen.jaywalk.rtree;
+
+import com.falkknudsen.jaywalk.HighWay;
+import com.falkknudsen.jaywalk.Relation;
+import com.falkknudsen.jaywalk.Way;
+import com.falkknudsen.jaywalk.WayType;
+import com.falkknudsen.jaywalk.contracts.IDrawable;
+import com.falkknudsen.jaywalk.structs.CoordinatePool;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/** Binary encoding of the drawables stored in a {@link PagedRTree}: a tag byte and the {@link WayType},
+ then for ways the number of points and their projected coordinates, or for {@link Way#isPooled pooled} ways
+ the handle of the coordinates in the {@link CoordinatePool}, for roads also the direction, and for relations
+ the member ways and relations, recursively. */
+final class ItemCodec {
+    private static final byte WAY = 0, HIGHWAY = 1, RELATION = 2, POOLED_WAY = 3, POOLED_HIGHWAY = 4;
+    private static final WayType[] TYPES = WayType.values();
+
+    private ItemCodec() {}
+
+    /** Number of bytes {@link #write} writes for {@code item}. */
+    static int size(IDrawable item) {
+        return switch (item) {
+            case HighWay road -> 3 + (road.isPooled() ? 8 : 4 + road.size() * 8);
+            case Way way -> 2 + (way.isPooled() ? 8 : 4 + way.size() * 8);
+            case Relation relation -> {
+                int size = 2 + 4 + 4;
+                for (Way way : relation.ways) size += size(way);
+                for (Relation member : relation.relations) size += size(member);
+                yield size;
+            }
+            default -> throw new IllegalArgumentException("Cannot store " + item.getClass().getSimpleName());
+        };
+    }
+
+    /** Whether {@code item}, or any member of it, has its coordinates in the {@link CoordinatePool}, in which
+     case {@link #write} writes the handles and the pool must be saved alongside. */
+    static boolean usesPool(IDrawable item) {
+        return switch (item) {
+            case Way way -> way.isPooled();
+            case Relation relation -> {
+                for (Way way : relation.ways) if (way.isPooled()) yield true;
+                for (Relation member : relation.relations) if (usesPool(member)) yield true;
+                yield false;
+            }
+            default -> false;
+        };
+    }
+
+    static void write(DataOutput out, IDrawable item) throws IOException {
+        switch (item) {
+        case HighWay road -> {
+            out.writeByte(road.isPooled() ? POOLED_HIGHWAY : HIGHWAY);
+            out.writeByte(road.type().ordinal());
+            out.writeByte(road.direction());
+            writeCoordinates(out, road);
+        }
+        case Way way -> {
+            out.writeByte(way.isPooled() ? POOLED_WAY : WAY);
+            out.writeByte(way.type().ordinal());
+            writeCoordinates(out, way);
+        }
+        case Relation relation -> {
+            out.writeByte(RELATION);
+            out.writeByte(relation.type().ordinal());
+            out.writeInt(relation.ways.length);
+            out.writeInt(relation.relations.length);
+            for (Way way : relation.ways) write(out, way);
+            for (Relation member : relation.relations) write(out, member);
+        }
+        default -> throw new IllegalArgumentException("Cannot store " + item.getClass().getSimpleName());
+        }
+    }
+
+    private static void writeCoordinates(DataOutput out, Way way) throws IOException {
+        if (way.isPooled()) {
+            out.writeLong(way.poolHandle());
+            return;
+        }
+        float[] coordinates = new float[way.size() * 2];
+        way.copyCoordinates(coordinates, 0);
+        out.writeInt(way.size());
+        for (float c : coordinates) out.writeFloat(c);
+    }
+
+    /** Reads an item from the current position of {@code in}, advancing past it.
+     @param poolBase What to add to the pool handles written, as {@link CoordinatePool#map} returned when the
+                     pool saved with the tree was mapped. */
+    static IDrawable read(ByteBuffer in, long poolBase) {
+        byte tag = in.get();
+        WayType type = TYPES[in.get()];
+        return switch (tag) {
+            case WAY -> Way.fromCoordinates(readCoordinates(in), type);
+            case HIGHWAY -> {
+                byte direction = in.get();
+                yield HighWay.fromCoordinates(readCoordinates(in), direction, type);
+            }
+            case POOLED_WAY -> Way.fromPool(in.getLong() + poolBase, type);
+            case POOLED_HIGHWAY -> {
+                byte direction = in.get();
+                yield HighWay.fromPool(in.getLong() + poolBase, direction, type);
+            }
+            case RELATION -> {
+                Way[] ways = new Way[in.getInt()];
+                Relation[] relations = new Relation[in.getInt()];
+                for (int i = 0; i < ways.length; i++) ways[i] = (Way) read(in, poolBase);
+                for (int i = 0; i < relations.length; i++) relations[i] = (Relation) read(in, poolBase);
+                yield Relation.create(ways, relations, type);
+            }
+            default -> throw new IllegalStateException("Unknown item tag " + tag);
+        };
+    }
+
+    private static float[] readCoordinates(ByteBuffer in) {
+        float[] coordinates = new float[in.getInt() * 2];
+        in.asFloatBuffer().get(coordinates);
+        in.position(in.position() + coordinates.length * 4);
+        return coordinates;
+    }
+}
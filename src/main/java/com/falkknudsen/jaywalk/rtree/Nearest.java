@@ -0,0 +1,39 @@
+package com.falkknudsen.jaywalk.rtree;
+
+/** The best {@code k} items found so far by a nearest-neighbour search, kept sorted by distance
+ in the caller's arrays. Used to merge the results of searches over several trees. */
+final class Nearest {
+    final int[] out;
+    final float[] distances;
+    final int k;
+    final float maxDistance;
+    int found;
+    /** Added to every item offered, e.g. to turn positions in an overlay into item indices. */
+    int offset;
+
+    /** @param found Number of items already in {@code out} and {@code distances}, sorted. */
+    Nearest(int[] out, float[] distances, int k, float maxDistance, int found) {
+        this.out = out;
+        this.distances = distances;
+        this.k = k;
+        this.maxDistance = maxDistance;
+        this.found = found;
+    }
+
+    /** Items further away than this can't make it into the result. */
+    float bound() {
+        return found == k ? distances[k - 1] : maxDistance;
+    }
+
+    /** Offers an item at the given distance. Infinitely far items are never taken. */
+    void offer(int item, float distance) {
+        if (distance == Float.POSITIVE_INFINITY || distance > maxDistance || (found == k && distance >= distances[k - 1])) return;
+        int at = found == k ? k - 1 : found++;
+        for (; at > 0 && distances[at - 1] > distance; at--) {
+            out[at] = out[at - 1];
+            distances[at] = distances[at - 1];
+        }
+        out[at] = offset + item;
+        distances[at] = distance;
+    }
+}
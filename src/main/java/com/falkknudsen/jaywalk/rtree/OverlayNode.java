@@ -0,0 +1,194 @@
+package com.falkknudsen.jaywalk.rtree;
+
+import com.falkknudsen.jaywalk.util.Maths;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/** Immutable node of the R-tree holding the items added to a {@link Snapshot} since its base tree was packed.
+ Inserting copies the nodes on the path from the root to the leaf and shares all the others, so older
+ snapshots keep seeing the tree exactly as it was. Items are identified by their position in
+ the snapshot's list of added items. */
+final class OverlayNode implements Serializable {
+    final float minX, minY, maxX, maxY;
+    /** Child nodes, or {@code null} for a leaf. */
+    final OverlayNode[] children;
+    /** Item positions of a leaf, and their bounding boxes, four floats each. {@code null} for internal nodes. */
+    final int[] items;
+    final float[] boxes;
+
+    private OverlayNode(OverlayNode[] children) {
+        this.children = children;
+        this.items = null;
+        this.boxes = null;
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        for (OverlayNode child : children) {
+            minX = Math.min(minX, child.minX);
+            minY = Math.min(minY, child.minY);
+            maxX = Math.max(maxX, child.maxX);
+            maxY = Math.max(maxY, child.maxY);
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    private OverlayNode(int[] items, float[] boxes) {
+        this.children = null;
+        this.items = items;
+        this.boxes = boxes;
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < items.length; i++) {
+            minX = Math.min(minX, boxes[i * 4]);
+            minY = Math.min(minY, boxes[i * 4 + 1]);
+            maxX = Math.max(maxX, boxes[i * 4 + 2]);
+            maxY = Math.max(maxY, boxes[i * 4 + 3]);
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    /** A tree with {@code item} inserted into {@code root}, which may be {@code null} for an empty tree.
+     {@code root} itself is left unchanged. */
+    static OverlayNode insert(OverlayNode root, int item, float minX, float minY, float maxX, float maxY) {
+        if (root == null) return new OverlayNode(new int[] {item}, new float[] {minX, minY, maxX, maxY});
+        OverlayNode[] result = root.insert(item, minX, minY, maxX, maxY);
+        return result.length == 1 ? result[0] : new OverlayNode(result);
+    }
+
+    /** @return The copy of this node with the item inserted, or two nodes if it had to be split. */
+    private OverlayNode[] insert(int item, float minX, float minY, float maxX, float maxY) {
+        if (children == null) {
+            int n = items.length;
+            int[] newItems = Arrays.copyOf(items, n + 1);
+            float[] newBoxes = Arrays.copyOf(boxes, (n + 1) * 4);
+            newItems[n] = item;
+            newBoxes[n * 4] = minX;
+            newBoxes[n * 4 + 1] = minY;
+            newBoxes[n * 4 + 2] = maxX;
+            newBoxes[n * 4 + 3] = maxY;
+            if (n + 1 <= RTree.MAX_ENTRIES) return new OverlayNode[] {new OverlayNode(newItems, newBoxes)};
+            return splitLeaf(newItems, newBoxes);
+        }
+
+        int best = chooseSubtree(minX, minY, maxX, maxY);
+        OverlayNode[] replaced = children[best].insert(item, minX, minY, maxX, maxY);
+        OverlayNode[] newChildren = Arrays.copyOf(children, children.length - 1 + replaced.length);
+        newChildren[best] = replaced[0];
+        if (replaced.length == 2) newChildren[children.length] = replaced[1];
+        if (newChildren.length <= RTree.MAX_ENTRIES) return new OverlayNode[] {new OverlayNode(newChildren)};
+
+        float[] childBoxes = new float[newChildren.length * 4];
+        for (int i = 0; i < newChildren.length; i++) {
+            childBoxes[i * 4] = newChildren[i].minX;
+            childBoxes[i * 4 + 1] = newChildren[i].minY;
+            childBoxes[i * 4 + 2] = newChildren[i].maxX;
+            childBoxes[i * 4 + 3] = newChildren[i].maxY;
+        }
+        boolean[] moved = RTree.quadraticSplit(childBoxes, newChildren.length);
+        int movedCount = 0;
+        for (boolean m : moved) if (m) movedCount++;
+        OverlayNode[] kept = new OverlayNode[newChildren.length - movedCount], gone = new OverlayNode[movedCount];
+        for (int i = 0, k = 0, g = 0; i < newChildren.length; i++) {
+            if (moved[i]) gone[g++] = newChildren[i];
+            else kept[k++] = newChildren[i];
+        }
+        return new OverlayNode[] {new OverlayNode(kept), new OverlayNode(gone)};
+    }
+
+    private static OverlayNode[] splitLeaf(int[] items, float[] boxes) {
+        boolean[] moved = RTree.quadraticSplit(boxes, items.length);
+        int movedCount = 0;
+        for (boolean m : moved) if (m) movedCount++;
+        int[] keptItems = new int[items.length - movedCount], goneItems = new int[movedCount];
+        float[] keptBoxes = new float[keptItems.length * 4], goneBoxes = new float[movedCount * 4];
+        for (int i = 0, k = 0, g = 0; i < items.length; i++) {
+            if (moved[i]) {
+                goneItems[g] = items[i];
+                System.arraycopy(boxes, i * 4, goneBoxes, g++ * 4, 4);
+            } else {
+                keptItems[k] = items[i];
+                System.arraycopy(boxes, i * 4, keptBoxes, k++ * 4, 4);
+            }
+        }
+        return new OverlayNode[] {new OverlayNode(keptItems, keptBoxes), new OverlayNode(goneItems, goneBoxes)};
+    }
+
+    private int chooseSubtree(float minX, float minY, float maxX, float maxY) {
+        int best = 0;
+        float bestEnlargement = Float.POSITIVE_INFINITY, bestArea = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < children.length; i++) {
+            OverlayNode child = children[i];
+            float area = (child.maxX - child.minX) * (child.maxY - child.minY);
+            float enlarged = (Math.max(child.maxX, maxX) - Math.min(child.minX, minX))
+                    * (Math.max(child.maxY, maxY) - Math.min(child.minY, minY));
+            if (enlarged - area < bestEnlargement || (enlarged - area == bestEnlargement && area < bestArea)) {
+                best = i;
+                bestEnlargement = enlarged - area;
+                bestArea = area;
+            }
+        }
+        return best;
+    }
+
+    /** Passes the position of every item whose bounding box intersects the given rectangle to {@code action}. */
+    void query(float minX, float minY, float maxX, float maxY, IntConsumer action) {
+        if (children == null) {
+            for (int i = 0; i < items.length; i++) {
+                if (boxes[i * 4] <= maxX && minX <= boxes[i * 4 + 2]
+                        && boxes[i * 4 + 1] <= maxY && minY <= boxes[i * 4 + 3]) {
+                    action.accept(items[i]);
+                }
+            }
+            return;
+        }
+        for (OverlayNode child : children) {
+            if (child.minX <= maxX && minX <= child.maxX && child.minY <= maxY && minY <= child.maxY) {
+                child.query(minX, minY, maxX, maxY, action);
+            }
+        }
+    }
+
+    /** Depth-first branch-and-bound search for the items nearest to (x, y). Children are visited
+     nearest box first, and skipped once their box is further away than the k'th best item so far.
+     @param exact Exact squared distance to an item, by position, or infinity if it has been removed. */
+    void nearest(float x, float y, Nearest result, ItemDistance exact) {
+        if (children == null) {
+            for (int i = 0; i < items.length; i++) {
+                if (boxDistance(x, y, boxes, i) > result.bound()) continue;
+                float distance = (float) Math.sqrt(exact.distanceSquared(items[i]));
+                result.offer(items[i], distance);
+            }
+            return;
+        }
+        float[] distances = new float[children.length];
+        long[] order = new long[children.length];
+        for (int i = 0; i < children.length; i++) {
+            OverlayNode c = children[i];
+            distances[i] = (float) Math.sqrt(Maths.boxDistanceSquared(x, y, c.minX, c.minY, c.maxX, c.maxY));
+            order[i] = Maths.sortKey(distances[i], i);
+        }
+        Arrays.sort(order);
+        for (long key : order) {
+            int i = Maths.sortKeyIndex(key);
+            if (distances[i] > result.bound()) break;
+            children[i].nearest(x, y, result, exact);
+        }
+    }
+
+    private static float boxDistance(float x, float y, float[] boxes, int i) {
+        return (float) Math.sqrt(Maths.boxDistanceSquared(x, y,
+                boxes[i * 4], boxes[i * 4 + 1], boxes[i * 4 + 2], boxes[i * 4 + 3]));
+    }
+
+    @FunctionalInterface
+    interface ItemDistance {
+        double distanceSquared(int item);
+    }
+}
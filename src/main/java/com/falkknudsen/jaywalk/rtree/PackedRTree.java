@@ -0,0 +1,262 @@
+package com.falkknudsen.jaywalk.rtree;
+
+import com.falkknudsen.jaywalk.Rectangle;
+import com.falkknudsen.jaywalk.contracts.IDrawable;
+import com.falkknudsen.jaywalk.structs.MinHeap;
+import com.falkknudsen.jaywalk.util.Maths;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/** Static R-tree stored in flat arrays instead of node objects.<br><br>
+
+ Every entry, whether an item or a node, has four floats in {@link #boxes} and one int in {@link #children}.
+ The entries are laid out level by level, leaves first: entries {@code [0, size)} are the items in
+ Sort-Tile-Recursive order, and {@code children} holds their index in the item table. Each level above
+ holds one entry per node of {@link RTree#MAX_ENTRIES} entries from the level below, and {@code children}
+ holds the position of its first child; the children are the run from there up to the next
+ {@code MAX_ENTRIES} entries or the end of the level, whichever comes first. The last level is the root.<br>
+ Queries report item indices, so with {@link #query(float, float, float, float, int[])} or an
+ {@link IntConsumer} that does not capture, they allocate nothing. */
+public class PackedRTree implements Serializable {
+    private static final int NODE_SIZE = RTree.MAX_ENTRIES;
+    /** Items per parallel task when computing bounding boxes, and so per increment of the progress counter. */
+    private static final int PROGRESS_CHUNK = 4096;
+    /** Scratch space for {@link #nearest}, one per thread. Entries are pushed by position,
+     and items with their exact distance as the complement of their index. */
+    private static final ThreadLocal<MinHeap> HEAP = ThreadLocal.withInitial(MinHeap::new);
+
+    private final IDrawable[] items;
+    /** Four floats per entry: minX, minY, maxX, maxY. */
+    private final float[] boxes;
+    /** Item index for entries on the leaf level, position of the first child for the others. */
+    private final int[] children;
+    /** End position of each level, leaves first. */
+    private final int[] levelEnds;
+
+    private PackedRTree(IDrawable[] items, float[] boxes, int[] children, int[] levelEnds) {
+        this.items = items;
+        this.boxes = boxes;
+        this.children = children;
+        this.levelEnds = levelEnds;
+    }
+
+    public static PackedRTree build(List<? extends IDrawable> items) {
+        IDrawable[] array = items.toArray(new IDrawable[0]);
+        float[] itemBoxes = new float[array.length * 4];
+        computeBoxes(array, itemBoxes, 0, new LongAdder());
+        return build(array, itemBoxes);
+    }
+
+    /** Computes the bounding boxes of {@code items[from..]} into {@code boxes}, four floats per item,
+     in parallel. {@code progress} is incremented as items are done, so another thread can follow along. */
+    static void computeBoxes(IDrawable[] items, float[] boxes, int from, LongAdder progress) {
+        int chunks = (items.length - from + PROGRESS_CHUNK - 1) / PROGRESS_CHUNK;
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            int start = from + chunk * PROGRESS_CHUNK, end = Math.min(items.length, start + PROGRESS_CHUNK);
+            for (int i = start; i < end; i++) {
+                Rectangle box = items[i].boundingBox();
+                boxes[i * 4] = box.minLon();
+                boxes[i * 4 + 1] = box.minLat();
+                boxes[i * 4 + 2] = box.maxLon();
+                boxes[i * 4 + 3] = box.maxLat();
+            }
+            progress.add(end - start);
+        });
+    }
+
+    /** Builds the tree over {@code items}, whose bounding boxes have already been computed.
+     The STR sorts and every level of nodes are done in parallel.
+     @param itemBoxes Four floats per item: minX, minY, maxX, maxY. */
+    static PackedRTree build(IDrawable[] items, float[] itemBoxes) {
+        int n = items.length;
+        // Count the entries on every level, to allocate everything up front.
+        int total = n, levels = 1;
+        for (int count = n; count > 1; levels++) {
+            count = (count + NODE_SIZE - 1) / NODE_SIZE;
+            total += count;
+        }
+        float[] boxes = new float[total * 4];
+        int[] children = new int[total];
+        int[] levelEnds = new int[levels];
+
+        int[] leafOrder = RTree.strOrder(itemBoxes, n, NODE_SIZE);
+        IntStream.range(0, n).parallel().forEach(i -> {
+            System.arraycopy(itemBoxes, leafOrder[i] * 4, boxes, i * 4, 4);
+            children[i] = leafOrder[i];
+        });
+        levelEnds[0] = n;
+
+        // Each level groups runs of the one below, and is then itself put in STR order. That only moves
+        // whole (box, first child) entries around; the runs they point to stay where they are.
+        int start = 0;
+        for (int level = 1; level < levels; level++) {
+            int end = levelEnds[level - 1], from = start;
+            int count = (end - start + NODE_SIZE - 1) / NODE_SIZE;
+            float[] nodeBoxes = new float[count * 4];
+            IntStream.range(0, count).parallel().forEach(node -> {
+                int first = from + node * NODE_SIZE, last = Math.min(end, first + NODE_SIZE);
+                float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+                float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+                for (int i = first; i < last; i++) {
+                    minX = Math.min(minX, boxes[i * 4]);
+                    minY = Math.min(minY, boxes[i * 4 + 1]);
+                    maxX = Math.max(maxX, boxes[i * 4 + 2]);
+                    maxY = Math.max(maxY, boxes[i * 4 + 3]);
+                }
+                nodeBoxes[node * 4] = minX;
+                nodeBoxes[node * 4 + 1] = minY;
+                nodeBoxes[node * 4 + 2] = maxX;
+                nodeBoxes[node * 4 + 3] = maxY;
+            });
+            int[] order = RTree.strOrder(nodeBoxes, count, NODE_SIZE);
+            IntStream.range(0, count).parallel().forEach(i -> {
+                System.arraycopy(nodeBoxes, order[i] * 4, boxes, (end + i) * 4, 4);
+                children[end + i] = from + order[i] * NODE_SIZE;
+            });
+            levelEnds[level] = end + count;
+            start = end;
+        }
+        return new PackedRTree(items, boxes, children, levelEnds);
+    }
+
+    /** Passes the index of every item whose bounding box intersects the given rectangle to {@code action}. */
+    public void queryIndices(float minX, float minY, float maxX, float maxY, IntConsumer action) {
+        int top = levelEnds.length - 1;
+        search(top, top == 0 ? 0 : levelEnds[top - 1], levelEnds[top], minX, minY, maxX, maxY, action);
+    }
+
+    private void search(int level, int from, int to, float minX, float minY, float maxX, float maxY,
+                        IntConsumer action) {
+        for (int i = from; i < to; i++) {
+            if (!intersects(i, minX, minY, maxX, maxY)) continue;
+            if (level == 0) {
+                action.accept(children[i]);
+            } else {
+                int first = children[i];
+                search(level - 1, first, Math.min(first + NODE_SIZE, levelEnds[level - 1]),
+                        minX, minY, maxX, maxY, action);
+            }
+        }
+    }
+
+    /** Writes the index of every item whose bounding box intersects the given rectangle to {@code out},
+     as far as there is room.
+     @return The number of items found, which is more than {@code out.length} if some didn't fit. */
+    public int query(float minX, float minY, float maxX, float maxY, int[] out) {
+        int top = levelEnds.length - 1;
+        return search(top, top == 0 ? 0 : levelEnds[top - 1], levelEnds[top], minX, minY, maxX, maxY, out, 0);
+    }
+
+    private int search(int level, int from, int to, float minX, float minY, float maxX, float maxY,
+                       int[] out, int found) {
+        for (int i = from; i < to; i++) {
+            if (!intersects(i, minX, minY, maxX, maxY)) continue;
+            if (level == 0) {
+                if (found < out.length) out[found] = children[i];
+                found++;
+            } else {
+                int first = children[i];
+                found = search(level - 1, first, Math.min(first + NODE_SIZE, levelEnds[level - 1]),
+                        minX, minY, maxX, maxY, out, found);
+            }
+        }
+        return found;
+    }
+
+    /** Finds the {@code k} items nearest to the point (x, y), by {@link IDrawable#distanceSquared},
+     with a best-first search: nodes and items are polled from a heap by the distance to their bounding box,
+     and an item polled the first time is pushed again with its exact distance. Once an item comes out with
+     its exact distance, nothing left in the heap can be closer.<br>
+     Safe to call from several threads at once; each uses its own heap.
+     @param maxDistance Items further away than this, in projected map units, are ignored.
+     Use {@link Float#POSITIVE_INFINITY} for no limit.
+     @param out         Receives the item indices, nearest first. At most {@code out.length} are found.
+     @param distances   Receives the distance to each found item, or {@code null} if not needed.
+     @return The number of items found. */
+    public int nearest(float x, float y, int k, float maxDistance, int[] out, float[] distances) {
+        return nearest(x, y, k, maxDistance, out, distances, null);
+    }
+
+    /** {@link #nearest(float, float, int, float, int[], float[])}, but only considering the items
+     accepted by {@code filter}, or all if it is {@code null}. */
+    public int nearest(float x, float y, int k, float maxDistance, int[] out, float[] distances, IntPredicate filter) {
+        k = Math.min(k, out.length);
+        if (k <= 0 || items.length == 0) return 0;
+        float limit = maxDistance * maxDistance;
+        MinHeap heap = HEAP.get();
+        heap.clear();
+        int top = levelEnds.length - 1;
+        pushEntries(heap, top == 0 ? 0 : levelEnds[top - 1], levelEnds[top], x, y, limit);
+
+        int found = 0;
+        while (found < k && !heap.isEmpty()) {
+            float key = heap.peekKey();
+            int entry = heap.poll();
+            if (entry < 0) { // An item with its exact distance.
+                out[found] = ~entry;
+                if (distances != null) distances[found] = (float) Math.sqrt(key);
+                found++;
+            } else if (entry < levelEnds[0]) {
+                int item = children[entry];
+                if (filter != null && !filter.test(item)) continue;
+                float exact = (float) items[item].distanceSquared(x, y);
+                if (exact <= limit) heap.add(~item, exact);
+            } else {
+                int level = 1;
+                while (entry >= levelEnds[level]) level++;
+                int first = children[entry];
+                pushEntries(heap, first, Math.min(first + NODE_SIZE, levelEnds[level - 1]), x, y, limit);
+            }
+        }
+        return found;
+    }
+
+    private void pushEntries(MinHeap heap, int from, int to, float x, float y, float limit) {
+        for (int i = from; i < to; i++) {
+            float distance = (float) Maths.boxDistanceSquared(x, y,
+                    boxes[i * 4], boxes[i * 4 + 1], boxes[i * 4 + 2], boxes[i * 4 + 3]);
+            if (distance <= limit) heap.add(i, distance);
+        }
+    }
+
+    private boolean intersects(int entry, float minX, float minY, float maxX, float maxY) {
+        int b = entry * 4;
+        return boxes[b] <= maxX && minX <= boxes[b + 2] && boxes[b + 1] <= maxY && minY <= boxes[b + 3];
+    }
+
+    /** Copies the bounding box of every item into {@code out}, four floats per item, in item order. */
+    void itemBoxes(float[] out) {
+        for (int i = 0; i < items.length; i++) {
+            System.arraycopy(boxes, i * 4, out, children[i] * 4, 4);
+        }
+    }
+
+    public IDrawable item(int index) {
+        return items[index];
+    }
+
+    public int size() {
+        return items.length;
+    }
+
+    /** Number of node levels, which is {@link RTree#height()} for the same items. */
+    public int height() {
+        return Math.max(1, levelEnds.length - 1);
+    }
+
+    /** Number of entries over all levels, i.e. items plus nodes. */
+    public int entryCount() {
+        return levelEnds[levelEnds.length - 1];
+    }
+
+    @Override
+    public String toString() {
+        return "PackedRTree: " + items.length + " items, height " + height()
+                + ", " + (entryCount() - items.length) + " nodes";
+    }
+}
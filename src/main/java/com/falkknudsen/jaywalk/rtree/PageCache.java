@@ -0,0 +1,96 @@
+package com.falkknudsen.jaywalk.rtree;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/** Bounded cache of decoded {@link PagedRTree} pages, evicting with the clock algorithm: every hit sets
+ the page's reference bit, and the hand sweeps over the slots clearing bits until it finds a page without
+ one to replace. The upper levels of the tree are hit by nearly every query, so they stay.<br>
+ Lookups don't lock. Only a miss takes the lock, to claim a slot, after the page has been decoded. */
+final class PageCache {
+    /** A node page, decoded from the file. */
+    static final class Page {
+        final int id;
+        final boolean leaf;
+        final int count;
+        /** Four floats per entry: minX, minY, maxX, maxY. */
+        final float[] boxes;
+        /** Child page for internal nodes, item index for leaves. */
+        final int[] refs;
+        volatile boolean referenced = true;
+
+        Page(int id, boolean leaf, float[] boxes, int[] refs) {
+            this.id = id;
+            this.leaf = leaf;
+            this.count = refs.length;
+            this.boxes = boxes;
+            this.refs = refs;
+        }
+    }
+
+    private final IntFunction<Page> loader;
+    private final Page[] slots;
+    private final ConcurrentHashMap<Integer, Page> pages;
+    private int hand;
+    private final LongAdder hits = new LongAdder(), faults = new LongAdder();
+
+    PageCache(int capacity, IntFunction<Page> loader) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1");
+        this.loader = loader;
+        this.slots = new Page[capacity];
+        this.pages = new ConcurrentHashMap<>(capacity * 2);
+    }
+
+    Page get(int id) {
+        Page page = pages.get(id);
+        if (page != null) {
+            page.referenced = true;
+            hits.increment();
+            return page;
+        }
+        faults.increment();
+        page = loader.apply(id);
+        synchronized (this) {
+            Page existing = pages.get(id);
+            if (existing != null) return existing; // another thread got there first.
+            while (slots[hand] != null && slots[hand].referenced) {
+                slots[hand].referenced = false;
+                hand = (hand + 1) % slots.length;
+            }
+            if (slots[hand] != null) pages.remove(slots[hand].id);
+            slots[hand] = page;
+            pages.put(id, page);
+            hand = (hand + 1) % slots.length;
+        }
+        return page;
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long faults() {
+        return faults.sum();
+    }
+
+    void resetCounters() {
+        hits.reset();
+        faults.reset();
+    }
+
+    synchronized void clear() {
+        pages.clear();
+        Arrays.fill(slots, null);
+        hand = 0;
+    }
+
+    int size() {
+        return pages.size();
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+}
@@ -0,0 +1,380 @@
+package com.falkknudsen.jaywalk.rtree;
+
+import com.falkknudsen.jaywalk.contracts.IDrawable;
+import com.falkknudsen.jaywalk.contracts.IDrawableIndex;
+import com.falkknudsen.jaywalk.structs.CoordinatePool;
+import com.falkknudsen.jaywalk.structs.IntList;
+import com.falkknudsen.jaywalk.structs.MinHeap;
+import com.falkknudsen.jaywalk.util.Maths;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+import static com.falkknudsen.jaywalk.util.BinaryIO.expectMagic;
+
+/** Read-only R-tree kept in a memory-mapped file, for data sets that don't fit on the heap.<br><br>
+
+ The file is built offline by {@link #write}, and {@link #open} only maps it and reads the header, so
+ opening is instant regardless of size. It consists of:
+ <ol>
+ <li>a header page,</li>
+ <li>one {@value #PAGE_SIZE}-byte page per node, leaves first and the root last. A page holds a leaf flag,
+ the number of entries, and per entry its bounding box and a child page or item index,</li>
+ <li>the byte offset of every item,</li>
+ <li>the items themselves, encoded by {@link ItemCodec}, in the same Sort-Tile-Recursive order
+ as the leaves, so that items that are queried together are also stored together.</li>
+ </ol>
+ The coordinates of {@link com.falkknudsen.jaywalk.Way#isPooled pooled} ways aren't copied into the file. The
+ {@link CoordinatePool} is saved next to it instead, in the file named by {@link #poolFile}, and the items
+ only hold their handles into it. {@link #open} maps that file into the pool, and the ways {@link #get} makes
+ read their coordinates from it in place. The pool never unmaps it, not even when the tree is closed, since
+ ways taken from the tree may still read from it; it stays mapped until the process ends. Opening the tree
+ again reuses that mapping, as long as the pool file hasn't been written since, so reopening costs no memory.
+ Writing the tree again replaces the pool file rather than overwriting it, so ways read from the old one stay
+ valid, and opening the tree after that maps the new file alongside the old.<br><br>
+ Node pages are decoded into a bounded {@link PageCache}; its hit and fault counters show whether the
+ cache is large enough for the query mix. Items are decoded anew on every {@link #get}, so callers should
+ keep the ones they need. All methods are safe to call from several threads at once. */
+public class PagedRTree implements IDrawableIndex, AutoCloseable {
+    public static final int PAGE_SIZE = 4096;
+    private static final int MAGIC = 0x4A575254;
+    private static final int VERSION = 3;
+    private static final int PAGE_HEADER = 8;
+    private static final int ENTRY_SIZE = 20;
+    /** Entries per node: as many as fit on a page. */
+    static final int FANOUT = (PAGE_SIZE - PAGE_HEADER) / ENTRY_SIZE;
+    /** The file is mapped in pieces of this size, as a single mapping can't exceed 2 GB.
+     It is a multiple of {@link #PAGE_SIZE}, so no page is split between two pieces. */
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    /** Scratch space for {@link #nearest}, one per thread. */
+    private record Scratch(MinHeap heap, IntList candidates) {}
+    private static final ThreadLocal<Scratch> SCRATCH =
+            ThreadLocal.withInitial(() -> new Scratch(new MinHeap(), new IntList()));
+
+    private final MappedByteBuffer[] segments;
+    private final int itemCount, height, rootPage;
+    private final long itemIndexOffset, itemDataOffset;
+    /** What to add to the pool handles in the file, or 0 if it has none. */
+    private final long poolBase;
+    private final PageCache cache;
+
+    private PagedRTree(MappedByteBuffer[] segments, int itemCount, int height, int rootPage,
+                       long itemIndexOffset, long itemDataOffset, long poolBase, int cachePages) {
+        this.segments = segments;
+        this.itemCount = itemCount;
+        this.height = height;
+        this.rootPage = rootPage;
+        this.itemIndexOffset = itemIndexOffset;
+        this.itemDataOffset = itemDataOffset;
+        this.poolBase = poolBase;
+        this.cache = new PageCache(cachePages, this::loadPage);
+    }
+
+//==================================================================================================================
+// Building
+//==================================================================================================================
+    /** Builds a tree over {@code items} and writes it to {@code file}, replacing what was there. If any of
+     them are pooled, the {@link CoordinatePool} is written to {@link #poolFile} as well. */
+    public static void write(List<? extends IDrawable> items, Path file) throws IOException {
+        IDrawable[] array = items.toArray(new IDrawable[0]);
+        int n = array.length;
+        boolean pooled = false;
+        for (int i = 0; i < n && !pooled; i++) pooled = ItemCodec.usesPool(array[i]);
+        if (pooled) CoordinatePool.global().write(poolFile(file));
+        else Files.deleteIfExists(poolFile(file));
+        float[] itemBoxes = new float[n * 4];
+        PackedRTree.computeBoxes(array, itemBoxes, 0, new LongAdder());
+        int[] order = RTree.strOrder(itemBoxes, n, FANOUT);
+
+        // Items are numbered in STR order, so the entries of the leaf level simply refer to 0, 1, 2...
+        float[] boxes = new float[n * 4];
+        int[] refs = new int[n];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(itemBoxes, order[i] * 4, boxes, i * 4, 4);
+            refs[i] = i;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer page = ByteBuffer.allocate(PAGE_SIZE);
+            int nextPage = 1, height = 0, count = n;
+            boolean leaf = true;
+            float[] bounds;
+            int root;
+            while (true) {
+                int nodes = Math.max(1, (count + FANOUT - 1) / FANOUT);
+                float[] parentBoxes = new float[nodes * 4];
+                int[] parentRefs = new int[nodes];
+                for (int node = 0; node < nodes; node++) {
+                    int first = node * FANOUT, last = Math.min(count, first + FANOUT);
+                    page.clear();
+                    page.put((byte) (leaf ? 1 : 0)).put((byte) 0).putShort((short) (last - first)).putInt(0);
+                    float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+                    float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+                    for (int i = first; i < last; i++) {
+                        page.putFloat(boxes[i * 4]).putFloat(boxes[i * 4 + 1])
+                                .putFloat(boxes[i * 4 + 2]).putFloat(boxes[i * 4 + 3]).putInt(refs[i]);
+                        minX = Math.min(minX, boxes[i * 4]);
+                        minY = Math.min(minY, boxes[i * 4 + 1]);
+                        maxX = Math.max(maxX, boxes[i * 4 + 2]);
+                        maxY = Math.max(maxY, boxes[i * 4 + 3]);
+                    }
+                    page.clear();
+                    channel.write(page, (long) nextPage * PAGE_SIZE);
+                    parentBoxes[node * 4] = minX;
+                    parentBoxes[node * 4 + 1] = minY;
+                    parentBoxes[node * 4 + 2] = maxX;
+                    parentBoxes[node * 4 + 3] = maxY;
+                    parentRefs[node] = nextPage++;
+                }
+                height++;
+                if (nodes == 1) {
+                    root = parentRefs[0];
+                    bounds = parentBoxes;
+                    break;
+                }
+                int[] parentOrder = RTree.strOrder(parentBoxes, nodes, FANOUT);
+                boxes = new float[nodes * 4];
+                refs = new int[nodes];
+                for (int i = 0; i < nodes; i++) {
+                    System.arraycopy(parentBoxes, parentOrder[i] * 4, boxes, i * 4, 4);
+                    refs[i] = parentRefs[parentOrder[i]];
+                }
+                count = nodes;
+                leaf = false;
+            }
+
+            long itemIndexOffset = (long) nextPage * PAGE_SIZE;
+            long itemDataOffset = itemIndexOffset + (n + 1) * 8L;
+            channel.position(itemIndexOffset);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            long offset = 0;
+            for (int i = 0; i < n; i++) {
+                out.writeLong(offset);
+                offset += ItemCodec.size(array[order[i]]);
+            }
+            out.writeLong(offset);
+            for (int i = 0; i < n; i++) {
+                ItemCodec.write(out, array[order[i]]);
+            }
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(PAGE_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(PAGE_SIZE).putInt(n).putInt(height).putInt(root)
+                    .putLong(itemIndexOffset).putLong(itemDataOffset)
+                    .putFloat(bounds[0]).putFloat(bounds[1]).putFloat(bounds[2]).putFloat(bounds[3])
+                    .putInt(pooled ? 1 : 0);
+            header.clear();
+            channel.write(header, 0);
+        }
+    }
+
+//==================================================================================================================
+// Reading
+//==================================================================================================================
+    /** Maps a file written by {@link #write}.
+     @param cachePages How many decoded node pages to keep on the heap. */
+    public static PagedRTree open(Path file, int cachePages) throws IOException {
+        MappedByteBuffer[] segments;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < PAGE_SIZE) throw new IOException("Not a paged R-tree file (only " + size + " bytes).");
+            segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = i * SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+            }
+        }
+        byte[] headerBytes = new byte[64];
+        segments[0].get(0, headerBytes);
+        DataInputStream header = new DataInputStream(new ByteArrayInputStream(headerBytes));
+        expectMagic(header, MAGIC, "paged R-tree");
+        int version = header.readInt(), pageSize = header.readInt();
+        if (version != VERSION || pageSize != PAGE_SIZE) {
+            throw new IOException("Unsupported paged R-tree file (version " + version + ", page size " + pageSize + ").");
+        }
+        int itemCount = header.readInt(), height = header.readInt(), rootPage = header.readInt();
+        long itemIndexOffset = header.readLong(), itemDataOffset = header.readLong();
+        header.skipBytes(16); // the bounds
+        long poolBase = header.readInt() != 0 ? CoordinatePool.global().map(poolFile(file)) : 0;
+        return new PagedRTree(segments, itemCount, height, rootPage, itemIndexOffset, itemDataOffset, poolBase,
+                cachePages);
+    }
+
+    /** The file the {@link CoordinatePool} is saved in next to the tree in {@code file}, if any item is pooled. */
+    public static Path poolFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".pool");
+    }
+
+    private PageCache.Page loadPage(int id) {
+        long position = (long) id * PAGE_SIZE;
+        ByteBuffer segment = segments[(int) (position / SEGMENT_SIZE)];
+        int at = (int) (position % SEGMENT_SIZE);
+        boolean leaf = segment.get(at) != 0;
+        int count = segment.getShort(at + 2);
+        float[] boxes = new float[count * 4];
+        int[] refs = new int[count];
+        for (int i = 0, entry = at + PAGE_HEADER; i < count; i++, entry += ENTRY_SIZE) {
+            boxes[i * 4] = segment.getFloat(entry);
+            boxes[i * 4 + 1] = segment.getFloat(entry + 4);
+            boxes[i * 4 + 2] = segment.getFloat(entry + 8);
+            boxes[i * 4 + 3] = segment.getFloat(entry + 12);
+            refs[i] = segment.getInt(entry + 16);
+        }
+        return new PageCache.Page(id, leaf, boxes, refs);
+    }
+
+    private long readLong(long position) {
+        ByteBuffer segment = segments[(int) (position / SEGMENT_SIZE)];
+        int at = (int) (position % SEGMENT_SIZE);
+        if (at + 8 <= segment.limit()) return segment.getLong(at);
+        return bytes(position, 8).getLong();
+    }
+
+    /** {@code length} bytes from {@code position}, copied if they span two segments. */
+    private ByteBuffer bytes(long position, int length) {
+        int index = (int) (position / SEGMENT_SIZE), at = (int) (position % SEGMENT_SIZE);
+        if (at + length <= segments[index].limit()) return segments[index].slice(at, length);
+        byte[] copy = new byte[length];
+        int first = segments[index].limit() - at;
+        segments[index].get(at, copy, 0, first);
+        segments[index + 1].get(0, copy, first, length - first);
+        return ByteBuffer.wrap(copy);
+    }
+
+    /** Decodes the item with the given index from the file. */
+    @Override
+    public IDrawable get(int index) {
+        if (index < 0 || index >= itemCount)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + itemCount);
+        long start = readLong(itemIndexOffset + index * 8L), end = readLong(itemIndexOffset + index * 8L + 8);
+        return ItemCodec.read(bytes(itemDataOffset + start, (int) (end - start)), poolBase);
+    }
+
+    @Override
+    public void queryIndices(float minX, float minY, float maxX, float maxY, IntConsumer action) {
+        search(cache.get(rootPage), minX, minY, maxX, maxY, action);
+    }
+
+    private void search(PageCache.Page page, float minX, float minY, float maxX, float maxY, IntConsumer action) {
+        float[] boxes = page.boxes;
+        for (int i = 0; i < page.count; i++) {
+            if (boxes[i * 4] > maxX || minX > boxes[i * 4 + 2] || boxes[i * 4 + 1] > maxY || minY > boxes[i * 4 + 3]) {
+                continue;
+            }
+            if (page.leaf) action.accept(page.refs[i]);
+            else search(cache.get(page.refs[i]), minX, minY, maxX, maxY, action);
+        }
+    }
+
+    @Override
+    public int query(float minX, float minY, float maxX, float maxY, int[] out) {
+        int[] found = {0};
+        queryIndices(minX, minY, maxX, maxY, (int index) -> {
+            if (found[0] < out.length) out[found[0]] = index;
+            found[0]++;
+        });
+        return found[0];
+    }
+
+    /** Best-first search as in {@link PackedRTree#nearest}. Heap entries that are {@code >= 0} are pages;
+     the others refer to a scratch list of items, holding the item index before its exact distance is known
+     and the complement of it after. */
+    @Override
+    public int nearest(float x, float y, int k, float maxDistance, int[] out, float[] distances) {
+        k = Math.min(k, out.length);
+        if (k <= 0 || itemCount == 0) return 0;
+        float limit = maxDistance * maxDistance;
+        Scratch scratch = SCRATCH.get();
+        MinHeap heap = scratch.heap();
+        IntList candidates = scratch.candidates();
+        heap.clear();
+        candidates.clear();
+        heap.add(rootPage, 0);
+
+        int found = 0;
+        while (found < k && !heap.isEmpty()) {
+            float key = heap.peekKey();
+            int entry = heap.poll();
+            if (entry >= 0) {
+                PageCache.Page page = cache.get(entry);
+                for (int i = 0; i < page.count; i++) {
+                    float distance = (float) Maths.boxDistanceSquared(x, y, page.boxes[i * 4],
+                            page.boxes[i * 4 + 1], page.boxes[i * 4 + 2], page.boxes[i * 4 + 3]);
+                    if (distance > limit) continue;
+                    if (page.leaf) {
+                        heap.add(~candidates.size(), distance);
+                        candidates.add(page.refs[i]);
+                    } else {
+                        heap.add(page.refs[i], distance);
+                    }
+                }
+                continue;
+            }
+            int item = candidates.get(~entry);
+            if (item < 0) {
+                out[found] = ~item;
+                if (distances != null) distances[found] = (float) Math.sqrt(key);
+                found++;
+            } else {
+                float exact = (float) get(item).distanceSquared(x, y);
+                if (exact <= limit) {
+                    candidates.set(~entry, ~item);
+                    heap.add(entry, exact);
+                }
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public long size() {
+        return itemCount;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    /** Number of node lookups answered from the cache since opening or {@link #resetCounters()}. */
+    public long cacheHits() {
+        return cache.hits();
+    }
+
+    /** Number of node lookups that had to decode the page from the mapped file. Whether that in turn
+     caused the operating system to read from disk depends on its page cache. */
+    public long pageFaults() {
+        return cache.faults();
+    }
+
+    public void resetCounters() {
+        cache.resetCounters();
+    }
+
+    /** Releases the cached pages. The mapping itself is released once the tree is garbage collected, but the
+     pool file, if there is one, stays mapped into the pool until the process ends; see the class comment. */
+    @Override
+    public void close() {
+        cache.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "PagedRTree: " + itemCount + " items, height " + height + ", "
+                + cache.size() + "/" + cache.capacity() + " pages cached";
+    }
+}
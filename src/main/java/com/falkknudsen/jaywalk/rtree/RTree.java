@@ -1,14 +1,322 @@
 package com.falkknudsen.jaywalk.rtree;
 
+import com.falkknudsen.jaywalk.Rectangle;
 import com.falkknudsen.jaywalk.contracts.IDrawable;
+import com.falkknudsen.jaywalk.util.Maths;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
+/** R-tree over {@link IDrawable}s, keyed by their bounding boxes.<br><br>
+
+ The intended way to build one is {@link #bulkLoad}, which packs all items at once with the
+ Sort-Tile-Recursive algorithm (Leutenegger et al., 1997): sort by x, cut into vertical slices of
+ {@code sqrt(n / M)} nodes each, sort every slice by y, and fill nodes in that order. Every node but
+ the last of each level is completely full, and nodes overlap far less than with one-by-one insertion.<br>
+ {@link #insert} (Guttman's algorithm with the quadratic split) is there for adding the odd item
+ afterwards, and as a baseline. */
 public class RTree implements IDrawable, Serializable {
+    /** Maximum number of entries per node. */
+    public static final int MAX_ENTRIES = 16;
+    /** Minimum number of entries per node after a split. */
+    static final int MIN_ENTRIES = 6;
+
+    private RTreeNode root = new RTreeLeaf();
+    private int size = 0;
+    /** Number of levels, counting the leaves. */
+    private int height = 1;
+
+    public RTree() {}
+
+    /** Builds a packed tree containing {@code items}. */
+    public static RTree bulkLoad(List<? extends IDrawable> items) {
+        RTree tree = new RTree();
+        int n = items.size();
+        if (n == 0) return tree;
+        float[] boxes = new float[n * 4];
+        for (int i = 0; i < n; i++) {
+            Rectangle box = items.get(i).boundingBox();
+            boxes[i * 4] = box.minLon();
+            boxes[i * 4 + 1] = box.minLat();
+            boxes[i * 4 + 2] = box.maxLon();
+            boxes[i * 4 + 3] = box.maxLat();
+        }
+
+        int[] order = strOrder(boxes, n, MAX_ENTRIES);
+        List<RTreeNode> level = new ArrayList<>(n / MAX_ENTRIES + 1);
+        for (int start = 0; start < n; start += MAX_ENTRIES) {
+            RTreeLeaf leaf = new RTreeLeaf();
+            for (int i = start; i < Math.min(n, start + MAX_ENTRIES); i++) {
+                int item = order[i];
+                leaf.addItem(items.get(item), boxes[item * 4], boxes[item * 4 + 1],
+                        boxes[item * 4 + 2], boxes[item * 4 + 3]);
+            }
+            level.add(leaf);
+        }
+        int height = 1;
+        while (level.size() > 1) {
+            float[] nodeBoxes = new float[level.size() * 4];
+            for (int i = 0; i < level.size(); i++) {
+                RTreeNode node = level.get(i);
+                nodeBoxes[i * 4] = node.minX;
+                nodeBoxes[i * 4 + 1] = node.minY;
+                nodeBoxes[i * 4 + 2] = node.maxX;
+                nodeBoxes[i * 4 + 3] = node.maxY;
+            }
+            order = strOrder(nodeBoxes, level.size(), MAX_ENTRIES);
+            List<RTreeNode> parents = new ArrayList<>(level.size() / MAX_ENTRIES + 1);
+            for (int start = 0; start < level.size(); start += MAX_ENTRIES) {
+                RTreeNode parent = new RTreeNode();
+                for (int i = start; i < Math.min(level.size(), start + MAX_ENTRIES); i++) {
+                    parent.addChild(level.get(order[i]));
+                }
+                parents.add(parent);
+            }
+            level = parents;
+            height++;
+        }
+        tree.root = level.getFirst();
+        tree.size = n;
+        tree.height = height;
+        return tree;
+    }
+
+    /** The Sort-Tile-Recursive order of {@code n} boxes (four floats each): consecutive runs of
+     {@code capacity} entries in the returned order make up one node each.<br>
+     The sort by x is a parallel sort, and the slices are then sorted by y in parallel. */
+    static int[] strOrder(float[] boxes, int n, int capacity) {
+        if (n == 0) return new int[0];
+        int nodes = (n + capacity - 1) / capacity;
+        int slices = (int) Math.ceil(Math.sqrt(nodes));
+        int sliceSize = slices * capacity;
+
+        long[] keys = new long[n];
+        Arrays.parallelSetAll(keys, i -> Maths.sortKey(boxes[i * 4] + boxes[i * 4 + 2], i)); // x-centre, doubled
+        Arrays.parallelSort(keys);
+        IntStream.range(0, (n + sliceSize - 1) / sliceSize).parallel().forEach(slice -> {
+            int start = slice * sliceSize, end = Math.min(n, start + sliceSize);
+            for (int j = start; j < end; j++) {
+                int i = Maths.sortKeyIndex(keys[j]);
+                keys[j] = Maths.sortKey(boxes[i * 4 + 1] + boxes[i * 4 + 3], i); // y-centre, doubled
+            }
+            Arrays.sort(keys, start, end);
+        });
+        int[] order = new int[n];
+        Arrays.parallelSetAll(order, j -> Maths.sortKeyIndex(keys[j]));
+        return order;
+    }
+
+    /** Inserts a single item, splitting nodes on the way up as necessary. */
+    public void insert(IDrawable item) {
+        Rectangle box = item.boundingBox();
+        insert(item, box.minLon(), box.minLat(), box.maxLon(), box.maxLat());
+    }
+
+    private void insert(IDrawable item, float minX, float minY, float maxX, float maxY) {
+        // Descend to the leaf that needs the least enlargement, remembering the path.
+        RTreeNode[] path = new RTreeNode[height];
+        RTreeNode node = root;
+        for (int depth = 0; depth < height - 1; depth++) {
+            path[depth] = node;
+            node = chooseSubtree(node, minX, minY, maxX, maxY);
+        }
+        path[height - 1] = node;
+
+        RTreeLeaf leaf = (RTreeLeaf) node;
+        leaf.addItem(item, minX, minY, maxX, maxY);
+        RTreeNode split = leaf.count > MAX_ENTRIES ? leaf.split(quadraticSplit(leaf.entryBoxes(), leaf.count)) : null;
+        for (int depth = height - 2; depth >= 0; depth--) {
+            RTreeNode parent = path[depth];
+            parent.extend(minX, minY, maxX, maxY);
+            if (split != null) {
+                parent.addChild(split);
+                split = parent.count > MAX_ENTRIES ? parent.split(quadraticSplit(parent.entryBoxes(), parent.count)) : null;
+            }
+        }
+        if (split != null) {
+            RTreeNode newRoot = new RTreeNode();
+            newRoot.addChild(root);
+            newRoot.addChild(split);
+            root = newRoot;
+            height++;
+        }
+        size++;
+    }
+
+    private static RTreeNode chooseSubtree(RTreeNode node, float minX, float minY, float maxX, float maxY) {
+        RTreeNode best = null;
+        float bestEnlargement = Float.POSITIVE_INFINITY, bestArea = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < node.count; i++) {
+            RTreeNode child = node.children[i];
+            float area = area(child.minX, child.minY, child.maxX, child.maxY);
+            float enlarged = area(Math.min(child.minX, minX), Math.min(child.minY, minY),
+                    Math.max(child.maxX, maxX), Math.max(child.maxY, maxY));
+            float enlargement = enlarged - area;
+            if (enlargement < bestEnlargement || (enlargement == bestEnlargement && area < bestArea)) {
+                best = child;
+                bestEnlargement = enlargement;
+                bestArea = area;
+            }
+        }
+        return best;
+    }
+
+    /** Guttman's quadratic split of {@code n} entries with the given boxes.
+     @return Which entries should move to the new node. */
+    static boolean[] quadraticSplit(float[] boxes, int n) {
+        // Pick the two entries that would waste the most area together as seeds.
+        int seedA = 0, seedB = 1;
+        float worst = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                float waste = area(Math.min(boxes[i * 4], boxes[j * 4]), Math.min(boxes[i * 4 + 1], boxes[j * 4 + 1]),
+                        Math.max(boxes[i * 4 + 2], boxes[j * 4 + 2]), Math.max(boxes[i * 4 + 3], boxes[j * 4 + 3]))
+                        - area(boxes, i) - area(boxes, j);
+                if (waste > worst) {
+                    worst = waste;
+                    seedA = i;
+                    seedB = j;
+                }
+            }
+        }
+        boolean[] moved = new boolean[n];
+        boolean[] assigned = new boolean[n];
+        float[] a = Arrays.copyOfRange(boxes, seedA * 4, seedA * 4 + 4);
+        float[] b = Arrays.copyOfRange(boxes, seedB * 4, seedB * 4 + 4);
+        assigned[seedA] = assigned[seedB] = true;
+        moved[seedB] = true;
+        int countA = 1, countB = 1, remaining = n - 2;
+        while (remaining > 0) {
+            // If one group needs all the remaining entries to reach the minimum, it gets them.
+            if (countA + remaining == MIN_ENTRIES || countB + remaining == MIN_ENTRIES) {
+                boolean toB = countB + remaining == MIN_ENTRIES;
+                for (int i = 0; i < n; i++) {
+                    if (!assigned[i]) {
+                        assigned[i] = true;
+                        moved[i] = toB;
+                    }
+                }
+                break;
+            }
+            // Otherwise, assign the entry with the strongest preference for one of the groups.
+            int next = -1;
+            float nextA = 0, nextB = 0, strongest = Float.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                if (assigned[i]) continue;
+                float dA = enlargement(a, boxes, i), dB = enlargement(b, boxes, i);
+                if (Math.abs(dA - dB) > strongest) {
+                    strongest = Math.abs(dA - dB);
+                    next = i;
+                    nextA = dA;
+                    nextB = dB;
+                }
+            }
+            boolean toB = nextB < nextA
+                    || (nextB == nextA && (area(b, 0) < area(a, 0) || (area(b, 0) == area(a, 0) && countB < countA)));
+            float[] group = toB ? b : a;
+            group[0] = Math.min(group[0], boxes[next * 4]);
+            group[1] = Math.min(group[1], boxes[next * 4 + 1]);
+            group[2] = Math.max(group[2], boxes[next * 4 + 2]);
+            group[3] = Math.max(group[3], boxes[next * 4 + 3]);
+            assigned[next] = true;
+            moved[next] = toB;
+            if (toB) countB++;
+            else countA++;
+            remaining--;
+        }
+        return moved;
+    }
+
+    private static float area(float minX, float minY, float maxX, float maxY) {
+        return (maxX - minX) * (maxY - minY);
+    }
+
+    private static float area(float[] boxes, int i) {
+        return area(boxes[i * 4], boxes[i * 4 + 1], boxes[i * 4 + 2], boxes[i * 4 + 3]);
+    }
+
+    private static float enlargement(float[] group, float[] boxes, int i) {
+        return area(Math.min(group[0], boxes[i * 4]), Math.min(group[1], boxes[i * 4 + 1]),
+                Math.max(group[2], boxes[i * 4 + 2]), Math.max(group[3], boxes[i * 4 + 3]))
+                - area(group, 0);
+    }
+
+    /** Passes every item whose bounding box intersects the given rectangle to {@code action}. */
+    public void query(float minX, float minY, float maxX, float maxY, Consumer<? super IDrawable> action) {
+        if (size > 0) query(root, minX, minY, maxX, maxY, action);
+    }
+
+    private static void query(RTreeNode node, float minX, float minY, float maxX, float maxY,
+                              Consumer<? super IDrawable> action) {
+        if (node instanceof RTreeLeaf leaf) {
+            float[] boxes = leaf.boxes;
+            for (int i = 0; i < leaf.count; i++) {
+                if (Rectangle.intersects(boxes[i * 4], boxes[i * 4 + 1], boxes[i * 4 + 2], boxes[i * 4 + 3],
+                        minX, minY, maxX, maxY)) {
+                    action.accept(leaf.items[i]);
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < node.count; i++) {
+            RTreeNode child = node.children[i];
+            if (child.intersects(minX, minY, maxX, maxY)) {
+                query(child, minX, minY, maxX, maxY, action);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    /** Number of nodes, including the leaves. */
+    public int nodeCount() {
+        return nodeCount(root);
+    }
+
+    private static int nodeCount(RTreeNode node) {
+        if (node.isLeaf()) return 1;
+        int count = 1;
+        for (int i = 0; i < node.count; i++) count += nodeCount(node.children[i]);
+        return count;
+    }
+
+    /** Average fraction of {@link #MAX_ENTRIES} that is in use per node. */
+    public double fill() {
+        int nodes = nodeCount();
+        return nodes == 0 ? 0 : (double) (nodes - 1 + size) / (nodes * (double) MAX_ENTRIES);
+    }
+
+    @Override
+    public Rectangle boundingBox() {
+        return new Rectangle(root.minX, root.minY, root.maxX, root.maxY);
+    }
+
+    /** Draws the bounding boxes of the nodes, for debugging. */
     @Override
     public void draw(GraphicsContext gc, Color colour) {
+        if (size > 0) draw(root, gc, colour);
+    }
 
+    private static void draw(RTreeNode node, GraphicsContext gc, Color colour) {
+        Rectangle.draw(gc, colour, node.minX, node.minY, node.maxX, node.maxY);
+        if (node.isLeaf()) return;
+        for (int i = 0; i < node.count; i++) draw(node.children[i], gc, colour);
+    }
+
+    @Override
+    public String toString() {
+        return "RTree: " + size + " items, height " + height + ", " + nodeCount() + " nodes";
     }
 }
@@ -1,4 +1,67 @@
 package com.falkknudsen.jaywalk.rtree;
 
+import com.falkknudsen.jaywalk.contracts.IDrawable;
+
+import java.util.Arrays;
+
+/** Bottom level of an {@link RTree}. Keeps the bounding box of every item next to it,
+ so a query never has to recompute them. */
 public class RTreeLeaf extends RTreeNode {
+    IDrawable[] items;
+    /** Four floats per item: minX, minY, maxX, maxY. */
+    float[] boxes;
+
+    RTreeLeaf() {
+        super(true);
+        items = new IDrawable[RTree.MAX_ENTRIES + 1];
+        boxes = new float[(RTree.MAX_ENTRIES + 1) * 4];
+    }
+
+    @Override
+    boolean isLeaf() {
+        return true;
+    }
+
+    void addItem(IDrawable item, float minX, float minY, float maxX, float maxY) {
+        items[count] = item;
+        boxes[count * 4] = minX;
+        boxes[count * 4 + 1] = minY;
+        boxes[count * 4 + 2] = maxX;
+        boxes[count * 4 + 3] = maxY;
+        count++;
+        extend(minX, minY, maxX, maxY);
+    }
+
+    @Override
+    void recomputeBounds() {
+        minX = minY = Float.POSITIVE_INFINITY;
+        maxX = maxY = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            extend(boxes[i * 4], boxes[i * 4 + 1], boxes[i * 4 + 2], boxes[i * 4 + 3]);
+        }
+    }
+
+    @Override
+    float[] entryBoxes() {
+        return Arrays.copyOf(boxes, count * 4);
+    }
+
+    @Override
+    RTreeLeaf split(boolean[] moved) {
+        RTreeLeaf sibling = new RTreeLeaf();
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (moved[i]) {
+                sibling.addItem(items[i], boxes[i * 4], boxes[i * 4 + 1], boxes[i * 4 + 2], boxes[i * 4 + 3]);
+            } else {
+                items[kept] = items[i];
+                System.arraycopy(boxes, i * 4, boxes, kept * 4, 4);
+                kept++;
+            }
+        }
+        for (int i = kept; i < count; i++) items[i] = null;
+        count = kept;
+        recomputeBounds();
+        return sibling;
+    }
 }
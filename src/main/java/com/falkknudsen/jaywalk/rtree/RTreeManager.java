@@ -3,14 +3,122 @@ package com.falkknudsen.jaywalk.rtree;
 import com.falkknudsen.jaywalk.contracts.IDrawableContainer;
 import com.falkknudsen.jaywalk.contracts.IDrawable;
 
-public class RTreeManager implements IDrawableContainer {
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/** Keeps the drawables in an R-tree that can be read from any number of threads while it is being changed.<br>
+ Readers work on an immutable {@link Snapshot} and never block or wait. Writers queue additions and removals
+ with {@link #add} and {@link #remove}, and {@link #build} applies the whole batch to make the next snapshot,
+ which is then published atomically. Writers are serialised by a lock, which readers never touch.<br>
+ Each query method here reads the current snapshot once; to use item indices across several calls,
+ hold on to a {@link #snapshot()} and query that instead. */
+public class RTreeManager implements IDrawableContainer, Serializable {
+    private final AtomicReference<Snapshot> current = new AtomicReference<>(Snapshot.EMPTY);
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    /** The batch queued since the last {@link #build}. Guarded by {@link #writeLock}. */
+    private final List<IDrawable> additions = new ArrayList<>(), removals = new ArrayList<>();
+    /** Number of items whose bounding box has been computed by {@link #build}. */
+    private final LongAdder progress = new LongAdder();
+
     @Override
     public boolean add(IDrawable renderable) {
-        return false;
+        writeLock.lock();
+        try {
+            return additions.add(renderable);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** Also cancels the addition of the item, if it was queued in this batch. */
+    @Override
+    public void remove(IDrawable renderable) {
+        writeLock.lock();
+        try {
+            for (int i = additions.size() - 1; i >= 0; i--) {
+                if (additions.get(i) == renderable) {
+                    additions.remove(i);
+                    return;
+                }
+            }
+            removals.add(renderable);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** Applies the queued batch and publishes the result. If it packs everything into a new tree,
+     which it does when loading and whenever the changes have added up, the items are renumbered. */
+    @Override
+    public void build() {
+        writeLock.lock();
+        try {
+            if (additions.isEmpty() && removals.isEmpty()) return;
+            progress.reset();
+            current.set(current.get().apply(additions, removals, progress));
+            additions.clear();
+            removals.clear();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** The current state of the index, which stays valid and unchanged for as long as it is held. */
+    @Override
+    public Snapshot snapshot() {
+        return current.get();
+    }
+
+    /** How many items the running (or last) {@link #build} has computed the bounding box of.
+     Cheap enough to poll from another thread while it runs. */
+    public long progress() {
+        return progress.sum();
+    }
+
+    @Override
+    public IDrawable get(int index) {
+        return current.get().get(index);
+    }
+
+    @Override
+    public void queryIndices(float minX, float minY, float maxX, float maxY, IntConsumer action) {
+        current.get().queryIndices(minX, minY, maxX, maxY, action);
+    }
+
+    @Override
+    public int query(float minX, float minY, float maxX, float maxY, int[] out) {
+        return current.get().query(minX, minY, maxX, maxY, out);
+    }
+
+    @Override
+    public int nearest(float x, float y, int k, float maxDistance, int[] out, float[] distances) {
+        return current.get().nearest(x, y, k, maxDistance, out, distances);
+    }
+
+    /** Overridden so that the item is taken from the snapshot it was found in, not from one built since. */
+    @Override
+    public IDrawable nearest(float x, float y, float maxDistance) {
+        Snapshot snapshot = current.get();
+        int[] out = new int[1];
+        return snapshot.nearest(x, y, 1, maxDistance, out, null) == 0 ? null : snapshot.get(out[0]);
+    }
+
+    /** Overridden so that the items are taken from the snapshot they were found in, not from one built since. */
+    @Override
+    public void query(float minX, float minY, float maxX, float maxY, Consumer<? super IDrawable> action) {
+        Snapshot snapshot = current.get();
+        snapshot.queryIndices(minX, minY, maxX, maxY, index -> action.accept(snapshot.get(index)));
     }
 
     @Override
     public long size() {
-        return 0;
+        return current.get().size();
     }
 }
@@ -1,4 +1,79 @@
 package com.falkknudsen.jaywalk.rtree;
 
-public class RTreeNode {
+import java.io.Serializable;
+
+/** Node of an {@link RTree}, with the bounding box of everything below it.
+ Internal nodes hold child nodes, and {@link RTreeLeaf}s hold the items themselves. */
+public class RTreeNode implements Serializable {
+    float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+    float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+    /** Number of entries in use. There is room for one more than {@link RTree#MAX_ENTRIES},
+     so that a node can overflow before it is split. */
+    int count;
+    RTreeNode[] children;
+
+    RTreeNode() {
+        this.children = new RTreeNode[RTree.MAX_ENTRIES + 1];
+    }
+
+    /** For {@link RTreeLeaf}, which keeps items instead of children. */
+    RTreeNode(boolean leaf) {
+        this.children = leaf ? null : new RTreeNode[RTree.MAX_ENTRIES + 1];
+    }
+
+    boolean isLeaf() {
+        return false;
+    }
+
+    void addChild(RTreeNode child) {
+        children[count++] = child;
+        extend(child.minX, child.minY, child.maxX, child.maxY);
+    }
+
+    void extend(float minX, float minY, float maxX, float maxY) {
+        this.minX = Math.min(this.minX, minX);
+        this.minY = Math.min(this.minY, minY);
+        this.maxX = Math.max(this.maxX, maxX);
+        this.maxY = Math.max(this.maxY, maxY);
+    }
+
+    boolean intersects(float minX, float minY, float maxX, float maxY) {
+        return this.minX <= maxX && minX <= this.maxX && this.minY <= maxY && minY <= this.maxY;
+    }
+
+    /** Recomputes the bounding box from the entries, e.g. after some have been moved elsewhere. */
+    void recomputeBounds() {
+        minX = minY = Float.POSITIVE_INFINITY;
+        maxX = maxY = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            RTreeNode child = children[i];
+            extend(child.minX, child.minY, child.maxX, child.maxY);
+        }
+    }
+
+    /** Bounding boxes of the entries, four floats per entry. */
+    float[] entryBoxes() {
+        float[] boxes = new float[count * 4];
+        for (int i = 0; i < count; i++) {
+            boxes[i * 4] = children[i].minX;
+            boxes[i * 4 + 1] = children[i].minY;
+            boxes[i * 4 + 2] = children[i].maxX;
+            boxes[i * 4 + 3] = children[i].maxY;
+        }
+        return boxes;
+    }
+
+    /** Moves the entries marked in {@code moved} to a new node, which is returned. */
+    RTreeNode split(boolean[] moved) {
+        RTreeNode sibling = new RTreeNode();
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (moved[i]) sibling.addChild(children[i]);
+            else children[kept++] = children[i];
+        }
+        for (int i = kept; i < count; i++) children[i] = null;
+        count = kept;
+        recomputeBounds();
+        return sibling;
+    }
 }
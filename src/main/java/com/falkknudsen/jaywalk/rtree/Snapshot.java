@@ -0,0 +1,174 @@
+package com.falkknudsen.jaywalk.rtree;
+
+import com.falkknudsen.jaywalk.Rectangle;
+import com.falkknudsen.jaywalk.contracts.IDrawable;
+import com.falkknudsen.jaywalk.contracts.IDrawableIndex;
+import com.falkknudsen.jaywalk.structs.IntList;
+import com.falkknudsen.jaywalk.structs.PersistentBitSet;
+import com.falkknudsen.jaywalk.structs.PersistentList;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/** Immutable state of the spatial index at one point in time. Nothing in it ever changes, so any
+ number of threads can query it without locking, and indices stay valid for as long as it is held.<br><br>
+
+ It consists of a {@link PackedRTree} base, an {@link OverlayNode} tree with the items added since the
+ base was packed, and a set of removed indices. Item indices {@code [0, base.size())} are those of the
+ base, and the added items follow in the order they were added. {@link #apply} makes the next snapshot,
+ sharing the base, all unchanged overlay nodes and all unchanged chunks of the added-list and removed-set
+ with this one. Once the overlay and the removals grow past a fraction of the base, it packs everything
+ into a new base instead, which renumbers the items. */
+public final class Snapshot implements IDrawableIndex, Serializable {
+    static final Snapshot EMPTY = new Snapshot(PackedRTree.build(List.of()), null,
+            PersistentList.empty(), PersistentBitSet.EMPTY);
+    /** Repack once the overlay and removals add up to more than this fraction of the base. */
+    private static final int REPACK_DIVISOR = 8;
+    private static final int REPACK_MINIMUM = 1024;
+
+    private final PackedRTree base;
+    /** {@code null} while nothing has been added since the base was packed. */
+    private final OverlayNode overlay;
+    private final PersistentList<IDrawable> added;
+    private final PersistentBitSet removed;
+
+    private Snapshot(PackedRTree base, OverlayNode overlay, PersistentList<IDrawable> added, PersistentBitSet removed) {
+        this.base = base;
+        this.overlay = overlay;
+        this.added = added;
+        this.removed = removed;
+    }
+
+    /** The next snapshot: this one with {@code removals} removed and then {@code additions} added.
+     Removing an item that isn't in the index does nothing.
+     @param progress Incremented as the bounding boxes of items are computed, should everything be repacked. */
+    Snapshot apply(List<IDrawable> additions, List<IDrawable> removals, LongAdder progress) {
+        IntList dead = new IntList();
+        for (IDrawable item : removals) {
+            int index = indexOf(item);
+            if (index >= 0) dead.add(index);
+        }
+        PersistentBitSet newRemoved = removed.with(dead.toArray(), dead.size());
+
+        int changes = added.size() + additions.size() + newRemoved.cardinality();
+        if (changes > Math.max(REPACK_MINIMUM, base.size() / REPACK_DIVISOR)) {
+            return repack(additions, newRemoved, progress);
+        }
+        OverlayNode newOverlay = overlay;
+        for (int i = 0; i < additions.size(); i++) {
+            Rectangle box = additions.get(i).boundingBox();
+            newOverlay = OverlayNode.insert(newOverlay, added.size() + i,
+                    box.minLon(), box.minLat(), box.maxLon(), box.maxLat());
+        }
+        return new Snapshot(base, newOverlay, added.withAll(additions), newRemoved);
+    }
+
+    private Snapshot repack(List<IDrawable> additions, PersistentBitSet removed, LongAdder progress) {
+        int total = base.size() + added.size();
+        int live = total - removed.cardinality();
+        IDrawable[] items = new IDrawable[live + additions.size()];
+        float[] boxes = new float[items.length * 4];
+        // Items from the base already have their boxes; the others get them computed in parallel.
+        float[] baseBoxes = new float[base.size() * 4];
+        base.itemBoxes(baseBoxes);
+        int count = 0;
+        for (int i = 0; i < base.size(); i++) {
+            if (removed.get(i)) continue;
+            System.arraycopy(baseBoxes, i * 4, boxes, count * 4, 4);
+            items[count++] = base.item(i);
+        }
+        int known = count;
+        for (int i = base.size(); i < total; i++) {
+            if (!removed.get(i)) items[count++] = added.get(i - base.size());
+        }
+        for (IDrawable item : additions) items[count++] = item;
+        PackedRTree.computeBoxes(items, boxes, known, progress);
+        return new Snapshot(PackedRTree.build(items, boxes), null, PersistentList.empty(), PersistentBitSet.EMPTY);
+    }
+
+    /** The index of {@code item} (the very object, not an equal one), or -1 if it isn't in the index. */
+    public int indexOf(IDrawable item) {
+        Rectangle box = item.boundingBox();
+        int[] found = {-1};
+        queryIndices(box.minLon(), box.minLat(), box.maxLon(), box.maxLat(), (int index) -> {
+            if (get(index) == item) found[0] = index;
+        });
+        return found[0];
+    }
+
+    @Override
+    public IDrawable get(int index) {
+        return index < base.size() ? base.item(index) : added.get(index - base.size());
+    }
+
+    /** Number of items in the index. */
+    @Override
+    public long size() {
+        return base.size() + added.size() - removed.cardinality();
+    }
+
+    /** The highest item index in use, plus one. Some indices below it may belong to removed items. */
+    public int indexBound() {
+        return base.size() + added.size();
+    }
+
+    /** Passes the index of every item whose bounding box intersects the given rectangle to {@code action}. */
+    @Override
+    public void queryIndices(float minX, float minY, float maxX, float maxY, IntConsumer action) {
+        if (removed.cardinality() == 0) {
+            base.queryIndices(minX, minY, maxX, maxY, action);
+        } else {
+            base.queryIndices(minX, minY, maxX, maxY, (int index) -> {
+                if (!removed.get(index)) action.accept(index);
+            });
+        }
+        if (overlay != null) {
+            int offset = base.size();
+            overlay.query(minX, minY, maxX, maxY, (int position) -> {
+                if (!removed.get(offset + position)) action.accept(offset + position);
+            });
+        }
+    }
+
+    /** Writes the index of every item whose bounding box intersects the given rectangle to {@code out},
+     as far as there is room.
+     @return The number of items found, which is more than {@code out.length} if some didn't fit. */
+    @Override
+    public int query(float minX, float minY, float maxX, float maxY, int[] out) {
+        if (overlay == null && removed.cardinality() == 0) return base.query(minX, minY, maxX, maxY, out);
+        int[] found = {0};
+        queryIndices(minX, minY, maxX, maxY, (int index) -> {
+            if (found[0] < out.length) out[found[0]] = index;
+            found[0]++;
+        });
+        return found[0];
+    }
+
+    /** Finds the {@code k} items nearest to the point (x, y), as {@link PackedRTree#nearest} does,
+     over the base and the overlay together.
+     @return The number of items found. */
+    @Override
+    public int nearest(float x, float y, int k, float maxDistance, int[] out, float[] distances) {
+        IntPredicate alive = removed.cardinality() == 0 ? null : index -> !removed.get(index);
+        if (overlay == null) return base.nearest(x, y, k, maxDistance, out, distances, alive);
+        k = Math.min(k, out.length);
+        if (k <= 0) return 0;
+        if (distances == null || distances.length < k) distances = new float[k];
+        int found = base.nearest(x, y, k, maxDistance, out, distances, alive);
+        Nearest result = new Nearest(out, distances, k, maxDistance, found);
+        int offset = base.size();
+        result.offset = offset;
+        overlay.nearest(x, y, result, position -> removed.get(offset + position)
+                ? Double.POSITIVE_INFINITY : added.get(position).distanceSquared(x, y));
+        return result.found;
+    }
+
+    @Override
+    public String toString() {
+        return "Snapshot: " + size() + " items, " + base.size() + " packed, " + added.size() + " added, "
+                + removed.cardinality() + " removed";
+    }
+}
@@ -0,0 +1,355 @@
+package com.falkknudsen.jaywalk.structs;
+
+import com.falkknudsen.jaywalk.contracts.IDrawable;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import static com.falkknudsen.jaywalk.util.BinaryIO.expectMagic;
+
+/** Projected coordinates of ways, x and y interleaved, kept off the heap in large chunks of native memory, so
+ the garbage collector neither has to trace nor copy them, and a way needs no array of its own.<br><br>
+
+ A way's coordinates are a region of a chunk, known by a {@code long} handle: the chunk in the high 32 bits,
+ and where in it the first coordinate is, counted in floats, in the low. Before the coordinates are two ints,
+ how many vertices the region has room for, and how many it holds, so no handle is 0. A region is allocated
+ where the last one ended, so adding a vertex to the way allocated last only moves the end of the chunk; any
+ other way that is full is moved to the end, with room for twice as many. Either way, adding to a way takes
+ amortised constant time. Space that a way leaves behind is not reused, and the memory is only freed when the
+ process ends: the pool is meant for the map, which lives as long as the application.<br>
+ {@link #write} saves the chunks to a file, and {@link #map} maps such a file back in as chunks of its own,
+ read-only, so its ways are read straight from the file. One that is added to is moved out of it first. Like
+ the rest of the pool, a mapped file stays mapped until the process ends, so mapping the same file again
+ reuses the chunks it was mapped to the first time.<br><br>
+
+ Regions are allocated and added to under the pool's lock. Reading needs none: a way's coordinates are
+ as safe to read from another thread as they would be in an array of its own. */
+public final class CoordinatePool {
+    /** Floats in a chunk, 16 MB, unless a single way needs more. */
+    static final int CHUNK_FLOATS = 1 << 22;
+    /** Floats before the coordinates of each region: its capacity and size, in vertices. */
+    private static final int HEADER = 2;
+    /** The fewest vertices a region is given room for when it is moved to grow. */
+    private static final int MIN_CAPACITY = 4;
+    private static final int MAGIC = 0x4A57_4350;
+    private static final int VERSION = 1;
+    private static final int FILE_ALIGNMENT = 4096;
+    private static final ValueLayout.OfFloat FLOAT = ValueLayout.JAVA_FLOAT;
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT;
+
+    private static final CoordinatePool GLOBAL = new CoordinatePool();
+
+    private final Arena arena = Arena.ofShared();
+    /** Replaced, never changed, when a chunk is added, so readers see a complete array without the lock. */
+    private volatile MemorySegment[] chunks = new MemorySegment[0];
+    /** Floats in use in each chunk. */
+    private long[] used = new long[0];
+    /** The chunk new regions are allocated in, or -1 if there is none yet, or the last one was mapped. */
+    private int current = -1;
+    private long reservedBytes;
+    /** What {@link #map} returned for each file it has mapped, as long as the file is the same. */
+    private final Map<MappedFile, Long> mapped = new HashMap<>();
+
+    /** A file as {@link #map} found it: the file itself, by its key if the file system has them, and its size and
+     time of modification, so a file written anew isn't taken for the one mapped before. */
+    private record MappedFile(Object file, long size, FileTime modified) {
+        static MappedFile of(Path path) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            Object key = attributes.fileKey() != null ? attributes.fileKey() : path.toRealPath();
+            return new MappedFile(key, attributes.size(), attributes.lastModifiedTime());
+        }
+    }
+
+    private CoordinatePool() {}
+
+    /** The pool of every way. */
+    public static CoordinatePool global() {
+        return GLOBAL;
+    }
+
+//==================================================================================================================
+// Allocating and adding
+//==================================================================================================================
+    /** Copies the coordinates, x and y interleaved, into a new region with room for just as many.
+     @return The handle of the region. */
+    public synchronized long store(float[] coordinates) {
+        int n = coordinates.length / 2;
+        long handle = allocate(n);
+        MemorySegment chunk = chunks[chunk(handle)];
+        MemorySegment.copy(coordinates, 0, chunk, FLOAT, position(handle) * (long) Float.BYTES, n * 2);
+        chunk.setAtIndex(INT, position(handle) - 1, n);
+        return handle;
+    }
+
+    /** Adds a vertex to the end of the way in the region, moving the region if it is full and can't grow in
+     place.
+     @return The handle of the region, which is {@code handle} unless it was moved. */
+    public synchronized long append(long handle, float x, float y) {
+        MemorySegment[] chunks = this.chunks;
+        int c = chunk(handle), position = position(handle);
+        MemorySegment chunk = chunks[c];
+        int capacity = chunk.getAtIndex(INT, position - 2), size = chunk.getAtIndex(INT, position - 1);
+        // A mapped chunk is read-only, so a way in one is moved out before it is added to.
+        if (size == capacity || chunk.isReadOnly()) {
+            int grown = Math.max(MIN_CAPACITY, size * 2);
+            long end = position + capacity * 2L;
+            if (c == current && end == used[c] && end + (grown - capacity) * 2L <= chunk.byteSize() / Float.BYTES) {
+                used[c] = end + (grown - capacity) * 2L;
+                chunk.setAtIndex(INT, position - 2, grown);
+            } else {
+                long moved = allocate(grown);
+                MemorySegment destination = this.chunks[chunk(moved)];
+                MemorySegment.copy(chunk, position * (long) Float.BYTES,
+                        destination, position(moved) * (long) Float.BYTES, size * 2L * Float.BYTES);
+                handle = moved;
+                chunk = destination;
+                position = position(moved);
+            }
+        }
+        chunk.setAtIndex(FLOAT, position + size * 2L, x);
+        chunk.setAtIndex(FLOAT, position + size * 2L + 1, y);
+        chunk.setAtIndex(INT, position - 1, size + 1);
+        return handle;
+    }
+
+    /** Allocates an empty region with room for {@code capacity} vertices, in a new chunk if the current one
+     is too full. */
+    private long allocate(int capacity) {
+        long floats = HEADER + capacity * 2L;
+        if (current < 0 || used[current] + floats > chunks[current].byteSize() / Float.BYTES) {
+            addChunk(arena.allocate(Math.max(CHUNK_FLOATS, floats) * Float.BYTES, 8), 0);
+            current = chunks.length - 1;
+        }
+        int position = (int) (used[current] + HEADER);
+        used[current] += floats;
+        MemorySegment chunk = chunks[current];
+        chunk.setAtIndex(INT, position - 2, capacity);
+        chunk.setAtIndex(INT, position - 1, 0);
+        return handle(current, position);
+    }
+
+    private void addChunk(MemorySegment chunk, long floatsUsed) {
+        MemorySegment[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+        grown[chunks.length] = chunk;
+        used = Arrays.copyOf(used, grown.length);
+        used[chunks.length] = floatsUsed;
+        reservedBytes += chunk.byteSize();
+        chunks = grown;
+    }
+
+    private static long handle(int chunk, int position) {
+        return (long) chunk << 32 | position;
+    }
+
+    private static int chunk(long handle) {
+        return (int) (handle >>> 32);
+    }
+
+    private static int position(long handle) {
+        return (int) handle;
+    }
+
+//==================================================================================================================
+// Reading
+//==================================================================================================================
+    /** Number of vertices in the region. */
+    public int size(long handle) {
+        return chunks[chunk(handle)].getAtIndex(INT, position(handle) - 1);
+    }
+
+    /** Number of vertices the region has room for. */
+    public int capacity(long handle) {
+        return chunks[chunk(handle)].getAtIndex(INT, position(handle) - 2);
+    }
+
+    /** Bytes the region takes up in its chunk, its header included. */
+    public long regionBytes(long handle) {
+        return (HEADER + capacity(handle) * 2L) * Float.BYTES;
+    }
+
+    /** The x coordinate of vertex {@code i}. */
+    public float x(long handle, int i) {
+        MemorySegment chunk = chunks[chunk(handle)];
+        int position = position(handle);
+        Objects.checkIndex(i, chunk.getAtIndex(INT, position - 1));
+        return chunk.getAtIndex(FLOAT, position + i * 2L);
+    }
+
+    /** The y coordinate of vertex {@code i}. */
+    public float y(long handle, int i) {
+        MemorySegment chunk = chunks[chunk(handle)];
+        int position = position(handle);
+        Objects.checkIndex(i, chunk.getAtIndex(INT, position - 1));
+        return chunk.getAtIndex(FLOAT, position + i * 2L + 1);
+    }
+
+    /** Copies the coordinates of vertices {@code from} to {@code to}, exclusive, x and y interleaved, into
+     {@code dest} from {@code offset}. */
+    public void copy(long handle, int from, int to, float[] dest, int offset) {
+        MemorySegment chunk = chunks[chunk(handle)];
+        int position = position(handle);
+        Objects.checkFromToIndex(from, to, chunk.getAtIndex(INT, position - 1));
+        MemorySegment.copy(chunk, FLOAT, (position + from * 2L) * Float.BYTES, dest, offset, (to - from) * 2);
+    }
+
+    /** The coordinates, x and y interleaved, copied into an array of their own. */
+    public float[] toArray(long handle) {
+        float[] coordinates = new float[size(handle) * 2];
+        copy(handle, 0, coordinates.length / 2, coordinates, 0);
+        return coordinates;
+    }
+
+    /** Passes every segment to {@code visitor}, in order. */
+    public void forEachSegment(long handle, IDrawable.SegmentVisitor visitor) {
+        MemorySegment chunk = chunks[chunk(handle)];
+        long position = position(handle), end = position + chunk.getAtIndex(INT, position - 1) * 2L;
+        if (end == position) return;
+        float previousX = chunk.getAtIndex(FLOAT, position), previousY = chunk.getAtIndex(FLOAT, position + 1);
+        for (long i = position + 2; i < end; i += 2) {
+            float x = chunk.getAtIndex(FLOAT, i), y = chunk.getAtIndex(FLOAT, i + 1);
+            visitor.visit(previousX, previousY, x, y);
+            previousX = x;
+            previousY = y;
+        }
+    }
+
+    /** Sum of the lengths of the segments, in projected units. */
+    public double length(long handle) {
+        MemorySegment chunk = chunks[chunk(handle)];
+        long position = position(handle), end = position + chunk.getAtIndex(INT, position - 1) * 2L;
+        double length = 0;
+        for (long i = position + 2; i < end; i += 2) {
+            length += Math.hypot(chunk.getAtIndex(FLOAT, i) - chunk.getAtIndex(FLOAT, i - 2),
+                    chunk.getAtIndex(FLOAT, i + 1) - chunk.getAtIndex(FLOAT, i - 1));
+        }
+        return length;
+    }
+
+    /** Bytes of native memory taken up by the chunks, allocated or mapped. */
+    public synchronized long reservedBytes() {
+        return reservedBytes;
+    }
+
+    /** Bytes of the chunks taken up by regions, those of ways that have moved or are gone included. */
+    public synchronized long usedBytes() {
+        long floats = 0;
+        for (long u : used) floats += u;
+        return floats * Float.BYTES;
+    }
+
+    public synchronized int chunkCount() {
+        return chunks.length;
+    }
+
+//==================================================================================================================
+// Snapshots
+//==================================================================================================================
+    /** Writes the used part of every chunk to {@code file}, replacing what was there, so that it can be
+     {@link #map mapped} back in, in this process or another. The handles of the regions stay valid, once
+     shifted as {@link #map} says. The file has a header with the number of chunks and the floats used in each,
+     padded to {@value #FILE_ALIGNMENT} bytes, and then the chunks, in the machine's byte order.<br>
+     It is written to a new file, which is then moved over {@code file}, so a file that is mapped, here or in
+     another process, is never changed under the ways read from it. */
+    public synchronized void write(Path file) throws IOException {
+        Path written = file.resolveSibling(file.getFileName() + ".tmp");
+        writeChunks(written);
+        Files.move(written, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void writeChunks(Path file) throws IOException {
+        MemorySegment[] chunks = this.chunks;
+        ByteBuffer header = ByteBuffer.allocate(headerBytes(chunks.length));
+        header.putInt(MAGIC).putInt(VERSION).putInt(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 1 : 0)
+                .putInt(chunks.length);
+        for (int c = 0; c < chunks.length; c++) header.putLong(used[c]);
+        header.clear();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header, 0);
+            long position = header.capacity();
+            for (int c = 0; c < chunks.length; c++) {
+                long bytes = used[c] * Float.BYTES;
+                // A byte buffer can't be more than 2 GB, so the chunk is written in slices of 1 GB.
+                for (long start = 0; start < bytes; start += 1L << 30) {
+                    ByteBuffer slice = chunks[c].asSlice(start, Math.min(1L << 30, bytes - start)).asByteBuffer();
+                    writeFully(channel, slice, position + start);
+                }
+                position += bytes;
+            }
+        }
+    }
+
+    /** Maps a file written by {@link #write} in as read-only chunks of this pool, for as long as the pool lives,
+     unless it is mapped already and hasn't been written since, in which case those chunks are used again.
+     @return What to add to a handle from the pool that wrote the file, for it to be one in this pool. */
+    public synchronized long map(Path file) throws IOException {
+        MappedFile key = MappedFile.of(file);
+        Long base = mapped.get(key);
+        if (base != null) return base;
+        base = mapChunks(file);
+        mapped.put(key, base);
+        return base;
+    }
+
+    private long mapChunks(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer start = ByteBuffer.allocate(16);
+            channel.read(start, 0);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(start.array()));
+            expectMagic(in, MAGIC, "coordinate pool");
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported coordinate pool file (version " + version + ").");
+            boolean littleEndian = in.readInt() == 1;
+            if (littleEndian != (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN)) {
+                throw new IOException("The coordinate pool file was written on a machine of another byte order.");
+            }
+            int count = in.readInt();
+            ByteBuffer header = ByteBuffer.allocate(headerBytes(count));
+            channel.read(header, 0);
+            long[] floats = new long[count];
+            long size = header.capacity();
+            for (int c = 0; c < count; c++) {
+                floats[c] = header.getLong(16 + c * 8);
+                size += floats[c] * Float.BYTES;
+            }
+            if (size != channel.size()) {
+                throw new IOException("Truncated coordinate pool file (" + channel.size() + " bytes, expected " + size + ").");
+            }
+            MemorySegment mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size, arena);
+            long base = (long) chunks.length << 32;
+            long position = header.capacity();
+            for (int c = 0; c < count; c++) {
+                addChunk(mapped.asSlice(position, floats[c] * Float.BYTES), floats[c]);
+                position += floats[c] * Float.BYTES;
+            }
+            current = -1;
+            return base;
+        }
+    }
+
+    private static int headerBytes(int chunks) {
+        int bytes = 16 + chunks * 8;
+        return (bytes + FILE_ALIGNMENT - 1) / FILE_ALIGNMENT * FILE_ALIGNMENT;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) position += channel.write(buffer, position);
+    }
+}
@@ -0,0 +1,44 @@
+package com.falkknudsen.jaywalk.structs;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/** Growable list of primitive {@code float}s. The float counterpart to {@link IntList}. */
+public class FloatList implements Serializable {
+    private float[] data;
+    private int size;
+
+    public FloatList() {
+        this(16);
+    }
+
+    public FloatList(int capacity) {
+        data = new float[Math.max(capacity, 1)];
+    }
+
+    public void add(float value) {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        data[size++] = value;
+    }
+
+    public float get(int index) {
+        if (index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        return data[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /** Returns a trimmed copy of the contents. */
+    public float[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+}
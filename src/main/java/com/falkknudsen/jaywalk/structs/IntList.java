@@ -0,0 +1,64 @@
+package com.falkknudsen.jaywalk.structs;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/** Growable list of primitive {@code int}s. Avoids the boxing of {@code List<Integer>}
+ in the places where we collect millions of IDs. Not thread-safe. */
+public class IntList implements Serializable {
+    private int[] data;
+    private int size;
+
+    public IntList() {
+        this(16);
+    }
+
+    public IntList(int capacity) {
+        data = new int[Math.max(capacity, 1)];
+    }
+
+    public void add(int value) {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        data[size++] = value;
+    }
+
+    public int get(int index) {
+        if (index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        return data[index];
+    }
+
+    public void set(int index, int value) {
+        if (index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        data[index] = value;
+    }
+
+    /** Removes and returns the last element. */
+    public int pop() {
+        return data[--size];
+    }
+
+    public int peek() {
+        return data[size - 1];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /** Returns a trimmed copy of the contents. */
+    public int[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+}
@@ -0,0 +1,118 @@
+package com.falkknudsen.jaywalk.structs;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/** Hash map from {@code long} keys to {@code int} values, with open addressing and linear probing in two
+ parallel arrays. Avoids the boxed keys and values, and the entry objects, of {@code HashMap<Long, Integer>}.
+ Keys can't be removed. Not thread-safe. */
+public class LongIntMap implements Serializable {
+    /** Marks an empty slot. A key that is this value is kept apart, in {@link #hasEmptyKey}. */
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] values;
+    private int size, mask;
+    private boolean hasEmptyKey;
+    private int emptyKeyValue;
+
+    public LongIntMap() {
+        this(16);
+    }
+
+    /** @param expected The number of keys to make room for without growing. */
+    public LongIntMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(expected * 2, 4) - 1) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /** The value of the key, or {@code missing} if it has none. */
+    public int get(long key, int missing) {
+        if (key == EMPTY) return hasEmptyKey ? emptyKeyValue : missing;
+        for (int slot = slot(key); ; slot = slot + 1 & mask) {
+            long k = keys[slot];
+            if (k == key) return values[slot];
+            if (k == EMPTY) return missing;
+        }
+    }
+
+    public boolean containsKey(long key) {
+        if (key == EMPTY) return hasEmptyKey;
+        for (int slot = slot(key); ; slot = slot + 1 & mask) {
+            long k = keys[slot];
+            if (k == key) return true;
+            if (k == EMPTY) return false;
+        }
+    }
+
+    public void put(long key, int value) {
+        if (key == EMPTY) {
+            if (!hasEmptyKey) size++;
+            hasEmptyKey = true;
+            emptyKeyValue = value;
+            return;
+        }
+        int slot = find(key);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            values[slot] = value;
+            if (++size * 2 > keys.length) grow();
+            return;
+        }
+        values[slot] = value;
+    }
+
+    /** Adds {@code amount} to the value of the key, which is 0 if it has none.
+     @return The new value. */
+    public int add(long key, int amount) {
+        if (key == EMPTY) {
+            if (!hasEmptyKey) size++;
+            hasEmptyKey = true;
+            return emptyKeyValue += amount;
+        }
+        int slot = find(key);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            values[slot] = amount;
+            if (++size * 2 > keys.length) grow();
+            return amount;
+        }
+        return values[slot] += amount;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** The slot with the key, or the empty one it would go in. */
+    private int find(long key) {
+        int slot = slot(key);
+        while (keys[slot] != key && keys[slot] != EMPTY) slot = slot + 1 & mask;
+        return slot;
+    }
+
+    private int slot(long key) {
+        // Fibonacci hashing: coordinates as keys differ mostly in their middle bits, which this spreads out.
+        return (int) (key * 0x9E37_79B9_7F4A_7C15L >>> 32) & mask;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(keys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.falkknudsen.jaywalk.structs;
+
+import java.util.Arrays;
+
+/** Binary min-heap of {@code int} items ordered by a {@code float} key, stored in two parallel
+ arrays so that searches don't allocate a node object per push.<br>
+ There is no decrease-key operation; callers push an item again with the better key and skip
+ stale entries when they are polled. Not thread-safe. */
+public class MinHeap {
+    private int[] items;
+    private float[] keys;
+    private int size;
+
+    public MinHeap() {
+        this(64);
+    }
+
+    public MinHeap(int capacity) {
+        items = new int[Math.max(capacity, 1)];
+        keys = new float[Math.max(capacity, 1)];
+    }
+
+    public void add(int item, float key) {
+        if (size == items.length) {
+            items = Arrays.copyOf(items, size * 2);
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (keys[parent] <= key) break;
+            items[i] = items[parent];
+            keys[i] = keys[parent];
+            i = parent;
+        }
+        items[i] = item;
+        keys[i] = key;
+    }
+
+    /** The item with the smallest key. Undefined if the heap is empty. */
+    public int peek() {
+        return items[0];
+    }
+
+    /** The smallest key. Undefined if the heap is empty. */
+    public float peekKey() {
+        return keys[0];
+    }
+
+    /** Removes and returns the item with the smallest key. */
+    public int poll() {
+        int top = items[0];
+        size--;
+        if (size > 0) {
+            int item = items[size];
+            float key = keys[size];
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && keys[child + 1] < keys[child]) child++;
+                if (key <= keys[child]) break;
+                items[i] = items[child];
+                keys[i] = keys[child];
+                i = child;
+            }
+            items[i] = item;
+            keys[i] = key;
+        }
+        return top;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
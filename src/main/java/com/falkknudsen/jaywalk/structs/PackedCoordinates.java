@@ -0,0 +1,247 @@
+package com.falkknudsen.jaywalk.structs;
+
+import com.falkknudsen.jaywalk.contracts.IDrawable;
+
+import java.util.Arrays;
+
+/** Packs the projected coordinates of a way, x and y interleaved, into a byte array of about half the size,
+ and reads them back.<br><br>
+
+ Each coordinate is made fixed-point, in units of 2<sup>-21</sup>, and all but the first are stored as the
+ difference from the one before, zig-zag encoded so small negative differences are small too, as varints.
+ Vertices are rarely more than a few metres apart, so most differences take a byte or two. Every
+ {@value #CHECKPOINT}th vertex is stored in full instead, and where each of those starts is in a table at the
+ front, so one vertex can be found without decoding the way from the start.<br>
+ A float of magnitude 4 or more is a whole number of those units, which covers every projected coordinate
+ around Denmark (see {@link com.falkknudsen.jaywalk.Point}), so those come back exactly as they went in.
+ Smaller ones are rounded to the nearest unit, some 3 cm. Floats only have so many significant bits, so the
+ lowest bits of the fixed-point numbers are often zero in every vertex of a way, as those of y, for latitudes
+ above 32 degrees; they are shifted out, for each axis separately.<br><br>
+
+ The layout: the number of vertices as a varint, a byte with the shifts of x and y, 4 bytes for each
+ checkpoint after the first, giving its position in the array, and then the vertices. */
+public final class PackedCoordinates {
+    static final int CHECKPOINT = 32;
+    private static final float SCALE = 0x1p21f, UNIT = 0x1p-21f;
+
+    private PackedCoordinates() {}
+
+    /** The coordinates, x and y interleaved, packed. */
+    public static byte[] pack(float[] coordinates) {
+        int n = coordinates.length / 2;
+        int[] xs = new int[n], ys = new int[n];
+        int allX = 0, allY = 0;
+        for (int i = 0; i < n; i++) {
+            xs[i] = Math.round(coordinates[i * 2] * SCALE);
+            ys[i] = Math.round(coordinates[i * 2 + 1] * SCALE);
+            allX |= xs[i];
+            allY |= ys[i];
+        }
+        int shiftX = shift(allX), shiftY = shift(allY);
+        int checkpoints = n == 0 ? 0 : (n - 1) / CHECKPOINT;
+        byte[] bytes = new byte[5 + 1 + checkpoints * 4 + n * 10];
+        int p = writeVarint(bytes, 0, n);
+        bytes[p++] = (byte) (shiftX | shiftY << 4);
+        int table = p;
+        p += checkpoints * 4;
+        for (int i = 0; i < n; i++) {
+            int dx = xs[i], dy = ys[i];
+            if (i % CHECKPOINT == 0) {
+                if (i > 0) writeInt(bytes, table + (i / CHECKPOINT - 1) * 4, p);
+            } else {
+                // Wrapping differences are fine: adding them back wraps the same way.
+                dx -= xs[i - 1];
+                dy -= ys[i - 1];
+            }
+            p = writeVarint(bytes, p, zigzag(dx >> shiftX));
+            p = writeVarint(bytes, p, zigzag(dy >> shiftY));
+        }
+        return Arrays.copyOf(bytes, p);
+    }
+
+    /** How many of the lowest bits are zero in all of the values, as OR'ed together, up to 15. */
+    private static int shift(int all) {
+        return all == 0 ? 0 : Math.min(15, Integer.numberOfTrailingZeros(all));
+    }
+
+    /** Number of vertices. */
+    public static int size(byte[] packed) {
+        return (int) varint(packed, 0);
+    }
+
+    /** The coordinates, x and y interleaved, as they were packed. */
+    public static float[] unpack(byte[] packed) {
+        float[] coordinates = new float[size(packed) * 2];
+        decode(packed, coordinates, 0);
+        return coordinates;
+    }
+
+    /** Decodes the coordinates, x and y interleaved, into {@code dest} from {@code offset}. There are
+     {@code 2 * size(packed)} of them. */
+    public static void decode(byte[] packed, float[] dest, int offset) {
+        decode(packed, 0, size(packed), dest, offset);
+    }
+
+    /** Decodes the coordinates of vertices {@code from} to {@code to}, exclusive, x and y interleaved, into
+     {@code dest} from {@code offset}, starting from the checkpoint before {@code from}. */
+    public static void decode(byte[] packed, int from, int to, float[] dest, int offset) {
+        Cursor cursor = new Cursor(packed);
+        if (from < 0 || to > cursor.size || from > to) {
+            throw new IndexOutOfBoundsException("From: " + from + ", To: " + to + ", Size: " + cursor.size);
+        }
+        if (from == to) return;
+        for (int i = cursor.seek(from); i < to; i++) {
+            cursor.next(i);
+            if (i < from) continue;
+            dest[offset++] = cursor.x * UNIT;
+            dest[offset++] = cursor.y * UNIT;
+        }
+    }
+
+    /** Passes every segment to {@code visitor}, in order, decoding as it goes. */
+    public static void forEachSegment(byte[] packed, IDrawable.SegmentVisitor visitor) {
+        Cursor cursor = new Cursor(packed);
+        float previousX = 0, previousY = 0;
+        for (int i = 0; i < cursor.size; i++) {
+            cursor.next(i);
+            float currentX = cursor.x * UNIT, currentY = cursor.y * UNIT;
+            if (i > 0) visitor.visit(previousX, previousY, currentX, currentY);
+            previousX = currentX;
+            previousY = currentY;
+        }
+    }
+
+    /** The x coordinate of vertex {@code i}, decoded from the checkpoint before it. */
+    public static float x(byte[] packed, int i) {
+        return x(vertex(packed, i));
+    }
+
+    /** The y coordinate of vertex {@code i}, decoded from the checkpoint before it. */
+    public static float y(byte[] packed, int i) {
+        return y(vertex(packed, i));
+    }
+
+    /** Vertex {@code i}, decoded from the checkpoint before it, fixed-point, with x in the high 32 bits and
+     y in the low; see {@link #x(long)} and {@link #y(long)}. */
+    public static long vertex(byte[] packed, int i) {
+        Cursor cursor = new Cursor(packed);
+        if (i < 0 || i >= cursor.size) throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + cursor.size);
+        for (int j = cursor.seek(i); j <= i; j++) cursor.next(j);
+        return (long) cursor.x << 32 | cursor.y & 0xFFFFFFFFL;
+    }
+
+    /** The x coordinate of a vertex from {@link #vertex}. */
+    public static float x(long vertex) {
+        return (int) (vertex >> 32) * UNIT;
+    }
+
+    /** The y coordinate of a vertex from {@link #vertex}. */
+    public static float y(long vertex) {
+        return (int) vertex * UNIT;
+    }
+
+    /** Sum of the lengths of the segments, in projected units, decoded as it goes. */
+    public static double length(byte[] packed) {
+        Cursor cursor = new Cursor(packed);
+        float previousX = 0, previousY = 0;
+        double length = 0;
+        for (int i = 0; i < cursor.size; i++) {
+            cursor.next(i);
+            float currentX = cursor.x * UNIT, currentY = cursor.y * UNIT;
+            if (i > 0) length += Math.hypot(currentX - previousX, currentY - previousY);
+            previousX = currentX;
+            previousY = currentY;
+        }
+        return length;
+    }
+
+    /** Reads the vertices of a packed array one after another, fixed-point, from its first vertex or from a
+     checkpoint. It never leaves the method that makes it, so it costs no allocation once compiled. */
+    private static final class Cursor {
+        private final byte[] packed;
+        final int size;
+        private final int shiftX, shiftY;
+        /** Where the table of checkpoints starts. */
+        private final int table;
+        /** Where the next varint starts. */
+        private int p;
+        /** The vertex last read. */
+        int x, y;
+
+        /** A cursor at the first vertex. */
+        Cursor(byte[] packed) {
+            this.packed = packed;
+            long read = varint(packed, 0);
+            size = (int) read;
+            p = (int) (read >>> 32);
+            shiftX = packed[p] & 0xF;
+            shiftY = packed[p] >> 4 & 0xF;
+            table = p + 1;
+            p = table + (size == 0 ? 0 : (size - 1) / CHECKPOINT) * 4;
+        }
+
+        /** Moves to the checkpoint before vertex {@code i}, which must be one of them.
+         @return The vertex there, which {@link #next} is to be given next. */
+        int seek(int i) {
+            int checkpoint = i / CHECKPOINT;
+            if (checkpoint > 0) p = readInt(packed, table + (checkpoint - 1) * 4);
+            return checkpoint * CHECKPOINT;
+        }
+
+        /** Reads vertex {@code i} into {@link #x} and {@link #y}; the vertices must be read in order. */
+        void next(int i) {
+            if (i % CHECKPOINT == 0) x = y = 0;
+            x += unzigzag(readVarint()) << shiftX;
+            y += unzigzag(readVarint()) << shiftY;
+        }
+
+        // Read here rather than with varint(), since this is the loop drawing goes through.
+        private int readVarint() {
+            int b = packed[p++], value = b & 0x7F;
+            for (int shift = 7; b < 0; shift += 7) {
+                b = packed[p++];
+                value |= (b & 0x7F) << shift;
+            }
+            return value;
+        }
+    }
+
+    private static int zigzag(int value) {
+        return value << 1 ^ value >> 31;
+    }
+
+    private static int unzigzag(int value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    /** Reads the varint at {@code p}: its value in the low 32 bits, and where the next one starts in the high. */
+    private static long varint(byte[] bytes, int p) {
+        int value = 0, shift = 0, b;
+        do {
+            b = bytes[p++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value & 0xFFFFFFFFL | (long) p << 32;
+    }
+
+    private static int writeVarint(byte[] bytes, int p, int value) {
+        while ((value & ~0x7F) != 0) {
+            bytes[p++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        bytes[p++] = (byte) value;
+        return p;
+    }
+
+    private static void writeInt(byte[] bytes, int p, int value) {
+        bytes[p] = (byte) (value >>> 24);
+        bytes[p + 1] = (byte) (value >>> 16);
+        bytes[p + 2] = (byte) (value >>> 8);
+        bytes[p + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] bytes, int p) {
+        return (bytes[p] & 0xFF) << 24 | (bytes[p + 1] & 0xFF) << 16 | (bytes[p + 2] & 0xFF) << 8 | bytes[p + 3] & 0xFF;
+    }
+}
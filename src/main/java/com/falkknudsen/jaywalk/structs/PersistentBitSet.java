@@ -0,0 +1,57 @@
+package com.falkknudsen.jaywalk.structs;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/** Immutable set of non-negative {@code int}s, stored as a bit set in chunks of 4096 bits.<br>
+ {@link #with} returns a new set that shares every chunk it didn't have to change with this one,
+ so a few changes to a set over millions of indices copy a few hundred pointers rather than the bits. */
+public final class PersistentBitSet implements Serializable {
+    private static final int CHUNK_SHIFT = 12;
+    private static final int WORDS_PER_CHUNK = (1 << CHUNK_SHIFT) / 64;
+    public static final PersistentBitSet EMPTY = new PersistentBitSet(new long[0][], 0);
+
+    /** {@code null} for chunks with no bits set. */
+    private final long[][] chunks;
+    private final int cardinality;
+
+    private PersistentBitSet(long[][] chunks, int cardinality) {
+        this.chunks = chunks;
+        this.cardinality = cardinality;
+    }
+
+    public boolean get(int index) {
+        int chunk = index >>> CHUNK_SHIFT;
+        if (chunk >= chunks.length || chunks[chunk] == null) return false;
+        int bit = index & ((1 << CHUNK_SHIFT) - 1);
+        return (chunks[chunk][bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /** This set with the first {@code count} of {@code indices} added. */
+    public PersistentBitSet with(int[] indices, int count) {
+        if (count == 0) return this;
+        int maxChunk = chunks.length - 1;
+        for (int i = 0; i < count; i++) maxChunk = Math.max(maxChunk, indices[i] >>> CHUNK_SHIFT);
+        long[][] copy = Arrays.copyOf(chunks, maxChunk + 1);
+        boolean[] copied = new boolean[copy.length];
+        int cardinality = this.cardinality;
+        for (int i = 0; i < count; i++) {
+            int chunk = indices[i] >>> CHUNK_SHIFT, bit = indices[i] & ((1 << CHUNK_SHIFT) - 1);
+            if (!copied[chunk]) {
+                copy[chunk] = copy[chunk] == null ? new long[WORDS_PER_CHUNK] : copy[chunk].clone();
+                copied[chunk] = true;
+            }
+            long mask = 1L << bit;
+            if ((copy[chunk][bit >>> 6] & mask) == 0) {
+                copy[chunk][bit >>> 6] |= mask;
+                cardinality++;
+            }
+        }
+        return new PersistentBitSet(copy, cardinality);
+    }
+
+    /** Number of indices in the set. */
+    public int cardinality() {
+        return cardinality;
+    }
+}
@@ -0,0 +1,57 @@
+package com.falkknudsen.jaywalk.structs;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+/** Immutable, append-only list stored in chunks of 1024 elements.<br>
+ {@link #withAll} returns a new list that shares every full chunk with this one; only the last,
+ partly filled chunk and the array of chunk pointers are copied. */
+public final class PersistentList<T> implements Serializable {
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final PersistentList<?> EMPTY = new PersistentList<>(new Object[0][], 0);
+
+    private final Object[][] chunks;
+    private final int size;
+
+    private PersistentList(Object[][] chunks, int size) {
+        this.chunks = chunks;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentList<T> empty() {
+        return (PersistentList<T>) EMPTY;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        if (index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        return (T) chunks[index >>> CHUNK_SHIFT][index & (CHUNK_SIZE - 1)];
+    }
+
+    /** This list with {@code elements} appended. */
+    public PersistentList<T> withAll(List<? extends T> elements) {
+        if (elements.isEmpty()) return this;
+        int newSize = size + elements.size();
+        Object[][] copy = Arrays.copyOf(chunks, (newSize + CHUNK_SIZE - 1) >>> CHUNK_SHIFT);
+        int index = size;
+        for (T element : elements) {
+            int chunk = index >>> CHUNK_SHIFT;
+            if (copy[chunk] == null) {
+                copy[chunk] = new Object[CHUNK_SIZE];
+            } else if (copy[chunk] == (chunk < chunks.length ? chunks[chunk] : null)) {
+                copy[chunk] = copy[chunk].clone(); // the shared, partly filled last chunk.
+            }
+            copy[chunk][index & (CHUNK_SIZE - 1)] = element;
+            index++;
+        }
+        return new PersistentList<>(copy, newSize);
+    }
+
+    public int size() {
+        return size;
+    }
+}
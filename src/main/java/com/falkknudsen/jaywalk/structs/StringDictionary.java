@@ -0,0 +1,212 @@
+package com.falkknudsen.jaywalk.structs;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Immutable, sorted set of strings, each stored once and known by its index, its id.<br><br>
+
+ The strings are kept as UTF-8 in one byte array, front-coded in blocks of {@value #BLOCK}: the first string
+ of a block in full, and every other one as the length of the prefix it shares with the one before it and
+ the rest. Sorted names share long prefixes ("Vester Allé", "Vester Farimagsgade", "Vestergade"), so this
+ takes a fraction of what a {@code String} per name does, with its object header, array header and
+ two bytes per character for anything outside Latin-1. Getting a string back decodes at most a block.<br>
+ Strings are sorted by their UTF-8 bytes, which is the order of their code points. */
+public final class StringDictionary implements Serializable {
+    static final int BLOCK = 16;
+
+    private final byte[] bytes;
+    /** Where each block starts in {@link #bytes}. */
+    private final int[] blocks;
+    private final int size;
+
+    private StringDictionary(byte[] bytes, int[] blocks, int size) {
+        this.bytes = bytes;
+        this.blocks = blocks;
+        this.size = size;
+    }
+
+    /** Collects strings, giving each a provisional id, until {@link #build} sorts them into a dictionary. */
+    public static final class Builder {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private String[] strings = new String[256];
+
+        /** The provisional id of the string, adding it if it is new. */
+        public int add(String string) {
+            Integer id = ids.get(string);
+            if (id != null) return id;
+            id = ids.size();
+            if (id == strings.length) strings = Arrays.copyOf(strings, id * 2);
+            strings[id] = string;
+            ids.put(string, id);
+            return id;
+        }
+
+        /** Number of distinct strings added. */
+        public int size() {
+            return ids.size();
+        }
+
+        /** Builds the dictionary, putting the id each provisional id has in it in {@code ids}, which must have
+         room for {@link #size()} of them. */
+        public StringDictionary build(int[] ids) {
+            int n = size();
+            byte[][] encoded = new byte[n][];
+            Integer[] order = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                encoded[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(encoded[a], encoded[b]));
+            byte[][] sorted = new byte[n][];
+            for (int i = 0; i < n; i++) {
+                sorted[i] = encoded[order[i]];
+                ids[order[i]] = i;
+            }
+            return encode(sorted);
+        }
+    }
+
+    /** A dictionary of the strings, duplicates stored once, with their ids in the order they sort in. */
+    public static StringDictionary of(Iterable<String> strings) {
+        Builder builder = new Builder();
+        for (String string : strings) builder.add(string);
+        return builder.build(new int[builder.size()]);
+    }
+
+    private static StringDictionary encode(byte[][] sorted) {
+        int n = sorted.length;
+        int[] blocks = new int[(n + BLOCK - 1) / BLOCK];
+        ByteList out = new ByteList(n * 8);
+        for (int i = 0; i < n; i++) {
+            byte[] string = sorted[i];
+            if (i % BLOCK == 0) {
+                blocks[i / BLOCK] = out.size;
+                out.varint(string.length);
+                out.add(string, 0, string.length);
+            } else {
+                byte[] previous = sorted[i - 1];
+                int shared = Arrays.mismatch(previous, string);
+                if (shared < 0) shared = string.length;
+                out.varint(shared);
+                out.varint(string.length - shared);
+                out.add(string, shared, string.length - shared);
+            }
+        }
+        return new StringDictionary(Arrays.copyOf(out.bytes, out.size), blocks, n);
+    }
+
+    /** The string with the given id. */
+    public String get(int id) {
+        if (id < 0 || id >= size) throw new IndexOutOfBoundsException("Id: " + id + ", Size: " + size);
+        byte[] scratch = new byte[64];
+        int[] position = {blocks[id / BLOCK]};
+        int length = readVarint(position);
+        scratch = copy(scratch, 0, position[0], length);
+        position[0] += length;
+        for (int i = id % BLOCK; i > 0; i--) {
+            int shared = readVarint(position), rest = readVarint(position);
+            scratch = copy(scratch, shared, position[0], rest);
+            position[0] += rest;
+            length = shared + rest;
+        }
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /** Copies {@code length} bytes from {@code from} in {@link #bytes} to {@code at} in {@code scratch},
+     growing that if need be. */
+    private byte[] copy(byte[] scratch, int at, int from, int length) {
+        if (scratch.length < at + length) scratch = Arrays.copyOf(scratch, Math.max(scratch.length * 2, at + length));
+        System.arraycopy(bytes, from, scratch, at, length);
+        return scratch;
+    }
+
+    /** The id of the string, or -1 if it isn't in the dictionary. Binary search over the first string of
+     every block, then a scan through the block it would be in. */
+    public int id(String string) {
+        byte[] key = string.getBytes(StandardCharsets.UTF_8);
+        int low = 0, high = blocks.length - 1, block = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int[] position = {blocks[middle]};
+            int length = readVarint(position);
+            int comparison = Arrays.compareUnsigned(bytes, position[0], position[0] + length, key, 0, key.length);
+            if (comparison == 0) return middle * BLOCK;
+            if (comparison < 0) {
+                block = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (block < 0) return -1;
+        // Decode the block once, one string after another, comparing each with the key as it comes.
+        byte[] scratch = new byte[Math.max(64, key.length)];
+        int[] position = {blocks[block]};
+        int length = readVarint(position);
+        scratch = copy(scratch, 0, position[0], length);
+        position[0] += length;
+        int end = Math.min(size, (block + 1) * BLOCK);
+        for (int id = block * BLOCK + 1; id < end; id++) {
+            int shared = readVarint(position), rest = readVarint(position);
+            scratch = copy(scratch, shared, position[0], rest);
+            position[0] += rest;
+            length = shared + rest;
+            int comparison = Arrays.compareUnsigned(scratch, 0, length, key, 0, key.length);
+            if (comparison == 0) return id;
+            if (comparison > 0) return -1;
+        }
+        return -1;
+    }
+
+    private int readVarint(int[] position) {
+        int value = 0, shift = 0, b;
+        do {
+            b = bytes[position[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Bytes taken up by the arrays. */
+    public long memoryBytes() {
+        return bytes.length + (long) blocks.length * Integer.BYTES;
+    }
+
+    @Override
+    public String toString() {
+        return "StringDictionary: " + size + " strings, " + memoryBytes() / 1024 + " kB";
+    }
+
+    /** Growable byte array, for encoding. */
+    private static final class ByteList {
+        private byte[] bytes;
+        private int size;
+
+        ByteList(int capacity) {
+            bytes = new byte[Math.max(capacity, 16)];
+        }
+
+        void add(byte[] from, int offset, int length) {
+            if (size + length > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+            System.arraycopy(from, offset, bytes, size, length);
+            size += length;
+        }
+
+        void varint(int value) {
+            if (size + 5 > bytes.length) bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.falkknudsen.jaywalk.tstree;
+
+import com.falkknudsen.jaywalk.contracts.IAddressContainer;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.falkknudsen.jaywalk.util.Log.log;
+
+/** Builds the address index on a thread of its own, so the parser doesn't wait for it.<br><br>
+
+ The parser hands over the parts of each address, which is all it does on its own thread, through a ring
+ buffer of {@value #CAPACITY} slots: parallel arrays, filled in place, so handing one over allocates nothing.
+ There is one producer, the parser, and one consumer, the indexing thread, so the two counters of slots
+ written and read are all the synchronisation there is; each side only writes its own. The consumer takes
+ every address written since it last looked in one go. When the buffer is full, the parser waits, and when
+ it is empty, the indexer does, parked for at most {@value #PARK_NANOS} ns at a time.<br>
+ Once {@link #finish()} says there are no more addresses, the indexer splits the tree into the shards of the
+ {@link TSTManager}, which builds them in parallel, while the parser goes on with the ways and relations.
+ {@link #await()} waits for all that to be done, and {@link #cancel()} stops the indexer if parsing fails. */
+public final class AddressIndexer implements IAddressContainer {
+    static final int CAPACITY = 1 << 13;
+    private static final int MASK = CAPACITY - 1;
+    private static final long PARK_NANOS = 50_000;
+    private static final int SPINS = 100;
+
+    private final TSTManager manager;
+    private final String[] parts = new String[CAPACITY * TernarySearchTree.COMPONENTS];
+    private final float[] lats = new float[CAPACITY], lons = new float[CAPACITY], importance = new float[CAPACITY];
+    /** Slots written by the parser, and read by the indexer, since the start. */
+    private final AtomicLong written = new AtomicLong(), read = new AtomicLong();
+    /** {@link #read} as the parser last saw it, so it only looks again when the buffer seems full. */
+    private long readSeen;
+    private volatile boolean finished, cancelled, producerWaiting, consumerWaiting;
+    private volatile Throwable failure;
+    private final Thread producer, consumer;
+    private int addresses;
+
+    private AddressIndexer(TSTManager manager) {
+        this.manager = manager;
+        producer = Thread.currentThread();
+        consumer = Thread.ofPlatform().daemon().name("addresses").unstarted(this::run);
+    }
+
+    /** Starts an indexing thread, which puts the addresses in {@code manager} once they are all there. Must
+     be called on the thread that will hand over the addresses, which must {@link #finish()} or
+     {@link #cancel()} it. */
+    public static AddressIndexer start(TSTManager manager) {
+        AddressIndexer indexer = new AddressIndexer(manager);
+        indexer.consumer.start();
+        return indexer;
+    }
+
+    /** Hands the address in the tags, if there is one, to the indexing thread, waiting if it is behind by a
+     whole buffer. {@code sb} isn't used. */
+    @Override
+    public void addAddress(StringBuilder sb, Map<String, String> tags, float lat, float lon) {
+        String street = tags.get("addr:street");
+        if (street == null) return;
+        long slot = written.get();
+        if (slot - readSeen == CAPACITY) waitForRoom(slot);
+        int i = (int) (slot & MASK), offset = i * TernarySearchTree.COMPONENTS;
+        parts[offset + TernarySearchTree.STREET] = street;
+        parts[offset + TernarySearchTree.HOUSE_NUMBER] = tags.get("addr:housenumber");
+        parts[offset + TernarySearchTree.POSTCODE] = tags.get("addr:postcode");
+        parts[offset + TernarySearchTree.CITY] = tags.get("addr:city");
+        lats[i] = lat;
+        lons[i] = lon;
+        importance[i] = TernarySearchTree.importance(tags);
+        written.lazySet(slot + 1);
+        if (consumerWaiting) LockSupport.unpark(consumer);
+    }
+
+    private void waitForRoom(long slot) {
+        for (int spins = 0; (readSeen = read.get()) + CAPACITY == slot; spins++) {
+            if (failure != null) throw new IllegalStateException("Indexing the addresses failed.", failure);
+            if (spins < SPINS) {
+                Thread.onSpinWait();
+                continue;
+            }
+            producerWaiting = true;
+            // Checked again after saying so, or the indexer could have emptied the buffer without waking us.
+            if (read.get() + CAPACITY == slot) LockSupport.parkNanos(this, PARK_NANOS);
+            producerWaiting = false;
+        }
+    }
+
+    /** Says there are no more addresses; the indexing thread goes on to split them into shards. */
+    public void finish() {
+        finished = true;
+        LockSupport.unpark(consumer);
+    }
+
+    /** Stops the indexing thread, dropping the addresses it hasn't indexed, unless they are all indexed
+     already; then it does nothing. Parsing goes through this however it ends. */
+    public void cancel() {
+        cancelled = true;
+        finished = true;
+        LockSupport.unpark(consumer);
+    }
+
+    /** Waits until the addresses are indexed and split into shards, rethrowing what went wrong, if anything. */
+    public void await() throws InterruptedException {
+        consumer.join();
+        if (failure instanceof RuntimeException e) throw e;
+        if (failure instanceof Error e) throw e;
+        if (failure != null) throw new IllegalStateException("Indexing the addresses failed.", failure);
+    }
+
+    /** Addresses handed over so far, duplicates included. */
+    public long handedOver() {
+        return written.get();
+    }
+
+    private void run() {
+        try {
+            long start = System.currentTimeMillis();
+            TernarySearchTree tree = new TernarySearchTree();
+            StringBuilder sb = new StringBuilder(100);
+            long next = 0;
+            int spins = 0;
+            while (true) {
+                if (cancelled) return;
+                long available = written.get();
+                if (available == next) {
+                    // Reading finished before written again, so an address written just before it isn't missed.
+                    if (finished && written.get() == next) break;
+                    if (spins++ < SPINS) {
+                        Thread.onSpinWait();
+                        continue;
+                    }
+                    consumerWaiting = true;
+                    if (written.get() == next && !finished) LockSupport.parkNanos(this, PARK_NANOS);
+                    consumerWaiting = false;
+                    continue;
+                }
+                spins = 0;
+                for (; next < available; next++) {
+                    int i = (int) (next & MASK), offset = i * TernarySearchTree.COMPONENTS;
+                    tree.addAddress(sb, parts[offset + TernarySearchTree.STREET],
+                            parts[offset + TernarySearchTree.HOUSE_NUMBER], parts[offset + TernarySearchTree.POSTCODE],
+                            parts[offset + TernarySearchTree.CITY], lats[i], lons[i], importance[i]);
+                    // Let go of the strings, or the buffer would keep the last few thousand tag values alive.
+                    for (int part = 0; part < TernarySearchTree.COMPONENTS; part++) parts[offset + part] = null;
+                }
+                read.lazySet(next);
+                if (producerWaiting) LockSupport.unpark(producer);
+            }
+            addresses = tree.size();
+            log("Indexed " + addresses + " addresses alongside the parser in "
+                    + (System.currentTimeMillis() - start) + " ms.");
+            long beforeSplit = System.currentTimeMillis();
+            manager.separateTSTs(tree);
+            log("Split the addresses into shards in " + (System.currentTimeMillis() - beforeSplit) + " ms.");
+        } catch (Throwable e) {
+            failure = e;
+            LockSupport.unpark(producer);
+        }
+    }
+
+    /** Distinct addresses indexed, once {@link #await()} has returned. */
+    public int size() {
+        return addresses;
+    }
+}
@@ -0,0 +1,110 @@
+package com.falkknudsen.jaywalk.tstree;
+
+import com.falkknudsen.jaywalk.structs.IntList;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/** Completes an address as it is typed, with a call to {@link #complete} per keystroke, returning the most
+ important addresses starting with the query (see {@link TernarySearchTree#complete}).<br><br>
+
+ It remembers the node every prefix of the last query ended at, so a keystroke that adds a character costs
+ one step down the tree from where the last one ended, and one that deletes a character costs nothing.
+ The completions of the most recently used prefixes are kept in a small cache, as the same few are typed
+ over and over, and backspacing goes back through them.
+ Meant for one search field, so not thread-safe; use one per field. */
+public class Autocomplete {
+    private final Function<CharSequence, TernarySearchTree> trees;
+    private final int k;
+    private final Map<String, List<TernarySearchTree.Completion>> cache;
+    /** The last query, in lower case, the tree it was looked up in, and the node each prefix of it ends at,
+     {@code path.get(i)} being the one for the first {@code i + 1} characters, or -1 if there is none. */
+    private final StringBuilder typed = new StringBuilder();
+    private TernarySearchTree tree;
+    private final IntList path = new IntList();
+    private long hits, misses;
+
+    /** Completes from the shards of {@code manager}. */
+    public Autocomplete(TSTManager manager, int k, int cacheSize) {
+        this(manager::shardFor, k, cacheSize);
+    }
+
+    public Autocomplete(TernarySearchTree tree, int k, int cacheSize) {
+        this(query -> tree, k, cacheSize);
+    }
+
+    /** @param trees     The tree to look a query up in, or {@code null} if there is none.
+     @param k         The number of completions to return.
+     @param cacheSize The number of prefixes to keep the completions of. */
+    private Autocomplete(Function<CharSequence, TernarySearchTree> trees, int k, int cacheSize) {
+        this.trees = trees;
+        this.k = k;
+        cache = new LinkedHashMap<>(cacheSize * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<TernarySearchTree.Completion>> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /** The {@code k} most important addresses starting with {@code query}, ignoring case, most important
+     first. The list must not be changed, as it may be handed out again. */
+    public List<TernarySearchTree.Completion> complete(CharSequence query) {
+        String key = query.toString().toLowerCase();
+        int node = advance(key);
+        List<TernarySearchTree.Completion> completions = cache.get(key);
+        if (completions != null) {
+            hits++;
+            return completions;
+        }
+        misses++;
+        completions = node < 0 ? List.of() : Collections.unmodifiableList(tree.complete(node, key, k));
+        cache.put(key, completions);
+        return completions;
+    }
+
+    /** Moves the remembered path on from the last query to {@code key}, keeping the part they have in common.
+     @return The node {@code key} ends at, or -1 if no key starts with it. */
+    private int advance(String key) {
+        TernarySearchTree current = key.isEmpty() ? null : trees.apply(key);
+        int common = 0;
+        if (current == tree) {
+            int length = Math.min(typed.length(), key.length());
+            while (common < length && typed.charAt(common) == key.charAt(common)) common++;
+        }
+        tree = current;
+        while (path.size() > common) path.pop();
+        typed.setLength(common);
+        for (int i = common; i < key.length(); i++) {
+            char c = key.charAt(i);
+            int node;
+            if (tree == null) node = -1;
+            else if (i == 0) node = tree.find(key.substring(0, 1));
+            else node = path.peek() < 0 ? -1 : tree.step(path.peek(), c);
+            path.add(node);
+            typed.append(c);
+        }
+        return path.isEmpty() ? -1 : path.peek();
+    }
+
+    /** Forgets the cached completions and the last query, for when the addresses have changed. */
+    public void clear() {
+        cache.clear();
+        typed.setLength(0);
+        path.clear();
+        tree = null;
+    }
+
+    /** Number of queries answered from the cache. */
+    public long hits() {
+        return hits;
+    }
+
+    /** Number of queries that had to be completed from the tree. */
+    public long misses() {
+        return misses;
+    }
+}
@@ -1,22 +1,289 @@
 package com.falkknudsen.jaywalk.tstree;
 
+import com.falkknudsen.jaywalk.Node;
 import com.falkknudsen.jaywalk.contracts.IAddressContainer;
+import com.falkknudsen.jaywalk.kdtree.ReverseGeocoder;
+import com.falkknudsen.jaywalk.structs.FloatList;
+import com.falkknudsen.jaywalk.structs.IntList;
+import com.falkknudsen.jaywalk.structs.StringDictionary;
+import com.falkknudsen.jaywalk.util.Strings;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
 
+import static com.falkknudsen.jaywalk.util.Log.log;
+
+/** The address index, split into one {@link TernarySearchTree} per leading character of the address
+ (see {@link #shardOf}).<br><br>
+
+ Once parsing is done, {@link #separateTSTs} splits the parsed tree into its shards in parallel and writes
+ each to its own file in a directory next to the map file, {@code <map file>.addresses}. The shards are then
+ dropped from the heap, and only read back (see {@link TernarySearchTree#map}) the first time a query needs
+ one, so nobody pays for the addresses nobody searches. Loaded shards are evicted, least recently used first,
+ once they take up more than a budget of bytes, and can be evicted outright with {@link #evict()}.<br>
+ Without a file name, there is nowhere to put the files, and the shards all stay on the heap.<br>
+ The addresses are also put in a {@link ReverseGeocoder}, to be found by location.
+ All queries are safe to call from several threads at once. */
 public class TSTManager implements IAddressContainer {
-    public TSTManager(String filename) {}
+    /** One shard per letter a-z, one each for æ, ø and å, and one for everything else. */
+    public static final int SHARDS = 30;
+    private static final long DEFAULT_BUDGET = 256L << 20;
 
-    public void clearOldTSTs() {
+    private final Path directory;
+    private final long budget;
+    /** Addresses added one by one, before they are split into shards. */
+    private TernarySearchTree addresses = new TernarySearchTree();
+    private final boolean[] present = new boolean[SHARDS];
+    private final TernarySearchTree[] loaded = new TernarySearchTree[SHARDS];
+    private final long[] lastUsed = new long[SHARDS];
+    /** Counts shard uses, for {@link #lastUsed}. */
+    private long clock;
+    private final Object[] locks = new Object[SHARDS];
+    private long loadedBytes;
+    private int loads;
+    /** The names the parts of the addresses in every shard refer to. */
+    private volatile StringDictionary names;
+    /** Every address by location, for reverse geocoding. Kept on the heap, as it has no use for shards. */
+    private volatile ReverseGeocoder nearby;
+
+    public TSTManager(String filename) {
+        this(filename, DEFAULT_BUDGET);
+    }
 
+    /** @param budget Bytes the loaded shards may take up before the least recently used are evicted. */
+    public TSTManager(String filename, long budget) {
+        directory = filename == null || filename.isBlank() ? null : Path.of(filename + ".addresses");
+        this.budget = budget;
+        for (int i = 0; i < SHARDS; i++) locks[i] = new Object();
+    }
+
+    /** The shard for addresses starting with {@code c}, ignoring case. */
+    public static int shardOf(char c) {
+        c = Character.toLowerCase(c);
+        if (c >= 'a' && c <= 'z') return c - 'a';
+        return switch (c) {
+            case 'æ' -> 26;
+            case 'ø' -> 27;
+            case 'å' -> 28;
+            default -> SHARDS - 1;
+        };
+    }
+
+    /** Deletes the shard files left by an earlier parse of the same map, and the names file that older versions
+     wrote next to them. */
+    public void clearOldTSTs() {
+        if (directory == null || !Files.isDirectory(directory)) return;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.{tst,dict}")) {
+            for (Path file : files) Files.delete(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not delete the old address files in " + directory, e);
+        }
     }
 
+    /** Splits {@code tst} into its shards, building and writing them in parallel, and replaces any shards
+     this manager had. The names the parts of the addresses refer to are shared by all the shards, and by the
+     {@link ReverseGeocoder}, so they stay on the heap, and the shards are mapped with them. */
     public void separateTSTs(TernarySearchTree tst) {
+        List<List<String>> keys = new ArrayList<>(SHARDS);
+        List<FloatList> lats = new ArrayList<>(SHARDS), lons = new ArrayList<>(SHARDS), importance = new ArrayList<>(SHARDS);
+        List<IntList> components = new ArrayList<>(SHARDS);
+        for (int i = 0; i < SHARDS; i++) {
+            keys.add(new ArrayList<>());
+            lats.add(new FloatList());
+            lons.add(new FloatList());
+            importance.add(new FloatList());
+            components.add(new IntList());
+        }
+        StringDictionary names = tst.names();
+        FloatList allLats = new FloatList(tst.size()), allLons = new FloatList(tst.size());
+        IntList allComponents = new IntList(tst.size() * TernarySearchTree.COMPONENTS);
+        // The keys come out sorted, so every shard gets them sorted too, which build() makes use of.
+        tst.forEach((key, address) -> {
+            int shard = shardOf(key.charAt(0));
+            keys.get(shard).add(key);
+            lats.get(shard).add(tst.lat(address));
+            lons.get(shard).add(tst.lon(address));
+            importance.get(shard).add(tst.importance(address));
+            allLats.add(tst.lat(address));
+            allLons.add(tst.lon(address));
+            for (int part = 0; part < TernarySearchTree.COMPONENTS; part++) {
+                int id = tst.component(address, part);
+                components.get(shard).add(id);
+                allComponents.add(id);
+            }
+        });
 
+        try {
+            if (directory != null) Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create " + directory, e);
+        }
+        synchronized (this) {
+            for (int i = 0; i < SHARDS; i++) {
+                if (loaded[i] != null) unload(i);
+            }
+            this.names = names;
+            IntStream.range(0, SHARDS).parallel().forEach(shard -> {
+                present[shard] = !keys.get(shard).isEmpty();
+                if (!present[shard]) return;
+                TernarySearchTree tree = TernarySearchTree.build(keys.get(shard), lats.get(shard).toArray(),
+                        lons.get(shard).toArray(), importance.get(shard).toArray(), components.get(shard).toArray(),
+                        names);
+                if (directory == null) {
+                    loaded[shard] = tree;
+                    return;
+                }
+                try {
+                    tree.write(file(shard));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not write " + file(shard), e);
+                }
+            });
+            if (directory == null) {
+                for (TernarySearchTree tree : loaded) if (tree != null) loadedBytes += tree.memoryBytes();
+            }
+        }
+        nearby = new ReverseGeocoder(names, allComponents.toArray(), allLats.toArray(), allLons.toArray());
+        addresses = new TernarySearchTree();
+        log("Split " + tst.size() + " addresses into shards" + (directory == null ? "." : " in " + directory + "."));
     }
 
     @Override
     public void addAddress(StringBuilder sb, Map<String, String> tags, float lat, float lon) {
+        addresses.addAddress(sb, tags, lat, lon);
+    }
+
+    /** The addresses by location, or {@code null} until {@link #separateTSTs} has been called. */
+    public ReverseGeocoder nearby() {
+        return nearby;
+    }
+
+    /** The addresses added with {@link #addAddress} since the last {@link #separateTSTs}. */
+    public TernarySearchTree addresses() {
+        return addresses;
+    }
+
+    /** The shard that has the addresses starting with the first character of {@code key}, loading it if need
+     be, or {@code null} if there are none or the key is empty. */
+    public TernarySearchTree shardFor(CharSequence key) {
+        return key.isEmpty() ? null : shard(shardOf(key.charAt(0)));
+    }
+
+    /** The shard with the given number, loading it if need be, or {@code null} if there are no addresses in it. */
+    public TernarySearchTree shard(int shard) {
+        synchronized (locks[shard]) {
+            TernarySearchTree tree;
+            synchronized (this) {
+                if (!present[shard]) return null;
+                tree = loaded[shard];
+                lastUsed[shard] = ++clock;
+            }
+            if (tree != null) return tree;
+            // Read outside the manager's lock, so loading one shard doesn't hold up queries on the others.
+            try {
+                tree = TernarySearchTree.map(file(shard), names);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read " + file(shard), e);
+            }
+            synchronized (this) {
+                loaded[shard] = tree;
+                loadedBytes += tree.memoryBytes();
+                loads++;
+                evictOverBudget(shard);
+            }
+            return tree;
+        }
+    }
+
+    /** The location of the address with exactly this key, ignoring case, or {@code null} if there is none. */
+    public Node locate(CharSequence key) {
+        TernarySearchTree tree = shardFor(key);
+        if (tree == null) return null;
+        int address = tree.get(key);
+        return address < 0 ? null : new Node(tree.lat(address), tree.lon(address));
+    }
+
+    /** The {@code k} most important addresses starting with {@code prefix}; see
+     {@link TernarySearchTree#complete}. For completing as a query is typed, use an {@link Autocomplete}. */
+    public List<TernarySearchTree.Completion> complete(CharSequence prefix, int k) {
+        TernarySearchTree tree = shardFor(prefix);
+        return tree == null ? new ArrayList<>() : tree.complete(prefix, k);
+    }
+
+    /** The addresses within {@code maxDistance} edits of {@code query}, closest first; see
+     {@link TernarySearchTree#fuzzy}. Searching every shard would load them all, so this assumes the first
+     letter is right, or with {@code keyboard} set, that it is at worst a neighbouring key, and searches only
+     the shards for those letters. */
+    public List<TernarySearchTree.Match> fuzzy(CharSequence query, float maxDistance, int limit, boolean keyboard) {
+        List<TernarySearchTree.Match> matches = new ArrayList<>();
+        if (query.isEmpty()) return matches;
+        char first = Character.toLowerCase(query.charAt(0));
+        boolean[] searched = new boolean[SHARDS];
+        searched[shardOf(first)] = true;
+        if (keyboard) {
+            for (char c = 0; c < 256; c++) {
+                if (Strings.areNeighbours(first, c)) searched[shardOf(c)] = true;
+            }
+        }
+        for (int shard = 0; shard < SHARDS; shard++) {
+            TernarySearchTree tree = searched[shard] ? shard(shard) : null;
+            if (tree != null) matches.addAll(tree.fuzzy(query, maxDistance, limit, keyboard));
+        }
+        matches.sort(TernarySearchTree.Match.ORDER);
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    /** Evicts the least recently used shards until the loaded ones are within budget, but never {@code keep}. */
+    private void evictOverBudget(int keep) {
+        while (loadedBytes > budget) {
+            int oldest = -1;
+            for (int i = 0; i < SHARDS; i++) {
+                if (i != keep && loaded[i] != null && (oldest < 0 || lastUsed[i] < lastUsed[oldest])) oldest = i;
+            }
+            if (oldest < 0) return;
+            unload(oldest);
+        }
+    }
+
+    /** Drops every loaded shard from the heap. They are read back when next needed. Does nothing without
+     a directory to read them back from. */
+    public synchronized void evict() {
+        if (directory == null) return;
+        for (int i = 0; i < SHARDS; i++) {
+            if (loaded[i] != null) unload(i);
+        }
+    }
+
+    private void unload(int shard) {
+        loadedBytes -= loaded[shard].memoryBytes();
+        loaded[shard] = null;
+    }
+
+    /** Number of shards on the heap right now. */
+    public synchronized int loadedCount() {
+        int count = 0;
+        for (TernarySearchTree tree : loaded) if (tree != null) count++;
+        return count;
+    }
+
+    /** Bytes taken up by the shards on the heap right now. */
+    public synchronized long loadedBytes() {
+        return loadedBytes;
+    }
+
+    /** Number of times a shard has been read from its file. */
+    public synchronized int loadCount() {
+        return loads;
+    }
 
+    private Path file(int shard) {
+        return directory.resolve(shard + ".tst");
     }
 }
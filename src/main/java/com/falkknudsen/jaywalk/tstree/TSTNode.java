@@ -1,4 +0,0 @@
-package com.falkknudsen.jaywalk.tstree;
-
-public class TSTNode {
-}
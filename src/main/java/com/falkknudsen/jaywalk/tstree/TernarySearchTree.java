@@ -1,15 +1,816 @@
 package com.falkknudsen.jaywalk.tstree;
 
 import com.falkknudsen.jaywalk.contracts.IAddressContainer;
+import com.falkknudsen.jaywalk.structs.IntList;
+import com.falkknudsen.jaywalk.structs.StringDictionary;
+import com.falkknudsen.jaywalk.util.BitParallelDistance;
+import com.falkknudsen.jaywalk.util.Strings;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ObjIntConsumer;
 
-public class TernarySearchTree implements IAddressContainer {
-    private TSTNode root;
+/** Ternary search tree of addresses, stored as parallel primitive arrays rather than node objects.<br><br>
 
+ Node {@code n} splits on the character {@code split[n]}; {@code lo[n]}, {@code eq[n]} and {@code hi[n]}
+ are the nodes for smaller characters, the next character and larger characters, and {@code payload[n]}
+ is the address whose key ends at the node, or -1. Node 0 is the root, which no node points to, so 0 also
+ means "no child". Addresses are numbered in the order they were first added, and the address table holds
+ the latitude and longitude of each, packed into one {@code long}.<br>
+ Keys are lower case, so lookups ignore case. Adding keys in sorted order makes long chains of
+ {@code lo}/{@code hi} links; {@link #build} and {@link #compact} avoid that by inserting the median
+ first.<br>
+ The parts of each address as written, with their case, are kept as ids in a {@link StringDictionary}, so
+ every street and city name is stored once however many addresses share it. */
+public class TernarySearchTree implements IAddressContainer, Serializable {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAGIC = 0x4A545354;
+    private static final int VERSION = 3;
+    /** The parts of an address, in the order they are kept per address in {@link #components}. */
+    public static final int STREET = 0, HOUSE_NUMBER = 1, POSTCODE = 2, CITY = 3;
+    public static final int COMPONENTS = 4;
+    /** Magic number, version, node count and address count. */
+    private static final int HEADER_SIZE = 16;
+
+    private char[] split;
+    private int[] lo, eq, hi, payload;
+    private int nodeCount;
+    /** Latitude in the high 32 bits and longitude in the low ones, as raw float bits. */
+    private long[] locations;
+    /** How prominent each address is (see {@link #importance(Map)}), for ranking completions. */
+    private float[] importance;
+    /** The parts of each address, as written, {@value #COMPONENTS} to an address: ids in {@link #names},
+     or -1 for parts it doesn't have, or for addresses added without them. */
+    private int[] components;
+    /** The names the components refer to. Each street, city and so on is only stored once, however many
+     addresses it is in. While addresses are being added, the names go in {@link #pendingNames} instead, and
+     the components refer to that until {@link #names()} sorts it into a dictionary. */
+    private StringDictionary names;
+    private transient StringDictionary.Builder pendingNames;
+    /** The names of a tree made by {@link #build} or {@link #map}, which never change, so they are read without
+     locking; or {@code null} for a tree the names are collected in as addresses are added. */
+    private final StringDictionary fixedNames;
+    private int addressCount;
+    /** For each node, the highest importance of any address in its subtree, lo and hi links included.
+     Computed when first needed, and dropped whenever the tree changes. */
+    private volatile float[] subtreeBest;
+
+    /** An address found by {@link #complete}: its key in lower case, its location and its importance. */
+    public record Completion(String key, float lat, float lon, float importance) {}
+
+    /** An address found by {@link #fuzzy} or {@link #closest}, with its key in lower case and its edit distance from the query. */
+    public record Match(String key, float lat, float lon, float distance) {
+        /** Closest first, then in key order. */
+        public static final Comparator<Match> ORDER =
+                Comparator.comparingDouble(Match::distance).thenComparing(Match::key);
+    }
+
+    public TernarySearchTree() {
+        this(INITIAL_CAPACITY, 16, null);
+    }
+
+    private TernarySearchTree(int nodes, int addresses, StringDictionary fixedNames) {
+        this.fixedNames = fixedNames;
+        allocate(Math.max(nodes, 1));
+        locations = new long[Math.max(addresses, 1)];
+        importance = new float[Math.max(addresses, 1)];
+        components = new int[Math.max(addresses, 1) * COMPONENTS];
+        Arrays.fill(components, -1);
+    }
+
+    /** Adds the address in the tags (street, house number, postcode and city), if there is one, to the
+     tree. {@code sb} is only used as scratch space, so the key is never made into a String. */
     @Override
-    public void addAddress(StringBuilder sb, Map<String, String> tags,
-                           float lat, float lon) {
+    public void addAddress(StringBuilder sb, Map<String, String> tags, float lat, float lon) {
+        String street = tags.get("addr:street");
+        if (street == null) return;
+        addAddress(sb, street, tags.get("addr:housenumber"), tags.get("addr:postcode"), tags.get("addr:city"),
+                lat, lon, importance(tags));
+    }
+
+    /** Adds the address made of the parts, all but the street of which may be {@code null}, to the tree,
+     unless it is there already. {@code sb} is only used as scratch space.
+     @throws IllegalStateException If the tree was built or mapped with names, which can't change. */
+    public void addAddress(StringBuilder sb, String street, String house, String postcode, String city,
+                           float lat, float lon, float importance) {
+        if (fixedNames != null) throw new IllegalStateException("The names of a built tree can't be added to.");
+        format(sb, street, house, postcode, city);
+        int before = addressCount;
+        int address = add(sb, lat, lon, importance);
+        if (address < before) return;
+        if (pendingNames == null) {
+            pendingNames = new StringDictionary.Builder();
+            // Give the names from before their own ids again, so the parts referring to them stay right.
+            if (names != null) for (int id = 0; id < names.size(); id++) pendingNames.add(names.get(id));
+        }
+        int offset = address * COMPONENTS;
+        components[offset + STREET] = pendingNames.add(street);
+        components[offset + HOUSE_NUMBER] = house == null ? -1 : pendingNames.add(house);
+        components[offset + POSTCODE] = postcode == null ? -1 : pendingNames.add(postcode);
+        components[offset + CITY] = city == null ? -1 : pendingNames.add(city);
+    }
+
+    /** How prominent the place in the tags is: places by their class and population, and named points of
+     interest, over plain addresses, which are all 0. */
+    public static float importance(Map<String, String> tags) {
+        float score = 0;
+        String place = tags.get("place");
+        if (place != null) {
+            score += switch (place) {
+                case "city" -> 8;
+                case "town" -> 6;
+                case "village", "suburb" -> 4;
+                case "hamlet", "neighbourhood" -> 2;
+                default -> 1;
+            };
+        }
+        String population = tags.get("population");
+        if (population != null) {
+            try {
+                score += (float) Math.log10(1 + Double.parseDouble(population));
+            } catch (NumberFormatException ignored) {
+                // Not a number, which happens; rank it by its class alone.
+            }
+        }
+        if (tags.containsKey("amenity") || tags.containsKey("shop") || tags.containsKey("tourism")
+                || tags.containsKey("office")) {
+            score += 1;
+        }
+        if (tags.containsKey("name")) score += 0.5f;
+        return score;
+    }
+
+    /** Writes the key for the address in the tags to {@code sb}, e.g. "Rued Langgaards Vej 7, 2300 København S".
+     @return Whether there was an address, i.e. at least a street. */
+    public static boolean key(StringBuilder sb, Map<String, String> tags) {
+        String street = tags.get("addr:street");
+        if (street == null) return false;
+        format(sb, street, tags.get("addr:housenumber"), tags.get("addr:postcode"), tags.get("addr:city"));
+        return true;
+    }
+
+    /** Writes the address to {@code sb} like {@link #key}; all but the street may be {@code null}. */
+    private static void format(StringBuilder sb, String street, String house, String postcode, String city) {
+        sb.setLength(0);
+        sb.append(street);
+        if (house != null) sb.append(' ').append(house);
+        if (postcode != null || city != null) sb.append(',');
+        if (postcode != null) sb.append(' ').append(postcode);
+        if (city != null) sb.append(' ').append(city);
+    }
+
+    /** Adds the key with the location and an importance of 0, unless the key is in the tree already.
+     @return The number of the address, or -1 if the key is empty. */
+    public int add(CharSequence key, float lat, float lon) {
+        return add(key, lat, lon, 0);
+    }
+
+    /** Adds the key with the location and importance, unless the key is in the tree already.
+     @return The number of the address, or -1 if the key is empty. */
+    public int add(CharSequence key, float lat, float lon, float importance) {
+        int node = insert(key);
+        if (node < 0) return -1;
+        if (payload[node] < 0) {
+            if (addressCount == locations.length) {
+                locations = Arrays.copyOf(locations, addressCount * 2);
+                this.importance = Arrays.copyOf(this.importance, addressCount * 2);
+                components = Arrays.copyOf(components, addressCount * 2 * COMPONENTS);
+                Arrays.fill(components, addressCount * COMPONENTS, components.length, -1);
+            }
+            locations[addressCount] = pack(lat, lon);
+            this.importance[addressCount] = importance;
+            payload[node] = addressCount++;
+            subtreeBest = null;
+        }
+        return payload[node];
+    }
+
+    /** The node the key ends at, creating nodes as needed, or -1 if the key is empty. */
+    private int insert(CharSequence key) {
+        int length = key.length();
+        if (length == 0) return -1;
+        if (nodeCount == 0) newNode(Character.toLowerCase(key.charAt(0)));
+        int node = 0, i = 0;
+        char c = Character.toLowerCase(key.charAt(0));
+        while (true) {
+            // newNode may replace the arrays, so it must be called before indexing into them.
+            if (c < split[node]) {
+                if (lo[node] == 0) {
+                    int child = newNode(c);
+                    lo[node] = child;
+                }
+                node = lo[node];
+            } else if (c > split[node]) {
+                if (hi[node] == 0) {
+                    int child = newNode(c);
+                    hi[node] = child;
+                }
+                node = hi[node];
+            } else {
+                if (++i == length) return node;
+                c = Character.toLowerCase(key.charAt(i));
+                if (eq[node] == 0) {
+                    int child = newNode(c);
+                    eq[node] = child;
+                }
+                node = eq[node];
+            }
+        }
+    }
+
+    private int newNode(char c) {
+        if (nodeCount == split.length) {
+            int capacity = split.length * 2;
+            split = Arrays.copyOf(split, capacity);
+            lo = Arrays.copyOf(lo, capacity);
+            eq = Arrays.copyOf(eq, capacity);
+            hi = Arrays.copyOf(hi, capacity);
+            payload = Arrays.copyOf(payload, capacity);
+            Arrays.fill(payload, nodeCount, capacity, -1);
+        }
+        split[nodeCount] = c;
+        return nodeCount++;
+    }
+
+    private void allocate(int capacity) {
+        split = new char[capacity];
+        lo = new int[capacity];
+        eq = new int[capacity];
+        hi = new int[capacity];
+        payload = new int[capacity];
+        Arrays.fill(payload, -1);
+        nodeCount = 0;
+    }
+
+    /** The node the key ends at, or -1 if no key in the tree starts with it. */
+    int find(CharSequence key) {
+        int length = key.length();
+        if (length == 0 || nodeCount == 0) return -1;
+        int node = 0, i = 0;
+        char c = Character.toLowerCase(key.charAt(0));
+        while (true) {
+            if (c < split[node]) {
+                node = lo[node];
+            } else if (c > split[node]) {
+                node = hi[node];
+            } else {
+                if (++i == length) return node;
+                c = Character.toLowerCase(key.charAt(i));
+                node = eq[node];
+            }
+            if (node == 0) return -1;
+        }
+    }
+
+    /** The number of the address with exactly this key, ignoring case, or -1 if there is none. */
+    public int get(CharSequence key) {
+        int node = find(key);
+        return node < 0 ? -1 : payload[node];
+    }
+
+    public boolean contains(CharSequence key) {
+        return get(key) >= 0;
+    }
+
+    public float lat(int address) {
+        return Float.intBitsToFloat((int) (locations[address] >>> 32));
+    }
+
+    public float lon(int address) {
+        return Float.intBitsToFloat((int) locations[address]);
+    }
+
+    public float importance(int address) {
+        return importance[address];
+    }
+
+    /** The id in {@link #names()} of one part of the address, e.g. {@link #STREET}, or -1 if it has none. */
+    public int component(int address, int part) {
+        if (fixedNames == null) names();
+        return components[address * COMPONENTS + part];
+    }
+
+    /** The address as it was written, e.g. "Rued Langgaards Vej 7, 2300 København S", unlike its key, which
+     is in lower case; or {@code null} if it was added without its parts. */
+    public String address(int address) {
+        return address(names(), components, address);
+    }
+
+    /** The address as it was written, from its parts at {@code address * }{@value #COMPONENTS} in
+     {@code components}, in the layout of a tree's, or {@code null} if it has no street. */
+    public static String address(StringDictionary names, int[] components, int address) {
+        int offset = address * COMPONENTS;
+        if (names == null || components[offset + STREET] < 0) return null;
+        StringBuilder sb = new StringBuilder();
+        format(sb, name(names, components[offset + STREET]), name(names, components[offset + HOUSE_NUMBER]),
+                name(names, components[offset + POSTCODE]), name(names, components[offset + CITY]));
+        return sb.toString();
+    }
+
+    private static String name(StringDictionary names, int id) {
+        return id < 0 ? null : names.get(id);
+    }
+
+    /** The names the parts of the addresses refer to, or {@code null} if none were added with their parts.
+     Sorts the names added since the last call into the dictionary first. */
+    public StringDictionary names() {
+        return fixedNames != null ? fixedNames : sortNames();
+    }
+
+    private synchronized StringDictionary sortNames() {
+        if (pendingNames == null) return names;
+        int[] ids = new int[pendingNames.size()];
+        names = pendingNames.build(ids);
+        pendingNames = null;
+        for (int i = 0; i < addressCount * COMPONENTS; i++) {
+            if (components[i] >= 0) components[i] = ids[components[i]];
+        }
+        return names;
+    }
+
+    /** Number of addresses. */
+    public int size() {
+        return addressCount;
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    /** Bytes taken up by the arrays, including unused capacity, but not by the names, which may be shared. */
+    public long memoryBytes() {
+        float[] best = subtreeBest;
+        return (long) split.length * (Character.BYTES + 4 * Integer.BYTES)
+                + (long) locations.length * (Long.BYTES + Float.BYTES) + (long) components.length * Integer.BYTES
+                + (best == null ? 0 : (long) best.length * Float.BYTES);
+    }
+
+    /** Passes every key, in lower case and sorted, with the number of its address to {@code action}. */
+    public void forEach(ObjIntConsumer<String> action) {
+        if (nodeCount == 0) return;
+        forEachBelow(0, new StringBuilder(), action);
+    }
+
+    /** Passes every key starting with {@code prefix}, ignoring case, in lower case and sorted, with the
+     number of its address to {@code action}. */
+    public void forEachWithPrefix(CharSequence prefix, ObjIntConsumer<String> action) {
+        if (prefix.isEmpty()) {
+            forEach(action);
+            return;
+        }
+        int node = find(prefix);
+        if (node < 0) return;
+        StringBuilder key = new StringBuilder(prefix.length() + 16);
+        for (int i = 0; i < prefix.length(); i++) key.append(Character.toLowerCase(prefix.charAt(i)));
+        if (payload[node] >= 0) action.accept(key.toString(), payload[node]);
+        if (eq[node] != 0) forEachBelow(eq[node], key, action);
+    }
+
+    /** Passes the keys in the subtree of {@code root}, its lo and hi links included, each following
+     {@code key}, to {@code action}. */
+    private void forEachBelow(int root, StringBuilder key, ObjIntConsumer<String> action) {
+        // Pairs of (node, depth): a node to visit, or the complement of one whose lo subtree is done.
+        // Iterative, since the lo/hi chains can be as long as there are keys if they were added sorted.
+        IntList stack = new IntList();
+        push(stack, root, key.length());
+        while (!stack.isEmpty()) {
+            int depth = stack.pop(), node = stack.pop();
+            if (node >= 0) {
+                if (hi[node] != 0) push(stack, hi[node], depth);
+                push(stack, ~node, depth);
+                if (lo[node] != 0) push(stack, lo[node], depth);
+            } else {
+                node = ~node;
+                key.setLength(depth);
+                key.append(split[node]);
+                if (payload[node] >= 0) action.accept(key.toString(), payload[node]);
+                if (eq[node] != 0) push(stack, eq[node], depth + 1);
+            }
+        }
+    }
+
+    private static void push(IntList stack, int node, int depth) {
+        stack.add(node);
+        stack.add(depth);
+    }
+
+    /** The addresses whose keys are within {@code maxDistance} edits of {@code query}, ignoring case, at most
+     {@code limit} of them, closest first and then in key order. Insertions and deletions cost 1, and so do
+     substitutions, unless {@code keyboard} is set, in which case substituting a letter for one on a
+     neighbouring key costs {@link Strings#NEIGHBOUR_COST}.<br><br>
+
+     Rather than comparing the query to every key, this walks the tree computing one row of the edit distance
+     table per character of the key so far, from the row of the node above. Keys sharing a prefix share its
+     rows, and once every entry of a row is above the bound, no key below it can come within the bound, so
+     the whole subtree is skipped. The bound starts at {@code maxDistance} and shrinks to the distance of the
+     worst match kept once there are {@code limit} of them. */
+    public List<Match> fuzzy(CharSequence query, float maxDistance, int limit, boolean keyboard) {
+        List<Match> matches = new ArrayList<>();
+        if (nodeCount == 0 || limit <= 0 || maxDistance < 0) return matches;
+        int m = query.length();
+        char[] q = new char[m];
+        for (int j = 0; j < m; j++) q[j] = Character.toLowerCase(query.charAt(j));
+        // rows[d] is the row for the first d characters of the key, and prefix holds those characters.
+        float[][] rows = new float[32][];
+        char[] prefix = new char[32];
+        rows[0] = new float[m + 1];
+        for (int j = 0; j <= m; j++) rows[0][j] = j;
+        PriorityQueue<Match> best = new PriorityQueue<>(limit + 1, Match.ORDER.reversed());
+        float bound = maxDistance;
+
+        // Pairs of (node, depth), the depth being the length of the key before the node's character.
+        IntList stack = new IntList();
+        push(stack, 0, 0);
+        while (!stack.isEmpty()) {
+            int depth = stack.pop(), node = stack.pop();
+            if (hi[node] != 0) push(stack, hi[node], depth);
+            if (lo[node] != 0) push(stack, lo[node], depth);
+            if (depth + 1 == rows.length) {
+                rows = Arrays.copyOf(rows, rows.length * 2);
+                prefix = Arrays.copyOf(prefix, prefix.length * 2);
+            }
+            // The eq subtree is popped before the lo and hi ones, and only ever writes the rows below this
+            // one, so rows[depth + 1] stays this node's until its subtree is done.
+            float[] above = rows[depth], row = rows[depth + 1];
+            if (row == null) row = rows[depth + 1] = new float[m + 1];
+            char c = split[node];
+            prefix[depth] = c;
+            row[0] = above[0] + 1;
+            float min = row[0];
+            for (int j = 0; j < m; j++) {
+                float cost = Math.min(above[j] + Strings.substitutionCost(q[j], c, keyboard),
+                        Math.min(above[j + 1], row[j]) + 1);
+                row[j + 1] = cost;
+                if (cost < min) min = cost;
+            }
+            if (min > bound) continue;
+
+            int address = payload[node];
+            if (address >= 0 && row[m] <= bound) {
+                Match match = new Match(new String(prefix, 0, depth + 1), lat(address), lon(address), row[m]);
+                if (best.size() < limit || Match.ORDER.compare(match, best.peek()) < 0) {
+                    best.add(match);
+                    if (best.size() > limit) best.poll();
+                    if (best.size() == limit) bound = best.peek().distance();
+                }
+            }
+            if (eq[node] != 0) push(stack, eq[node], depth + 1);
+        }
+        matches.addAll(best);
+        matches.sort(Match.ORDER);
+        return matches;
+    }
+
+    /** The {@code k} addresses closest to {@code query}, within {@code max} edits, of those whose keys start
+     with the first {@code prefixLength} characters of it, closest first and then in key order. This is for
+     rescoring the candidates as a query is typed: the prefix narrows them down, and they are then scored
+     in one batch with {@link BitParallelDistance}, which is quick enough for tens of thousands of them. */
+    public List<Match> closest(CharSequence query, int prefixLength, int k, int max) {
+        List<String> keys = new ArrayList<>();
+        IntList addresses = new IntList();
+        forEachWithPrefix(query.subSequence(0, Math.min(prefixLength, query.length())), (key, address) -> {
+            keys.add(key);
+            addresses.add(address);
+        });
+        int[] indices = new int[Math.max(k, 0)], distances = new int[Math.max(k, 0)];
+        int kept = new BitParallelDistance(query).best(keys, k, max, indices, distances);
+        List<Match> matches = new ArrayList<>(kept);
+        for (int i = 0; i < kept; i++) {
+            int address = addresses.get(indices[i]);
+            matches.add(new Match(keys.get(indices[i]), lat(address), lon(address), distances[i]));
+        }
+        return matches;
+    }
+
+    /** The {@code k} most important addresses whose keys start with {@code prefix}, ignoring case, most
+     important first, and then in key order. */
+    public List<Completion> complete(CharSequence prefix, int k) {
+        int node = find(prefix);
+        if (node < 0) return new ArrayList<>();
+        StringBuilder key = new StringBuilder(prefix.length());
+        for (int i = 0; i < prefix.length(); i++) key.append(Character.toLowerCase(prefix.charAt(i)));
+        return complete(node, key.toString(), k);
+    }
+
+    /** The {@code k} most important addresses with keys starting with {@code prefix}, which ends at
+     {@code node}.<br>
+     Rather than going through every key with the prefix, this does a best-first search: subtrees are
+     queued by the most important address in them, from {@link #subtreeBest}, and opened up one at a time,
+     so only the subtrees that hold one of the {@code k} are ever opened, however many keys there are.
+     Of candidates equally important, the one that could hold the smallest key comes first, which makes the
+     search depth-first in key order where the importance doesn't decide: it goes straight down to the
+     addresses rather than opening up whole levels of the tree, and finds them in key order. */
+    List<Completion> complete(int node, String prefix, int k) {
+        List<Completion> completions = new ArrayList<>(Math.max(k, 0));
+        if (k <= 0) return completions;
+        float[] best = ranks();
+        PriorityQueue<Candidate> queue = new PriorityQueue<>();
+        int address = payload[node];
+        if (address >= 0) queue.add(new Candidate(importance[address], -1, address, prefix, prefix));
+        if (eq[node] != 0) queue.add(subtree(best, eq[node], prefix));
+        while (!queue.isEmpty() && completions.size() < k) {
+            Candidate candidate = queue.poll();
+            int n = candidate.node;
+            if (n < 0) {
+                int a = candidate.address;
+                completions.add(new Completion(candidate.key, lat(a), lon(a), importance[a]));
+                continue;
+            }
+            String key = candidate.key + split[n];
+            if (lo[n] != 0) queue.add(subtree(best, lo[n], candidate.key));
+            if (payload[n] >= 0) queue.add(new Candidate(importance[payload[n]], -1, payload[n], key, key));
+            if (eq[n] != 0) queue.add(subtree(best, eq[n], key));
+            if (hi[n] != 0) queue.add(subtree(best, hi[n], candidate.key));
+        }
+        return completions;
+    }
+
+    /** The subtree of {@code node}, whose keys all follow {@code prefix}. Its smallest key starts with the
+     character at the end of its chain of lo links. */
+    private Candidate subtree(float[] best, int node, String prefix) {
+        int first = node;
+        while (lo[first] != 0) first = lo[first];
+        return new Candidate(best[node], node, -1, prefix, prefix + split[first]);
+    }
+
+    /** A subtree, {@code node}, with the characters before it, or an address with its whole key.
+     {@code bound} is no larger than any key it holds. */
+    private record Candidate(float score, int node, int address, String key, String bound)
+            implements Comparable<Candidate> {
+        @Override
+        public int compareTo(Candidate other) {
+            int byScore = Float.compare(other.score, score);
+            if (byScore != 0) return byScore;
+            int byBound = bound.compareTo(other.bound);
+            if (byBound != 0) return byBound;
+            // A subtree may hold the very key an address is bound by, so open it first.
+            return Boolean.compare(node < 0, other.node < 0);
+        }
+    }
+
+    /** The node reached from {@code node}, the end of some prefix, by one more character {@code c},
+     or -1 if no key goes on like that. */
+    int step(int node, char c) {
+        c = Character.toLowerCase(c);
+        node = eq[node];
+        while (node != 0) {
+            if (c < split[node]) node = lo[node];
+            else if (c > split[node]) node = hi[node];
+            else return node;
+        }
+        return -1;
+    }
 
+    /** {@link #subtreeBest}, computed if need be. Children are always numbered after their parents, both as
+     added and as renumbered, so going through the nodes backwards sees every child before its parent. */
+    private float[] ranks() {
+        float[] best = subtreeBest;
+        if (best != null) return best;
+        synchronized (this) {
+            if (subtreeBest != null) return subtreeBest;
+            best = new float[nodeCount];
+            for (int n = nodeCount - 1; n >= 0; n--) {
+                float max = payload[n] >= 0 ? importance[payload[n]] : Float.NEGATIVE_INFINITY;
+                if (lo[n] != 0) max = Math.max(max, best[lo[n]]);
+                if (eq[n] != 0) max = Math.max(max, best[eq[n]]);
+                if (hi[n] != 0) max = Math.max(max, best[hi[n]]);
+                best[n] = max;
+            }
+            subtreeBest = best;
+            return best;
+        }
+    }
+
+    /** Builds a balanced tree over the keys, in any order, all with an importance of 0. */
+    public static TernarySearchTree build(List<? extends CharSequence> keys, float[] lats, float[] lons) {
+        return build(keys, lats, lons, null, null, null);
+    }
+
+    /** Builds a balanced tree over the keys, in any order, without their parts. */
+    public static TernarySearchTree build(List<? extends CharSequence> keys, float[] lats, float[] lons,
+                                          float[] importance) {
+        return build(keys, lats, lons, importance, null, null);
+    }
+
+    /** Builds a balanced tree over the keys, in any order. Address {@code i} is {@code keys.get(i)};
+     of keys that are equal but for case, only the first is in the tree.
+     @param importance The importance of each address, or {@code null} for all 0.
+     @param components The parts of each address, ids in {@code names}, {@value #COMPONENTS} to an address in
+     the order of {@link #STREET} and the rest, or {@code null} if they aren't known.
+     @param names      The names the parts refer to, which may be shared with other trees. */
+    public static TernarySearchTree build(List<? extends CharSequence> keys, float[] lats, float[] lons,
+                                          float[] importance, int[] components, StringDictionary names) {
+        int n = keys.size();
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        boolean sorted = true;
+        for (int i = 1; i < n && sorted; i++) sorted = compare(keys.get(i - 1), keys.get(i)) <= 0;
+        if (!sorted) sortIndices(order, (a, b) -> compare(keys.get(a), keys.get(b)));
+        // The sort is stable, so the first of a run of equal keys is the one given first.
+        int unique = 0;
+        for (int i = 0; i < n; i++) {
+            if (unique == 0 || compare(keys.get(order[unique - 1]), keys.get(order[i])) != 0) order[unique++] = order[i];
+        }
+        int count = unique;
+
+        int characters = 0;
+        for (CharSequence key : keys) characters += key.length();
+        TernarySearchTree tree = new TernarySearchTree(characters, n, names);
+        // Give every address its number up front, in input order, then fill the tree median first.
+        for (int i = 0; i < n; i++) tree.locations[i] = pack(lats[i], lons[i]);
+        if (importance != null) System.arraycopy(importance, 0, tree.importance, 0, n);
+        if (components != null) System.arraycopy(components, 0, tree.components, 0, n * COMPONENTS);
+        tree.addressCount = n;
+        tree.insertBalanced(count, i -> keys.get(order[i]), i -> order[i]);
+        tree.renumber();
+        return tree;
+    }
+
+    /** Sorts the indices in {@code order} by {@code comparator}, stably, by merging runs of doubling length.
+     Unlike {@link Arrays#sort(Object[], Comparator)}, it needs no boxed index per key. */
+    private static void sortIndices(int[] order, IntBinaryOperator comparator) {
+        int n = order.length;
+        int[] from = order, to = new int[n];
+        for (int width = 1; width < n; width *= 2) {
+            for (int start = 0; start < n; start += 2 * width) {
+                int middle = Math.min(start + width, n), end = Math.min(start + 2 * width, n);
+                int a = start, b = middle;
+                for (int i = start; i < end; i++) {
+                    // Ties go to the left run, which keeps the sort stable.
+                    boolean left = b >= end || a < middle && comparator.applyAsInt(from[a], from[b]) <= 0;
+                    to[i] = left ? from[a++] : from[b++];
+                }
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        if (from != order) System.arraycopy(from, 0, order, 0, n);
+    }
+
+    /** Rebuilds the tree balanced, without unused capacity, and with the nodes renumbered in depth-first
+     order, so a lookup mostly reads nearby memory. Address numbers are unchanged. */
+    public void compact() {
+        List<String> keys = new ArrayList<>(addressCount);
+        IntList addresses = new IntList(addressCount);
+        forEach((key, address) -> {
+            keys.add(key);
+            addresses.add(address);
+        });
+        int characters = 0;
+        for (String key : keys) characters += key.length();
+        allocate(Math.max(characters, 1));
+        insertBalanced(keys.size(), keys::get, addresses::get);
+        renumber();
+        locations = Arrays.copyOf(locations, Math.max(addressCount, 1));
+        importance = Arrays.copyOf(importance, Math.max(addressCount, 1));
+        components = Arrays.copyOf(components, Math.max(addressCount, 1) * COMPONENTS);
+    }
+
+    /** Inserts {@code n} keys, given in sorted order, median first, so the lo/hi links of every node split
+     the keys below it in half. */
+    private void insertBalanced(int n, IntFunction<? extends CharSequence> key, IntUnaryOperator address) {
+        IntList ranges = new IntList();
+        ranges.add(0);
+        ranges.add(n);
+        while (!ranges.isEmpty()) {
+            int to = ranges.pop(), from = ranges.pop();
+            if (from >= to) continue;
+            int middle = (from + to) >>> 1;
+            int node = insert(key.apply(middle));
+            if (node >= 0 && payload[node] < 0) payload[node] = address.applyAsInt(middle);
+            ranges.add(from);
+            ranges.add(middle);
+            ranges.add(middle + 1);
+            ranges.add(to);
+        }
+    }
+
+    /** Renumbers the nodes in depth-first order, eq child first, and trims the arrays. */
+    private void renumber() {
+        if (nodeCount == 0) return; // no root to start from
+        int[] newIndex = new int[nodeCount];
+        int[] order = new int[nodeCount];
+        IntList stack = new IntList();
+        stack.add(0);
+        int count = 0;
+        while (!stack.isEmpty()) {
+            int node = stack.pop();
+            newIndex[node] = count;
+            order[count++] = node;
+            if (hi[node] != 0) stack.add(hi[node]);
+            if (lo[node] != 0) stack.add(lo[node]);
+            if (eq[node] != 0) stack.add(eq[node]);
+        }
+        char[] newSplit = new char[count];
+        int[] newLo = new int[count], newEq = new int[count], newHi = new int[count], newPayload = new int[count];
+        for (int i = 0; i < count; i++) {
+            int node = order[i];
+            newSplit[i] = split[node];
+            newLo[i] = lo[node] == 0 ? 0 : newIndex[lo[node]];
+            newEq[i] = eq[node] == 0 ? 0 : newIndex[eq[node]];
+            newHi[i] = hi[node] == 0 ? 0 : newIndex[hi[node]];
+            newPayload[i] = payload[node];
+        }
+        split = newSplit;
+        lo = newLo;
+        eq = newEq;
+        hi = newHi;
+        payload = newPayload;
+        nodeCount = count;
+        subtreeBest = null;
+    }
+
+    /** Writes the tree to {@code file} in a flat binary layout: a header with the node and address
+     counts, then the arrays one after another, trimmed to what is in use. {@link #map} reads it back.
+     The names the parts of the addresses refer to are not written, as they may be shared by several trees;
+     write {@link #names()} alongside, and pass it back to {@link #map}. */
+    public void write(Path file) throws IOException {
+        names();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(nodeCount);
+            out.writeInt(addressCount);
+            for (int i = 0; i < nodeCount; i++) out.writeChar(split[i]);
+            for (int[] array : new int[][]{lo, eq, hi, payload}) {
+                for (int i = 0; i < nodeCount; i++) out.writeInt(array[i]);
+            }
+            for (int i = 0; i < addressCount; i++) out.writeLong(locations[i]);
+            for (int i = 0; i < addressCount; i++) out.writeFloat(importance[i]);
+            for (int i = 0; i < addressCount * COMPONENTS; i++) out.writeInt(components[i]);
+        }
+    }
+
+    /** Reads a tree written by {@link #write}. The file is memory-mapped and copied into the arrays in bulk,
+     so loading costs little more than reading the file.
+     @param names The names the parts of the addresses refer to, as they were when it was written. */
+    public static TernarySearchTree map(Path file, StringDictionary names) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException(file + " is too large for one tree.");
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+                throw new IOException(file + " is not an address tree file.");
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException(file + " was written by another version (" + buffer.getInt(4) + ").");
+            }
+            int nodes = buffer.getInt(8), addresses = buffer.getInt(12);
+            long expected = HEADER_SIZE + (long) nodes * (Character.BYTES + 4 * Integer.BYTES) + (long) addresses * (Long.BYTES + Float.BYTES + COMPONENTS * Integer.BYTES);
+            if (channel.size() != expected) throw new IOException(file + " is truncated or corrupt.");
+
+            TernarySearchTree tree = new TernarySearchTree(nodes, addresses, names);
+            buffer.position(HEADER_SIZE);
+            buffer.asCharBuffer().get(tree.split, 0, nodes);
+            buffer.position(buffer.position() + nodes * Character.BYTES);
+            for (int[] array : new int[][]{tree.lo, tree.eq, tree.hi, tree.payload}) {
+                buffer.asIntBuffer().get(array, 0, nodes);
+                buffer.position(buffer.position() + nodes * Integer.BYTES);
+            }
+            buffer.asLongBuffer().get(tree.locations, 0, addresses);
+            buffer.position(buffer.position() + addresses * Long.BYTES);
+            buffer.asFloatBuffer().get(tree.importance, 0, addresses);
+            buffer.position(buffer.position() + addresses * Float.BYTES);
+            buffer.asIntBuffer().get(tree.components, 0, addresses * COMPONENTS);
+            tree.nodeCount = nodes;
+            tree.addressCount = addresses;
+            return tree;
+        }
+    }
+
+    /** Compares like the tree orders keys: character by character, in lower case. */
+    static int compare(CharSequence a, CharSequence b) {
+        int length = Math.min(a.length(), b.length());
+        for (int i = 0; i < length; i++) {
+            int difference = Character.toLowerCase(a.charAt(i)) - Character.toLowerCase(b.charAt(i));
+            if (difference != 0) return difference;
+        }
+        return a.length() - b.length();
+    }
+
+    private static long pack(float lat, float lon) {
+        return (long) Float.floatToRawIntBits(lat) << 32 | Float.floatToRawIntBits(lon) & 0xFFFFFFFFL;
+    }
+
+    @Override
+    public String toString() {
+        return "TernarySearchTree: " + addressCount + " addresses, " + nodeCount + " nodes, "
+                + memoryBytes() / 1024 + " kB";
     }
 }
@@ -0,0 +1,52 @@
+package com.falkknudsen.jaywalk.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/** Reading and writing of length-prefixed primitive arrays, for the flat binary files
+ we write next to the map data. */
+public class BinaryIO {
+    public static void writeInts(DataOutput out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) out.writeInt(value);
+    }
+
+    public static int[] readInts(DataInput in) throws IOException {
+        int[] values = new int[in.readInt()];
+        for (int i = 0; i < values.length; i++) values[i] = in.readInt();
+        return values;
+    }
+
+    public static void writeFloats(DataOutput out, float[] values) throws IOException {
+        out.writeInt(values.length);
+        for (float value : values) out.writeFloat(value);
+    }
+
+    public static float[] readFloats(DataInput in) throws IOException {
+        float[] values = new float[in.readInt()];
+        for (int i = 0; i < values.length; i++) values[i] = in.readFloat();
+        return values;
+    }
+
+    public static void writeBytes(DataOutput out, byte[] values) throws IOException {
+        out.writeInt(values.length);
+        out.write(values);
+    }
+
+    public static byte[] readBytes(DataInput in) throws IOException {
+        byte[] values = new byte[in.readInt()];
+        in.readFully(values);
+        return values;
+    }
+
+    /** Checks the magic number at the start of a file, so that we fail early and clearly
+     when handed the wrong file or one written by an incompatible version. */
+    public static void expectMagic(DataInput in, int magic, String what) throws IOException {
+        int actual = in.readInt();
+        if (actual != magic) {
+            throw new IOException("Not a " + what + " file (magic number " + Integer.toHexString(actual)
+                    + ", expected " + Integer.toHexString(magic) + ").");
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.falkknudsen.jaywalk.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+/** Levenshtein distance from one query to many strings, ignoring case, with Myers' bit-parallel algorithm
+ as extended to the global distance by Hyyrö.<br><br>
+
+ Rather than filling in the table of distances a cell at a time, as {@link Strings#levenshtein} does, every
+ column of it is kept as two bit vectors saying where going down the column adds or subtracts one, and
+ computed from the last with a handful of bitwise operations and one addition per 64 rows. The query is the
+ column, so a query of up to 64 characters takes one {@code long} per character of the other string. Longer
+ ones are split into blocks of 64 rows, computed one after the other with the difference at the bottom of
+ each carried into the next.<br>
+ The bit masks of the query are made once, in the constructor, and scoring allocates nothing, so one
+ instance should be made per query and reused for all the candidates. For the same reason, an instance
+ must not be used by more than one thread at a time. */
+public final class BitParallelDistance {
+    private static final int BLOCK = Long.SIZE;
+
+    private final int length, blocks;
+    /** For each character below 256, the block masks of where it is in the query, ignoring case, one after
+     the other. */
+    private final long[] masks;
+    /** The same for the characters at or above 256, which are rare enough to look up one by one. */
+    private final char[] otherChars;
+    private final long[] otherMasks;
+    /** The column being computed: where going down it adds one, and where it subtracts one. */
+    private final long[] plus, minus;
+    /** The bit of the last row of the query in the last block. */
+    private final long last;
+
+    public BitParallelDistance(CharSequence query) {
+        length = query.length();
+        blocks = Math.max(1, (length + BLOCK - 1) / BLOCK);
+        masks = new long[256 * blocks];
+        char[] others = new char[0];
+        long[] othersMasks = new long[0];
+        for (int i = 0; i < length; i++) {
+            char c = Character.toLowerCase(query.charAt(i));
+            long bit = 1L << (i % BLOCK);
+            if (c < 256) {
+                masks[c * blocks + i / BLOCK] |= bit;
+                continue;
+            }
+            int index = indexOf(others, c);
+            if (index < 0) {
+                index = others.length;
+                others = Arrays.copyOf(others, index + 1);
+                othersMasks = Arrays.copyOf(othersMasks, (index + 1) * blocks);
+                others[index] = c;
+            }
+            othersMasks[index * blocks + i / BLOCK] |= bit;
+        }
+        // Give the other case of each Latin-1 letter the same masks, so the text needn't be made lower case.
+        for (char c = 0; c < 256; c++) {
+            char lower = Character.toLowerCase(c);
+            if (lower != c && lower < 256) System.arraycopy(masks, lower * blocks, masks, c * blocks, blocks);
+        }
+        otherChars = others;
+        otherMasks = othersMasks;
+        plus = new long[blocks];
+        minus = new long[blocks];
+        last = length == 0 ? 0 : 1L << ((length - 1) % BLOCK);
+    }
+
+    /** The length of the query. */
+    public int length() {
+        return length;
+    }
+
+    /** The edit distance between the query and {@code text}, ignoring case. */
+    public int distance(CharSequence text) {
+        return distance(text, Integer.MAX_VALUE);
+    }
+
+    /** The edit distance between the query and {@code text}, ignoring case, or {@code max + 1} as soon as it
+     is certain to be more than {@code max}. Every character of the text changes the distance by at most one,
+     so that is once it is more than {@code max} plus the characters left. */
+    public int distance(CharSequence text, int max) {
+        int n = text.length();
+        if (length == 0) return n > max ? max + 1 : n;
+        if (Math.abs(n - length) > max) return max + 1;
+        return blocks == 1 ? distanceSingle(text, n, max) : distanceBlocked(text, n, max);
+    }
+
+    private int distanceSingle(CharSequence text, int n, int max) {
+        long pv = -1, mv = 0;
+        int score = length;
+        for (int j = 0; j < n; j++) {
+            long eq = mask(text.charAt(j), 0);
+            long xv = eq | mv;
+            long xh = (((eq & pv) + pv) ^ pv) | eq;
+            long ph = mv | ~(xh | pv);
+            long mh = pv & xh;
+            if ((ph & last) != 0) score++;
+            else if ((mh & last) != 0) score--;
+            // The top row of the table counts up from 0, so the difference shifted in there is always +1.
+            ph = ph << 1 | 1;
+            mh <<= 1;
+            pv = mh | ~(xv | ph);
+            mv = ph & xv;
+            if (score - (n - j - 1) > max) return max + 1;
+        }
+        return score;
+    }
+
+    private int distanceBlocked(CharSequence text, int n, int max) {
+        Arrays.fill(plus, -1);
+        Arrays.fill(minus, 0);
+        int score = length;
+        for (int j = 0; j < n; j++) {
+            char c = text.charAt(j);
+            int carry = 1;
+            for (int b = 0; b < blocks; b++) {
+                long pv = plus[b], mv = minus[b];
+                long eq = mask(c, b);
+                long xv = eq | mv;
+                // A difference of -1 coming in at the top acts like a match in the first row.
+                if (carry < 0) eq |= 1;
+                long xh = (((eq & pv) + pv) ^ pv) | eq;
+                long ph = mv | ~(xh | pv);
+                long mh = pv & xh;
+                if (b == blocks - 1) {
+                    if ((ph & last) != 0) score++;
+                    else if ((mh & last) != 0) score--;
+                }
+                int out = (ph & Long.MIN_VALUE) != 0 ? 1 : (mh & Long.MIN_VALUE) != 0 ? -1 : 0;
+                ph <<= 1;
+                mh <<= 1;
+                if (carry < 0) mh |= 1;
+                else if (carry > 0) ph |= 1;
+                carry = out;
+                plus[b] = mh | ~(xv | ph);
+                minus[b] = ph & xv;
+            }
+            if (score - (n - j - 1) > max) return max + 1;
+        }
+        return score;
+    }
+
+    private long mask(char c, int block) {
+        if (c < 256) return masks[c * blocks + block];
+        c = Character.toLowerCase(c);
+        if (c < 256) return masks[c * blocks + block];
+        int index = indexOf(otherChars, c);
+        return index < 0 ? 0 : otherMasks[index * blocks + block];
+    }
+
+    private static int indexOf(char[] chars, char c) {
+        for (int i = 0; i < chars.length; i++) if (chars[i] == c) return i;
+        return -1;
+    }
+
+    /** Scores every candidate and keeps the {@code k} closest within {@code max}, closest first and then in
+     the order given, in {@code indices} and {@code distances}, which must have room for {@code k}.
+     Allocates nothing; once {@code k} candidates have been kept, {@code max} shrinks to the worst of them,
+     so the rest are given up on sooner.
+     @return The number of candidates kept. */
+    public int best(List<? extends CharSequence> candidates, int k, int max, int[] indices, int[] distances) {
+        if (k <= 0) return 0;
+        int kept = 0;
+        for (int i = 0; i < candidates.size(); i++) {
+            int bound = kept == k ? distances[k - 1] - 1 : max;
+            if (bound < 0) break;
+            int distance = distance(candidates.get(i), bound);
+            if (distance > bound) continue;
+            // Insertion sort, from the end: k is small.
+            int at = kept < k ? kept++ : k - 1;
+            while (at > 0 && distances[at - 1] > distance) {
+                indices[at] = indices[at - 1];
+                distances[at] = distances[at - 1];
+                at--;
+            }
+            indices[at] = i;
+            distances[at] = distance;
+        }
+        return kept;
+    }
+}
@@ -151,6 +151,29 @@ public class Maths {
         return Math.sqrt(northSouthDistance * northSouthDistance + eastWestDistance * eastWestDistance);
     }
 
+//==================================================================================================================
+// Projected coordinates
+//==================================================================================================================
+    /** Squared distance from the point (px, py) to the closest point on the line segment from
+     (x1, y1) to (x2, y2). All values are in projected map units. */
+    public static double segmentDistanceSquared(double px, double py,
+                                                double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1, dy = y2 - y1;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : Math.clamp(((px - x1) * dx + (py - y1) * dy) / lengthSquared, 0, 1);
+        double ex = x1 + t * dx - px, ey = y1 + t * dy - py;
+        return ex * ex + ey * ey;
+    }
+
+    /** Squared distance from the point (px, py) to the closest point in the given rectangle,
+     which is 0 if the point is inside it. */
+    public static double boxDistanceSquared(double px, double py,
+                                            double minX, double minY, double maxX, double maxY) {
+        double dx = Math.max(0, Math.max(minX - px, px - maxX));
+        double dy = Math.max(0, Math.max(minY - py, py - maxY));
+        return dx * dx + dy * dy;
+    }
+
 //==================================================================================================================
 // Misc.
 //==================================================================================================================
@@ -166,6 +189,21 @@ public class Maths {
         return Math.pow(10.0, digits(number) - 1);
     }
 
+    /** Packs a float sort key and an int payload (typically an index) into a single long,
+     such that sorting the longs sorts by the key. Sorting a {@code long[]} of these is a lot
+     cheaper than sorting boxed indices with a comparator.
+     @see #sortKeyIndex(long) */
+    public static long sortKey(float key, int index) {
+        int bits = Float.floatToIntBits(key);
+        bits ^= (bits >> 31) & 0x7fffffff; // flip negative floats so they order correctly as ints.
+        return ((long) bits << 32) | (index & 0xffffffffL);
+    }
+
+    /** Extracts the payload from a key made with {@link #sortKey(float, int)}. */
+    public static int sortKeyIndex(long sortKey) {
+        return (int) sortKey;
+    }
+
     /** Rounds the input number to its most significant (decimal) digit.<br>
      For example, an input of {@code 1234} returns {@code 1000}, and an input of {@code 271} returns {@code 300}. */
     public static int roundToMostSignificant(int number) {
@@ -0,0 +1,67 @@
+package com.falkknudsen.jaywalk.util;
+
+import com.falkknudsen.jaywalk.structs.IntList;
+
+/** Line simplification, for drawing geometry at a scale where most of its points would fall on the same pixel. */
+public class Simplify {
+    /** Simplifies a polyline with the Douglas–Peucker algorithm: keeps the point furthest from the line between
+     the first and last, if it is further than {@code tolerance}, and recurses on both halves.<br>
+     Uses an explicit stack instead of recursion, since coastlines can have hundreds of thousands of points.
+     @param coordinates x and y interleaved.
+     @return The kept points, x and y interleaved. Always includes the first and the last. */
+    public static float[] douglasPeucker(float[] coordinates, float tolerance) {
+        int n = coordinates.length / 2;
+        if (n <= 2) return coordinates;
+        double toleranceSquared = (double) tolerance * tolerance;
+        boolean[] keep = new boolean[n];
+        keep[0] = keep[n - 1] = true;
+        int kept = 2;
+        IntList stack = new IntList();
+        stack.add(0);
+        stack.add(n - 1);
+        while (!stack.isEmpty()) {
+            int last = stack.pop(), first = stack.pop();
+            double furthest = -1;
+            int index = -1;
+            float x1 = coordinates[first * 2], y1 = coordinates[first * 2 + 1];
+            float x2 = coordinates[last * 2], y2 = coordinates[last * 2 + 1];
+            for (int i = first + 1; i < last; i++) {
+                double distance = Maths.segmentDistanceSquared(coordinates[i * 2], coordinates[i * 2 + 1], x1, y1, x2, y2);
+                if (distance > furthest) {
+                    furthest = distance;
+                    index = i;
+                }
+            }
+            if (index >= 0 && furthest > toleranceSquared) {
+                keep[index] = true;
+                kept++;
+                stack.add(first);
+                stack.add(index);
+                stack.add(index);
+                stack.add(last);
+            }
+        }
+        if (kept == n) return coordinates;
+        float[] result = new float[kept * 2];
+        for (int i = 0, j = 0; i < n; i++) {
+            if (!keep[i]) continue;
+            result[j++] = coordinates[i * 2];
+            result[j++] = coordinates[i * 2 + 1];
+        }
+        return result;
+    }
+
+    /** Whether {@code coordinates} span less than {@code tolerance} in both directions, i.e. would be
+     drawn as a dot at most. */
+    public static boolean isBelow(float[] coordinates, float tolerance) {
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < coordinates.length; i += 2) {
+            minX = Math.min(minX, coordinates[i]);
+            maxX = Math.max(maxX, coordinates[i]);
+            minY = Math.min(minY, coordinates[i + 1]);
+            maxY = Math.max(maxY, coordinates[i + 1]);
+        }
+        return maxX - minX < tolerance && maxY - minY < tolerance;
+    }
+}
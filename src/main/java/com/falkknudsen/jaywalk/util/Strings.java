@@ -1,6 +1,7 @@
 package com.falkknudsen.jaywalk.util;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Map;
 
@@ -36,14 +37,30 @@ public class Strings {
         return (str != null) && (!str.isEmpty());
     }
 
-    // TODO: Use sensible weights/costs, so that, for example, substituting
-    //  letters that are near each other on the keyboard is cheaper than ones far away.
+    /** Rows of the Danish keyboard, each shifted half a key to the right of the one above. */
+    private static final String[] KEYBOARD = {"1234567890+", "qwertyuiopå", "asdfghjklæø", "zxcvbnm,.-"};
+    /** Cost of substituting a letter for one on a neighbouring key, which is the likeliest typo. */
+    public static final float NEIGHBOUR_COST = 0.5f;
+    /** The row and column of the key for each character below 256, or -1 for the row if there is none. */
+    private static final byte[] KEY_ROW = new byte[256], KEY_COLUMN = new byte[256];
+
+    static {
+        Arrays.fill(KEY_ROW, (byte) -1);
+        for (int row = 0; row < KEYBOARD.length; row++) {
+            for (int column = 0; column < KEYBOARD[row].length(); column++) {
+                KEY_ROW[KEYBOARD[row].charAt(column)] = (byte) row;
+                KEY_COLUMN[KEYBOARD[row].charAt(column)] = (byte) column;
+            }
+        }
+    }
+
     /** Calculate the Levenshtein/edit distance between two Strings.<br>
      In other words, the output number is the number of deletions, insertions, and
      substitutions that would have to be performed for one of the strings to equal the other.<br>
      Adapted from the pseudocode on the
-     <a href=https://en.wikipedia.org/wiki/Levenshtein_distance#Iterative_with_two_matrix_rows>Wikipedia page</a>. */
-    protected static int levenshtein(String strA, String strB) {
+     <a href=https://en.wikipedia.org/wiki/Levenshtein_distance#Iterative_with_two_matrix_rows>Wikipedia page</a>.<br>
+     Kept as the reference for {@link BitParallelDistance}, which is much faster for scoring many strings. */
+    public static int levenshtein(String strA, String strB) {
         int[] vectorA = new int[strB.length() + 1];
         int[] vectorB = new int[strB.length() + 1];
         for (int i = 0; i <= strB.length(); i++) {
@@ -62,13 +79,57 @@ public class Strings {
                 vectorB[j + 1] = Math.min(deletionCost,
                         Math.min(insertionCost, substitutionCost));
             }
-            int[] temp = vectorA.clone();
-            vectorA = vectorB.clone();
+            // Swap the rows rather than copying them; the old row is overwritten in the next round anyway.
+            int[] temp = vectorA;
+            vectorA = vectorB;
             vectorB = temp;
         }
         return vectorA[strB.length()];
     }
 
+    /** The edit distance between two strings, ignoring case, where substituting a letter for one on a
+     neighbouring key costs only {@link #NEIGHBOUR_COST} (see {@link #substitutionCost}). */
+    public static float keyboardDistance(CharSequence a, CharSequence b) {
+        float[] previous = new float[b.length() + 1], current = new float[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) previous[j] = j;
+        for (int i = 0; i < a.length(); i++) {
+            current[0] = i + 1;
+            char c = a.charAt(i);
+            for (int j = 0; j < b.length(); j++) {
+                current[j + 1] = Math.min(previous[j] + substitutionCost(c, b.charAt(j), true),
+                        Math.min(previous[j + 1], current[j]) + 1);
+            }
+            float[] temp = previous;
+            previous = current;
+            current = temp;
+        }
+        return previous[b.length()];
+    }
+
+    /** The cost of substituting one character for another, ignoring case: 0 if they are the same, and
+     otherwise 1, or {@link #NEIGHBOUR_COST} if {@code keyboard} is set and they are on neighbouring keys. */
+    public static float substitutionCost(char a, char b, boolean keyboard) {
+        if (a == b) return 0;
+        a = Character.toLowerCase(a);
+        b = Character.toLowerCase(b);
+        if (a == b) return 0;
+        return keyboard && areNeighbours(a, b) ? NEIGHBOUR_COST : 1;
+    }
+
+    /** Whether two lower case characters are on keys next to each other, including diagonally. */
+    public static boolean areNeighbours(char a, char b) {
+        if (a >= KEY_ROW.length || b >= KEY_ROW.length || KEY_ROW[a] < 0 || KEY_ROW[b] < 0) return false;
+        // Because of the stagger, the keys touching one from the row below are the one under it and the one
+        // to the left of that, e.g. 'v' and 'b' under 'g'.
+        int rows = KEY_ROW[b] - KEY_ROW[a], columns = KEY_COLUMN[b] - KEY_COLUMN[a];
+        return switch (rows) {
+            case 0 -> Math.abs(columns) == 1;
+            case 1 -> columns == 0 || columns == -1;
+            case -1 -> columns == 0 || columns == 1;
+            default -> false;
+        };
+    }
+
     /** Determine which of two words {@code a} and {@code b} is closest to the
      {@code key} word, based on the Levenshtein distance.<br>
      Used to determine which of the two nearest neighbours is the
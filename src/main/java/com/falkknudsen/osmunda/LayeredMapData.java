@@ -3,18 +3,27 @@ package com.falkknudsen.osmunda;
 import com.falkknudsen.jaywalk.*;
 import com.falkknudsen.jaywalk.contracts.IDrawable;
 import com.falkknudsen.jaywalk.contracts.IDrawableContainer;
+import com.falkknudsen.jaywalk.graph.EdgeIndex;
+import com.falkknudsen.jaywalk.graph.RoadGraph;
 import com.falkknudsen.jaywalk.rtree.RTreeManager;
 import com.falkknudsen.jaywalk.tstree.TSTManager;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 /** Container class for data obtained in an OSM file that is passed along to the programme. */
 public class LayeredMapData implements DataContainer, Serializable {
     public float minLat, minLon, maxLat, maxLon;
     public final IDrawableContainer drawables = new RTreeManager();
+    /** Simplified copies of the features shown at each coarse {@link LevelOfDetail}, indexed by its ordinal.
+     Built by {@link #buildLevelsOfDetail()}; {@link LevelOfDetail#FULL} is {@link #drawables} itself. */
+    private final IDrawableContainer[] levels = new IDrawableContainer[LevelOfDetail.values().length - 1];
     public final TSTManager tstManager;
 
     /** Maps {@link Node}s to the IDs used by the directed graph internally.
@@ -25,6 +34,12 @@ public class LayeredMapData implements DataContainer, Serializable {
     /** Ways with specific tags that mark them as being a road. */
     public List<HighWay> graphRoads;
 
+    /** The directed graph built from {@link #graphRoads} and {@link #graphIDs}. */
+    public RoadGraph graph;
+
+    /** Spatial index over the edges of {@link #graph}, for snapping coordinates onto the roads. */
+    public EdgeIndex roadIndex;
+
     public LayeredMapData(String filename) {
         tstManager = new TSTManager(filename);
         tstManager.clearOldTSTs();
@@ -38,6 +53,103 @@ public class LayeredMapData implements DataContainer, Serializable {
         drawables.add(item);
     }
 
+    /** Fills the coarse levels of detail from {@link #drawables}: for each, the features important enough
+     to be shown at it, simplified to its tolerance. The levels are built in parallel, and so are the
+     features of each level simplified. */
+    public void buildLevelsOfDetail() {
+        List<IDrawable> items = new ArrayList<>((int) drawables.size());
+        drawables.query(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY,
+                Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, items::add);
+        IntStream.range(0, levels.length).parallel().forEach(ordinal -> {
+            LevelOfDetail level = LevelOfDetail.values()[ordinal];
+            float tolerance = level.tolerance();
+            List<IDrawable> simplified = items.parallelStream()
+                    .filter(item -> item.type().isShownAt(level))
+                    .map(item -> item.simplified(tolerance))
+                    .filter(Objects::nonNull)
+                    .toList();
+            IDrawableContainer container = new RTreeManager();
+            simplified.forEach(container::add);
+            container.build();
+            levels[ordinal] = container;
+        });
+    }
+
+    /** Packs the coordinates of every way and relation, in {@link #drawables} and every level of detail, with
+     {@link Way#compact()}. Drawing them decodes them as it goes, a little slower, for about half the memory.
+     Must be done before the map is shared with other threads.
+     @return The number of items compacted. */
+    public long compactWays() {
+        return forEachWay(Way::compact, Relation::compact);
+    }
+
+    /** Moves the coordinates of every way and relation, in {@link #drawables} and every level of detail, off
+     the heap into the {@link com.falkknudsen.jaywalk.structs.CoordinatePool}, with {@link Way#pool()}. Must
+     be done before the map is shared with other threads.
+     @return The number of items pooled. */
+    public long poolWays() {
+        return forEachWay(Way::pool, Relation::pool);
+    }
+
+    /** Passes every way and relation, in {@link #drawables} and every level of detail, to {@code ways} or
+     {@code relations}, and counts them. */
+    private long forEachWay(Consumer<Way> ways, Consumer<Relation> relations) {
+        long[] count = {0};
+        for (int level = -1; level < levels.length; level++) {
+            IDrawableContainer layer = level < 0 ? drawables : levels[level];
+            if (layer == null) continue;
+            layer.query(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY,
+                    Float.POSITIVE_INFINITY, item -> {
+                        if (item instanceof Way way) ways.accept(way);
+                        else if (item instanceof Relation relation) relations.accept(relation);
+                        else return;
+                        count[0]++;
+                    });
+        }
+        return count[0];
+    }
+
+    /** The drawables to query at the given level of detail. Until {@link #buildLevelsOfDetail()} has been
+     called, that is {@link #drawables} for all of them. */
+    public IDrawableContainer layer(LevelOfDetail level) {
+        IDrawableContainer layer = level == LevelOfDetail.FULL ? null : levels[level.ordinal()];
+        return layer == null ? drawables : layer;
+    }
+
+    /** The drawables to query when one pixel covers {@code metresPerPixel} metres. */
+    public IDrawableContainer layerFor(double metresPerPixel) {
+        return layer(LevelOfDetail.forScale(metresPerPixel));
+    }
+
+    /** Removes every graph node whose strongly connected component has fewer than {@code minNodes}
+     nodes from {@link #graph} and {@link #graphIDs}, and every road that is left without edges
+     from {@link #graphRoads}. The roads are still drawn; they just can't be routed on or snapped to.
+     @return The number of graph nodes that were removed. */
+    public int dropSmallComponents(int minNodes) {
+        boolean[] keep = graph.components().nodesInStrongComponentsOfSize(minNodes);
+        int[] newIds = new int[graph.nodeCount()];
+        RoadGraph pruned = graph.subgraph(keep, newIds);
+
+        boolean[] roadUsed = new boolean[graphRoads.size()];
+        for (int e = 0; e < pruned.edgeCount(); e++) {
+            roadUsed[pruned.edgeRoad(e)] = true;
+        }
+        int[] newRoadIds = new int[graphRoads.size()];
+        List<HighWay> roads = new ArrayList<>(graphRoads.size());
+        for (int r = 0; r < graphRoads.size(); r++) {
+            newRoadIds[r] = roadUsed[r] ? roads.size() : -1;
+            if (roadUsed[r]) roads.add(graphRoads.get(r));
+        }
+        pruned.remapRoads(newRoadIds);
+
+        graphIDs.replaceAll((node, id) -> newIds[id]);
+        graphIDs.values().removeIf(id -> id < 0);
+        int removed = graph.nodeCount() - pruned.nodeCount();
+        graphRoads = roads;
+        graph = pruned;
+        return removed;
+    }
+
     @Override
     public String toString() {
         return "Bounds: " + Rectangle.toString(minLat, minLon, maxLat, maxLon)
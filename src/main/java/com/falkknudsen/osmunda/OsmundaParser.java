@@ -4,7 +4,11 @@ import com.falkknudsen.jaywalk.HighWay;
 import com.falkknudsen.jaywalk.Node;
 import com.falkknudsen.jaywalk.Relation;
 import com.falkknudsen.jaywalk.Way;
-import com.falkknudsen.jaywalk.tstree.TernarySearchTree;
+import com.falkknudsen.jaywalk.graph.EdgeIndex;
+import com.falkknudsen.jaywalk.graph.RoadGraph;
+import com.falkknudsen.jaywalk.rtree.RTreeManager;
+import com.falkknudsen.jaywalk.structs.LongIntMap;
+import com.falkknudsen.jaywalk.tstree.AddressIndexer;
 
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
@@ -20,6 +24,17 @@ public class OsmundaParser extends AbstractBufferedParser {
 
     LayeredMapData map;
 
+    /** Strongly connected components of the road graph with fewer nodes than this are dropped
+     after parsing. See {@link LayeredMapData#dropSmallComponents(int)}. */
+    private int minComponentSize = 0;
+
+    /** Whether to pack the coordinates of the ways after parsing. See {@link LayeredMapData#compactWays()}. */
+    private boolean compactWays = false;
+
+    /** Whether to move the coordinates of the ways off the heap after parsing.
+     See {@link LayeredMapData#poolWays()}. */
+    private boolean poolWays = false;
+
     public OsmundaParser(String filename) {
         super(filename);
     }
@@ -28,6 +43,25 @@ public class OsmundaParser extends AbstractBufferedParser {
         super();
     }
 
+    /** Drop islands of the road network (parking aisles, ferry stubs, broken data) with fewer
+     than {@code minNodes} graph nodes. {@code 0} (the default) keeps everything. */
+    public void setMinComponentSize(int minNodes) {
+        this.minComponentSize = minNodes;
+    }
+
+    /** Pack the coordinates of every way once parsed, for about half the memory, at some cost in drawing
+     speed. Off by default. */
+    public void setCompactWays(boolean compact) {
+        this.compactWays = compact;
+    }
+
+    /** Move the coordinates of every way once parsed off the heap, into the
+     {@link com.falkknudsen.jaywalk.structs.CoordinatePool}, so the collector has tens of millions fewer
+     arrays to deal with. Packing them with {@link #setCompactWays} takes precedence. Off by default. */
+    public void setPoolWays(boolean pool) {
+        this.poolWays = pool;
+    }
+
     @Override
     public LayeredMapData parse(XMLStreamReader in) throws XMLStreamException, IOException {
         long before = System.currentTimeMillis();
@@ -41,15 +75,12 @@ public class OsmundaParser extends AbstractBufferedParser {
         final List<Way> waysInRelation = new ArrayList<>(maxMemberCount);
         final List<Relation> relationsInRelation = new ArrayList<>(maxMemberCount);
         final Map<String, String> tags = HashMap.newHashMap(100); // tags of the item being read
-        Map<Node, Integer> usage;
+        LongIntMap usage; // how many roads go through each node, by Node.key
 
         Map<Long, Node> nodes =         HashMap.newHashMap(numOfNodes);
         Map<Long, Way> ways =           HashMap.newHashMap(numOfWays);
         Map<Long, HighWay> highways =   HashMap.newHashMap(numOfHighways);
 
-        TernarySearchTree addresses = new TernarySearchTree();
-        StringBuilder sb = new StringBuilder(100);
-
         in.nextTag(); // get <osm>
         // Assure it is an .OSM file.
         if (in.getEventType() != XMLStreamConstants.START_ELEMENT || !in.getLocalName().equals("osm")) {
@@ -82,148 +113,188 @@ public class OsmundaParser extends AbstractBufferedParser {
         in.nextTag(); // get (potentially implicit) </bounds>
         in.nextTag(); // get first <node>
 
-        while (in.getLocalName().equals("node")) {
-            long osmID = Long.parseLong(in.getAttributeValue(null, "id"));
-            float lat = Float.parseFloat(in.getAttributeValue(null, "lat"));
-            float lon = Float.parseFloat(in.getAttributeValue(null, "lon"));
-
-            in.nextTag(); // get either </node> or <tag>. If the latter, then it is a start element.
-            while (in.getEventType() == XMLStreamConstants.START_ELEMENT) { // while <tag> and not </node>
-                tags.put(in.getAttributeValue(null, "k"),
-                         in.getAttributeValue(null, "v"));
-                in.nextTag(); // get </tag>
-                in.nextTag(); // get either </node> or <tag>
+        // Indexes the addresses on a thread of its own, from the nodes on, while the rest is parsed. It is only
+        // started once the file looks like OSM, and stopped however parsing ends.
+        AddressIndexer addresses = AddressIndexer.start(map.tstManager);
+        StringBuilder sb = new StringBuilder(100);
+        try {
+            while (in.getLocalName().equals("node")) {
+                long osmID = Long.parseLong(in.getAttributeValue(null, "id"));
+                float lat = Float.parseFloat(in.getAttributeValue(null, "lat"));
+                float lon = Float.parseFloat(in.getAttributeValue(null, "lon"));
+
+                in.nextTag(); // get either </node> or <tag>. If the latter, then it is a start element.
+                while (in.getEventType() == XMLStreamConstants.START_ELEMENT) { // while <tag> and not </node>
+                    tags.put(in.getAttributeValue(null, "k"),
+                             in.getAttributeValue(null, "v"));
+                    in.nextTag(); // get </tag>
+                    in.nextTag(); // get either </node> or <tag>
+                }
+                addresses.addAddress(sb, tags, lat, lon);
+                nodes.put(osmID, new Node(lat, lon));
+                tags.clear();
+
+                in.nextTag(); // get <node> or <way>
             }
-            addresses.addAddress(sb, tags, lat, lon);
-            nodes.put(osmID, new Node(lat, lon));
-            tags.clear();
 
-            in.nextTag(); // get <node> or <way>
-        }
+            addresses.finish();
+            log("Parsed " + nodes.size() + " nodes, " + addresses.handedOver() + " of them addresses.");
+            usage = new LongIntMap(nodes.size());
 
-        log("Parsed " + nodes.size() + " nodes.");
-        usage = HashMap.newHashMap(nodes.size());
-
-        while (in.getLocalName().equals("way")) {
-            long id = Long.parseLong(in.getAttributeValue(null, "id"));
-            in.nextTag(); // get <nd>, <tag>, or </way>
-            while (in.getEventType() == XMLStreamConstants.START_ELEMENT) { // while <nd> or <tag>
-                if (in.getLocalName().equals("tag")) {
-                    String k = in.getAttributeValue(null, "k");
-                    String v = in.getAttributeValue(null, "v");
-                    tags.put(k, v);
-                } else { // is <nd>
-                    final long nodeRef = Long.parseLong(in.getAttributeValue(null, "ref"));
-                    Node n = nodes.get(nodeRef);
-                    if (n != null) {
-                        nodesInWay.add(n);
-                        //usage.merge(new Node(n), 1, Integer::sum);
-                    }
-                }
-                in.nextTag(); // get </nd> or </tag>
+            while (in.getLocalName().equals("way")) {
+                long id = Long.parseLong(in.getAttributeValue(null, "id"));
                 in.nextTag(); // get <nd>, <tag>, or </way>
-            }
-            Way way = Way.create(nodesInWay, tags);
-            if (way instanceof HighWay road) {
-                highways.put(id, road);
-                ways.put(id, road);
-                Node extremity = road.getFirst();
-                if (!map.graphIDs.containsKey(extremity)) {
-                    map.graphIDs.put(extremity, graphIndex++);
-                }
-                for (int i = 1; i < road.size() - 1; i++) {
-                    usage.merge(road.get(i), 1, Integer::sum);
+                while (in.getEventType() == XMLStreamConstants.START_ELEMENT) { // while <nd> or <tag>
+                    if (in.getLocalName().equals("tag")) {
+                        String k = in.getAttributeValue(null, "k");
+                        String v = in.getAttributeValue(null, "v");
+                        tags.put(k, v);
+                    } else { // is <nd>
+                        final long nodeRef = Long.parseLong(in.getAttributeValue(null, "ref"));
+                        Node n = nodes.get(nodeRef);
+                        if (n != null) {
+                            nodesInWay.add(n);
+                            //usage.merge(new Node(n), 1, Integer::sum);
+                        }
+                    }
+                    in.nextTag(); // get </nd> or </tag>
+                    in.nextTag(); // get <nd>, <tag>, or </way>
                 }
-                extremity = road.getLast();
-                if (!map.graphIDs.containsKey(extremity)) {
-                    map.graphIDs.put(extremity, graphIndex++);
+                Way way = Way.create(nodesInWay, tags);
+                if (way instanceof HighWay road) {
+                    highways.put(id, road);
+                    ways.put(id, road);
+                    Node extremity = road.getFirst();
+                    if (!map.graphIDs.containsKey(extremity)) {
+                        map.graphIDs.put(extremity, graphIndex++);
+                    }
+                    for (int i = 1; i < road.size() - 1; i++) {
+                        usage.add(road.nodeKey(i), 1);
+                    }
+                    extremity = road.getLast();
+                    if (!map.graphIDs.containsKey(extremity)) {
+                        map.graphIDs.put(extremity, graphIndex++);
+                    }
+                } else if (way != null) {
+                    ways.put(id, way);
                 }
-            } else if (way != null) {
-                ways.put(id, way);
-            }
-            nodesInWay.clear();
-            tags.clear();
+                nodesInWay.clear();
+                tags.clear();
 
-            in.nextTag(); // get <way> or <relation>
-        }
+                in.nextTag(); // get <way> or <relation>
+            }
 
-        // Initialise the list of roads that will be the source of the graph.
-        map.graphRoads = new ArrayList<>(highways.size());
-        for (HighWay road : highways.values()) {
-            map.graphRoads.add(road);
-            map.addRoad(road);
-            for (int i = 1; i <  road.size() - 1; i++) {
-                Node n = road.get(i);
-                if (usage.get(n) > 1 && !map.graphIDs.containsKey(n)) {
-                    map.graphIDs.put(n, graphIndex);
-                    graphIndex++;
+            // Initialise the list of roads that will be the source of the graph.
+            map.graphRoads = new ArrayList<>(highways.size());
+            for (HighWay road : highways.values()) {
+                map.graphRoads.add(road);
+                map.addRoad(road);
+                for (int i = 1; i <  road.size() - 1; i++) {
+                    if (usage.get(road.nodeKey(i), 0) < 2) continue;
+                    Node n = road.get(i);
+                    if (!map.graphIDs.containsKey(n)) {
+                        map.graphIDs.put(n, graphIndex);
+                        graphIndex++;
+                    }
                 }
             }
-        }
 
-        usage = null;
-        nodes = null;
-        highways = null;
-        Map<Long, Relation> relations = HashMap.newHashMap(36437);
-
-        while (in.getLocalName().equals("relation")) {
-            long id = Long.parseLong(in.getAttributeValue(null, "id"));
-            in.nextTag(); // get <member>, <tag>, or </relation>
-            while (in.getEventType() == XMLStreamConstants.START_ELEMENT) { // while <member> or <tag>
-                String localName = in.getLocalName();
-                if (localName.equals("tag")) {
-                    String k = in.getAttributeValue(null, "k");
-                    String v = in.getAttributeValue(null, "v");
-                    if (!(k.equals("name") && v.equals("Øer i det Danske Øpas"))) {
-                        tags.put(k, v);
-                    }
-                } else {
-                    String type = in.getAttributeValue(null, "type");
-                    if (type.equals("way")) {
-                        String strRef = in.getAttributeValue(null, "ref");
-                        long ref = Long.parseLong(strRef);
-                        if (ways.containsKey(ref)) {
-                            waysInRelation.add(ways.get(ref));
+            map.graph = RoadGraph.build(map.graphRoads, map.graphIDs);
+            log("Built " + map.graph + " with " + map.graph.components() + ".");
+            if (minComponentSize > 1) {
+                int removed = map.dropSmallComponents(minComponentSize);
+                log("Dropped " + removed + " graph nodes in components smaller than "
+                        + minComponentSize + ". " + map.graph);
+            }
+            map.roadIndex = new EdgeIndex(map.graph, map.graphRoads, 200);
+
+            usage = null;
+            nodes = null;
+            highways = null;
+            Map<Long, Relation> relations = HashMap.newHashMap(36437);
+
+            while (in.getLocalName().equals("relation")) {
+                long id = Long.parseLong(in.getAttributeValue(null, "id"));
+                in.nextTag(); // get <member>, <tag>, or </relation>
+                while (in.getEventType() == XMLStreamConstants.START_ELEMENT) { // while <member> or <tag>
+                    String localName = in.getLocalName();
+                    if (localName.equals("tag")) {
+                        String k = in.getAttributeValue(null, "k");
+                        String v = in.getAttributeValue(null, "v");
+                        if (!(k.equals("name") && v.equals("Øer i det Danske Øpas"))) {
+                            tags.put(k, v);
                         }
-                        /* else if (highways.containsKey(ref)) {
-                            waysInRelation.add(highways.get(ref));
-                        }*/
-                    } else if (type.equals("relation")) {
-                        String strRef = in.getAttributeValue(null, "ref");
-                        long ref = Long.parseLong(strRef);
-                        Relation relation = relations.get(ref);
-                        if (relation != null) {
-                            relationsInRelation.add(relation);
+                    } else {
+                        String type = in.getAttributeValue(null, "type");
+                        if (type.equals("way")) {
+                            String strRef = in.getAttributeValue(null, "ref");
+                            long ref = Long.parseLong(strRef);
+                            if (ways.containsKey(ref)) {
+                                waysInRelation.add(ways.get(ref));
+                            }
+                            /* else if (highways.containsKey(ref)) {
+                                waysInRelation.add(highways.get(ref));
+                            }*/
+                        } else if (type.equals("relation")) {
+                            String strRef = in.getAttributeValue(null, "ref");
+                            long ref = Long.parseLong(strRef);
+                            Relation relation = relations.get(ref);
+                            if (relation != null) {
+                                relationsInRelation.add(relation);
+                            }
                         }
                     }
+                    in.nextTag(); // get </member> or </tag>
+                    in.nextTag(); // get <member>, <tag>, or </relation>
                 }
-                in.nextTag(); // get </member> or </tag>
-                in.nextTag(); // get <member>, <tag>, or </relation>
-            }
-            makeRelation(relations, waysInRelation, relationsInRelation, tags, id);
-            waysInRelation.clear();
-            relationsInRelation.clear();
-            tags.clear();
+                makeRelation(relations, waysInRelation, relationsInRelation, tags, id);
+                waysInRelation.clear();
+                relationsInRelation.clear();
+                tags.clear();
 
-            in.nextTag(); // get <relation>
-        }
-        in.close();
-
-        // Finished parsing XML file.
-        // Now performing some post-parsing "pre"-computation.
-
-        log("Parsed " + relations.size() + " relations.");
-        log("Parsed .osm file with OsmosisParser in "
-                + (System.currentTimeMillis() - before) + " ms.");
+                in.nextTag(); // get <relation>
+            }
+            in.close();
 
-        long beforeSaveTST = System.currentTimeMillis();
-        log("Saving mixed TST as separate files.");
-        map.tstManager.separateTSTs(addresses);
-        log("Saved TST in " + (System.currentTimeMillis() - beforeSaveTST) + " ms.");
+            // Finished parsing XML file.
+            // Now performing some post-parsing "pre"-computation.
+
+            log("Parsed " + relations.size() + " relations.");
+            log("Parsed .osm file with OsmosisParser in "
+                    + (System.currentTimeMillis() - before) + " ms.");
+
+            fillRTrees(map, ways, relations);
+
+            long beforeLevels = System.currentTimeMillis();
+            map.buildLevelsOfDetail();
+            log("Built coarse levels of detail in " + (System.currentTimeMillis() - beforeLevels) + " ms.");
+
+            if (compactWays) {
+                long beforeCompact = System.currentTimeMillis();
+                long compacted = map.compactWays();
+                log("Packed the coordinates of " + compacted + " items in "
+                        + (System.currentTimeMillis() - beforeCompact) + " ms.");
+            } else if (poolWays) {
+                long beforePool = System.currentTimeMillis();
+                long pooled = map.poolWays();
+                log("Moved the coordinates of " + pooled + " items off the heap in "
+                        + (System.currentTimeMillis() - beforePool) + " ms.");
+            }
 
-        fillRTrees(map, ways, relations);
+            long beforeAddresses = System.currentTimeMillis();
+            try {
+                addresses.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the address index.", e);
+            }
+            log("Waited " + (System.currentTimeMillis() - beforeAddresses) + " ms for the index of "
+                    + addresses.size() + " addresses.");
 
-        return map;
+            return map;
+        } finally {
+            addresses.cancel();
+        }
     }
 
     /** Create and add a new relation to the collection if it fulfills the requirements. */
@@ -236,38 +307,34 @@ public class OsmundaParser extends AbstractBufferedParser {
         }
     }
 
-    /** Inserts non-road ways and relations into the R-trees. */
+    /** Inserts non-road ways and relations into the R-tree, and packs them once all are added.
+     The packing runs in parallel; in verbose mode a virtual thread reports its progress meanwhile. */
     private static void fillRTrees(LayeredMapData map, Map<Long, Way> ways,
                                    Map<Long, Relation> relations) {
-        if (!VERBOSE) {
-            relations.values().forEach(map::insert);
-                 ways.values().forEach(map::insert);
-        } else {
-            long RtreeStart = System.currentTimeMillis();
-            int numberOfItems = ways.size() + relations.size();
-            int itemsLoaded = 0;
-            int iterator = 0;
-            for (Relation relation : relations.values()) {
-                map.insert(relation);
-                itemsLoaded++;
-                iterator++;
-                if (iterator == 10000) {
-                    System.out.println(itemsLoaded + "/" + numberOfItems);
-                    iterator = 0;
-                }
-            }
-            iterator = 0;
-            for (Way way : ways.values()) {
-                map.insert(way);
-                itemsLoaded++;
-                iterator++;
-                if (iterator == 10000) {
-                    System.out.println(itemsLoaded + "/" + numberOfItems);
-                    iterator = 0;
+        long start = System.currentTimeMillis();
+        relations.values().forEach(map::insert);
+        // The roads are in the tree already, from map.addRoad; they are only in ways for the relations.
+        for (Way way : ways.values()) {
+            if (!(way instanceof HighWay)) map.insert(way);
+        }
+        int items = ways.size() + relations.size();
+
+        Thread reporter = null;
+        if (VERBOSE && map.drawables instanceof RTreeManager manager) {
+            reporter = Thread.ofVirtual().start(() -> {
+                try {
+                    while (true) {
+                        Thread.sleep(1000);
+                        log("Indexed " + manager.progress() + "/" + items + " items.");
+                    }
+                } catch (InterruptedException ignored) {
+                    // Done.
                 }
-            }
-            System.out.println("Finished inserting to RTree after: "
-                    + (System.currentTimeMillis() - RtreeStart) + " ms.");
+            });
         }
+        map.drawables.build();
+        if (reporter != null) reporter.interrupt();
+        log("Built R-tree of " + map.drawables.size() + " items in "
+                + (System.currentTimeMillis() - start) + " ms.");
     }
 }
\ No newline at end of file
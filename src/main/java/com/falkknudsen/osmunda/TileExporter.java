@@ -0,0 +1,59 @@
+package com.falkknudsen.osmunda;
+
+import com.falkknudsen.jaywalk.Point;
+import com.falkknudsen.jaywalk.Rectangle;
+import com.falkknudsen.jaywalk.render.TilePyramid;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Renders a pyramid of PNG tiles from an OSM file without a display, for serving or pre-rendering.<br>
+ Usage: {@code TileExporter <file> <directory> <minZoom> <maxZoom> [minLat minLon maxLat maxLon]}<br>
+ The area defaults to the bounds of the file. Tiles are laid out as {@code zoom/column/row.png}, see
+ {@link com.falkknudsen.jaywalk.render.TileKey} for the numbering. */
+public class TileExporter {
+    public static void main(String[] args) throws IOException, XMLStreamException {
+        if (args.length != 4 && args.length != 8) {
+            System.err.println("Usage: TileExporter <file> <directory> <minZoom> <maxZoom> [minLat minLon maxLat maxLon]");
+            System.exit(2);
+        }
+        System.setProperty("java.awt.headless", "true");
+        int minZoom = Integer.parseInt(args[2]), maxZoom = Integer.parseInt(args[3]);
+
+        long start = System.currentTimeMillis();
+        LayeredMapData map = (LayeredMapData) new OsmundaParser().parse(args[0]);
+        System.out.println("Loaded " + args[0] + " in " + (System.currentTimeMillis() - start) + " ms.");
+
+        float minLat = map.minLat, minLon = map.minLon, maxLat = map.maxLat, maxLon = map.maxLon;
+        if (args.length == 8) {
+            minLat = Float.parseFloat(args[4]);
+            minLon = Float.parseFloat(args[5]);
+            maxLat = Float.parseFloat(args[6]);
+            maxLon = Float.parseFloat(args[7]);
+        }
+        Rectangle area = new Rectangle(Point.projectLon(minLon), Point.projectLat(minLat),
+                Point.projectLon(maxLon), Point.projectLat(maxLat));
+        long total = TilePyramid.tileCount(area, minZoom, maxZoom);
+        System.out.println("Rendering " + total + " tiles on " + Runtime.getRuntime().availableProcessors() + " cores.");
+
+        LongAdder progress = new LongAdder();
+        Thread reporter = Thread.ofVirtual().start(() -> {
+            try {
+                long last = 0;
+                while (true) {
+                    Thread.sleep(5000);
+                    long done = progress.sum();
+                    System.out.printf("%d/%d tiles, %.0f tiles/s.%n", done, total, (done - last) / 5.0);
+                    last = done;
+                }
+            } catch (InterruptedException ignored) {
+                // Done.
+            }
+        });
+        TilePyramid.Result result = TilePyramid.render(map::layerFor, area, minZoom, maxZoom, Path.of(args[1]), progress);
+        reporter.interrupt();
+        System.out.println(result);
+    }
+}
@@ -5,6 +5,7 @@ module com.falkknudsen.jaywalk {
     requires org.controlsfx.controls;
     requires net.synedra.validatorfx;
     requires java.xml;
+    requires java.desktop;
     requires org.apache.commons.compress;
     requires org.apache.commons.io;
 
@@ -15,5 +16,6 @@ module com.falkknudsen.jaywalk {
     exports com.falkknudsen.jaywalk.util;
     opens com.falkknudsen.jaywalk.util to javafx.fxml;
     exports com.falkknudsen.jaywalk.structs;
+    exports com.falkknudsen.jaywalk.render;
     opens com.falkknudsen.jaywalk.structs to javafx.fxml;
 }
\ No newline at end of file
@@ -0,0 +1,61 @@
+package com.falkknudsen.jaywalk.bench;
+
+import com.falkknudsen.jaywalk.tstree.AddressIndexer;
+import com.falkknudsen.jaywalk.tstree.TSTManager;
+import com.falkknudsen.jaywalk.tstree.TernarySearchTree;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Measures how long the parser's thread spends on the addresses: indexing them inline and splitting them
+ into shards after the XML, as the parser used to, against handing them to an {@link AddressIndexer}. The
+ parser is simulated by filling a tag map per node from synthetic addresses, as it does from the XML. With
+ the indexer, the time until {@link AddressIndexer#await()} returns is also measured, which on one core is
+ no shorter, but overlaps with the ways and relations on more. On one core, the indexing thread's time slices
+ are counted in the parser's time too.<br>
+ Usage: {@code AddressIndexingBenchmark [addresses]} */
+public class AddressIndexingBenchmark {
+    public static void main(String[] args) throws InterruptedException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        List<SyntheticData.Address> addresses = SyntheticData.addresses(count, 30_000, 3);
+        Map<String, String> tags = HashMap.newHashMap(100);
+        StringBuilder sb = new StringBuilder(100);
+
+        for (int round = 0; round < 2; round++) { // the first round warms up
+            long start = System.nanoTime();
+            TernarySearchTree tree = new TernarySearchTree();
+            for (SyntheticData.Address address : addresses) {
+                tags.putAll(address.tags());
+                tree.addAddress(sb, tags, address.lat(), address.lon());
+                tags.clear();
+            }
+            long parsed = System.nanoTime();
+            TSTManager inline = new TSTManager(null);
+            inline.separateTSTs(tree);
+            long done = System.nanoTime();
+            if (round == 1) {
+                System.out.printf("Inline:       nodes %5.0f ms, then split into shards %5.0f ms: %5.0f ms on the parser's thread.%n",
+                        (parsed - start) / 1e6, (done - parsed) / 1e6, (done - start) / 1e6);
+            }
+
+            start = System.nanoTime();
+            TSTManager manager = new TSTManager(null);
+            AddressIndexer indexer = AddressIndexer.start(manager);
+            for (SyntheticData.Address address : addresses) {
+                tags.putAll(address.tags());
+                indexer.addAddress(sb, tags, address.lat(), address.lon());
+                tags.clear();
+            }
+            indexer.finish();
+            parsed = System.nanoTime();
+            indexer.await();
+            done = System.nanoTime();
+            if (round == 1) {
+                System.out.printf("Handed over:  nodes %5.0f ms on the parser's thread; index done after %5.0f ms, on %d cores.%n",
+                        (parsed - start) / 1e6, (done - start) / 1e6, Runtime.getRuntime().availableProcessors());
+                System.out.printf("%d and %d addresses indexed.%n", tree.size(), indexer.size());
+            }
+        }
+    }
+}
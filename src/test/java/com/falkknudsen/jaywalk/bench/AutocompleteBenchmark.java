@@ -0,0 +1,98 @@
+package com.falkknudsen.jaywalk.bench;
+
+import com.falkknudsen.jaywalk.tstree.Autocomplete;
+import com.falkknudsen.jaywalk.tstree.TernarySearchTree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+/** Measures the latency per keystroke of completing addresses as they are typed: with an {@link Autocomplete},
+ which steps on from the last keystroke, searches best-first and caches prefixes, against going through every
+ key with the prefix and sorting them for each keystroke. The typing is a session per address looked for,
+ now and then deleting a character again, and most sessions are for a few popular streets, as in real use.
+ One address in a hundred is given an importance, as the points of interest would be.<br>
+ Usage: {@code AutocompleteBenchmark [addresses] [sessions]} */
+public class AutocompleteBenchmark {
+    private static final int K = 10;
+    private static final int CACHE_SIZE = 256;
+    private static final int POPULAR = 50;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int sessions = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+
+        List<SyntheticData.Address> addresses = SyntheticData.addresses(count, 30_000, 3);
+        Random random = new Random(29);
+        StringBuilder sb = new StringBuilder();
+        List<String> keys = new ArrayList<>(count);
+        float[] lats = new float[count], lons = new float[count], importance = new float[count];
+        for (int i = 0; i < count; i++) {
+            TernarySearchTree.key(sb, addresses.get(i).tags());
+            keys.add(sb.toString());
+            lats[i] = addresses.get(i).lat();
+            lons[i] = addresses.get(i).lon();
+            if (random.nextInt(100) == 0) importance[i] = 1 + random.nextInt(10);
+        }
+        TernarySearchTree tree = TernarySearchTree.build(keys, lats, lons, importance);
+
+        List<List<String>> typing = new ArrayList<>(sessions);
+        for (int s = 0; s < sessions; s++) {
+            String key = keys.get(random.nextInt(4) != 0 ? random.nextInt(POPULAR) * (count / POPULAR) : random.nextInt(count));
+            typing.add(keystrokes(key, random));
+        }
+
+        Autocomplete autocomplete = new Autocomplete(tree, K, CACHE_SIZE);
+        report("Autocomplete", typing, autocomplete::complete);
+        System.out.printf("  cache: %d hits, %d misses.%n", autocomplete.hits(), autocomplete.misses());
+        report("From scratch", typing, query -> scratch(tree, query));
+    }
+
+    /** The queries typed looking for {@code key}: up to its first 20 characters, one at a time, deleting a
+     character again now and then. */
+    private static List<String> keystrokes(String key, Random random) {
+        List<String> queries = new ArrayList<>();
+        int length = Math.min(key.length(), 20);
+        for (int i = 1; i <= length; i++) {
+            queries.add(key.substring(0, i));
+            if (i > 1 && random.nextInt(8) == 0) queries.add(key.substring(0, i - 1));
+        }
+        return queries;
+    }
+
+    /** What there is to do without the tree's help: every key with the prefix, sorted by importance. */
+    private static List<String> scratch(TernarySearchTree tree, String prefix) {
+        List<String> keys = new ArrayList<>();
+        List<Float> scores = new ArrayList<>();
+        tree.forEachWithPrefix(prefix, (key, address) -> {
+            keys.add(key);
+            scores.add(tree.importance(address));
+        });
+        Integer[] order = new Integer[keys.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparing((Integer i) -> -scores.get(i)));
+        List<String> best = new ArrayList<>(K);
+        for (int i = 0; i < Math.min(K, order.length); i++) best.add(keys.get(order[i]));
+        return best;
+    }
+
+    private static void report(String name, List<List<String>> typing, Function<String, ?> complete) {
+        int keystrokes = typing.stream().mapToInt(List::size).sum();
+        long[] nanos = new long[keystrokes];
+        int i = 0;
+        for (List<String> session : typing) {
+            for (String query : session) {
+                long start = System.nanoTime();
+                complete.apply(query);
+                nanos[i++] = System.nanoTime() - start;
+            }
+        }
+        Arrays.sort(nanos);
+        System.out.printf("%s: %d keystrokes, median %.1f us, p90 %.1f us, p99 %.1f us, max %.1f ms.%n", name,
+                keystrokes, nanos[keystrokes / 2] / 1e3, nanos[keystrokes * 9 / 10] / 1e3,
+                nanos[keystrokes * 99 / 100] / 1e3, nanos[keystrokes - 1] / 1e6);
+    }
+}
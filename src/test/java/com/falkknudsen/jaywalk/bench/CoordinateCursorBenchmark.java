@@ -0,0 +1,159 @@
+package com.falkknudsen.jaywalk.bench;
+
+import com.falkknudsen.jaywalk.HighWay;
+import com.falkknudsen.jaywalk.Node;
+import com.falkknudsen.jaywalk.Point;
+import com.falkknudsen.jaywalk.Way;
+import com.falkknudsen.jaywalk.graph.RoadGraph;
+import com.falkknudsen.jaywalk.structs.FloatList;
+import com.falkknudsen.jaywalk.structs.LongIntMap;
+import com.falkknudsen.jaywalk.util.Maths;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/** Compares the loops over the roads that go through {@link Way#get}, making a {@link Node} per vertex, with
+ the ones the parser and {@link RoadGraph#build} now use, which read the coordinates as floats: counting how
+ many roads go through each node, building the graph, and going through every segment. Each is timed, and
+ the heap allocated per vertex is measured as the growth of the used heap over a batch of roads, leaving out
+ the batches a collection ran in, as the module can't see the management beans. The graph is checked to come
+ out the same both ways.<br>
+ Usage: {@code CoordinateCursorBenchmark [features] [gridSize]} */
+public class CoordinateCursorBenchmark {
+    private static final int BATCH = 2000;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 400_000;
+        int gridSize = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+
+        SyntheticData.Grid grid = SyntheticData.grid(gridSize, 100);
+        List<HighWay> roads = new ArrayList<>(grid.roads());
+        for (Way way : SyntheticData.features(count, 20_000, 3)) if (way instanceof HighWay road) roads.add(road);
+        long vertices = roads.stream().mapToLong(Way::size).sum();
+        System.out.printf("%d roads, %d vertices.%n", roads.size(), vertices);
+
+        Map<Node, Integer> graphIDs = graphIDs(roads);
+        int[] byNode = new int[1], byKey = new int[1];
+        compare("Counting road nodes", roads, vertices, BATCH,
+                from -> byNode[0] = usageByNode(roads, from, from + BATCH).size(),
+                from -> byKey[0] = usageByKey(roads, from, from + BATCH).size());
+
+        float[] oldLengths = oldBuild(roads, graphIDs).toArray();
+        RoadGraph graph = RoadGraph.build(roads, graphIDs);
+        int differ = oldLengths.length == graph.edgeCount() ? 0 : Math.abs(oldLengths.length - graph.edgeCount());
+        for (int e = 0; e < Math.min(oldLengths.length, graph.edgeCount()); e++) {
+            if (Float.floatToIntBits(oldLengths[e]) != Float.floatToIntBits(graph.edgeLength(e))) differ++;
+        }
+        double[] sums = new double[2];
+        // In one go, as the graph is built, so the map of the graph IDs is only made once.
+        compare("Building the graph", roads, vertices, roads.size(),
+                from -> sums[0] += oldBuild(roads, graphIDs).size(),
+                from -> sums[1] += RoadGraph.build(roads, graphIDs).edgeCount());
+        compare("Every segment", roads, vertices, BATCH,
+                from -> {
+                    for (int r = from; r < Math.min(from + BATCH, roads.size()); r++) {
+                        Node previous = null;
+                        for (Node current : roads.get(r)) {
+                            if (previous != null) sums[0] += Maths.distanceFCC(previous, current);
+                            previous = current;
+                        }
+                    }
+                },
+                from -> {
+                    for (int r = from; r < Math.min(from + BATCH, roads.size()); r++) {
+                        roads.get(r).forEachSegment((x1, y1, x2, y2) -> sums[1] += Maths.distanceFCC(
+                                Point.toLat(y1), Point.toLon(x1), Point.toLat(y2), Point.toLon(x2)));
+                    }
+                });
+        System.out.printf("%d graph nodes, %d and %d nodes counted; %d edges, %d of them differ.%n",
+                graphIDs.size(), byNode[0], byKey[0], graph.edgeCount(), differ);
+        if (sums[0] == 42) System.out.println(); // keeps the loops from being optimised away
+    }
+
+    /** The graph nodes as the parser picks them: the ends of the roads, and the nodes more than one goes through. */
+    private static Map<Node, Integer> graphIDs(List<HighWay> roads) {
+        LongIntMap usage = usageByKey(roads, 0, roads.size());
+        Map<Node, Integer> graphIDs = new HashMap<>();
+        for (HighWay road : roads) {
+            graphIDs.putIfAbsent(road.getFirst(), graphIDs.size());
+            graphIDs.putIfAbsent(road.getLast(), graphIDs.size());
+        }
+        for (HighWay road : roads) {
+            for (int i = 1; i < road.size() - 1; i++) {
+                if (usage.get(road.nodeKey(i), 0) > 1) graphIDs.putIfAbsent(road.get(i), graphIDs.size());
+            }
+        }
+        return graphIDs;
+    }
+
+    private static Map<Node, Integer> usageByNode(List<HighWay> roads, int from, int to) {
+        Map<Node, Integer> usage = new HashMap<>();
+        for (int r = from; r < Math.min(to, roads.size()); r++) {
+            HighWay road = roads.get(r);
+            for (int i = 1; i < road.size() - 1; i++) usage.merge(road.get(i), 1, Integer::sum);
+        }
+        return usage;
+    }
+
+    private static LongIntMap usageByKey(List<HighWay> roads, int from, int to) {
+        LongIntMap usage = new LongIntMap();
+        for (int r = from; r < Math.min(to, roads.size()); r++) {
+            HighWay road = roads.get(r);
+            for (int i = 1; i < road.size() - 1; i++) usage.add(road.nodeKey(i), 1);
+        }
+        return usage;
+    }
+
+    /** The edge lengths {@link RoadGraph#build} came to before, with a node per vertex. */
+    private static FloatList oldBuild(List<HighWay> roads, Map<Node, Integer> graphIDs) {
+        FloatList lengths = new FloatList();
+        for (HighWay way : roads) {
+            Node previous = way.get(0);
+            Integer start = graphIDs.get(previous);
+            double metres = 0;
+            for (int i = 1; i < way.size(); i++) {
+                Node current = way.get(i);
+                metres += Maths.distanceFCC(previous, current);
+                previous = current;
+                Integer id = graphIDs.get(current);
+                if (id == null) continue;
+                if (start != null && start.intValue() != id) lengths.add((float) metres);
+                start = id;
+                metres = 0;
+            }
+        }
+        return lengths;
+    }
+
+    /** Runs both loops over every batch of {@code batch} roads, given the first, the second round of each,
+     after one to warm up. */
+    private static void compare(String name, List<HighWay> roads, long vertices, int batch,
+                                IntConsumer before, IntConsumer after) {
+        double[] nanos = new double[2], bytes = new double[2];
+        IntConsumer[] loops = {before, after};
+        for (int l = 0; l < 2; l++) {
+            for (int round = 0; round < 2; round++) {
+                System.gc();
+                Runtime runtime = Runtime.getRuntime();
+                long time = 0, allocated = 0, measured = 0;
+                for (int from = 0; from < roads.size(); from += batch) {
+                    long used = runtime.totalMemory() - runtime.freeMemory();
+                    long start = System.nanoTime();
+                    loops[l].accept(from);
+                    time += System.nanoTime() - start;
+                    long grown = runtime.totalMemory() - runtime.freeMemory() - used;
+                    if (grown < 0) continue; // collected in between
+                    allocated += grown;
+                    for (int r = from; r < Math.min(from + batch, roads.size()); r++) measured += roads.get(r).size();
+                }
+                nanos[l] = (double) time / vertices;
+                bytes[l] = measured == 0 ? Double.NaN : (double) allocated / measured;
+            }
+        }
+        System.out.printf("%-20s nodes %6.1f ns, %6.1f B per vertex; floats %6.1f ns, %6.1f B per vertex.%n",
+                name + ":", nanos[0], bytes[0], nanos[1], bytes[1]);
+    }
+}
@@ -0,0 +1,159 @@
+package com.falkknudsen.jaywalk.bench;
+
+import com.falkknudsen.jaywalk.Node;
+import com.falkknudsen.jaywalk.Point;
+import com.falkknudsen.jaywalk.Way;
+import com.falkknudsen.jaywalk.WayType;
+import com.falkknudsen.jaywalk.contracts.IDrawableContainer;
+import com.falkknudsen.jaywalk.render.FrameStats;
+import com.falkknudsen.jaywalk.render.MapRenderer;
+import com.falkknudsen.jaywalk.render.Viewport;
+import com.falkknudsen.jaywalk.rtree.PagedRTree;
+import com.falkknudsen.jaywalk.structs.CoordinatePool;
+import com.falkknudsen.osmunda.LayeredMapData;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/** Measures what {@link Way#pool()} does to the heap and to drawing: the heap in use after a full collection,
+ and how long that collection takes, with the coordinates of every way in arrays of their own and in the
+ {@link CoordinatePool}, and the time to draw a frame both ways. Then writes the ways to a {@link PagedRTree},
+ which saves the pool next to it, opens it, and checks that the ways read back, with their coordinates in
+ the mapped pool, are the same. Last, builds ways a vertex at a time, copying the array for every vertex, as
+ {@link Way#add} used to, and adding to the pool.<br>
+ Usage: {@code CoordinatePoolBenchmark [features] [extentKm] [frames]} */
+public class CoordinatePoolBenchmark {
+    private static final int WIDTH = 1280, HEIGHT = 800;
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 400_000;
+        double extent = (args.length > 1 ? Double.parseDouble(args[1]) : 20) * 1000;
+        int frames = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        List<Way> ways = SyntheticData.features(count, extent, 3);
+        LayeredMapData map = new LayeredMapData("benchmark");
+        ways.forEach(map::insert);
+        map.drawables.build();
+        map.buildLevelsOfDetail();
+        long vertices = ways.stream().mapToLong(Way::size).sum();
+
+        SyntheticData.Grid frame = new SyntheticData.Grid(1, extent, List.of(), Map.of());
+        Viewport city = Viewport.centred(Point.projectLon(frame.lon(0.5)), Point.projectLat(frame.lat(0.5)), 2, WIDTH, HEIGHT);
+        IDrawableContainer layer = map.layerFor(city.metresPerPixel());
+
+        long[] onHeap = heap();
+        double heapFrame = frame(layer, city, frames);
+        long start = System.nanoTime();
+        long pooled = map.poolWays();
+        long pooling = System.nanoTime() - start;
+        long[] offHeap = heap();
+        double pooledFrame = frame(layer, city, frames);
+        CoordinatePool pool = CoordinatePool.global();
+
+        System.out.printf("%d ways, %d vertices; %d items pooled in %.0f ms, into %d chunks: %.1f MB used of %.1f MB.%n",
+                ways.size(), vertices, pooled, pooling / 1e6, pool.chunkCount(), pool.usedBytes() / 1e6,
+                pool.reservedBytes() / 1e6);
+        System.out.printf("Heap after a full collection: %.1f MB with arrays, %.1f MB pooled, %.1f MB less.%n",
+                onHeap[0] / 1e6, offHeap[0] / 1e6, (onHeap[0] - offHeap[0]) / 1e6);
+        System.out.printf("Full collection: %.1f ms with arrays, %.1f ms pooled.%n", onHeap[1] / 1e6, offHeap[1] / 1e6);
+        System.out.printf("Frame, 2 m/px: %.2f ms with arrays, %.2f ms pooled, %.2fx.%n",
+                heapFrame, pooledFrame, pooledFrame / heapFrame);
+
+        Path file = Files.createTempFile("jaywalk-coordinates", ".rtree");
+        try {
+            start = System.nanoTime();
+            PagedRTree.write(ways, file);
+            long written = System.nanoTime() - start;
+            int[] expected = new int[ways.size()], found;
+            for (int i = 0; i < ways.size(); i++) expected[i] = coordinateHash(ways.get(i));
+            start = System.nanoTime();
+            try (PagedRTree tree = PagedRTree.open(file, 1024)) {
+                long mapped = System.nanoTime() - start;
+                found = new int[(int) tree.size()];
+                for (int i = 0; i < found.length; i++) found[i] = coordinateHash((Way) tree.get(i));
+                System.out.printf("Snapshot: %.1f MB of tree and %.1f MB of pool written in %.0f ms, "
+                                + "opened in %.2f ms.%n", Files.size(file) / 1e6,
+                        Files.size(PagedRTree.poolFile(file)) / 1e6, written / 1e6, mapped / 1e6);
+            }
+            // The tree keeps the ways in an order of its own, so their coordinates are compared as a whole.
+            Arrays.sort(expected);
+            Arrays.sort(found);
+            System.out.printf("Ways read back from the tree: %d, %s.%n", found.length,
+                    Arrays.equals(expected, found) ? "the same coordinates" : "DIFFERENT coordinates");
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(PagedRTree.poolFile(file));
+        }
+
+        for (int length : new int[]{10, 100, 1_000, 10_000}) {
+            int wayCount = Math.max(1, 1_000_000 / length);
+            // Copying is quadratic, so fewer of the longer ways are built that way.
+            int copiedCount = Math.min(wayCount, Math.max(1, 20_000_000 / length / length));
+            double[] results = new double[2];
+            for (int round = 0; round < 2; round++) { // the first round warms up
+                start = System.nanoTime();
+                float sum = 0;
+                for (int w = 0; w < copiedCount; w++) {
+                    float[] coordinates = {0, 0};
+                    for (int i = 1; i < length; i++) {
+                        float[] grown = new float[coordinates.length + 2];
+                        System.arraycopy(coordinates, 0, grown, 0, coordinates.length);
+                        grown[coordinates.length] = i;
+                        grown[coordinates.length + 1] = -i;
+                        coordinates = grown;
+                    }
+                    sum += coordinates[coordinates.length - 1];
+                }
+                results[0] = (double) (System.nanoTime() - start) / (copiedCount * (long) length);
+                start = System.nanoTime();
+                for (int w = 0; w < wayCount; w++) {
+                    Way way = Way.fromCoordinates(new float[]{0, 0}, WayType.OTHER);
+                    for (int i = 1; i < length; i++) way.add(Node.fromXY(i, -i));
+                    sum += way.y(length - 1);
+                }
+                results[1] = (double) (System.nanoTime() - start) / (wayCount * (long) length);
+                if (sum == 42) System.out.println(); // keeps the loops from being optimised away
+            }
+            System.out.printf("Adding %6d vertices one at a time: copying %8.1f ns, pooled %6.1f ns per vertex.%n",
+                    length, results[0], results[1]);
+        }
+    }
+
+    private static int coordinateHash(Way way) {
+        float[] coordinates = new float[way.size() * 2];
+        way.copyCoordinates(coordinates, 0);
+        return Arrays.hashCode(coordinates);
+    }
+
+    /** Heap in use after a full collection, and how long the collection took. */
+    private static long[] heap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long start = System.nanoTime();
+        System.gc();
+        long nanos = System.nanoTime() - start;
+        return new long[]{runtime.totalMemory() - runtime.freeMemory(), nanos};
+    }
+
+    /** Average time to draw a frame, panning as it goes, the second round, after one to warm up. */
+    private static double frame(IDrawableContainer layer, Viewport start, int frames) {
+        CountingTarget target = new CountingTarget();
+        MapRenderer renderer = new MapRenderer();
+        double average = 0;
+        for (int round = 0; round < 2; round++) {
+            Viewport viewport = start;
+            long nanos = 0;
+            for (int f = 0; f < frames; f++) {
+                FrameStats stats = renderer.render(layer, viewport, target);
+                nanos += stats.nanos();
+                viewport = viewport.panned(16, 8);
+            }
+            average = nanos / 1e6 / frames;
+        }
+        return average;
+    }
+}
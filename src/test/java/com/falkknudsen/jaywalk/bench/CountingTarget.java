@@ -0,0 +1,48 @@
+package com.falkknudsen.jaywalk.bench;
+
+import com.falkknudsen.jaywalk.render.RenderTarget;
+import javafx.scene.paint.Color;
+
+/** Counts paths and vertices, keeping a checksum of the coordinates so none of the work can be skipped. */
+class CountingTarget implements RenderTarget {
+    long paths, vertices;
+    double checksum;
+
+    void reset() {
+        paths = vertices = 0;
+    }
+
+    @Override
+    public void clear(Color background) {
+    }
+
+    @Override
+    public void beginPath() {
+    }
+
+    @Override
+    public void moveTo(double x, double y) {
+        vertices++;
+        checksum += x + y;
+    }
+
+    @Override
+    public void lineTo(double x, double y) {
+        vertices++;
+        checksum += x - y;
+    }
+
+    @Override
+    public void closePath() {
+    }
+
+    @Override
+    public void stroke(Color colour, double width) {
+        paths++;
+    }
+
+    @Override
+    public void fill(Color colour) {
+        paths++;
+    }
+}
@@ -0,0 +1,103 @@
+package com.falkknudsen.jaywalk.bench;
+
+import com.falkknudsen.jaywalk.tstree.TernarySearchTree;
+import com.falkknudsen.jaywalk.util.BitParallelDistance;
+import com.falkknudsen.jaywalk.util.Strings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Checks {@link BitParallelDistance} against the dynamic programming in {@link Strings#levenshtein} on random
+ pairs of strings, and compares the time they take to score one query against many address keys, both
+ short ones and ones longer than 64 characters, which take the blocked variant. Finally it times the batch
+ rescoring of {@link TernarySearchTree#closest}, as done per keystroke.<br>
+ Usage: {@code EditDistanceBenchmark [candidates]} */
+public class EditDistanceBenchmark {
+    private static final int PAIRS = 100_000;
+    private static final int K = 10;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        Random random = new Random(23);
+
+        int wrong = 0;
+        for (int i = 0; i < PAIRS; i++) {
+            String a = randomString(random, random.nextInt(i % 10 == 0 ? 300 : 70));
+            String b = randomString(random, random.nextInt(i % 10 == 0 ? 300 : 70));
+            if (new BitParallelDistance(a).distance(b) != Strings.levenshtein(a, b)) wrong++;
+        }
+        System.out.printf("%d random pairs checked against the reference: %d differ.%n", PAIRS, wrong);
+
+        List<SyntheticData.Address> addresses = SyntheticData.addresses(count, 30_000, 3);
+        StringBuilder sb = new StringBuilder();
+        List<String> keys = new ArrayList<>(count), longKeys = new ArrayList<>(count);
+        float[] lats = new float[count], lons = new float[count];
+        for (int i = 0; i < count; i++) {
+            TernarySearchTree.key(sb, addresses.get(i).tags());
+            keys.add(sb.toString().toLowerCase());
+            lats[i] = addresses.get(i).lat();
+            lons[i] = addresses.get(i).lon();
+        }
+        for (int i = 0; i < count; i++) longKeys.add(keys.get(i) + "; " + keys.get((i + 1) % count));
+        String query = keys.get(random.nextInt(count)).replace('e', 'r');
+        String longQuery = longKeys.get(random.nextInt(count)).replace('e', 'r');
+
+        compare("Short", query, keys);
+        compare("Long", longQuery, longKeys);
+
+        int[] indices = new int[K], distances = new int[K];
+        BitParallelDistance distance = new BitParallelDistance(query);
+        long nanos = time(() -> distance.best(keys, K, Integer.MAX_VALUE, indices, distances));
+        System.out.printf("Best %d of %d: %.2f ms, closest at %d edits.%n", K, count, nanos / 1e6, distances[0]);
+
+        TernarySearchTree tree = TernarySearchTree.build(keys, lats, lons);
+        for (int typed = 1; typed <= 4; typed++) {
+            String prefix = query.substring(0, Math.min(query.length(), typed * 4));
+            List<TernarySearchTree.Match> matches = new ArrayList<>();
+            nanos = time(() -> {
+                matches.clear();
+                matches.addAll(tree.closest(prefix, 1, K, Integer.MAX_VALUE));
+            });
+            System.out.printf("Rescoring \"%s\" against the keys starting with '%c': %.2f ms, best \"%s\".%n",
+                    prefix, prefix.charAt(0), nanos / 1e6, matches.isEmpty() ? "" : matches.getFirst().key());
+        }
+    }
+
+    private static void compare(String name, String query, List<String> candidates) {
+        long[] sum = new long[1];
+        long dynamic = time(() -> {
+            for (String candidate : candidates) sum[0] += Strings.levenshtein(query, candidate);
+        });
+        BitParallelDistance distance = new BitParallelDistance(query);
+        long bitParallel = time(() -> {
+            for (String candidate : candidates) sum[0] -= distance.distance(candidate);
+        });
+        // Every run adds the distances from the table and subtracts the others, so they agree if this is 0.
+        System.out.printf("%s (%d characters): %.0f ns per candidate with the table, %.0f ns bit-parallel, "
+                        + "%.1fx faster; the totals %s.%n", name, query.length(), (double) dynamic / candidates.size(),
+                (double) bitParallel / candidates.size(), (double) dynamic / bitParallel,
+                sum[0] == 0 ? "agree" : "differ");
+    }
+
+    /** The time of the fastest of a few runs. */
+    private static long time(Runnable run) {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            run.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    /** Lower case letters from a small alphabet, so there are plenty of matches, and now and then a
+     character from outside Latin-1. */
+    private static String randomString(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(random.nextInt(50) == 0 ? 'ŋ' : (char) ('a' + random.nextInt(6)));
+        }
+        return sb.toString();
+    }
+}
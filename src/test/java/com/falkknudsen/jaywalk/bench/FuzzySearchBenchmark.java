@@ -0,0 +1,91 @@
+package com.falkknudsen.jaywalk.bench;
+
+import com.falkknudsen.jaywalk.tstree.TernarySearchTree;
+import com.falkknudsen.jaywalk.util.Strings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Measures {@link TernarySearchTree#fuzzy} on queries with one or two typos, against scanning every key with
+ {@link Strings#keyboardDistance}, and checks that both find the same closest distance.<br>
+ Usage: {@code FuzzySearchBenchmark [addresses] [queries]} */
+public class FuzzySearchBenchmark {
+    private static final float MAX_DISTANCE = 2;
+    private static final int LIMIT = 10;
+    /** Queries checked against a scan, which takes a while per query. */
+    private static final int SCANNED = 20;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+
+        List<SyntheticData.Address> addresses = SyntheticData.addresses(count, 30_000, 3);
+        StringBuilder sb = new StringBuilder();
+        List<String> keys = new ArrayList<>(count);
+        float[] lats = new float[count], lons = new float[count];
+        for (int i = 0; i < count; i++) {
+            TernarySearchTree.key(sb, addresses.get(i).tags());
+            keys.add(sb.toString().toLowerCase());
+            lats[i] = addresses.get(i).lat();
+            lons[i] = addresses.get(i).lon();
+        }
+        TernarySearchTree tree = TernarySearchTree.build(keys, lats, lons);
+        System.out.println(tree);
+
+        Random random = new Random(17);
+        String[] typos = new String[queries];
+        for (int i = 0; i < queries; i++) typos[i] = typo(keys.get(random.nextInt(count)), 1 + i % 2, random);
+
+        for (boolean keyboard : new boolean[]{false, true}) {
+            long found = 0, start = 0;
+            for (int round = 0; round < 2; round++) { // the first round warms up
+                found = 0;
+                start = System.nanoTime();
+                for (String query : typos) found += tree.fuzzy(query, MAX_DISTANCE, LIMIT, keyboard).size();
+            }
+            long nanos = System.nanoTime() - start;
+            System.out.printf("%s weights: %.3f ms per query, %.1f matches each.%n",
+                    keyboard ? "Keyboard" : "Uniform ", nanos / 1e6 / queries, (double) found / queries);
+        }
+
+        long treeNanos = 0, scanNanos = 0;
+        int agreed = 0;
+        for (int i = 0; i < SCANNED; i++) {
+            String query = typos[i];
+            long start = System.nanoTime();
+            List<TernarySearchTree.Match> matches = tree.fuzzy(query, MAX_DISTANCE, 1, true);
+            treeNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            float closest = Float.POSITIVE_INFINITY;
+            for (String key : keys) closest = Math.min(closest, Strings.keyboardDistance(query, key));
+            scanNanos += System.nanoTime() - start;
+            float fromTree = matches.isEmpty() ? Float.POSITIVE_INFINITY : matches.getFirst().distance();
+            if (fromTree == closest || closest > MAX_DISTANCE && matches.isEmpty()) agreed++;
+        }
+        System.out.printf("Closest match, keyboard weights: %.3f ms from the tree, %.0f ms scanning every key; "
+                + "%d of %d agree.%n", treeNanos / 1e6 / SCANNED, scanNanos / 1e6 / SCANNED, agreed, SCANNED);
+    }
+
+    /** The key with {@code edits} random substitutions, insertions or deletions. Substitutions are mostly
+     of a neighbouring key, as real typos are. */
+    private static String typo(String key, int edits, Random random) {
+        StringBuilder sb = new StringBuilder(key);
+        for (int e = 0; e < edits; e++) {
+            int i = random.nextInt(sb.length());
+            switch (random.nextInt(3)) {
+                case 0 -> sb.deleteCharAt(i);
+                case 1 -> sb.insert(i, (char) ('a' + random.nextInt(26)));
+                default -> sb.setCharAt(i, neighbour(sb.charAt(i), random));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static char neighbour(char c, Random random) {
+        List<Character> neighbours = new ArrayList<>();
+        for (char n = 'a'; n <= 'z'; n++) if (Strings.areNeighbours(c, n)) neighbours.add(n);
+        return neighbours.isEmpty() ? (char) ('a' + random.nextInt(26)) : neighbours.get(random.nextInt(neighbours.size()));
+    }
+}
@@ -0,0 +1,42 @@
+package com.falkknudsen.jaywalk.bench;
+
+import com.falkknudsen.jaywalk.LevelOfDetail;
+import com.falkknudsen.jaywalk.Way;
+import com.falkknudsen.jaywalk.contracts.IDrawableContainer;
+import com.falkknudsen.osmunda.LayeredMapData;
+
+import java.util.List;
+
+/** Builds the levels of detail over synthetic features and reports, for a viewport covering the whole
+ map, how many items and vertices each level would have the renderer draw.<br>
+ Usage: {@code LevelOfDetailBenchmark [features] [extentKm]} */
+public class LevelOfDetailBenchmark {
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 300_000;
+        double extent = (args.length > 1 ? Double.parseDouble(args[1]) : 200) * 1000;
+
+        List<Way> ways = SyntheticData.features(count, extent, 3);
+        LayeredMapData map = new LayeredMapData("benchmark");
+        ways.forEach(map::insert);
+        map.drawables.build();
+
+        long start = System.nanoTime();
+        map.buildLevelsOfDetail();
+        System.out.printf("Built coarse levels in %.0f ms.%n", (System.nanoTime() - start) / 1e6);
+
+        for (LevelOfDetail level : LevelOfDetail.values()) {
+            IDrawableContainer layer = map.layer(level);
+            long[] totals = {0, 0};
+            start = System.nanoTime();
+            layer.query(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY,
+                    Float.POSITIVE_INFINITY, item -> {
+                        totals[0]++;
+                        totals[1] += item.vertexCount();
+                    });
+            System.out.printf("%-8s (from %4.0f m/px): %8d items, %10d vertices, queried in %.1f ms.%n",
+                    level, level.toleranceMetres, totals[0], totals[1], (System.nanoTime() - start) / 1e6);
+        }
+        System.out.printf("A %.0f km wide frame on a 1000 pixel wide screen uses %s.%n",
+                extent / 1000, LevelOfDetail.forScale(extent / 1000));
+    }
+}
@@ -0,0 +1,42 @@
+package com.falkknudsen.jaywalk.bench;
+
+import com.falkknudsen.jaywalk.graph.EdgeIndex;
+import com.falkknudsen.jaywalk.graph.GpsTrace;
+import com.falkknudsen.jaywalk.graph.MapMatcher;
+import com.falkknudsen.jaywalk.graph.RoadGraph;
+
+import java.util.List;
+
+/** Measures map-matching throughput, in GPS points per second per core, on synthetic traces.<br>
+ Usage: {@code MapMatchBenchmark [threads] [traces] [gridSize]} */
+public class MapMatchBenchmark {
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int traceCount = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int gridSize = args.length > 2 ? Integer.parseInt(args[2]) : 300;
+
+        SyntheticData.Grid grid = SyntheticData.grid(gridSize, 100);
+        RoadGraph graph = RoadGraph.build(grid.roads(), grid.graphIDs());
+        EdgeIndex index = new EdgeIndex(graph, grid.roads(), 200);
+        List<GpsTrace> traces = SyntheticData.traces(grid, traceCount, 200, 15, 8, 42);
+        System.out.println(graph + ", " + index.segmentCount() + " segments, "
+                + traceCount + " traces of 200 points, " + threads + " threads.");
+
+        // Warm-up run, so the JIT has compiled the hot loops before measuring.
+        new MapMatcher(graph, index).matchAll(traces.subList(0, Math.min(200, traceCount)), threads);
+
+        MapMatcher matcher = new MapMatcher(graph, index);
+        long start = System.nanoTime();
+        int[][] results = matcher.matchAll(traces, threads);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long edges = 0;
+        for (int[] result : results) edges += result.length;
+        double perSecond = matcher.pointsMatched() / seconds;
+        System.out.printf("Matched %d points in %.2f s: %.0f points/s, %.0f points/s/core.%n",
+                matcher.pointsMatched(), seconds, perSecond, perSecond / threads);
+        System.out.printf("%.1f edges per trace. Tree cache hit rate %.1f%%.%n",
+                (double) edges / results.length,
+                100.0 * matcher.cacheHits() / Math.max(1, matcher.cacheHits() + matcher.cacheMisses()));
+    }
+}
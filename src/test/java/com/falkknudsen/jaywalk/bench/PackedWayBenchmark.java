@@ -0,0 +1,131 @@
+package com.falkknudsen.jaywalk.bench;
+
+import com.falkknudsen.jaywalk.HighWay;
+import com.falkknudsen.jaywalk.Node;
+import com.falkknudsen.jaywalk.Point;
+import com.falkknudsen.jaywalk.Way;
+import com.falkknudsen.jaywalk.contracts.IDrawableContainer;
+import com.falkknudsen.jaywalk.render.FrameStats;
+import com.falkknudsen.jaywalk.render.MapRenderer;
+import com.falkknudsen.jaywalk.render.Viewport;
+import com.falkknudsen.jaywalk.util.Maths;
+import com.falkknudsen.osmunda.LayeredMapData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/** Measures what {@link Way#compact()} saves, and what it costs: the bytes taken up by the coordinates of
+ every way, as float arrays and packed, and the time taken by the loops that read them, before and after.
+ Those are drawing frames with {@link MapRenderer}, which decodes each way in one go, going through every
+ vertex of the roads with {@link Way#get}, as the road graph and edge index are built, which decodes from the
+ nearest checkpoint each time, and {@link Way#length()}, which decodes as it goes. Every way is checked to
+ come back exactly as it was.<br>
+ Usage: {@code PackedWayBenchmark [features] [extentKm] [frames]} */
+public class PackedWayBenchmark {
+    private static final int WIDTH = 1280, HEIGHT = 800;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 400_000;
+        double extent = (args.length > 1 ? Double.parseDouble(args[1]) : 20) * 1000;
+        int frames = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        List<Way> ways = SyntheticData.features(count, extent, 3);
+        LayeredMapData map = new LayeredMapData("benchmark");
+        ways.forEach(map::insert);
+        map.drawables.build();
+        map.buildLevelsOfDetail();
+        List<HighWay> roads = new ArrayList<>();
+        for (Way way : ways) if (way instanceof HighWay road) roads.add(road);
+        List<float[]> originals = new ArrayList<>(ways.size());
+        for (Way way : ways) {
+            float[] coordinates = new float[way.size() * 2];
+            way.copyCoordinates(coordinates, 0);
+            originals.add(coordinates);
+        }
+
+        SyntheticData.Grid frame = new SyntheticData.Grid(1, extent, List.of(), Map.of());
+        Viewport city = Viewport.centred(Point.projectLon(frame.lon(0.5)), Point.projectLat(frame.lat(0.5)), 2, WIDTH, HEIGHT);
+
+        long floatBytes = bytes(ways), vertices = ways.stream().mapToLong(Way::size).sum();
+        double[] plain = loops(map, city, frames, roads);
+        long start = System.nanoTime();
+        long compacted = map.compactWays();
+        long packing = System.nanoTime() - start;
+        long packedBytes = bytes(ways);
+        double[] packed = loops(map, city, frames, roads);
+
+        int differ = 0;
+        for (int i = 0; i < ways.size(); i++) {
+            float[] coordinates = new float[ways.get(i).size() * 2];
+            ways.get(i).copyCoordinates(coordinates, 0);
+            if (!Arrays.equals(coordinates, originals.get(i))) differ++;
+        }
+
+        System.out.printf("%d ways, %d vertices; %d items packed in %.0f ms; %d ways differ when unpacked.%n",
+                ways.size(), vertices, compacted, packing / 1e6, differ);
+        System.out.printf("Coordinates: %.1f MB as floats, %.1f MB packed: %.2f and %.2f bytes per vertex, %.0f%% saved.%n",
+                floatBytes / 1e6, packedBytes / 1e6, (double) floatBytes / vertices, (double) packedBytes / vertices,
+                100.0 - 100.0 * packedBytes / floatBytes);
+        String[] names = {"Frame, 2 m/px (ms)", "Road vertices by index (ns/vertex)", "Way lengths (ns/vertex)"};
+        for (int i = 0; i < names.length; i++) {
+            System.out.printf("%-36s floats %8.2f, packed %8.2f, %.2fx.%n", names[i] + ":", plain[i], packed[i], packed[i] / plain[i]);
+        }
+    }
+
+    /** Bytes taken up by the coordinates of the ways, in whichever form they are. */
+    private static long bytes(List<Way> ways) {
+        long bytes = 0;
+        for (Way way : ways) bytes += way.coordinateBytes();
+        return bytes;
+    }
+
+    /** Times the three loops, the second round of each, after one to warm up. */
+    private static double[] loops(LayeredMapData map, Viewport start, int frames, List<HighWay> roads) {
+        double[] results = new double[3];
+        IDrawableContainer layer = map.layerFor(start.metresPerPixel());
+        CountingTarget target = new CountingTarget();
+        MapRenderer renderer = new MapRenderer();
+        for (int round = 0; round < 2; round++) {
+            Viewport viewport = start;
+            long nanos = 0;
+            for (int f = 0; f < frames; f++) {
+                FrameStats stats = renderer.render(layer, viewport, target);
+                nanos += stats.nanos();
+                viewport = viewport.panned(16, 8);
+            }
+            results[0] = nanos / 1e6 / frames;
+        }
+
+        long vertices = roads.stream().mapToLong(Way::size).sum();
+        double sum = 0;
+        for (int round = 0; round < 2; round++) {
+            long begin = System.nanoTime();
+            for (HighWay road : roads) {
+                Node previous = road.get(0);
+                for (int i = 1; i < road.size(); i++) {
+                    Node current = road.get(i);
+                    sum += Maths.distanceFCC(previous, current);
+                    previous = current;
+                }
+            }
+            results[1] = (double) (System.nanoTime() - begin) / vertices;
+        }
+
+        long all = 0;
+        List<Way> ways = new ArrayList<>();
+        map.drawables.query(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY,
+                Float.POSITIVE_INFINITY, item -> {
+                    if (item instanceof Way way) ways.add(way);
+                });
+        for (Way way : ways) all += way.size();
+        for (int round = 0; round < 2; round++) {
+            long begin = System.nanoTime();
+            for (Way way : ways) sum += way.length();
+            results[2] = (double) (System.nanoTime() - begin) / all;
+        }
+        if (sum == 42) System.out.println(); // keeps the loops from being optimised away
+        return results;
+    }
+}
@@ -0,0 +1,74 @@
+package com.falkknudsen.jaywalk.bench;
+
+import com.falkknudsen.jaywalk.Rectangle;
+import com.falkknudsen.jaywalk.Way;
+import com.falkknudsen.jaywalk.rtree.PackedRTree;
+import com.falkknudsen.jaywalk.rtree.PagedRTree;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/** Writes synthetic ways to a {@link PagedRTree} file, opens it, and runs viewport queries with
+ different page cache sizes, reporting the query rate and the cache hit ratio of each. Checks the
+ number of items found against a {@link PackedRTree} over the same ways.<br>
+ Usage: {@code PagedRTreeBenchmark [ways] [queries]} */
+public class PagedRTreeBenchmark {
+    private static final double EXTENT = 50_000;
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 5_000;
+
+        List<Way> ways = SyntheticData.randomWays(count, EXTENT, 3);
+        Path file = Files.createTempFile("jaywalk-rtree", ".bin");
+        try {
+            long start = System.nanoTime();
+            PagedRTree.write(ways, file);
+            System.out.printf("Wrote %d ways, %d MB, in %.0f ms.%n",
+                    count, Files.size(file) >> 20, (System.nanoTime() - start) / 1e6);
+
+            PackedRTree reference = PackedRTree.build(ways);
+            Rectangle[] windows = windows(queries);
+            long expected = 0;
+            int[] buffer = new int[1 << 16];
+            for (Rectangle w : windows) expected += reference.query(w.minLon(), w.minLat(), w.maxLon(), w.maxLat(), buffer);
+
+            for (int cachePages : new int[] {16, 256, 4096, 65536}) {
+                start = System.nanoTime();
+                try (PagedRTree tree = PagedRTree.open(file, cachePages)) {
+                    double open = (System.nanoTime() - start) / 1e6;
+                    tree.query(0, 0, 0, 0, buffer); // warm up the upper levels
+                    tree.resetCounters();
+                    long found = 0;
+                    start = System.nanoTime();
+                    for (Rectangle w : windows) found += tree.query(w.minLon(), w.minLat(), w.maxLon(), w.maxLat(), buffer);
+                    double seconds = (System.nanoTime() - start) / 1e9;
+                    System.out.printf("%6d pages cached: opened in %.1f ms, %.0f queries/s, %.1f%% cache hits, "
+                                    + "%d page faults, %s items found.%n",
+                            cachePages, open, windows.length / seconds,
+                            100.0 * tree.cacheHits() / Math.max(1, tree.cacheHits() + tree.pageFaults()),
+                            tree.pageFaults(), found == expected ? "all" : found + "/" + expected);
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static Rectangle[] windows(int queries) {
+        SyntheticData.Grid frame = new SyntheticData.Grid(1, EXTENT, List.of(), Map.of());
+        Random random = new Random(11);
+        Rectangle[] windows = new Rectangle[queries];
+        double size = 1000 / EXTENT;
+        for (int q = 0; q < queries; q++) {
+            double row = random.nextDouble() * (1 - size), column = random.nextDouble() * (1 - size);
+            windows[q] = new Rectangle(frame.lon(column) * 0.56f, -frame.lat(row + size),
+                    frame.lon(column + size) * 0.56f, -frame.lat(row));
+        }
+        return windows;
+    }
+}
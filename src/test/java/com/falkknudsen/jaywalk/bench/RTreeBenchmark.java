@@ -0,0 +1,118 @@
+package com.falkknudsen.jaywalk.bench;
+
+import com.falkknudsen.jaywalk.Rectangle;
+import com.falkknudsen.jaywalk.Way;
+import com.falkknudsen.jaywalk.rtree.PackedRTree;
+import com.falkknudsen.jaywalk.rtree.RTree;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/** Compares an {@link RTree} bulk-loaded with Sort-Tile-Recursive against one built by inserting
+ the same ways one at a time, and against a {@link PackedRTree}: build time, node fill, and
+ throughput of queries for randomly placed viewports. Then times nearest-neighbour queries on the
+ packed tree, checking the nearest item against a linear scan for some of them.<br>
+ Usage: {@code RTreeBenchmark [ways] [queries] [viewportMetres]} */
+public class RTreeBenchmark {
+    private static final double EXTENT = 50_000;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 5_000;
+        double viewport = args.length > 2 ? Double.parseDouble(args[2]) : 1_000;
+
+        List<Way> ways = SyntheticData.randomWays(count, EXTENT, 3);
+        Rectangle[] windows = windows(queries, viewport);
+
+        long start = System.nanoTime();
+        RTree bulk = RTree.bulkLoad(ways);
+        report("Bulk-loaded", bulk, start, windows);
+
+        start = System.nanoTime();
+        RTree inserted = new RTree();
+        ways.forEach(inserted::insert);
+        report("Inserted", inserted, start, windows);
+
+        start = System.nanoTime();
+        PackedRTree packed = PackedRTree.build(ways);
+        double build = (System.nanoTime() - start) / 1e6;
+        int[] buffer = new int[4096];
+        long found = 0;
+        for (int round = 0; round < 2; round++) { // the first round warms up
+            start = System.nanoTime();
+            found = 0;
+            for (Rectangle window : windows) {
+                int hits = packed.query(window.minLon(), window.minLat(), window.maxLon(), window.maxLat(), buffer);
+                if (hits > buffer.length) {
+                    buffer = new int[Integer.highestOneBit(hits) * 2];
+                    hits = packed.query(window.minLon(), window.minLat(), window.maxLon(), window.maxLat(), buffer);
+                }
+                found += hits;
+            }
+        }
+        report(packed.toString(), build, System.nanoTime() - start, windows.length, found);
+
+        nearest(packed, ways, windows, 1);
+        nearest(packed, ways, windows, 10);
+    }
+
+    private static void nearest(PackedRTree tree, List<Way> ways, Rectangle[] windows, int k) {
+        int[] out = new int[k];
+        float[] distances = new float[k];
+        long start = 0;
+        for (int round = 0; round < 2; round++) { // the first round warms up
+            start = System.nanoTime();
+            for (Rectangle window : windows) {
+                tree.nearest(window.minLon(), window.minLat(), k, Float.POSITIVE_INFINITY, out, distances);
+            }
+        }
+        double micros = (System.nanoTime() - start) / 1e3 / windows.length;
+
+        int checked = Math.min(windows.length, 200), mismatches = 0;
+        for (int q = 0; q < checked; q++) {
+            float x = windows[q].minLon(), y = windows[q].minLat();
+            tree.nearest(x, y, 1, Float.POSITIVE_INFINITY, out, distances);
+            double best = Double.POSITIVE_INFINITY;
+            for (Way way : ways) best = Math.min(best, way.distanceSquared(x, y));
+            if (Math.abs(Math.sqrt(best) - distances[0]) > 1e-6) mismatches++;
+        }
+        System.out.printf("%d nearest: %.1f µs/query, %d/%d mismatches against a linear scan.%n",
+                k, micros, mismatches, checked);
+    }
+
+    private static Rectangle[] windows(int queries, double viewport) {
+        SyntheticData.Grid frame = new SyntheticData.Grid(1, EXTENT, List.of(), Map.of());
+        Random random = new Random(11);
+        Rectangle[] windows = new Rectangle[queries];
+        double size = viewport / EXTENT;
+        for (int q = 0; q < queries; q++) {
+            double row = random.nextDouble() * (1 - size), column = random.nextDouble() * (1 - size);
+            windows[q] = new Rectangle(frame.lon(column) * 0.56f, -frame.lat(row + size),
+                    frame.lon(column + size) * 0.56f, -frame.lat(row));
+        }
+        return windows;
+    }
+
+    private static void report(String name, RTree tree, long start, Rectangle[] windows) {
+        double build = (System.nanoTime() - start) / 1e6;
+        long found = 0;
+        long[] hits = {0};
+        start = System.nanoTime();
+        for (int round = 0; round < 2; round++) { // the first round warms up
+            if (round == 1) start = System.nanoTime();
+            hits[0] = 0;
+            for (Rectangle window : windows) {
+                tree.query(window.minLon(), window.minLat(), window.maxLon(), window.maxLat(), item -> hits[0]++);
+            }
+            found = hits[0];
+        }
+        report(name + ": " + tree + ", " + Math.round(tree.fill() * 100) + "% fill",
+                build, System.nanoTime() - start, windows.length, found);
+    }
+
+    private static void report(String name, double build, long queryNanos, int queries, long found) {
+        System.out.printf("%s, built in %.0f ms; %.0f queries/s, %.1f items/query.%n",
+                name, build, queries / (queryNanos / 1e9), (double) found / queries);
+    }
+}
@@ -0,0 +1,86 @@
+package com.falkknudsen.jaywalk.bench;
+
+import com.falkknudsen.jaywalk.Point;
+import com.falkknudsen.jaywalk.Way;
+import com.falkknudsen.jaywalk.contracts.IDrawable;
+import com.falkknudsen.jaywalk.contracts.IDrawableContainer;
+import com.falkknudsen.jaywalk.render.FrameStats;
+import com.falkknudsen.jaywalk.render.MapRenderer;
+import com.falkknudsen.jaywalk.render.Viewport;
+import com.falkknudsen.osmunda.LayeredMapData;
+
+import java.util.List;
+import java.util.Map;
+
+/** Pans a 1280 by 800 viewport across a dense synthetic city and a zoomed-out view of the same map, and
+ compares {@link MapRenderer} with drawing every item as its own path, as {@link IDrawable#draw} does.
+ Both draw on a target that only counts what it is given, so the times are those of the CPU side.<br>
+ Usage: {@code RenderBenchmark [features] [extentKm] [frames]} */
+public class RenderBenchmark {
+    private static final int WIDTH = 1280, HEIGHT = 800;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 400_000;
+        double extent = (args.length > 1 ? Double.parseDouble(args[1]) : 20) * 1000;
+        int frames = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        List<Way> ways = SyntheticData.features(count, extent, 3);
+        LayeredMapData map = new LayeredMapData("benchmark");
+        ways.forEach(map::insert);
+        map.drawables.build();
+        map.buildLevelsOfDetail();
+        SyntheticData.Grid frame = new SyntheticData.Grid(1, extent, List.of(), Map.of());
+        float centreX = Point.projectLon(frame.lon(0.5)), centreY = Point.projectLat(frame.lat(0.5));
+
+        pan("City, 2 m/px", map, Viewport.centred(centreX, centreY, 2, WIDTH, HEIGHT), frames);
+        pan("Overview, 40 m/px", map, Viewport.centred(centreX, centreY, 40, WIDTH, HEIGHT), frames / 10);
+    }
+
+    private static void pan(String name, LayeredMapData map, Viewport start, int frames) {
+        IDrawableContainer layer = map.layerFor(start.metresPerPixel());
+        CountingTarget target = new CountingTarget();
+        MapRenderer renderer = new MapRenderer();
+        long nanos = 0, items = 0, vertices = 0, drawn = 0;
+        for (int round = 0; round < 2; round++) { // the first round warms up
+            Viewport viewport = start;
+            nanos = items = vertices = drawn = 0;
+            target.reset();
+            for (int frame = 0; frame < frames; frame++) {
+                FrameStats stats = renderer.render(layer, viewport, target);
+                nanos += stats.nanos();
+                items += stats.items();
+                vertices += stats.vertices();
+                drawn += stats.drawnVertices();
+                viewport = viewport.panned(16, 8);
+            }
+        }
+        System.out.printf("%s, %s, batched: %.2f ms/frame, %d items, %d of %d vertices and %d paths per frame.%n",
+                name, layer == map.drawables ? "full layer" : "coarse layer", nanos / 1e6 / frames,
+                items / frames, drawn / frames, vertices / frames, target.paths / frames);
+
+        // One path per item for everything, which is what calling draw on every item comes to.
+        int naiveFrames = Math.max(1, frames / 20);
+        target.reset();
+        long begin = System.nanoTime();
+        for (int frame = 0; frame < naiveFrames; frame++) {
+            map.drawables.query(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY,
+                    Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, item -> drawSingly(item, start, target));
+        }
+        System.out.printf("%s, per item: %.2f ms/frame, %d vertices and %d paths per frame.%n", name,
+                (System.nanoTime() - begin) / 1e6 / naiveFrames, target.vertices / naiveFrames, target.paths / naiveFrames);
+    }
+
+    private static void drawSingly(IDrawable item, Viewport viewport, CountingTarget target) {
+        if (!(item instanceof Way way)) return;
+        float[] coordinates = new float[way.size() * 2];
+        way.copyCoordinates(coordinates, 0);
+        target.beginPath();
+        target.moveTo((coordinates[0] - viewport.minX()) * viewport.scale(),
+                (coordinates[1] - viewport.minY()) * viewport.scale());
+        for (int i = 2; i < coordinates.length; i += 2) {
+            target.lineTo((coordinates[i] - viewport.minX()) * viewport.scale(),
+                    (coordinates[i + 1] - viewport.minY()) * viewport.scale());
+        }
+        target.stroke(item.type().colour, 1);
+    }
+}
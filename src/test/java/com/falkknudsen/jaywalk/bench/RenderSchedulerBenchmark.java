@@ -0,0 +1,94 @@
+package com.falkknudsen.jaywalk.bench;
+
+import com.falkknudsen.jaywalk.Point;
+import com.falkknudsen.jaywalk.Way;
+import com.falkknudsen.jaywalk.render.MapRenderer;
+import com.falkknudsen.jaywalk.render.RenderScheduler;
+import com.falkknudsen.jaywalk.render.Viewport;
+import com.falkknudsen.osmunda.LayeredMapData;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/** Simulates a user dragging the map: an input event every few milliseconds pans the viewport, and every
+ hundredth zooms in or out. Measures
+ how long the thread handling the events is busy per event, at the median and the 99th percentile, first
+ when it renders each frame itself, and then when it only requests frames from a {@link RenderScheduler}
+ and plays back the latest finished one.<br>
+ Usage: {@code RenderSchedulerBenchmark [features] [events] [eventIntervalMs]} */
+public class RenderSchedulerBenchmark {
+    private static final int WIDTH = 1280, HEIGHT = 800;
+    private static final double EXTENT = 20_000;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 400_000;
+        int events = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        long interval = (args.length > 2 ? Long.parseLong(args[2]) : 4) * 1_000_000;
+
+        List<Way> ways = SyntheticData.features(count, EXTENT, 3);
+        LayeredMapData map = new LayeredMapData("benchmark");
+        ways.forEach(map::insert);
+        map.drawables.build();
+        map.buildLevelsOfDetail();
+        SyntheticData.Grid frame = new SyntheticData.Grid(1, EXTENT, List.of(), Map.of());
+        Viewport start = Viewport.centred(Point.projectLon(frame.lon(0.5)), Point.projectLat(frame.lat(0.5)),
+                2, WIDTH, HEIGHT);
+
+        // Rendering on the event thread.
+        MapRenderer renderer = new MapRenderer();
+        CountingTarget target = new CountingTarget();
+        long[] busy = new long[events];
+        Viewport viewport = start;
+        for (int event = 0; event < events; event++) {
+            long begin = System.nanoTime();
+            renderer.render(map.layerFor(viewport.metresPerPixel()), viewport, target);
+            busy[event] = System.nanoTime() - begin;
+            viewport = next(viewport, event);
+            pause(interval - busy[event]);
+        }
+        report("Rendering on the event thread", busy);
+
+        // Requesting frames from the render thread.
+        try (RenderScheduler scheduler = new RenderScheduler(map::layerFor, () -> {})) {
+            viewport = start;
+            long shown = 0, lastShown = -1;
+            for (int event = 0; event < events; event++) {
+                long begin = System.nanoTime();
+                scheduler.request(viewport);
+                RenderScheduler.Frame latest = scheduler.latest();
+                if (latest != null && latest.request() != lastShown) {
+                    latest.commands().replay(target, 0, 0);
+                    lastShown = latest.request();
+                    shown++;
+                }
+                busy[event] = System.nanoTime() - begin;
+                viewport = next(viewport, event);
+                pause(interval - busy[event]);
+            }
+            report("Requesting from the render thread", busy);
+            System.out.printf("%d frames built, %d cancelled as stale, %d shown.%n",
+                    scheduler.builtCount(), scheduler.cancelledCount(), shown);
+        }
+    }
+
+    private static Viewport next(Viewport viewport, int event) {
+        if (event % 100 != 99) return viewport.panned(4, 2);
+        float x = (float) (viewport.minX() + WIDTH / 2.0 / viewport.scale());
+        float y = (float) (viewport.minY() + HEIGHT / 2.0 / viewport.scale());
+        return Viewport.centred(x, y, event % 200 == 99 ? 3 : 2, WIDTH, HEIGHT);
+    }
+
+    private static void pause(long nanos) {
+        if (nanos > 0) LockSupport.parkNanos(nanos);
+    }
+
+    private static void report(String name, long[] busy) {
+        long[] sorted = busy.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%s: event thread busy %.2f ms at the median, %.2f ms at the 99th percentile, %.2f ms at most.%n",
+                name, sorted[sorted.length / 2] / 1e6, sorted[sorted.length * 99 / 100] / 1e6,
+                sorted[sorted.length - 1] / 1e6);
+    }
+}
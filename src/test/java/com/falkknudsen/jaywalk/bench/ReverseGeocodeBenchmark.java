@@ -0,0 +1,99 @@
+package com.falkknudsen.jaywalk.bench;
+
+import com.falkknudsen.jaywalk.Point;
+import com.falkknudsen.jaywalk.graph.EdgeIndex;
+import com.falkknudsen.jaywalk.kdtree.KDTree;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/** Measures the {@link KDTree} over address points: building it, the nearest address to random GPS fixes
+ one at a time and in a parallel batch, the nearest ten, and the addresses within 100 metres. A sample of
+ the nearest is checked against going through every address.<br>
+ Usage: {@code ReverseGeocodeBenchmark [addresses] [fixes]} */
+public class ReverseGeocodeBenchmark {
+    private static final int CHECKED = 500;
+    private static final int K = 10;
+    private static final float RADIUS = 100;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int fixes = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        double extent = 30_000;
+
+        float[] lats = new float[count], lons = new float[count];
+        int i = 0;
+        for (SyntheticData.Address address : SyntheticData.addresses(count, extent, 3)) {
+            lats[i] = address.lat();
+            lons[i++] = address.lon();
+        }
+        long start = System.nanoTime();
+        KDTree tree = KDTree.build(lats, lons);
+        System.out.printf("Built over %d addresses in %.0f ms, %.1f MB.%n", count, (System.nanoTime() - start) / 1e6,
+                tree.memoryBytes() / 1e6);
+
+        Random random = new Random(31);
+        SyntheticData.Grid frame = new SyntheticData.Grid(1, extent, List.of(), Map.of());
+        float[] fixLats = new float[fixes], fixLons = new float[fixes];
+        for (int f = 0; f < fixes; f++) {
+            fixLats[f] = frame.lat(random.nextDouble());
+            fixLons[f] = frame.lon(random.nextDouble());
+        }
+
+        KDTree.Search search = tree.search();
+        int wrong = 0;
+        for (int f = 0; f < CHECKED; f++) {
+            search.nearest(fixLats[f], fixLons[f]);
+            if (Math.abs(search.distance() - bruteForce(lats, lons, fixLats[f], fixLons[f])) > 0.01f) wrong++;
+        }
+        System.out.printf("%d fixes checked against every address: %d differ.%n", CHECKED, wrong);
+
+        for (int round = 0; round < 2; round++) { // the first round warms up
+            start = System.nanoTime();
+            for (int f = 0; f < fixes; f++) search.nearest(fixLats[f], fixLons[f]);
+        }
+        report("Nearest, one at a time", System.nanoTime() - start, fixes);
+
+        int[] nearest = new int[fixes];
+        float[] metres = new float[fixes];
+        for (int round = 0; round < 2; round++) {
+            start = System.nanoTime();
+            tree.nearest(fixLats, fixLons, nearest, metres);
+        }
+        report("Nearest, batch of " + fixes + " on " + Runtime.getRuntime().availableProcessors() + " cores",
+                System.nanoTime() - start, fixes);
+
+        int[] ids = new int[K];
+        float[] distances = new float[K];
+        int queries = fixes / 10;
+        for (int round = 0; round < 2; round++) {
+            start = System.nanoTime();
+            for (int f = 0; f < queries; f++) search.nearest(fixLats[f], fixLons[f], Float.POSITIVE_INFINITY, ids, distances);
+        }
+        report("Nearest " + K, System.nanoTime() - start, queries);
+
+        long[] found = new long[1];
+        for (int round = 0; round < 2; round++) {
+            found[0] = 0;
+            start = System.nanoTime();
+            for (int f = 0; f < queries; f++) found[0] += search.within(fixLats[f], fixLons[f], RADIUS, (id, d) -> {});
+        }
+        report("Within " + (int) RADIUS + " m (" + found[0] / queries + " each)", System.nanoTime() - start, queries);
+    }
+
+    private static void report(String name, long nanos, int queries) {
+        System.out.printf("%-40s %7.0f ns per query, %5.2f M queries/s.%n", name + ":", (double) nanos / queries,
+                queries / (nanos / 1e9) / 1e6);
+    }
+
+    private static float bruteForce(float[] lats, float[] lons, float lat, float lon) {
+        float x = Point.projectLon(lon), y = Point.projectLat(lat);
+        float best = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < lats.length; i++) {
+            float dx = Point.projectLon(lons[i]) - x, dy = Point.projectLat(lats[i]) - y;
+            best = Math.min(best, dx * dx + dy * dy);
+        }
+        return (float) (Math.sqrt(best) * EdgeIndex.METRES_PER_UNIT);
+    }
+}
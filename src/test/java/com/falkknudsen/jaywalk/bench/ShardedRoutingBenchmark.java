@@ -0,0 +1,65 @@
+package com.falkknudsen.jaywalk.bench;
+
+import com.falkknudsen.jaywalk.graph.Partition;
+import com.falkknudsen.jaywalk.graph.Partitioner;
+import com.falkknudsen.jaywalk.graph.RoadGraph;
+import com.falkknudsen.jaywalk.graph.Router;
+import com.falkknudsen.jaywalk.graph.ShardedRouter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/** Partitions a synthetic street grid, starts one shard process per cell, and checks the sharded
+ distances against a plain Dijkstra search over the whole graph, timing both.<br>
+ Usage: {@code ShardedRoutingBenchmark [cells] [gridSize] [queries]} */
+public class ShardedRoutingBenchmark {
+    public static void main(String[] args) throws IOException {
+        int cells = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int gridSize = args.length > 1 ? Integer.parseInt(args[1]) : 150;
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+
+        SyntheticData.Grid grid = SyntheticData.grid(gridSize, 100);
+        RoadGraph graph = RoadGraph.build(grid.roads(), grid.graphIDs());
+        long start = System.nanoTime();
+        Partition partition = Partitioner.partition(graph, (graph.nodeCount() + cells - 1) / cells);
+        System.out.printf("%s, %s in %.0f ms.%n", graph, partition, (System.nanoTime() - start) / 1e6);
+
+        Path directory = Files.createTempDirectory("jaywalk-shards");
+        partition.writeShards(directory);
+
+        Router router = new Router(graph);
+        Random random = new Random(7);
+        int[] sources = new int[queries], targets = new int[queries];
+        for (int q = 0; q < queries; q++) {
+            sources[q] = random.nextInt(graph.nodeCount());
+            targets[q] = random.nextInt(graph.nodeCount());
+        }
+
+        start = System.nanoTime();
+        float[] expected = new float[queries];
+        for (int q = 0; q < queries; q++) expected[q] = router.distance(sources[q], targets[q]);
+        double plain = (System.nanoTime() - start) / 1e6;
+
+        start = System.nanoTime();
+        try (ShardedRouter sharded = ShardedRouter.launch(directory)) {
+            System.out.printf("Started %d shard processes in %.0f ms.%n",
+                    sharded.cellCount(), (System.nanoTime() - start) / 1e6);
+            int mismatches = 0;
+            start = System.nanoTime();
+            for (int q = 0; q < queries; q++) {
+                float d = sharded.distance(sources[q], targets[q]);
+                if (Math.abs(d - expected[q]) > 0.01f * Math.max(1, expected[q])) mismatches++;
+            }
+            double shardedTime = (System.nanoTime() - start) / 1e6;
+            System.out.printf("%d queries: %.2f ms/query in one process, %.2f ms/query sharded, %d mismatches.%n",
+                    queries, plain / queries, shardedTime / queries, mismatches);
+        } finally {
+            try (var files = Files.list(directory)) {
+                for (Path file : files.toList()) Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+}
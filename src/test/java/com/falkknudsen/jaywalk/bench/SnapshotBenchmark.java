@@ -0,0 +1,103 @@
+package com.falkknudsen.jaywalk.bench;
+
+import com.falkknudsen.jaywalk.Way;
+import com.falkknudsen.jaywalk.rtree.RTreeManager;
+import com.falkknudsen.jaywalk.rtree.Snapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Runs viewport queries on virtual threads against an {@link RTreeManager}, first alone and then
+ while a writer keeps replacing batches of ways, and reports the query rate of both along with
+ how long each batch took to publish.<br>
+ Usage: {@code SnapshotBenchmark [ways] [readers] [batchSize] [seconds]} */
+public class SnapshotBenchmark {
+    private static final double EXTENT = 50_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int readers = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        double seconds = args.length > 3 ? Double.parseDouble(args[3]) : 3;
+
+        List<Way> ways = SyntheticData.randomWays(count, EXTENT, 3);
+        List<Way> extra = SyntheticData.randomWays(count / 10, EXTENT, 4);
+        RTreeManager index = new RTreeManager();
+        ways.forEach(index::add);
+        long start = System.nanoTime();
+        index.build();
+        System.out.printf("Loaded %s in %.0f ms.%n", index.snapshot(), (System.nanoTime() - start) / 1e6);
+
+        System.out.printf("Without writer: %.0f queries/s.%n", readQueries(index, readers, seconds, null));
+
+        AtomicBoolean stop = new AtomicBoolean();
+        long[] batches = {0, 0};
+        List<Way> inserted = new ArrayList<>();
+        Set<Way> present = Collections.newSetFromMap(new IdentityHashMap<>());
+        Thread writer = Thread.ofPlatform().start(() -> {
+            Random random = new Random(5);
+            while (!stop.get()) {
+                long before = System.nanoTime();
+                for (int i = 0; i < batchSize; i++) {
+                    if (random.nextBoolean() && !inserted.isEmpty()) {
+                        Way way = inserted.remove(random.nextInt(inserted.size()));
+                        present.remove(way);
+                        index.remove(way);
+                    } else {
+                        Way way = extra.get(random.nextInt(extra.size()));
+                        if (present.add(way)) {
+                            inserted.add(way);
+                            index.add(way);
+                        }
+                    }
+                }
+                index.build();
+                batches[0]++;
+                batches[1] += System.nanoTime() - before;
+            }
+        });
+        double rate = readQueries(index, readers, seconds, stop);
+        writer.join();
+        System.out.printf("With writer: %.0f queries/s; %d batches of %d changes, %.2f ms each on average.%n",
+                rate, batches[0], batchSize, batches[1] / 1e6 / Math.max(1, batches[0]));
+        System.out.printf("Now %s; expected %d items.%n", index.snapshot(), count + present.size());
+    }
+
+    /** Runs queries on {@code readers} virtual threads for the given time, then sets {@code stop}. */
+    private static double readQueries(RTreeManager index, int readers, double seconds, AtomicBoolean stop)
+            throws InterruptedException {
+        LongAdder queries = new LongAdder();
+        AtomicBoolean done = new AtomicBoolean();
+        SyntheticData.Grid frame = new SyntheticData.Grid(1, EXTENT, List.of(), Map.of());
+        List<Thread> threads = new ArrayList<>();
+        for (int r = 0; r < readers; r++) {
+            long seed = r;
+            threads.add(Thread.ofVirtual().start(() -> {
+                Random random = new Random(seed);
+                int[] buffer = new int[8192];
+                double size = 1000 / EXTENT;
+                while (!done.get()) {
+                    double row = random.nextDouble() * (1 - size), column = random.nextDouble() * (1 - size);
+                    Snapshot snapshot = index.snapshot();
+                    snapshot.query(frame.lon(column) * 0.56f, -frame.lat(row + size),
+                            frame.lon(column + size) * 0.56f, -frame.lat(row), buffer);
+                    queries.increment();
+                    if ((queries.sum() & 63) == 0) Thread.yield();
+                }
+            }));
+        }
+        long start = System.nanoTime();
+        Thread.sleep((long) (seconds * 1000));
+        done.set(true);
+        if (stop != null) stop.set(true);
+        for (Thread thread : threads) thread.join();
+        return queries.sum() / ((System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,107 @@
+package com.falkknudsen.jaywalk.bench;
+
+import com.falkknudsen.jaywalk.structs.StringDictionary;
+import com.falkknudsen.jaywalk.tstree.TernarySearchTree;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/** Measures the heap taken up by the addresses as a {@code String} key each, as the reverse geocoder used to
+ keep them, against the ids of their parts in a {@link StringDictionary} and the dictionary itself, and the
+ distinct names as a {@code HashSet<String>} against the dictionary. The heap is measured before and after,
+ with a garbage collection, so the numbers are rough, but they include every object header and array. Every
+ address is checked to come back out of the dictionary as it went in, and getting names by id and ids by
+ name is timed against a {@code HashMap}.<br>
+ Usage: {@code StringDictionaryBenchmark [addresses] [lookups]} */
+public class StringDictionaryBenchmark {
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+
+        List<SyntheticData.Address> addresses = SyntheticData.addresses(count, 30_000, 3);
+        StringBuilder sb = new StringBuilder();
+
+        long before = usedHeap();
+        List<String> keys = new ArrayList<>(count);
+        for (SyntheticData.Address address : addresses) {
+            TernarySearchTree.key(sb, address.tags());
+            keys.add(sb.toString());
+        }
+        long keyBytes = usedHeap() - before;
+
+        TernarySearchTree tree = new TernarySearchTree();
+        for (SyntheticData.Address address : addresses) tree.addAddress(sb, address.tags(), address.lat(), address.lon());
+        StringDictionary names = tree.names();
+        int[] components = new int[tree.size() * TernarySearchTree.COMPONENTS];
+        int[] order = new int[tree.size()];
+        int[] next = {0};
+        tree.forEach((key, address) -> {
+            order[next[0]] = address;
+            for (int part = 0; part < TernarySearchTree.COMPONENTS; part++) {
+                components[next[0] * TernarySearchTree.COMPONENTS + part] = tree.component(address, part);
+            }
+            next[0]++;
+        });
+        long componentBytes = (long) components.length * Integer.BYTES + names.memoryBytes();
+        System.out.printf("%d addresses, %d distinct names.%n", tree.size(), names.size());
+        System.out.printf("String keys:                    %6.1f MB, %5.1f bytes per address.%n",
+                keyBytes / 1e6, (double) keyBytes / count);
+        System.out.printf("Part ids and the dictionary:    %6.1f MB, %5.1f bytes per address (dictionary %.2f MB).%n",
+                componentBytes / 1e6, (double) componentBytes / tree.size(), names.memoryBytes() / 1e6);
+
+        int wrong = 0;
+        for (int i = 0; i < tree.size(); i++) {
+            if (!TernarySearchTree.address(names, components, i).equals(tree.address(order[i]))) wrong++;
+        }
+        System.out.printf("Every address put back together from its parts: %d differ.%n", wrong);
+
+        List<String> distinct = new ArrayList<>(names.size());
+        for (int id = 0; id < names.size(); id++) distinct.add(names.get(id));
+        before = usedHeap();
+        Set<String> set = new HashSet<>();
+        // Copies, so the set doesn't share the strings already counted in the list.
+        for (String name : distinct) set.add(new String(name.toCharArray()));
+        long setBytes = usedHeap() - before;
+        System.out.printf("HashSet<String> of the names:   %6.2f MB; the dictionary takes %.0f%% of that.%n",
+                setBytes / 1e6, 100.0 * names.memoryBytes() / setBytes);
+
+        Map<String, Integer> ids = new HashMap<>();
+        for (int id = 0; id < distinct.size(); id++) ids.put(distinct.get(id), id);
+        Random random = new Random(13);
+        int[] queries = new int[lookups];
+        for (int i = 0; i < lookups; i++) queries[i] = random.nextInt(names.size());
+        long sum = 0, start = 0;
+        for (int round = 0; round < 2; round++) { // the first round warms up
+            start = System.nanoTime();
+            for (int id : queries) sum += names.get(id).length();
+        }
+        report("Name by id", System.nanoTime() - start, lookups);
+        for (int round = 0; round < 2; round++) {
+            start = System.nanoTime();
+            for (int id : queries) sum += names.id(distinct.get(id));
+        }
+        report("Id by name", System.nanoTime() - start, lookups);
+        for (int round = 0; round < 2; round++) {
+            start = System.nanoTime();
+            for (int id : queries) sum += ids.get(distinct.get(id));
+        }
+        report("Id by name, HashMap", System.nanoTime() - start, lookups);
+        if (sum == 42) System.out.println(); // keeps the lookups from being optimised away
+        if (keys.size() + set.size() == 0) System.out.println();
+    }
+
+    private static void report(String name, long nanos, int lookups) {
+        System.out.printf("%-32s %6.0f ns per lookup.%n", name + ":", (double) nanos / lookups);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
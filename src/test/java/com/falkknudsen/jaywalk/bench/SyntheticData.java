@@ -0,0 +1,228 @@
+package com.falkknudsen.jaywalk.bench;
+
+import com.falkknudsen.jaywalk.HighWay;
+import com.falkknudsen.jaywalk.Node;
+import com.falkknudsen.jaywalk.Way;
+import com.falkknudsen.jaywalk.graph.EdgeIndex;
+import com.falkknudsen.jaywalk.graph.GpsTrace;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/** Generates reproducible synthetic map data for the benchmarks, so they can be run without
+ an OSM extract. Everything is placed around Copenhagen, where the map projection is
+ close to equidistant. */
+public class SyntheticData {
+    public static final float ORIGIN_LAT = 55.6f;
+    public static final float ORIGIN_LON = 12.5f;
+
+    /** A square street grid, as the parser would have produced it. */
+    public record Grid(int size, double spacing, List<HighWay> roads, Map<Node, Integer> graphIDs) {
+        public float lat(double row) {
+            return (float) (ORIGIN_LAT + row * spacing / EdgeIndex.METRES_PER_UNIT);
+        }
+
+        public float lon(double column) {
+            return (float) (ORIGIN_LON + column * spacing / EdgeIndex.METRES_PER_UNIT / 0.56);
+        }
+    }
+
+    /** Builds a {@code size} by {@code size} grid of two-way streets, {@code spacing} metres apart.
+     Every block is one road with a vertex in the middle, and the intersections are the graph nodes. */
+    public static Grid grid(int size, double spacing) {
+        List<HighWay> roads = new ArrayList<>(2 * size * size);
+        Map<Node, Integer> graphIDs = HashMap.newHashMap(size * size);
+        Map<String, String> tags = Map.of("highway", "residential");
+        Grid grid = new Grid(size, spacing, roads, graphIDs);
+        for (int r = 0; r < size; r++) {
+            for (int c = 0; c < size; c++) {
+                if (c + 1 < size) {
+                    roads.add((HighWay) Way.create(List.of(
+                            new Node(grid.lat(r), grid.lon(c)),
+                            new Node(grid.lat(r), grid.lon(c + 0.5)),
+                            new Node(grid.lat(r), grid.lon(c + 1))), tags));
+                }
+                if (r + 1 < size) {
+                    roads.add((HighWay) Way.create(List.of(
+                            new Node(grid.lat(r), grid.lon(c)),
+                            new Node(grid.lat(r + 0.5), grid.lon(c)),
+                            new Node(grid.lat(r + 1), grid.lon(c))), tags));
+                }
+            }
+        }
+        for (HighWay road : roads) {
+            graphIDs.putIfAbsent(road.getFirst(), graphIDs.size());
+            graphIDs.putIfAbsent(road.getLast(), graphIDs.size());
+        }
+        return grid;
+    }
+
+    /** Random walks along the streets of {@code grid}, sampled every {@code step} metres
+     with Gaussian noise of {@code noise} metres, like a GPS receiver in a car would produce. */
+    public static List<GpsTrace> traces(Grid grid, int count, int points, double step, double noise, long seed) {
+        Random random = new Random(seed);
+        List<GpsTrace> traces = new ArrayList<>(count);
+        double noiseCells = noise / grid.spacing();
+        double stepCells = step / grid.spacing();
+        for (int t = 0; t < count; t++) {
+            float[] lat = new float[points];
+            float[] lon = new float[points];
+            int row = random.nextInt(grid.size()), column = random.nextInt(grid.size() - 1);
+            int dRow = 0, dColumn = 1; // heading east, which the starting column leaves room for.
+            double along = 0;
+            for (int p = 0; p < points; p++) {
+                lat[p] = grid.lat(row + dRow * along + random.nextGaussian() * noiseCells);
+                lon[p] = grid.lon(column + dColumn * along + random.nextGaussian() * noiseCells);
+                along += stepCells;
+                while (along >= 1) {
+                    along -= 1;
+                    row += dRow;
+                    column += dColumn;
+                    // Pick a new direction at the intersection, never leaving the grid or turning back.
+                    int[][] options = {{0, 1}, {1, 0}, {0, -1}, {-1, 0}};
+                    int[] choice;
+                    do {
+                        choice = options[random.nextInt(4)];
+                    } while (row + choice[0] < 0 || row + choice[0] >= grid.size()
+                            || column + choice[1] < 0 || column + choice[1] >= grid.size()
+                            || (choice[0] == -dRow && choice[1] == -dColumn && grid.size() > 1));
+                    dRow = choice[0];
+                    dColumn = choice[1];
+                }
+            }
+            traces.add(new GpsTrace(lat, lon));
+        }
+        return traces;
+    }
+
+    /** Scatters {@code count} ways over a square {@code extent} metres across: mostly small
+     building outlines, and every tenth one a longer line like a stream or a fence. */
+    public static List<Way> randomWays(int count, double extent, long seed) {
+        Random random = new Random(seed);
+        Map<String, String> building = Map.of("building", "yes");
+        Grid frame = new Grid(1, extent, List.of(), Map.of());
+        List<Way> ways = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double row = random.nextDouble(), column = random.nextDouble();
+            List<Node> nodes = new ArrayList<>();
+            if (i % 10 == 0) {
+                int points = 2 + random.nextInt(20);
+                for (int p = 0; p < points; p++) {
+                    nodes.add(new Node(frame.lat(row), frame.lon(column)));
+                    row += random.nextGaussian() * 100 / extent;
+                    column += random.nextGaussian() * 100 / extent;
+                }
+            } else {
+                double width = (5 + random.nextDouble() * 25) / extent;
+                double height = (5 + random.nextDouble() * 25) / extent;
+                nodes.add(new Node(frame.lat(row), frame.lon(column)));
+                nodes.add(new Node(frame.lat(row), frame.lon(column + width)));
+                nodes.add(new Node(frame.lat(row + height), frame.lon(column + width)));
+                nodes.add(new Node(frame.lat(row + height), frame.lon(column)));
+                nodes.add(nodes.getFirst());
+            }
+            ways.add(Way.create(nodes, building));
+        }
+        return ways;
+    }
+
+    /** Scatters {@code count} features of mixed importance over a square {@code extent} metres across,
+     with a point every 20 metres or so, like OSM data: mostly buildings, some forests, roads and rivers,
+     and a few long motorways and coastlines. */
+    public static List<Way> features(int count, double extent, long seed) {
+        Random random = new Random(seed);
+        Grid frame = new Grid(1, extent, List.of(), Map.of());
+        List<Way> ways = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double row = random.nextDouble(), column = random.nextDouble();
+            List<Node> nodes = new ArrayList<>();
+            Map<String, String> tags;
+            int points;
+            if (i % 10 == 0 && i % 20 != 0) {
+                // A roughly circular forest of 300 metres radius.
+                double radius = 300 / extent;
+                for (int p = 0; p < 60; p++) {
+                    double angle = 2 * Math.PI * p / 60, r = radius * (0.8 + 0.4 * random.nextDouble());
+                    nodes.add(new Node(frame.lat(row + r * Math.sin(angle)), frame.lon(column + r * Math.cos(angle))));
+                }
+                nodes.add(nodes.getFirst());
+                ways.add(Way.create(nodes, Map.of("landuse", "forest")));
+                continue;
+            } else if (i % 500 == 0) {
+                tags = Map.of("natural", "coastline");
+                points = 5000;
+            } else if (i % 100 == 0) {
+                tags = Map.of("highway", "motorway");
+                points = 1000;
+            } else if (i % 50 == 0) {
+                tags = Map.of("waterway", "river");
+                points = 500;
+            } else if (i % 20 == 0) {
+                tags = Map.of("highway", "primary");
+                points = 100;
+            } else {
+                double size = (5 + random.nextDouble() * 25) / extent;
+                nodes.add(new Node(frame.lat(row), frame.lon(column)));
+                nodes.add(new Node(frame.lat(row), frame.lon(column + size)));
+                nodes.add(new Node(frame.lat(row + size), frame.lon(column + size)));
+                nodes.add(new Node(frame.lat(row + size), frame.lon(column)));
+                nodes.add(nodes.getFirst());
+                ways.add(Way.create(nodes, Map.of("building", "yes")));
+                continue;
+            }
+            // A winding line, turning a little at every point.
+            double heading = random.nextDouble() * 2 * Math.PI, step = 20 / extent;
+            for (int p = 0; p < points; p++) {
+                nodes.add(new Node(frame.lat(row), frame.lon(column)));
+                heading += random.nextGaussian() * 0.15;
+                row += Math.sin(heading) * step;
+                column += Math.cos(heading) * step;
+            }
+            ways.add(Way.create(nodes, tags));
+        }
+        return ways;
+    }
+
+    /** An address node, as the parser sees it. */
+    public record Address(Map<String, String> tags, float lat, float lon) {}
+
+    private static final String[] STREET_PREFIXES = {"", "", "", "Nørre ", "Vester ", "Øster ", "Sønder ", "Gammel ",
+            "Ny ", "Store ", "Lille ", "Kongens ", "Dronning "};
+    private static final String[] STREET_ROOTS = {"Bakke", "Skov", "Strand", "Mølle", "Kirke", "Havne", "Park", "Eng",
+            "Bøge", "Ege", "Rose", "Lind", "Birke", "Kastanje", "Tjørne", "Hyld", "Slot", "Torve", "Brygger", "Smede",
+            "Skole", "Præste", "Fiskers", "Bager", "Hans Christian Andersens ", "Rued Langgaards ", "Amager",
+            "Valby", "Frederiks", "Christians", "Sorte", "Hvide", "Grøn", "Sol", "Mose", "Sø", "Å", "Lunde"};
+    private static final String[] STREET_SUFFIXES = {"gade", "vej", "vej", "vej", "allé", "stræde", "plads",
+            "boulevard", "have", "toft", "bakken", "parken"};
+    private static final String[] CITIES = {"København K", "København S", "København V", "København Ø", "Frederiksberg",
+            "Valby", "Hvidovre", "Brønshøj", "Vanløse", "Hellerup", "Kastrup", "Dragør", "Glostrup", "Herlev",
+            "Ballerup", "Rødovre", "Søborg", "Lyngby", "Gentofte", "Albertslund"};
+
+    /** Addresses on {@code count / 40} or so randomly named streets, each in a random postcode and city,
+     scattered over a square of {@code extent} metres. House numbers run up from 1, some with a letter. */
+    public static List<Address> addresses(int count, double extent, long seed) {
+        Random random = new Random(seed);
+        Grid frame = new Grid(1, extent, List.of(), Map.of());
+        List<Address> addresses = new ArrayList<>(count);
+        while (addresses.size() < count) {
+            String street = STREET_PREFIXES[random.nextInt(STREET_PREFIXES.length)]
+                    + STREET_ROOTS[random.nextInt(STREET_ROOTS.length)]
+                    + STREET_SUFFIXES[random.nextInt(STREET_SUFFIXES.length)];
+            int city = random.nextInt(CITIES.length);
+            String postcode = Integer.toString(1000 + city * 50 + random.nextInt(50));
+            double row = random.nextDouble(), column = random.nextDouble(), heading = random.nextDouble() * 2 * Math.PI;
+            int houses = Math.min(count - addresses.size(), 1 + random.nextInt(80));
+            for (int house = 1; house <= houses; house++) {
+                String number = house + (random.nextInt(10) == 0 ? String.valueOf((char) ('A' + random.nextInt(3))) : "");
+                double along = house * 15 / extent;
+                addresses.add(new Address(Map.of("addr:street", street, "addr:housenumber", number,
+                        "addr:postcode", postcode, "addr:city", CITIES[city]),
+                        frame.lat(row + along * Math.sin(heading)), frame.lon(column + along * Math.cos(heading))));
+            }
+        }
+        return addresses;
+    }
+}
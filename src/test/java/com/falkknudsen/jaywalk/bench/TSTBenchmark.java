@@ -0,0 +1,117 @@
+package com.falkknudsen.jaywalk.bench;
+
+import com.falkknudsen.jaywalk.tstree.TSTManager;
+import com.falkknudsen.jaywalk.tstree.TernarySearchTree;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/** Measures the memory per address and the lookup latency of the {@link TernarySearchTree}: built by adding
+ addresses one at a time in random order, as the parser does, before and after compacting, and bulk-built
+ from the keys in sorted order. For comparison, it estimates what a tree with an object per node would
+ take, with compressed references: a 12 byte header, a char and four references, padded to 32 bytes.
+ Finally it splits the tree into the shard files of a {@link TSTManager}, and times loading them lazily.<br>
+ Usage: {@code TSTBenchmark [addresses] [lookups]} */
+public class TSTBenchmark {
+    private static final int NODE_OBJECT_BYTES = 32;
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+
+        List<SyntheticData.Address> addresses = new ArrayList<>(SyntheticData.addresses(count, 30_000, 3));
+        Collections.shuffle(addresses, new Random(5));
+        StringBuilder sb = new StringBuilder();
+        List<String> keys = new ArrayList<>(count);
+        float[] lats = new float[count], lons = new float[count];
+        for (int i = 0; i < count; i++) {
+            SyntheticData.Address address = addresses.get(i);
+            TernarySearchTree.key(sb, address.tags());
+            keys.add(sb.toString());
+            lats[i] = address.lat();
+            lons[i] = address.lon();
+        }
+
+        long start = System.nanoTime();
+        TernarySearchTree added = new TernarySearchTree();
+        for (SyntheticData.Address address : addresses) added.addAddress(sb, address.tags(), address.lat(), address.lon());
+        report("Added one by one", added, System.nanoTime() - start, keys, lookups);
+
+        start = System.nanoTime();
+        added.compact();
+        report("Compacted", added, System.nanoTime() - start, keys, lookups);
+
+        List<String> sorted = new ArrayList<>(keys);
+        sorted.sort(String.CASE_INSENSITIVE_ORDER);
+        start = System.nanoTime();
+        TernarySearchTree built = TernarySearchTree.build(sorted, lats, lons);
+        report("Bulk-built from sorted keys", built, System.nanoTime() - start, keys, lookups);
+
+        System.out.printf("An object per node would take %.0f bytes per address.%n",
+                (double) built.nodeCount() * NODE_OBJECT_BYTES / built.size());
+
+        sharded(added, keys, lookups);
+    }
+
+    /** Splits the tree into shard files, and measures the first lookup in a shard, which loads it, against
+     later ones, and how much of the index a few searches bring onto the heap. */
+    private static void sharded(TernarySearchTree tree, List<String> keys, int lookups) throws IOException {
+        Path directory = Files.createTempDirectory("addresses");
+        try {
+            TSTManager manager = new TSTManager(directory.resolve("map.osm").toString());
+            long start = System.nanoTime();
+            manager.separateTSTs(tree);
+            System.out.printf("Split into shards in %.0f ms.%n", (System.nanoTime() - start) / 1e6);
+
+            Random random = new Random(11);
+            String first = keys.get(random.nextInt(keys.size()));
+            start = System.nanoTime();
+            manager.locate(first);
+            long cold = System.nanoTime() - start;
+            start = System.nanoTime();
+            manager.locate(first);
+            long warm = System.nanoTime() - start;
+            System.out.printf("First lookup in shard %d: %.2f ms, loading %.1f MB; the same again: %.1f us.%n",
+                    TSTManager.shardOf(first.charAt(0)), cold / 1e6, manager.loadedBytes() / 1e6, warm / 1e3);
+
+            start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) manager.locate(keys.get(random.nextInt(keys.size())));
+            System.out.printf("%d lookups over all shards: %.0f ns each, %d shards loaded, %.1f MB on the heap.%n",
+                    lookups, (System.nanoTime() - start) / (double) lookups, manager.loadedCount(),
+                    manager.loadedBytes() / 1e6);
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static void report(String name, TernarySearchTree tree, long buildNanos, List<String> keys, int lookups) {
+        Random random = new Random(7);
+        String[] queries = new String[lookups];
+        for (int i = 0; i < lookups; i++) {
+            String key = keys.get(random.nextInt(keys.size()));
+            // Every fourth lookup is for an address that isn't there.
+            queries[i] = i % 4 == 3 ? key + "x" : key;
+        }
+        long found = 0, start = 0;
+        for (int round = 0; round < 2; round++) { // the first round warms up
+            found = 0;
+            start = System.nanoTime();
+            for (String query : queries) {
+                if (tree.get(query) >= 0) found++;
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.printf("%-28s in %5.0f ms: %s, %.1f nodes and %.0f bytes per address, %.0f ns per lookup (%d found).%n",
+                name, buildNanos / 1e6, tree, (double) tree.nodeCount() / tree.size(),
+                (double) tree.memoryBytes() / tree.size(), (double) nanos / lookups, found);
+    }
+}
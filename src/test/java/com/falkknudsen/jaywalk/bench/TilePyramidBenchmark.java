@@ -0,0 +1,60 @@
+package com.falkknudsen.jaywalk.bench;
+
+import com.falkknudsen.jaywalk.Point;
+import com.falkknudsen.jaywalk.Rectangle;
+import com.falkknudsen.jaywalk.Way;
+import com.falkknudsen.jaywalk.graph.EdgeIndex;
+import com.falkknudsen.jaywalk.render.TileKey;
+import com.falkknudsen.jaywalk.render.TilePyramid;
+import com.falkknudsen.osmunda.LayeredMapData;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/** Renders the tile pyramid of synthetic features headless into a temporary directory, one zoom level
+ at a time, and reports the tiles per second of each and of the whole pyramid.<br>
+ Usage: {@code TilePyramidBenchmark [features] [extentKm] [minZoom] [maxZoom]} */
+public class TilePyramidBenchmark {
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        double extent = (args.length > 1 ? Double.parseDouble(args[1]) : 20) * 1000;
+        int minZoom = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int maxZoom = args.length > 3 ? Integer.parseInt(args[3]) : 15;
+
+        List<Way> ways = SyntheticData.features(count, extent, 3);
+        LayeredMapData map = new LayeredMapData("benchmark");
+        ways.forEach(map::insert);
+        map.drawables.build();
+        map.buildLevelsOfDetail();
+        SyntheticData.Grid frame = new SyntheticData.Grid(1, extent, List.of(), Map.of());
+        Rectangle area = new Rectangle(Point.projectLon(frame.lon(0)), Point.projectLat(frame.lat(0)),
+                Point.projectLon(frame.lon(1)), Point.projectLat(frame.lat(1)));
+
+        Path directory = Files.createTempDirectory("tiles");
+        try {
+            // Warm up on the lowest level.
+            TilePyramid.render(map::layerFor, area, minZoom, minZoom, directory, new LongAdder());
+            long tiles = 0, nanos = 0;
+            for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+                TilePyramid.Result result = TilePyramid.render(map::layerFor, area, zoom, zoom, directory, new LongAdder());
+                System.out.printf("Zoom %2d (%6.1f m/px): %s.%n", zoom,
+                        EdgeIndex.METRES_PER_UNIT / TileKey.scale(zoom), result);
+                tiles += result.tiles();
+                nanos += result.nanos();
+            }
+            System.out.printf("All: %d tiles at %.0f tiles/s on %d cores.%n",
+                    tiles, tiles / (nanos / 1e9), Runtime.getRuntime().availableProcessors());
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+}
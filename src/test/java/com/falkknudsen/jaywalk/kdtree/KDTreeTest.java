@@ -0,0 +1,114 @@
+package com.falkknudsen.jaywalk.kdtree;
+
+import com.falkknudsen.jaywalk.Point;
+import com.falkknudsen.jaywalk.graph.EdgeIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KDTreeTest {
+    private static final float[] NO_POINTS = new float[0];
+
+    /** Distance in metres the way the tree measures it, in projected units. */
+    private static double metres(float lat1, float lon1, float lat2, float lon2) {
+        double dx = Point.projectLon(lon1) - Point.projectLon(lon2);
+        double dy = Point.projectLat(lat1) - Point.projectLat(lat2);
+        return Math.hypot(dx, dy) * EdgeIndex.METRES_PER_UNIT;
+    }
+
+    @Test
+    void empty() {
+        KDTree tree = KDTree.build(NO_POINTS, NO_POINTS);
+        assertEquals(0, tree.size());
+        KDTree.Search search = tree.search();
+        assertEquals(-1, search.nearest(55.68f, 12.57f));
+        assertTrue(Float.isNaN(search.distance()));
+        assertEquals(0, search.nearest(55.68f, 12.57f, 1000, new int[4], new float[4]));
+        assertEquals(0, search.within(55.68f, 12.57f, 1000, (id, distance) -> fail("No points expected")));
+
+        int[] nearest = new int[1];
+        tree.nearest(new float[] {55.68f}, new float[] {12.57f}, nearest, null);
+        assertEquals(-1, nearest[0]);
+    }
+
+    @Test
+    void onePoint() {
+        KDTree tree = KDTree.build(new float[] {55.68f}, new float[] {12.57f});
+        KDTree.Search search = tree.search();
+        assertEquals(0, search.nearest(56f, 10f));
+        assertEquals(metres(55.68f, 12.57f, 56f, 10f), search.distance(), 1);
+        assertEquals(0, search.nearest(55.68f, 12.57f));
+        assertEquals(0, search.distance());
+    }
+
+    @Test
+    void matchesBruteForce() {
+        Random random = new Random(5);
+        // Enough for several levels of splits, with duplicates and points in a line thrown in.
+        int n = 5000;
+        float[] lats = new float[n], lons = new float[n];
+        for (int i = 0; i < n; i++) {
+            if (i % 10 == 0 && i > 0) {
+                lats[i] = lats[i - 1];
+                lons[i] = lons[i - 1];
+            } else if (i % 10 == 1) {
+                lats[i] = 55.5f;
+                lons[i] = 12 + random.nextFloat();
+            } else {
+                lats[i] = 55 + random.nextFloat();
+                lons[i] = 12 + random.nextFloat();
+            }
+        }
+        KDTree tree = KDTree.build(lats, lons);
+        assertEquals(n, tree.size());
+        KDTree.Search search = tree.search();
+        int k = 5;
+        int[] ids = new int[k];
+        float[] metres = new float[k];
+        float[] queryLats = new float[200], queryLons = new float[200];
+        for (int q = 0; q < queryLats.length; q++) {
+            float lat = queryLats[q] = 54.9f + random.nextFloat() * 1.2f;
+            float lon = queryLons[q] = 11.9f + random.nextFloat() * 1.2f;
+            double[] distances = new double[n];
+            for (int i = 0; i < n; i++) distances[i] = metres(lat, lon, lats[i], lons[i]);
+            double[] sorted = distances.clone();
+            Arrays.sort(sorted);
+
+            int nearest = search.nearest(lat, lon);
+            assertEquals(sorted[0], distances[nearest], 0.01);
+            assertEquals(sorted[0], search.distance(), 0.01);
+
+            float max = (float) sorted[3] + 1;
+            int found = search.nearest(lat, lon, max, ids, metres);
+            assertEquals(Math.min(k, (int) Arrays.stream(sorted).filter(d -> d <= max - 0.01).count()), found);
+            for (int i = 0; i < found; i++) {
+                assertEquals(sorted[i], metres[i], 0.01);
+                assertEquals(sorted[i], distances[ids[i]], 0.01);
+            }
+
+            float radius = 2000;
+            Set<Integer> expected = new HashSet<>(), visited = new HashSet<>();
+            for (int i = 0; i < n; i++) if (distances[i] <= radius - 0.01) expected.add(i);
+            int count = search.within(lat, lon, radius, (id, distance) -> {
+                assertTrue(visited.add(id), "Visited twice: " + id);
+                assertEquals(distances[id], distance, 0.01);
+            });
+            assertEquals(visited.size(), count);
+            assertTrue(visited.containsAll(expected));
+            for (int id : visited) assertTrue(distances[id] <= radius + 0.01);
+        }
+
+        int[] batch = new int[queryLats.length];
+        float[] batchMetres = new float[queryLats.length];
+        tree.nearest(queryLats, queryLons, batch, batchMetres);
+        for (int q = 0; q < queryLats.length; q++) {
+            assertEquals(search.nearest(queryLats[q], queryLons[q]), batch[q]);
+            assertEquals(search.distance(), batchMetres[q]);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.falkknudsen.jaywalk.structs;
+
+import com.falkknudsen.jaywalk.Point;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackedCoordinatesTest {
+    /** A random walk of projected coordinates around Copenhagen, a few metres per step. */
+    private static float[] way(int vertices, long seed) {
+        Random random = new Random(seed);
+        float[] coordinates = new float[vertices * 2];
+        float lat = 55.68f, lon = 12.57f;
+        for (int i = 0; i < vertices; i++) {
+            lat += (random.nextFloat() - 0.5f) * 1e-4f;
+            lon += (random.nextFloat() - 0.5f) * 1e-4f;
+            coordinates[i * 2] = Point.projectLon(lon);
+            coordinates[i * 2 + 1] = Point.projectLat(lat);
+        }
+        return coordinates;
+    }
+
+    private static void assertRoundTrip(float[] coordinates) {
+        byte[] packed = PackedCoordinates.pack(coordinates);
+        int n = coordinates.length / 2;
+        assertEquals(n, PackedCoordinates.size(packed));
+        assertArrayEquals(coordinates, PackedCoordinates.unpack(packed));
+        for (int i = 0; i < n; i++) {
+            assertEquals(coordinates[i * 2], PackedCoordinates.x(packed, i), "x of " + i);
+            assertEquals(coordinates[i * 2 + 1], PackedCoordinates.y(packed, i), "y of " + i);
+            long vertex = PackedCoordinates.vertex(packed, i);
+            assertEquals(coordinates[i * 2], PackedCoordinates.x(vertex));
+            assertEquals(coordinates[i * 2 + 1], PackedCoordinates.y(vertex));
+        }
+    }
+
+    @Test
+    void noVertices() {
+        byte[] packed = PackedCoordinates.pack(new float[0]);
+        assertEquals(0, PackedCoordinates.size(packed));
+        assertEquals(0, PackedCoordinates.unpack(packed).length);
+        assertEquals(0, PackedCoordinates.length(packed));
+        PackedCoordinates.forEachSegment(packed, (x1, y1, x2, y2) -> fail("No segments expected"));
+        PackedCoordinates.decode(packed, 0, 0, new float[0], 0);
+        assertThrows(IndexOutOfBoundsException.class, () -> PackedCoordinates.vertex(packed, 0));
+    }
+
+    @Test
+    void oneVertex() {
+        float[] coordinates = way(1, 1);
+        assertRoundTrip(coordinates);
+        byte[] packed = PackedCoordinates.pack(coordinates);
+        assertEquals(0, PackedCoordinates.length(packed));
+        PackedCoordinates.forEachSegment(packed, (x1, y1, x2, y2) -> fail("No segments expected"));
+    }
+
+    @Test
+    void checkpointBoundaries() {
+        int checkpoint = PackedCoordinates.CHECKPOINT;
+        for (int n : new int[] {checkpoint - 1, checkpoint, checkpoint + 1, 2 * checkpoint, 2 * checkpoint + 1}) {
+            assertRoundTrip(way(n, n));
+        }
+    }
+
+    @Test
+    void smallValuesAreRoundedToTheUnit() {
+        float[] coordinates = {0, 0, 0.1f, -0.1f, -3.999f, 3.999f, 1e-9f, -1e-9f};
+        float[] unpacked = PackedCoordinates.unpack(PackedCoordinates.pack(coordinates));
+        for (int i = 0; i < coordinates.length; i++) assertEquals(coordinates[i], unpacked[i], 0x1p-22f);
+    }
+
+    @Test
+    void shiftedAxes() {
+        // Whole numbers have many trailing zero bits in fixed point; they are shifted out and back in.
+        float[] coordinates = new float[2 * 70];
+        for (int i = 0; i < 70; i++) {
+            coordinates[i * 2] = 8 * (i - 35);
+            coordinates[i * 2 + 1] = -56;
+        }
+        assertRoundTrip(coordinates);
+    }
+
+    @Test
+    void decodeRange() {
+        int checkpoint = PackedCoordinates.CHECKPOINT;
+        float[] coordinates = way(3 * checkpoint + 5, 7);
+        byte[] packed = PackedCoordinates.pack(coordinates);
+        int[][] ranges = {{0, 1}, {checkpoint - 1, checkpoint + 1}, {checkpoint, checkpoint + 1},
+                {checkpoint + 1, 3 * checkpoint + 5}, {5, 5}};
+        for (int[] range : ranges) {
+            int from = range[0], to = range[1];
+            float[] dest = new float[(to - from) * 2 + 3];
+            PackedCoordinates.decode(packed, from, to, dest, 3);
+            for (int i = from; i < to; i++) {
+                assertEquals(coordinates[i * 2], dest[3 + (i - from) * 2]);
+                assertEquals(coordinates[i * 2 + 1], dest[3 + (i - from) * 2 + 1]);
+            }
+        }
+    }
+
+    @Test
+    void outOfRange() {
+        byte[] packed = PackedCoordinates.pack(way(PackedCoordinates.CHECKPOINT + 1, 3));
+        int n = PackedCoordinates.size(packed);
+        float[] dest = new float[2 * n + 2];
+        assertThrows(IndexOutOfBoundsException.class, () -> PackedCoordinates.vertex(packed, -1));
+        assertThrows(IndexOutOfBoundsException.class, () -> PackedCoordinates.vertex(packed, n));
+        assertThrows(IndexOutOfBoundsException.class, () -> PackedCoordinates.decode(packed, -1, 1, dest, 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> PackedCoordinates.decode(packed, 0, n + 1, dest, 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> PackedCoordinates.decode(packed, 2, 1, dest, 0));
+    }
+
+    @Test
+    void segmentsAndLength() {
+        float[] coordinates = way(PackedCoordinates.CHECKPOINT * 2 + 3, 11);
+        byte[] packed = PackedCoordinates.pack(coordinates);
+        double expected = 0;
+        for (int i = 1; i < coordinates.length / 2; i++) {
+            expected += Math.hypot(coordinates[i * 2] - coordinates[i * 2 - 2],
+                    coordinates[i * 2 + 1] - coordinates[i * 2 - 1]);
+        }
+        assertEquals(expected, PackedCoordinates.length(packed), 1e-9);
+
+        int[] segment = {0};
+        PackedCoordinates.forEachSegment(packed, (x1, y1, x2, y2) -> {
+            int i = ++segment[0];
+            assertEquals(coordinates[i * 2 - 2], x1);
+            assertEquals(coordinates[i * 2 - 1], y1);
+            assertEquals(coordinates[i * 2], x2);
+            assertEquals(coordinates[i * 2 + 1], y2);
+        });
+        assertEquals(coordinates.length / 2 - 1, segment[0]);
+    }
+}
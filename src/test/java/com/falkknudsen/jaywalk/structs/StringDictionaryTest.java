@@ -0,0 +1,101 @@
+package com.falkknudsen.jaywalk.structs;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StringDictionaryTest {
+    /** The strings sorted the way the dictionary sorts them, by their UTF-8 bytes. */
+    private static List<String> sorted(List<String> strings) {
+        TreeSet<String> set = new TreeSet<>((a, b) -> Arrays.compareUnsigned(
+                a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8)));
+        set.addAll(strings);
+        return new ArrayList<>(set);
+    }
+
+    private static void assertDictionary(List<String> expected, StringDictionary dictionary) {
+        assertEquals(expected.size(), dictionary.size());
+        for (int id = 0; id < expected.size(); id++) {
+            assertEquals(expected.get(id), dictionary.get(id));
+            assertEquals(id, dictionary.id(expected.get(id)));
+        }
+    }
+
+    @Test
+    void empty() {
+        StringDictionary dictionary = StringDictionary.of(List.of());
+        assertEquals(0, dictionary.size());
+        assertEquals(-1, dictionary.id(""));
+        assertEquals(-1, dictionary.id("Vestergade"));
+        assertThrows(IndexOutOfBoundsException.class, () -> dictionary.get(0));
+    }
+
+    @Test
+    void single() {
+        StringDictionary dictionary = StringDictionary.of(List.of("Vestergade"));
+        assertDictionary(List.of("Vestergade"), dictionary);
+        assertEquals(-1, dictionary.id("Vestergad"));
+        assertEquals(-1, dictionary.id("Vestergades"));
+        assertEquals(-1, dictionary.id("A"));
+        assertThrows(IndexOutOfBoundsException.class, () -> dictionary.get(-1));
+        assertThrows(IndexOutOfBoundsException.class, () -> dictionary.get(1));
+    }
+
+    @Test
+    void emptyString() {
+        List<String> strings = List.of("", "a", "ab");
+        assertDictionary(strings, StringDictionary.of(strings));
+    }
+
+    @Test
+    void sharedPrefixesAcrossBlocks() {
+        // Enough strings for several blocks, most sharing long prefixes, some of them outside ASCII.
+        List<String> strings = new ArrayList<>();
+        for (int i = 0; i < 5 * StringDictionary.BLOCK + 3; i++) {
+            strings.add("Vester" + (char) ('a' + i % 26) + " Allé " + i);
+            strings.add("Østergade " + i);
+            strings.add("Åboulevard".repeat(i % 3 + 1) + i);
+        }
+        strings.add("Vester");
+        strings.add("Æblevej");
+        strings.add("Ωmegavej");
+        // Over the 64 bytes the lookups start out with room for.
+        strings.add("Kong Christian den Niendes Vej ved den gamle Fæstningsgrav og Søerne");
+        List<String> expected = sorted(strings);
+        StringDictionary dictionary = StringDictionary.of(strings);
+        assertDictionary(expected, dictionary);
+        for (String string : expected) {
+            assertEquals(-1, dictionary.id(string + "!"));
+            assertEquals(-1, dictionary.id(string.substring(0, string.length() / 2) + "\u0000"));
+        }
+        assertEquals(-1, dictionary.id("A"));
+        assertEquals(-1, dictionary.id("￿"));
+    }
+
+    @Test
+    void duplicatesAreStoredOnce() {
+        StringDictionary dictionary = StringDictionary.of(List.of("b", "a", "b", "c", "a"));
+        assertDictionary(List.of("a", "b", "c"), dictionary);
+    }
+
+    @Test
+    void builderRemapsIds() {
+        StringDictionary.Builder builder = new StringDictionary.Builder();
+        List<String> strings = List.of("Nørregade", "Amagerbrogade", "Østergade", "Bredgade", "Amagerbrogade");
+        int[] provisional = new int[strings.size()];
+        for (int i = 0; i < strings.size(); i++) provisional[i] = builder.add(strings.get(i));
+        assertEquals(provisional[1], provisional[4]);
+        assertEquals(4, builder.size());
+
+        int[] ids = new int[builder.size()];
+        StringDictionary dictionary = builder.build(ids);
+        for (int i = 0; i < strings.size(); i++) assertEquals(strings.get(i), dictionary.get(ids[provisional[i]]));
+        assertDictionary(sorted(strings), dictionary);
+    }
+}
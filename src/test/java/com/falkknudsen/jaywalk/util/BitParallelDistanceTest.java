@@ -0,0 +1,124 @@
+package com.falkknudsen.jaywalk.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BitParallelDistanceTest {
+    private static final String ALPHABET = "abcæøåABCÆØÅ Ωω";
+
+    /** The reference, ignoring case as {@link BitParallelDistance} does. */
+    private static int expected(String a, String b) {
+        return Strings.levenshtein(a.toLowerCase(Locale.ROOT), b.toLowerCase(Locale.ROOT));
+    }
+
+    private static String random(Random random, int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) builder.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        return builder.toString();
+    }
+
+    @Test
+    void emptyStrings() {
+        assertEquals(0, new BitParallelDistance("").length());
+        assertEquals(0, new BitParallelDistance("").distance(""));
+        assertEquals(5, new BitParallelDistance("").distance("Vejle"));
+        assertEquals(5, new BitParallelDistance("Vejle").distance(""));
+    }
+
+    @Test
+    void ignoresCase() {
+        assertEquals(0, new BitParallelDistance("Nørrebrogade").distance("NØRREBROGADE"));
+        assertEquals(1, new BitParallelDistance("Ωmega").distance("ωmegA!"));
+    }
+
+    @Test
+    void matchesLevenshtein() {
+        Random random = new Random(42);
+        // Up to and past two blocks of 64, so the carry between blocks is covered.
+        for (int length : new int[] {1, 2, 31, 63, 64, 65, 100, 127, 128, 129, 200}) {
+            for (int round = 0; round < 20; round++) {
+                String query = random(random, length);
+                String text = random.nextBoolean() ? random(random, random.nextInt(length * 2 + 1))
+                        : mutate(random, query);
+                BitParallelDistance distance = new BitParallelDistance(query);
+                assertEquals(length, distance.length());
+                assertEquals(expected(query, text), distance.distance(text), query + " / " + text);
+            }
+        }
+    }
+
+    /** A few random edits of the string, so the distance is small even for long ones. */
+    private static String mutate(Random random, String string) {
+        StringBuilder builder = new StringBuilder(string);
+        for (int edits = random.nextInt(5); edits > 0; edits--) {
+            int at = random.nextInt(builder.length() + 1);
+            char c = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+            switch (at == builder.length() ? 0 : random.nextInt(3)) {
+                case 0 -> builder.insert(at, c);
+                case 1 -> builder.deleteCharAt(at);
+                default -> builder.setCharAt(at, c);
+            }
+        }
+        return builder.toString();
+    }
+
+    @Test
+    void maxGivesUpEarly() {
+        Random random = new Random(7);
+        for (int length : new int[] {10, 64, 65, 150}) {
+            for (int round = 0; round < 20; round++) {
+                String query = random(random, length), text = mutate(random, random(random, length));
+                BitParallelDistance distance = new BitParallelDistance(query);
+                int exact = expected(query, text);
+                for (int max : new int[] {0, 1, exact - 1, exact, exact + 1}) {
+                    if (max < 0) continue;
+                    int bounded = distance.distance(text, max);
+                    if (exact <= max) assertEquals(exact, bounded);
+                    else assertEquals(max + 1, bounded);
+                }
+            }
+        }
+    }
+
+    @Test
+    void best() {
+        List<String> candidates = List.of("Vestergade", "Vester Allé", "Østergade", "vestergade", "Nørregade",
+                "Vesterbrogade");
+        int[] indices = new int[3], distances = new int[3];
+        BitParallelDistance query = new BitParallelDistance("Vestergade");
+        assertEquals(3, query.best(candidates, 3, 10, indices, distances));
+        // Ties are kept in the order given.
+        assertArrayEquals(new int[] {0, 3, 2}, indices);
+        assertArrayEquals(new int[] {0, 0, 2}, distances);
+
+        assertEquals(2, query.best(candidates, 3, 0, indices, distances));
+        assertEquals(0, query.best(candidates, 0, 10, indices, distances));
+        assertEquals(0, query.best(List.of(), 3, 10, indices, distances));
+    }
+
+    @Test
+    void bestMatchesSorting() {
+        Random random = new Random(3);
+        String query = random(random, 70);
+        List<String> candidates = new ArrayList<>();
+        for (int i = 0; i < 200; i++) candidates.add(mutate(random, mutate(random, query)));
+        int k = 10, max = 6;
+        int[] indices = new int[k], distances = new int[k];
+        int kept = new BitParallelDistance(query).best(candidates, k, max, indices, distances);
+
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) if (expected(query, candidates.get(i)) <= max) order.add(i);
+        order.sort((a, b) -> Integer.compare(expected(query, candidates.get(a)), expected(query, candidates.get(b))));
+        assertEquals(Math.min(k, order.size()), kept);
+        for (int i = 0; i < kept; i++) {
+            assertEquals(order.get(i), indices[i]);
+            assertEquals(expected(query, candidates.get(order.get(i))), distances[i]);
+        }
+    }
+}